@@ -0,0 +1,76 @@
+package exe2.slideapp.demopoi.service;
+
+import exe2.slideapp.demopoi.config.AdmissionProperties;
+import exe2.slideapp.demopoi.config.ImageProperties;
+import exe2.slideapp.demopoi.config.OutputProperties;
+import exe2.slideapp.demopoi.config.ScratchProperties;
+import exe2.slideapp.demopoi.config.TemplatePoolProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Dựng PowerPointService với cấu hình mặc định, không cần Spring context
+ */
+final class BenchmarkServices {
+
+    final MemoryAdmission memoryAdmission;
+    final ScratchSpace scratchSpace;
+    final TemplatePool templatePool;
+    // Pool tắt: mỗi lần acquire spool template và mở file-backed như đường render khi không có pool
+    final TemplatePool unpooledTemplates;
+    final ImageOptimizer imageOptimizer;
+    final PowerPointService powerPointService;
+
+    BenchmarkServices(boolean optimizeImages) throws IOException {
+        ScratchProperties scratchProperties = new ScratchProperties();
+        Path scratchDirectory = Paths.get("target", "jmh-scratch");
+        scratchProperties.setDirectory(scratchDirectory.toAbsolutePath().toString());
+
+        ImageProperties imageProperties = new ImageProperties();
+        imageProperties.setOptimize(optimizeImages);
+
+        TemplatePoolProperties unpooled = new TemplatePoolProperties();
+        unpooled.setEnabled(false);
+
+        this.memoryAdmission = new MemoryAdmission(new AdmissionProperties());
+        this.scratchSpace = new ScratchSpace(scratchProperties);
+        this.templatePool = new TemplatePool(new TemplatePoolProperties(), scratchSpace);
+        this.unpooledTemplates = new TemplatePool(unpooled, scratchSpace);
+        this.imageOptimizer = new ImageOptimizer(imageProperties);
+        this.powerPointService = new PowerPointService(templatePool, scratchSpace,
+                imageOptimizer, memoryAdmission, new StreamingTemplateEngine(memoryAdmission),
+                new RenderMetrics(new SimpleMeterRegistry(), memoryAdmission, templatePool),
+                new OutputProperties());
+    }
+
+    void shutdown() {
+        templatePool.shutdown();
+        unpooledTemplates.shutdown();
+        imageOptimizer.shutdown();
+    }
+
+    /**
+     * Output bỏ đi dữ liệu, chỉ đếm số byte để kết quả không bị JIT loại bỏ
+     */
+    static final class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package exe2.slideapp.demopoi.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Toàn bộ pipeline render của một request, để so sánh các engine.
+ * Chạy với -prof gc để xem thêm lượng cấp phát mỗi lần render (gc.alloc.rate.norm)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class RenderBenchmark {
+
+    @Param({"10", "50"})
+    private int slides;
+
+    @Param({"5", "50"})
+    private int placeholders;
+
+    @Param({"0", "20"})
+    private int tableRows;
+
+    @Param({"0", "5"})
+    private int images;
+
+    @Param({"0"})
+    private int embeddedPictures;
+
+    @Param({"POI", "AUTO"})
+    private RenderEngine engine;
+
+    private BenchmarkServices services;
+    private SyntheticTemplate template;
+    private MultipartFile upload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        services = new BenchmarkServices(false);
+        template = SyntheticTemplate.generate(
+                new SyntheticTemplate.Spec(slides, placeholders, tableRows, images, embeddedPictures));
+        upload = new ByteArrayMultipartFile("file", "synthetic.pptx",
+                "application/vnd.openxmlformats-officedocument.presentationml.presentation", template.getTemplate());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        services.shutdown();
+    }
+
+    /**
+     * Như /ppt/process-template với delivery=file: render vào scratch file rồi xóa
+     */
+    @Benchmark
+    public long processTemplate() throws Exception {
+        try (ScratchFile file = services.powerPointService.processTemplate(
+                upload, template.getData(), template.getImages(), engine)) {
+            return file.size();
+        }
+    }
+
+    /**
+     * Như delivery=stream: render thẳng ra output
+     */
+    @Benchmark
+    public long render() throws Exception {
+        BenchmarkServices.CountingOutputStream out = new BenchmarkServices.CountingOutputStream();
+        services.powerPointService.render(template.getTemplate(), template.getData(), template.getImages(), engine, out);
+        return out.getCount();
+    }
+}
@@ -0,0 +1,122 @@
+package exe2.slideapp.demopoi.service;
+
+import org.apache.poi.xslf.usermodel.XMLSlideShow;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Từng bước của đường render POI: load, thay text, chèn ảnh và ghi deck.
+ * Deck được mở file-backed và ghi qua DeckZipOutputStream với CompressionPolicy mặc định như khi render thật.
+ * Các bước thay đổi deck dùng một bản vừa mở cho mỗi lần gọi (không tính vào thời gian đo)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class RenderPhaseBenchmark {
+
+    @Param({"10", "50"})
+    private int slides;
+
+    @Param({"5", "50"})
+    private int placeholders;
+
+    @Param({"0", "20"})
+    private int tableRows;
+
+    @Param({"0", "5"})
+    private int images;
+
+    @Param({"0"})
+    private int embeddedPictures;
+
+    @Param({"false"})
+    private boolean optimizeImages;
+
+    private BenchmarkServices services;
+    private SyntheticTemplate template;
+    private CompressionPolicy compression;
+    private PoiRenderedDeck renderedDeck;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        services = new BenchmarkServices(optimizeImages);
+        template = SyntheticTemplate.generate(
+                new SyntheticTemplate.Spec(slides, placeholders, tableRows, images, embeddedPictures));
+        compression = services.powerPointService.compressionPolicy(null);
+        XMLSlideShow ppt = open(services, template.getTemplate());
+        services.powerPointService.replaceTextInDeck(ppt, template.getData(), new RenderStats());
+        services.powerPointService.replaceImagesInDeck(ppt, template.getImages(), new RenderStats());
+        renderedDeck = new PoiRenderedDeck(ppt, services.memoryAdmission.admit(0), services.scratchSpace);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        renderedDeck.close();
+        services.shutdown();
+    }
+
+    /**
+     * Deck mới parse cho các benchmark có thay đổi deck
+     */
+    @State(Scope.Thread)
+    public static class FreshDeck {
+        XMLSlideShow ppt;
+
+        @Setup(Level.Invocation)
+        public void setUp(RenderPhaseBenchmark benchmark) throws Exception {
+            ppt = open(benchmark.services, benchmark.template.getTemplate());
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() throws Exception {
+            ppt.close();
+        }
+    }
+
+    /**
+     * Spool template và mở file-backed, như TemplatePool khi pool tắt
+     */
+    @Benchmark
+    public int load() throws Exception {
+        try (XMLSlideShow ppt = open(services, template.getTemplate())) {
+            return ppt.getSlides().size();
+        }
+    }
+
+    /**
+     * Lấy bản parse sẵn từ TemplatePool (gồm cả chi phí parse bù ở thread nền)
+     */
+    @Benchmark
+    public int loadPooled() throws Exception {
+        try (XMLSlideShow ppt = services.templatePool.acquire(template.getTemplate())) {
+            return ppt.getSlides().size();
+        }
+    }
+
+    @Benchmark
+    public XMLSlideShow replaceText(FreshDeck deck) {
+        services.powerPointService.replaceTextInDeck(deck.ppt, template.getData(), new RenderStats());
+        return deck.ppt;
+    }
+
+    @Benchmark
+    public XMLSlideShow replaceImages(FreshDeck deck) throws Exception {
+        services.powerPointService.replaceImagesInDeck(deck.ppt, template.getImages(), new RenderStats());
+        return deck.ppt;
+    }
+
+    @Benchmark
+    public long write() throws Exception {
+        BenchmarkServices.CountingOutputStream out = new BenchmarkServices.CountingOutputStream();
+        renderedDeck.write(out, compression);
+        return out.getCount();
+    }
+
+    private static XMLSlideShow open(BenchmarkServices services, byte[] template) throws Exception {
+        return services.unpooledTemplates.acquire(template);
+    }
+}
@@ -0,0 +1,152 @@
+package exe2.slideapp.demopoi.service;
+
+import org.apache.poi.sl.usermodel.PictureData;
+import org.apache.poi.xslf.usermodel.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Template .pptx tổng hợp cho benchmark, kèm data và ảnh khớp với các placeholder của nó.
+ * Một nửa số placeholder text bị tách qua hai run như khi soạn bằng PowerPoint
+ */
+public final class SyntheticTemplate {
+
+    private static final int IMAGE_WIDTH = 1600;
+    private static final int IMAGE_HEIGHT = 1200;
+    private static final int TABLE_COLUMNS = 4;
+
+    /**
+     * @param slides               số slide
+     * @param placeholdersPerSlide số paragraph có placeholder text trên mỗi slide
+     * @param tableRows            số dòng (có placeholder ở mọi ô) của bảng trên mỗi slide, 0 là không có bảng
+     * @param images               số image placeholder, rải đều trên các slide
+     * @param embeddedPictures     số ảnh nhúng sẵn trong template (media không cần thay thế)
+     */
+    public record Spec(int slides, int placeholdersPerSlide, int tableRows, int images, int embeddedPictures) {
+    }
+
+    private final byte[] template;
+    private final Map<String, String> data;
+    private final Map<String, MultipartFile> images;
+
+    private SyntheticTemplate(byte[] template, Map<String, String> data, Map<String, MultipartFile> images) {
+        this.template = template;
+        this.data = data;
+        this.images = images;
+    }
+
+    public byte[] getTemplate() {
+        return template;
+    }
+
+    public Map<String, String> getData() {
+        return data;
+    }
+
+    public Map<String, MultipartFile> getImages() {
+        return images;
+    }
+
+    public static SyntheticTemplate generate(Spec spec) throws IOException {
+        Random random = new Random(42);
+        Map<String, String> data = new HashMap<>();
+        Map<String, MultipartFile> images = new LinkedHashMap<>();
+
+        try (XMLSlideShow ppt = new XMLSlideShow()) {
+            XSLFPictureData[] embedded = new XSLFPictureData[spec.embeddedPictures()];
+            for (int i = 0; i < embedded.length; i++) {
+                embedded[i] = ppt.addPicture(createImage(random), PictureData.PictureType.JPEG);
+            }
+
+            for (int s = 0; s < spec.slides(); s++) {
+                XSLFSlide slide = ppt.createSlide();
+
+                XSLFTextBox title = slide.createTextBox();
+                title.setAnchor(new Rectangle2D.Double(20, 10, 680, 40));
+                title.setText("{title} - " + (s + 1));
+
+                XSLFTextBox body = slide.createTextBox();
+                body.setAnchor(new Rectangle2D.Double(20, 60, 330, 300));
+                body.clearText();
+                for (int i = 0; i < spec.placeholdersPerSlide(); i++) {
+                    String key = "field" + i;
+                    data.put(key, "Value of " + key);
+                    XSLFTextParagraph paragraph = body.addNewTextParagraph();
+                    if (i % 2 == 0) {
+                        XSLFTextRun first = paragraph.addNewTextRun();
+                        first.setText("Field " + i + ": {fie");
+                        first.setBold(true);
+                        paragraph.addNewTextRun().setText("ld" + i + "} end");
+                    } else {
+                        paragraph.addNewTextRun().setText("Field " + i + ": {" + key + "} end");
+                    }
+                }
+
+                if (spec.tableRows() > 0) {
+                    XSLFTable table = slide.createTable(spec.tableRows() + 1, TABLE_COLUMNS);
+                    table.setAnchor(new Rectangle2D.Double(360, 60, 340, 300));
+                    for (int c = 0; c < TABLE_COLUMNS; c++) {
+                        table.getCell(0, c).setText("Column " + (c + 1));
+                    }
+                    for (int r = 1; r <= spec.tableRows(); r++) {
+                        for (int c = 0; c < TABLE_COLUMNS; c++) {
+                            String key = "r" + r + "c" + c;
+                            data.put(key, "Cell " + r + "/" + c);
+                            table.getCell(r, c).setText("{" + key + "}");
+                        }
+                    }
+                }
+
+                if (embedded.length > 0) {
+                    XSLFPictureShape picture = slide.createPicture(embedded[s % embedded.length]);
+                    picture.setAnchor(new Rectangle2D.Double(600, 380, 100, 75));
+                }
+            }
+
+            var slides = ppt.getSlides();
+            for (int i = 0; i < spec.images(); i++) {
+                String key = "img" + i;
+                XSLFTextBox placeholder = slides.get(i % slides.size()).createTextBox();
+                placeholder.setAnchor(new Rectangle2D.Double(20 + (i / slides.size()) % 4 * 150, 380, 140, 105));
+                placeholder.setText("{" + PlaceholderTokenizer.IMAGE_PREFIX + key + "}");
+                images.put(key, new ByteArrayMultipartFile(key, key + ".jpg", "image/jpeg", createImage(random)));
+            }
+            data.put("title", "Synthetic deck");
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ppt.write(out);
+            return new SyntheticTemplate(out.toByteArray(), data, images);
+        }
+    }
+
+    /**
+     * Ảnh JPEG cỡ ảnh chụp: nền gradient có nhiễu để kích thước file gần với ảnh thật
+     */
+    private static byte[] createImage(Random random) throws IOException {
+        BufferedImage image = new BufferedImage(IMAGE_WIDTH, IMAGE_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setPaint(new GradientPaint(0, 0, new Color(random.nextInt(0xFFFFFF)),
+                    IMAGE_WIDTH, IMAGE_HEIGHT, new Color(random.nextInt(0xFFFFFF))));
+            g.fillRect(0, 0, IMAGE_WIDTH, IMAGE_HEIGHT);
+        } finally {
+            g.dispose();
+        }
+        for (int i = 0; i < IMAGE_WIDTH * IMAGE_HEIGHT / 8; i++) {
+            image.setRGB(random.nextInt(IMAGE_WIDTH), random.nextInt(IMAGE_HEIGHT), random.nextInt(0xFFFFFF));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+}
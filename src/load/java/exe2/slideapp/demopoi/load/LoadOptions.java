@@ -0,0 +1,116 @@
+package exe2.slideapp.demopoi.load;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Tham số của một lần chạy load test, dạng key=value (xem LoadTest).
+ * concurrency và rate nhận danh sách, mỗi giá trị là một stage chạy lần lượt để tìm điểm bão hòa
+ */
+record LoadOptions(
+        String url,
+        String model,
+        List<Integer> concurrency,
+        List<Integer> rate,
+        Duration warmup,
+        Duration duration,
+        int maxInFlight,
+        int slides,
+        int placeholders,
+        int images,
+        int imageWidth,
+        int imageHeight,
+        String engine,
+        String delivery,
+        String compression,
+        boolean cache,
+        Duration timeout,
+        String output) {
+
+    static final String CLOSED = "closed";
+    static final String OPEN = "open";
+
+    static LoadOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Expected key=value, got: " + arg);
+            }
+            values.put(arg.substring(0, eq).trim(), arg.substring(eq + 1).trim());
+        }
+
+        LoadOptions options = new LoadOptions(
+                take(values, "url", "http://localhost:8080"),
+                take(values, "model", CLOSED).toLowerCase(Locale.ROOT),
+                intList(take(values, "concurrency", "1,4,16")),
+                intList(take(values, "rate", "2,5,10")),
+                duration(take(values, "warmup", "10s")),
+                duration(take(values, "duration", "30s")),
+                Integer.parseInt(take(values, "maxInFlight", "512")),
+                Integer.parseInt(take(values, "slides", "10")),
+                Integer.parseInt(take(values, "placeholders", "10")),
+                Integer.parseInt(take(values, "images", "2")),
+                Integer.parseInt(take(values, "imageWidth", "1600")),
+                Integer.parseInt(take(values, "imageHeight", "1200")),
+                take(values, "engine", "auto"),
+                take(values, "delivery", "stream"),
+                take(values, "compression", ""),
+                Boolean.parseBoolean(take(values, "cache", "false")),
+                duration(take(values, "timeout", "60s")),
+                take(values, "output", "target/load"));
+
+        if (!values.isEmpty()) {
+            throw new IllegalArgumentException("Unknown options: " + values.keySet());
+        }
+        if (!CLOSED.equals(options.model()) && !OPEN.equals(options.model())) {
+            throw new IllegalArgumentException("model must be closed or open: " + options.model());
+        }
+        return options;
+    }
+
+    /**
+     * Giá trị của từng stage: số client (closed) hoặc request/giây (open)
+     */
+    List<Integer> stages() {
+        return CLOSED.equals(model) ? concurrency : rate;
+    }
+
+    private static String take(Map<String, String> values, String key, String defaultValue) {
+        String value = values.remove(key);
+        return value == null ? defaultValue : value;
+    }
+
+    private static List<Integer> intList(String value) {
+        List<Integer> result = new ArrayList<>();
+        for (String part : value.split(",")) {
+            int parsed = Integer.parseInt(part.trim());
+            if (parsed <= 0) {
+                throw new IllegalArgumentException("Stage values must be positive: " + value);
+            }
+            result.add(parsed);
+        }
+        return result;
+    }
+
+    /**
+     * 500ms, 30s, 2m
+     */
+    private static Duration duration(String value) {
+        String lower = value.toLowerCase(Locale.ROOT);
+        if (lower.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(lower.substring(0, lower.length() - 2)));
+        }
+        if (lower.endsWith("s")) {
+            return Duration.ofSeconds(Long.parseLong(lower.substring(0, lower.length() - 1)));
+        }
+        if (lower.endsWith("m")) {
+            return Duration.ofMinutes(Long.parseLong(lower.substring(0, lower.length() - 1)));
+        }
+        return Duration.ofSeconds(Long.parseLong(lower));
+    }
+}
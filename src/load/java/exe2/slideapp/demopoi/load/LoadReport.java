@@ -0,0 +1,96 @@
+package exe2.slideapp.demopoi.load;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * Ghi kết quả vào một thư mục theo thời điểm chạy:
+ * <ul>
+ *   <li>&lt;model&gt;-&lt;target&gt;.hgrm: phân bố percentile của từng stage (ms), vẽ được bằng HdrHistogram plotter</li>
+ *   <li>summary.csv: mỗi stage một dòng, so sánh giữa các cỡ node để tìm điểm bão hòa</li>
+ * </ul>
+ */
+final class LoadReport {
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+    private static final String HEADER = "model,target,throughput_rps,completed,failed,dropped,"
+            + "p50_ms,p90_ms,p99_ms,p999_ms,max_ms,mean_response_kb,"
+            + "gc_pauses,gc_pause_ms,allocated_mb,peak_heap_mb,max_heap_mb";
+
+    private final Path directory;
+    private final Writer summary;
+
+    LoadReport(String output) throws IOException {
+        this.directory = Path.of(output, LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")));
+        Files.createDirectories(directory);
+        this.summary = Files.newBufferedWriter(directory.resolve("summary.csv"), StandardCharsets.UTF_8);
+        summary.write(HEADER + "\n");
+    }
+
+    Path getDirectory() {
+        return directory;
+    }
+
+    void add(LoadRunner.StageResult result) throws IOException {
+        Histogram latency = result.latency();
+        Path hgrm = directory.resolve(result.model() + "-" + result.target() + ".hgrm");
+        try (PrintStream out = new PrintStream(Files.newOutputStream(hgrm), false, StandardCharsets.UTF_8)) {
+            latency.outputPercentileDistribution(out, NANOS_PER_MILLI);
+        }
+
+        ServerStats.Delta server = result.server();
+        double meanKb = result.completed() == 0 ? 0 : result.responseBytes() / 1024.0 / result.completed();
+        summary.write(String.join(",",
+                result.model(),
+                String.valueOf(result.target()),
+                format(result.throughput()),
+                String.valueOf(result.completed()),
+                String.valueOf(result.failed()),
+                String.valueOf(result.dropped()),
+                millis(latency, 50),
+                millis(latency, 90),
+                millis(latency, 99),
+                millis(latency, 99.9),
+                format(latency.getMaxValue() / NANOS_PER_MILLI),
+                format(meanKb),
+                server == null ? "" : String.valueOf(server.gcPauses()),
+                server == null ? "" : format(server.gcPauseSeconds() * 1000),
+                server == null ? "" : format(server.allocatedBytes() / 1024 / 1024),
+                server == null ? "" : format(server.peakHeapUsed() / 1024 / 1024),
+                server == null ? "" : format(server.heapMax() / 1024 / 1024)) + "\n");
+        summary.flush();
+
+        System.out.printf(Locale.ROOT, "%-6s %5d | %8.1f req/s | ok %6d fail %4d drop %4d | "
+                        + "p50 %8s p99 %8s p99.9 %8s max %8s ms%s%n",
+                result.model(), result.target(), result.throughput(), result.completed(), result.failed(),
+                result.dropped(), millis(latency, 50), millis(latency, 99), millis(latency, 99.9),
+                format(latency.getMaxValue() / NANOS_PER_MILLI),
+                server == null ? "" : String.format(Locale.ROOT, " | gc %d (%.0f ms) alloc %.0f MB heap %.0f/%.0f MB",
+                        server.gcPauses(), server.gcPauseSeconds() * 1000, server.allocatedBytes() / 1024 / 1024,
+                        server.peakHeapUsed() / 1024 / 1024, server.heapMax() / 1024 / 1024));
+        if (!result.errors().isEmpty()) {
+            System.out.println("       errors: " + result.errors());
+        }
+    }
+
+    void close() throws IOException {
+        summary.close();
+    }
+
+    private static String millis(Histogram histogram, double percentile) {
+        return format(histogram.getValueAtPercentile(percentile) / NANOS_PER_MILLI);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+}
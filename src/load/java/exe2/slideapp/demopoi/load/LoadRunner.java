@@ -0,0 +1,240 @@
+package exe2.slideapp.demopoi.load;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Chạy một stage tải lên /ppt/process-template.
+ * <ul>
+ *   <li>closed: N client, mỗi client gửi request kế tiếp ngay khi nhận xong response</li>
+ *   <li>open: request đến với tốc độ cố định bất kể server trả lời nhanh hay chậm. Latency tính từ thời điểm
+ *   request lẽ ra được gửi, nên thời gian chờ khi server bão hòa vẫn có trong histogram (coordinated omission)</li>
+ * </ul>
+ * Request trong thời gian warmup không được ghi nhận. Số liệu server lấy đúng trong khoảng đo
+ */
+final class LoadRunner {
+
+    private static final long HIGHEST_LATENCY = TimeUnit.MINUTES.toNanos(10);
+
+    /**
+     * Kết quả của một stage, latency tính bằng nano giây
+     */
+    record StageResult(String model, int target, Histogram latency, long completed, long failed, long dropped,
+                       long responseBytes, double seconds, Map<String, Long> errors, ServerStats.Delta server) {
+
+        double throughput() {
+            return completed / seconds;
+        }
+    }
+
+    private final HttpClient client;
+    private final HttpRequest request;
+    private final LoadOptions options;
+    private final ServerStats serverStats;
+
+    LoadRunner(HttpClient client, LoadOptions options, SyntheticDeck deck, ServerStats serverStats) {
+        this.client = client;
+        this.options = options;
+        this.serverStats = serverStats;
+        StringBuilder url = new StringBuilder(options.url()).append("/ppt/process-template")
+                .append("?delivery=").append(options.delivery())
+                .append("&engine=").append(options.engine())
+                .append("&cache=").append(options.cache());
+        if (!options.compression().isEmpty()) {
+            url.append("&compression=").append(options.compression());
+        }
+        this.request = HttpRequest.newBuilder(URI.create(url.toString()))
+                .timeout(options.timeout())
+                .header("Content-Type", deck.contentType())
+                .POST(HttpRequest.BodyPublishers.ofByteArray(deck.body()))
+                .build();
+    }
+
+    StageResult run(int target) throws InterruptedException {
+        long measureStart = System.nanoTime() + options.warmup().toNanos();
+        long end = measureStart + options.duration().toNanos();
+        Stage stage = new Stage(measureStart, end);
+
+        Thread[] workers = LoadOptions.CLOSED.equals(options.model())
+                ? startClosed(stage, target)
+                : new Thread[]{startOpen(stage, target)};
+
+        sleepUntil(measureStart);
+        ServerStats.Snapshot before = serverStats.snapshot();
+        serverStats.startSampling();
+        sleepUntil(end);
+        ServerStats.Snapshot after = serverStats.snapshot();
+        ServerStats.Delta server = serverStats.stopSampling(before, after);
+
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        // Chờ các request open-model còn đang chạy để latency cuối stage không bị bỏ sót
+        long deadline = System.nanoTime() + options.timeout().toNanos();
+        while (stage.inFlight.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        return new StageResult(options.model(), target, stage.latency, stage.completed.sum(), stage.failed.sum(),
+                stage.dropped.sum(), stage.bytes.sum(), (Math.max(end, stage.lastFinished.get()) - measureStart) / 1e9,
+                stage.errorCounts(), server);
+    }
+
+    private Thread[] startClosed(Stage stage, int clients) {
+        Thread[] workers = new Thread[clients];
+        for (int i = 0; i < clients; i++) {
+            workers[i] = new Thread(() -> {
+                while (System.nanoTime() < stage.end) {
+                    long sent = System.nanoTime();
+                    try {
+                        HttpResponse<Long> response = client.send(request, responseSize());
+                        stage.record(sent, System.nanoTime(), response, null);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    } catch (Exception e) {
+                        stage.record(sent, System.nanoTime(), null, e);
+                    }
+                }
+            }, "load-client-" + i);
+            workers[i].start();
+        }
+        return workers;
+    }
+
+    private Thread startOpen(Stage stage, int ratePerSecond) {
+        long interval = TimeUnit.SECONDS.toNanos(1) / ratePerSecond;
+        Thread dispatcher = new Thread(() -> {
+            long first = System.nanoTime();
+            for (long i = 0; ; i++) {
+                long intended = first + i * interval;
+                if (intended >= stage.end) {
+                    return;
+                }
+                sleepUntil(intended);
+                if (stage.inFlight.get() >= options.maxInFlight()) {
+                    // Client cũng có giới hạn, request vượt quá được tính là bị bỏ
+                    if (intended >= stage.measureStart) {
+                        stage.dropped.increment();
+                    }
+                    continue;
+                }
+                stage.inFlight.incrementAndGet();
+                client.sendAsync(request, responseSize()).whenComplete((response, error) -> {
+                    stage.inFlight.decrementAndGet();
+                    stage.record(intended, System.nanoTime(), response, error);
+                });
+            }
+        }, "load-dispatcher");
+        dispatcher.start();
+        return dispatcher;
+    }
+
+    /**
+     * Chỉ đếm số byte của response, không giữ nội dung
+     */
+    private static HttpResponse.BodyHandler<Long> responseSize() {
+        return info -> HttpResponse.BodySubscribers.fromSubscriber(new CountingSubscriber(), CountingSubscriber::count);
+    }
+
+    private static void sleepUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    /**
+     * Trạng thái dùng chung giữa các client của một stage
+     */
+    private static final class Stage {
+        final Histogram latency = new ConcurrentHistogram(HIGHEST_LATENCY, 3);
+        final LongAdder completed = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final LongAdder dropped = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final AtomicInteger inFlight = new AtomicInteger();
+        // Khi server bão hòa, request trong khoảng đo xong sau khi stage kết thúc: throughput tính đến lúc đó
+        final AtomicLong lastFinished = new AtomicLong();
+        final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+        final long measureStart;
+        final long end;
+
+        Stage(long measureStart, long end) {
+            this.measureStart = measureStart;
+            this.end = end;
+        }
+
+        void record(long start, long finished, HttpResponse<Long> response, Throwable error) {
+            if (start < measureStart || start >= end) {
+                return;
+            }
+            lastFinished.accumulateAndGet(finished, Math::max);
+            if (error == null && response.statusCode() == 200) {
+                latency.recordValue(Math.min(finished - start, HIGHEST_LATENCY));
+                completed.increment();
+                bytes.add(response.body());
+                return;
+            }
+            failed.increment();
+            if (error instanceof CompletionException && error.getCause() != null) {
+                error = error.getCause();
+            }
+            String reason = error != null
+                    ? error.getClass().getSimpleName()
+                    : "HTTP " + response.statusCode();
+            errors.computeIfAbsent(reason, k -> new LongAdder()).increment();
+        }
+
+        Map<String, Long> errorCounts() {
+            Map<String, Long> counts = new TreeMap<>();
+            errors.forEach((reason, count) -> counts.put(reason, count.sum()));
+            return counts;
+        }
+    }
+
+    private static final class CountingSubscriber implements Flow.Subscriber<List<ByteBuffer>> {
+        private long count;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            for (ByteBuffer buffer : buffers) {
+                count += buffer.remaining();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+        long count() {
+            return count;
+        }
+    }
+}
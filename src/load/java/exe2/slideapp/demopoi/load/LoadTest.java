@@ -0,0 +1,88 @@
+package exe2.slideapp.demopoi.load;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Load test /ppt/process-template trên một instance đang chạy (mvn spring-boot:run hoặc java -jar).
+ * Chạy:
+ * <pre>
+ * mvn -Pload test-compile exec:exec
+ * mvn -Pload test-compile exec:exec -Dload.args="model=open rate=5,10,20 duration=60s images=4 imageWidth=3000"
+ * </pre>
+ * Tham số (key=value, mặc định trong ngoặc):
+ * <ul>
+ *   <li>url (http://localhost:8080), model closed|open (closed)</li>
+ *   <li>concurrency (1,4,16): số client mỗi stage của closed model</li>
+ *   <li>rate (2,5,10): request/giây mỗi stage của open model, maxInFlight (512)</li>
+ *   <li>warmup (10s), duration (30s), timeout (60s)</li>
+ *   <li>slides (10), placeholders (10), images (2), imageWidth (1600), imageHeight (1200)</li>
+ *   <li>engine (auto), delivery (stream), compression, cache (false)</li>
+ *   <li>output (target/load)</li>
+ * </ul>
+ * Server phải mở /actuator/metrics để có số liệu GC và heap
+ */
+public final class LoadTest {
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadOptions options = LoadOptions.parse(args);
+        SyntheticDeck deck = SyntheticDeck.generate(options);
+        System.out.printf(Locale.ROOT, "Template %d slides x %d placeholders (%.1f KB), %d images (%.1f KB), request %.1f KB%n",
+                options.slides(), options.placeholders(), deck.templateSize() / 1024.0, options.images(),
+                deck.imageBytes() / 1024.0, deck.body().length / 1024.0);
+
+        ExecutorService executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "load-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(executor)
+                .build();
+        try {
+            checkServer(client, options.url());
+            ServerStats serverStats = new ServerStats(client, options.url());
+            if (!serverStats.probe()) {
+                System.out.println("Server does not expose /actuator/metrics, GC and heap stats are skipped");
+            }
+
+            LoadRunner runner = new LoadRunner(client, options, deck, serverStats);
+            LoadReport report = new LoadReport(options.output());
+            try {
+                for (int target : options.stages()) {
+                    report.add(runner.run(target));
+                }
+            } finally {
+                report.close();
+            }
+            System.out.println("Reports written to " + report.getDirectory().toAbsolutePath());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void checkServer(HttpClient client, String url) throws InterruptedException {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(url + "/actuator/health"))
+                    .timeout(Duration.ofSeconds(5)).GET().build();
+            int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            if (status != 200) {
+                throw new IllegalStateException("Server at " + url + " is not healthy (HTTP " + status + ")");
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("No server at " + url + ", start the app first (mvn spring-boot:run)", e);
+        }
+    }
+}
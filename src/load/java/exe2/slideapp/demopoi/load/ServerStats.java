@@ -0,0 +1,143 @@
+package exe2.slideapp.demopoi.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Đọc số liệu GC và heap của server qua /actuator/metrics. Lấy snapshot trước và sau mỗi stage,
+ * trong lúc chạy thì lấy mẫu heap mỗi giây để biết đỉnh heap
+ */
+final class ServerStats {
+
+    /**
+     * Số liệu tích lũy tại một thời điểm
+     */
+    record Snapshot(double gcPauses, double gcPauseSeconds, double allocatedBytes, double heapUsed, double heapMax) {
+    }
+
+    /**
+     * Chênh lệch giữa hai snapshot cùng đỉnh heap đã lấy mẫu trong stage
+     */
+    record Delta(long gcPauses, double gcPauseSeconds, double allocatedBytes, double peakHeapUsed, double heapMax) {
+    }
+
+    private final HttpClient client;
+    private final String baseUrl;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final AtomicLong peakHeap = new AtomicLong();
+    private ScheduledExecutorService sampler;
+    private boolean available = true;
+
+    ServerStats(HttpClient client, String baseUrl) {
+        this.client = client;
+        this.baseUrl = baseUrl;
+    }
+
+    /**
+     * Kiểm tra server có mở /actuator/metrics không, nếu không thì bỏ qua số liệu phía server
+     */
+    boolean probe() {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/actuator/metrics"))
+                    .timeout(Duration.ofSeconds(5)).GET().build();
+            available = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+        } catch (IOException e) {
+            available = false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            available = false;
+        }
+        return available;
+    }
+
+    /**
+     * null nếu server không mở actuator metrics hoặc không trả lời kịp
+     */
+    Snapshot snapshot() {
+        if (!available) {
+            return null;
+        }
+        try {
+            return new Snapshot(
+                    measurement("jvm.gc.pause", null, "COUNT"),
+                    measurement("jvm.gc.pause", null, "TOTAL_TIME"),
+                    measurement("jvm.gc.memory.allocated", null, "COUNT"),
+                    measurement("jvm.memory.used", "area:heap", "VALUE"),
+                    measurement("jvm.memory.max", "area:heap", "VALUE"));
+        } catch (IOException e) {
+            // Server bão hòa thì actuator cũng phải xếp hàng, chỉ bỏ số liệu của stage này
+            System.err.println("Server metrics unavailable (" + e.getMessage() + "), GC and heap stats skipped for this stage");
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    void startSampling() {
+        peakHeap.set(0);
+        if (!available) {
+            return;
+        }
+        sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "heap-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(() -> {
+            try {
+                long used = (long) measurement("jvm.memory.used", "area:heap", "VALUE");
+                peakHeap.accumulateAndGet(used, Math::max);
+            } catch (Exception ignored) {
+                // một mẫu lỗi không làm hỏng stage
+            }
+        }, 0, 1, TimeUnit.SECONDS);
+    }
+
+    Delta stopSampling(Snapshot before, Snapshot after) {
+        if (sampler != null) {
+            sampler.shutdownNow();
+            sampler = null;
+        }
+        if (before == null || after == null) {
+            return null;
+        }
+        return new Delta(
+                Math.round(after.gcPauses() - before.gcPauses()),
+                after.gcPauseSeconds() - before.gcPauseSeconds(),
+                after.allocatedBytes() - before.allocatedBytes(),
+                Math.max(peakHeap.get(), after.heapUsed()),
+                after.heapMax());
+    }
+
+    private double measurement(String metric, String tag, String statistic) throws IOException, InterruptedException {
+        String url = baseUrl + "/actuator/metrics/" + metric + (tag == null ? "" : "?tag=" + tag);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url)).timeout(Duration.ofSeconds(5)).GET().build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() == 404) {
+            // jvm.gc.pause chưa có khi server chưa GC lần nào
+            return 0;
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException(metric + " returned HTTP " + response.statusCode());
+        }
+        JsonNode measurements = mapper.readTree(response.body()).path("measurements");
+        for (JsonNode measurement : measurements) {
+            if (statistic.equals(measurement.path("statistic").asText())) {
+                return measurement.path("value").asDouble();
+            }
+        }
+        return 0;
+    }
+}
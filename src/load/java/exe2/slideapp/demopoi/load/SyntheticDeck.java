@@ -0,0 +1,160 @@
+package exe2.slideapp.demopoi.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.poi.xslf.usermodel.XMLSlideShow;
+import org.apache.poi.xslf.usermodel.XSLFSlide;
+import org.apache.poi.xslf.usermodel.XSLFTextBox;
+import org.apache.poi.xslf.usermodel.XSLFTextParagraph;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Request /ppt/process-template tổng hợp: template .pptx, data và ảnh JPEG cỡ tùy chọn.
+ * Body multipart được dựng một lần và gửi lại cho mọi request để client không tốn CPU
+ */
+final class SyntheticDeck {
+
+    private static final String BOUNDARY = "----demopoi-load-" + Long.toHexString(new Random(7).nextLong());
+
+    private final byte[] template;
+    private final byte[] body;
+    private final long imageBytes;
+
+    private SyntheticDeck(byte[] template, byte[] body, long imageBytes) {
+        this.template = template;
+        this.body = body;
+        this.imageBytes = imageBytes;
+    }
+
+    byte[] body() {
+        return body;
+    }
+
+    String contentType() {
+        return "multipart/form-data; boundary=" + BOUNDARY;
+    }
+
+    long templateSize() {
+        return template.length;
+    }
+
+    long imageBytes() {
+        return imageBytes;
+    }
+
+    static SyntheticDeck generate(LoadOptions options) throws IOException {
+        Random random = new Random(42);
+        Map<String, String> data = new LinkedHashMap<>();
+        data.put("title", "Load test deck");
+
+        byte[] template;
+        try (XMLSlideShow ppt = new XMLSlideShow()) {
+            for (int s = 0; s < options.slides(); s++) {
+                XSLFSlide slide = ppt.createSlide();
+
+                XSLFTextBox title = slide.createTextBox();
+                title.setAnchor(new Rectangle2D.Double(20, 10, 680, 40));
+                title.setText("{title} - " + (s + 1));
+
+                XSLFTextBox text = slide.createTextBox();
+                text.setAnchor(new Rectangle2D.Double(20, 60, 330, 300));
+                text.clearText();
+                for (int i = 0; i < options.placeholders(); i++) {
+                    String key = "field" + i;
+                    data.put(key, "Value of " + key);
+                    XSLFTextParagraph paragraph = text.addNewTextParagraph();
+                    paragraph.addNewTextRun().setText("Field " + i + ": {" + key + "}");
+                }
+            }
+
+            var slides = ppt.getSlides();
+            for (int i = 0; i < options.images(); i++) {
+                XSLFTextBox placeholder = slides.get(i % slides.size()).createTextBox();
+                placeholder.setAnchor(new Rectangle2D.Double(380 + (i / slides.size()) % 2 * 160, 60, 150, 110));
+                placeholder.setText("{IMAGE:img" + i + "}");
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ppt.write(out);
+            template = out.toByteArray();
+        }
+
+        Multipart multipart = new Multipart();
+        multipart.file("file", "load.pptx",
+                "application/vnd.openxmlformats-officedocument.presentationml.presentation", template);
+        multipart.field("data", new ObjectMapper().writeValueAsString(data));
+
+        long imageBytes = 0;
+        Map<String, Integer> mapping = new LinkedHashMap<>();
+        for (int i = 0; i < options.images(); i++) {
+            byte[] image = createImage(random, options.imageWidth(), options.imageHeight());
+            imageBytes += image.length;
+            mapping.put("img" + i, i);
+            multipart.file("images", "img" + i + ".jpg", "image/jpeg", image);
+        }
+        if (!mapping.isEmpty()) {
+            multipart.field("imageMapping", new ObjectMapper().writeValueAsString(mapping));
+        }
+        return new SyntheticDeck(template, multipart.finish(), imageBytes);
+    }
+
+    /**
+     * Ảnh JPEG nền gradient có nhiễu để kích thước file gần với ảnh chụp thật
+     */
+    private static byte[] createImage(Random random, int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setPaint(new GradientPaint(0, 0, new Color(random.nextInt(0xFFFFFF)),
+                    width, height, new Color(random.nextInt(0xFFFFFF))));
+            g.fillRect(0, 0, width, height);
+        } finally {
+            g.dispose();
+        }
+        for (int i = 0; i < width * height / 8; i++) {
+            image.setRGB(random.nextInt(width), random.nextInt(height), random.nextInt(0xFFFFFF));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Body multipart/form-data tối giản (HttpClient của JDK không có sẵn)
+     */
+    private static final class Multipart {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        void field(String name, String value) throws IOException {
+            header("Content-Disposition: form-data; name=\"" + name + "\"\r\n"
+                    + "Content-Type: application/json; charset=UTF-8\r\n\r\n");
+            out.write(value.getBytes(StandardCharsets.UTF_8));
+            out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+        }
+
+        void file(String name, String filename, String contentType, byte[] content) throws IOException {
+            header("Content-Disposition: form-data; name=\"" + name + "\"; filename=\"" + filename + "\"\r\n"
+                    + "Content-Type: " + contentType + "\r\n\r\n");
+            out.write(content);
+            out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+        }
+
+        byte[] finish() throws IOException {
+            out.write(("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+            return out.toByteArray();
+        }
+
+        private void header(String headers) throws IOException {
+            out.write(("--" + BOUNDARY + "\r\n" + headers).getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package exe2.slideapp.demopoi.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Cấu hình kiểm soát bộ nhớ trước khi parse template (ppt.admission.*)
+ */
+@Data
+@ConfigurationProperties(prefix = "ppt.admission")
+public class AdmissionProperties {
+
+    /**
+     * Bật/tắt admission control
+     */
+    private boolean enabled = true;
+
+    /**
+     * Ngân sách bộ nhớ cho các deck đang mở. Để trống thì dùng maxHeapFraction của -Xmx
+     */
+    private DataSize memoryBudget;
+
+    /**
+     * Tỉ lệ heap tối đa dành cho các deck đang mở khi không đặt memoryBudget
+     */
+    private double maxHeapFraction = 0.5;
+
+    /**
+     * Hệ số heap của XML part sau khi parse (XMLBeans DOM) so với kích thước giải nén
+     */
+    private int xmlExpansionFactor = 6;
+
+    /**
+     * Thời gian tối đa chờ ngân sách bộ nhớ trước khi từ chối request
+     */
+    private Duration maxWait = Duration.ofSeconds(10);
+
+    /**
+     * Tổng kích thước giải nén tối đa của một template
+     */
+    private DataSize maxUnpackedSize = DataSize.ofMegabytes(512);
+
+    /**
+     * Tỉ lệ nén tối đa cho một entry lớn (phát hiện zip bomb)
+     */
+    private int maxCompressionRatio = 100;
+}
@@ -0,0 +1,18 @@
+package exe2.slideapp.demopoi.config;
+
+import exe2.slideapp.demopoi.controller.StreamingResources;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class AsyncConfig implements WebMvcConfigurer {
+
+    /**
+     * Đóng scratch file và deck của StreamingResponseBody không bao giờ được chạy
+     */
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.registerCallableInterceptors(new StreamingResources());
+    }
+}
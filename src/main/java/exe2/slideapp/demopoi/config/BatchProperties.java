@@ -0,0 +1,22 @@
+package exe2.slideapp.demopoi.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Cấu hình render hàng loạt (ppt.batch.*)
+ */
+@Data
+@ConfigurationProperties(prefix = "ppt.batch")
+public class BatchProperties {
+
+    /**
+     * Số thread render song song, 0 = số CPU
+     */
+    private int parallelism = 0;
+
+    /**
+     * Số dòng dữ liệu tối đa cho một batch
+     */
+    private int maxRows = 10000;
+}
@@ -0,0 +1,22 @@
+package exe2.slideapp.demopoi.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Cấu hình ghép deck từ nhiều template (ppt.compose.*)
+ */
+@Data
+@ConfigurationProperties(prefix = "ppt.compose")
+public class ComposeProperties {
+
+    /**
+     * Số section render song song, 0 = số CPU
+     */
+    private int parallelism = 0;
+
+    /**
+     * Số section tối đa của một deck ghép
+     */
+    private int maxSections = 100;
+}
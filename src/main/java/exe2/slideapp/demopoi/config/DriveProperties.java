@@ -0,0 +1,51 @@
+package exe2.slideapp.demopoi.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Cấu hình đọc template từ Google Drive (ppt.drive.*)
+ */
+@Data
+@ConfigurationProperties(prefix = "ppt.drive")
+public class DriveProperties {
+
+    /**
+     * Cho phép render bằng driveFileId
+     */
+    private boolean enabled = false;
+
+    /**
+     * File JSON của service account. Để trống thì gửi request không kèm credentials (chỉ dùng cho stub/proxy)
+     */
+    private String credentialsFile;
+
+    /**
+     * Root URL của Drive API, đổi sang địa chỉ stub khi test
+     */
+    private String rootUrl = "https://www.googleapis.com/";
+
+    private String applicationName = "DemoPOI";
+
+    /**
+     * Thư mục cache các template đã tải về
+     */
+    private String cacheDirectory = System.getProperty("user.dir") + "/data/drive-cache";
+
+    /**
+     * Trong khoảng này sau lần kiểm tra gần nhất, bản cache được dùng luôn mà không hỏi lại Drive
+     */
+    private Duration revalidateAfter = Duration.ofSeconds(30);
+
+    private Duration connectTimeout = Duration.ofSeconds(10);
+
+    private Duration readTimeout = Duration.ofSeconds(60);
+
+    /**
+     * Kích thước tối đa của file được tải về
+     */
+    private DataSize maxFileSize = DataSize.ofMegabytes(100);
+}
@@ -0,0 +1,37 @@
+package exe2.slideapp.demopoi.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Cấu hình bước xử lý ảnh trước khi chèn vào deck (ppt.images.*)
+ */
+@Data
+@ConfigurationProperties(prefix = "ppt.images")
+public class ImageProperties {
+
+    /**
+     * Bật resize/transcode ảnh theo kích thước placeholder. Khi tắt, ảnh gốc được nhúng nguyên vẹn
+     */
+    private boolean optimize = false;
+
+    /**
+     * Độ phân giải đích (pixel trên inch) của ảnh trên slide
+     */
+    private int dpi = 150;
+
+    /**
+     * Chất lượng nén JPEG khi encode lại (0.0 - 1.0)
+     */
+    private float jpegQuality = 0.85f;
+
+    /**
+     * Định dạng đích cho ảnh BMP/TIFF: png, jpeg hoặc auto (JPEG nếu ảnh không có kênh alpha)
+     */
+    private String transcodeFormat = "auto";
+
+    /**
+     * Số thread xử lý ảnh song song, 0 = số CPU
+     */
+    private int parallelism = 0;
+}
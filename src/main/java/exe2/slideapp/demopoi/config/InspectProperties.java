@@ -0,0 +1,17 @@
+package exe2.slideapp.demopoi.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Cấu hình kiểm tra placeholder của template (ppt.inspect.*)
+ */
+@Data
+@ConfigurationProperties(prefix = "ppt.inspect")
+public class InspectProperties {
+
+    /**
+     * Số template giữ kết quả kiểm tra trong bộ nhớ (theo SHA-256), 0 = không cache
+     */
+    private int cacheEntries = 512;
+}
@@ -0,0 +1,46 @@
+package exe2.slideapp.demopoi.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Cấu hình render bất đồng bộ và kho kết quả (ppt.jobs.*)
+ */
+@Data
+@ConfigurationProperties(prefix = "ppt.jobs")
+public class JobProperties {
+
+    /**
+     * Số worker render, 0 = số CPU
+     */
+    private int workers = 0;
+
+    /**
+     * Số job tối đa được xếp hàng chờ. Hàng đợi đầy thì trả về 429
+     */
+    private int queueCapacity = 100;
+
+    /**
+     * Tổng dung lượng template và ảnh của các job đang chờ (nằm trong heap, ngoài MemoryAdmission).
+     * Vượt quá thì trả về 429 dù hàng đợi còn chỗ
+     */
+    private DataSize maxQueuedBytes = DataSize.ofMegabytes(256);
+
+    /**
+     * Thư mục lưu file kết quả
+     */
+    private String resultDirectory = System.getProperty("java.io.tmpdir") + "/demopoi-results";
+
+    /**
+     * Thời gian giữ kết quả (và trạng thái job) sau khi job kết thúc
+     */
+    private Duration resultTtl = Duration.ofHours(1);
+
+    /**
+     * Tổng dung lượng tối đa của kho kết quả, vượt quá thì xóa kết quả cũ nhất
+     */
+    private DataSize maxResultStorage = DataSize.ofGigabytes(2);
+}
@@ -0,0 +1,37 @@
+package exe2.slideapp.demopoi.config;
+
+import exe2.slideapp.demopoi.service.RenderMetrics;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.boot.autoconfigure.web.servlet.MultipartProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.multipart.MultipartException;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
+import org.springframework.web.multipart.MultipartResolver;
+import org.springframework.web.multipart.support.StandardServletMultipartResolver;
+import org.springframework.web.servlet.DispatcherServlet;
+
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * Thay MultipartResolver mặc định để đo thời gian parse multipart (phase "multipart")
+     */
+    @Bean(name = DispatcherServlet.MULTIPART_RESOLVER_BEAN_NAME)
+    public MultipartResolver multipartResolver(MultipartProperties multipartProperties, RenderMetrics renderMetrics) {
+        StandardServletMultipartResolver resolver = new StandardServletMultipartResolver() {
+            @Override
+            public MultipartHttpServletRequest resolveMultipart(HttpServletRequest request) throws MultipartException {
+                long start = System.nanoTime();
+                try {
+                    return super.resolveMultipart(request);
+                } finally {
+                    renderMetrics.recordPhase(RenderMetrics.Phase.MULTIPART, "none", System.nanoTime() - start);
+                }
+            }
+        };
+        resolver.setResolveLazily(multipartProperties.isResolveLazily());
+        resolver.setStrictServletCompliance(multipartProperties.isStrictServletCompliance());
+        return resolver;
+    }
+}
@@ -0,0 +1,28 @@
+package exe2.slideapp.demopoi.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Cấu hình cache kết quả render (ppt.output-cache.*)
+ */
+@Data
+@ConfigurationProperties(prefix = "ppt.output-cache")
+public class OutputCacheProperties {
+
+    /**
+     * Bật/tắt cache (tắt mặc định: deck chứa data của request được ghi ra đĩa). Khi tắt, mọi request đều render lại
+     */
+    private boolean enabled = false;
+
+    /**
+     * Thư mục lưu các deck đã render
+     */
+    private String directory = System.getProperty("java.io.tmpdir") + "/demopoi-output-cache";
+
+    /**
+     * Tổng dung lượng tối đa, vượt quá thì xóa deck ít được dùng gần đây nhất
+     */
+    private DataSize maxSize = DataSize.ofGigabytes(1);
+}
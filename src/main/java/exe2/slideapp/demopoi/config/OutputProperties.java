@@ -0,0 +1,30 @@
+package exe2.slideapp.demopoi.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cấu hình nén deck đầu ra (ppt.output.*)
+ */
+@Data
+@ConfigurationProperties(prefix = "ppt.output")
+public class OutputProperties {
+
+    /**
+     * Mức deflate mặc định cho XML: fast, default hoặc max. Request có thể đổi bằng tham số compression
+     */
+    private String compressionLevel = "default";
+
+    /**
+     * Ghi media đã nén sẵn (ảnh, audio, video) dạng STORED thay vì deflate lại
+     */
+    private boolean storeMedia = true;
+
+    /**
+     * Phần mở rộng của các part được coi là đã nén, để trống là danh sách mặc định
+     */
+    private List<String> storedExtensions = new ArrayList<>();
+}
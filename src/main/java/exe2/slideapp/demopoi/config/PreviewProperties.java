@@ -0,0 +1,38 @@
+package exe2.slideapp.demopoi.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Cấu hình ảnh preview của slide (ppt.preview.*)
+ */
+@Data
+@ConfigurationProperties(prefix = "ppt.preview")
+public class PreviewProperties {
+
+    /**
+     * Số thread vẽ slide song song, 0 = số CPU
+     */
+    private int parallelism = 0;
+
+    /**
+     * Chiều rộng mặc định (pixel) khi request không chỉ định
+     */
+    private int defaultWidth = 960;
+
+    /**
+     * Chiều rộng mặc định ở chế độ low (lưới thumbnail)
+     */
+    private int lowResWidth = 240;
+
+    /**
+     * Chiều rộng tối đa cho phép
+     */
+    private int maxWidth = 3840;
+
+    /**
+     * Tổng dung lượng PNG giữ trong bộ nhớ, vượt quá thì bỏ ảnh ít được dùng gần đây nhất
+     */
+    private DataSize cacheSize = DataSize.ofMegabytes(128);
+}
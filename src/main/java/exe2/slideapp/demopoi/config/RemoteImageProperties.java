@@ -0,0 +1,68 @@
+package exe2.slideapp.demopoi.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cấu hình tải ảnh placeholder từ URL (ppt.remote-images.*)
+ */
+@Data
+@ConfigurationProperties(prefix = "ppt.remote-images")
+public class RemoteImageProperties {
+
+    /**
+     * Bật/tắt ảnh từ URL. Tắt mặc định: server sẽ gửi request tới URL do client chọn
+     */
+    private boolean enabled = false;
+
+    /**
+     * Số thread tải ảnh song song (dùng chung cho mọi request)
+     */
+    private int fetchThreads = 16;
+
+    /**
+     * Số request đồng thời tối đa tới một host
+     */
+    private int maxConnectionsPerHost = 4;
+
+    /**
+     * Thời gian chờ mở kết nối
+     */
+    private Duration connectTimeout = Duration.ofSeconds(3);
+
+    /**
+     * Thời gian tối đa cho một lần tải, kể cả thời gian chờ lượt của host
+     */
+    private Duration requestTimeout = Duration.ofSeconds(10);
+
+    /**
+     * Kích thước tối đa của một ảnh
+     */
+    private DataSize maxImageSize = DataSize.ofMegabytes(20);
+
+    /**
+     * Tổng dung lượng ảnh giữ trong bộ nhớ, vượt quá thì bỏ ảnh ít được dùng gần đây nhất
+     */
+    private DataSize cacheSize = DataSize.ofMegabytes(128);
+
+    /**
+     * Trong khoảng này ảnh trong cache được dùng luôn, sau đó kiểm tra lại bằng ETag (If-None-Match)
+     */
+    private Duration revalidateAfter = Duration.ofMinutes(5);
+
+    /**
+     * Các host được phép tải, kể cả đích của redirect (so khớp cả subdomain). Để trống thì không host nào được phép
+     */
+    private List<String> allowedHosts = new ArrayList<>();
+
+    /**
+     * Cho phép host phân giải ra địa chỉ loopback, link-local (169.254.x.x, metadata của cloud)
+     * hoặc mạng nội bộ. Chỉ bật cho test hoặc khi mọi host trong allowedHosts đều tin cậy
+     */
+    private boolean allowPrivateAddresses = false;
+}
@@ -0,0 +1,24 @@
+package exe2.slideapp.demopoi.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Cấu hình vùng file tạm có quota (ppt.scratch.*)
+ */
+@Data
+@ConfigurationProperties(prefix = "ppt.scratch")
+public class ScratchProperties {
+
+    /**
+     * Thư mục chứa file tạm, mặc định là java.io.tmpdir/demopoi-scratch.
+     * Mỗi process tạo một thư mục con run-* riêng trong đó
+     */
+    private String directory = System.getProperty("java.io.tmpdir") + "/demopoi-scratch";
+
+    /**
+     * Tổng dung lượng tối đa các file tạm đang tồn tại
+     */
+    private DataSize quota = DataSize.ofGigabytes(1);
+}
@@ -0,0 +1,38 @@
+package exe2.slideapp.demopoi.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Cấu hình pool các bản XMLSlideShow đã parse sẵn (ppt.template-pool.*)
+ */
+@Data
+@ConfigurationProperties(prefix = "ppt.template-pool")
+public class TemplatePoolProperties {
+
+    /**
+     * Bật/tắt pool. Khi tắt, mỗi request sẽ parse lại template như cũ
+     */
+    private boolean enabled = true;
+
+    /**
+     * Số bản đã parse sẵn giữ cho mỗi template
+     */
+    private int warmCopies = 2;
+
+    /**
+     * Giới hạn cứng bộ nhớ (ước lượng) cho toàn bộ pool
+     */
+    private DataSize maxMemory = DataSize.ofMegabytes(256);
+
+    /**
+     * Hệ số ước lượng heap của một bản đã parse so với kích thước file .pptx
+     */
+    private int expansionFactor = 8;
+
+    /**
+     * Số thread nền dùng để parse bù các bản đã được lấy ra
+     */
+    private int refillThreads = 2;
+}
@@ -0,0 +1,23 @@
+package exe2.slideapp.demopoi.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Cấu hình kho template trên server (ppt.templates.*)
+ */
+@Data
+@ConfigurationProperties(prefix = "ppt.templates")
+public class TemplateRegistryProperties {
+
+    /**
+     * Thư mục lưu template. Nội dung được lưu theo SHA-256 nên các version trùng nhau chỉ chiếm một file
+     */
+    private String directory = System.getProperty("user.dir") + "/data/templates";
+
+    /**
+     * Kích thước tối đa của một template
+     */
+    private DataSize maxTemplateSize = DataSize.ofMegabytes(100);
+}
@@ -1,8 +1,28 @@
 package exe2.slideapp.demopoi.controller;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import exe2.slideapp.demopoi.dto.RenderJobResponse;
+import exe2.slideapp.demopoi.dto.TemplateInspectionResponse;
+import exe2.slideapp.demopoi.service.BatchRenderService;
+import exe2.slideapp.demopoi.service.CompressionPolicy;
+import exe2.slideapp.demopoi.service.BatchRowParser;
+import exe2.slideapp.demopoi.service.DeckComposer;
+import exe2.slideapp.demopoi.service.DriveTemplateSource;
+import exe2.slideapp.demopoi.service.OutputCache;
 import exe2.slideapp.demopoi.service.PowerPointService;
+import exe2.slideapp.demopoi.service.RemoteImageFetcher;
+import exe2.slideapp.demopoi.service.RenderEngine;
+import exe2.slideapp.demopoi.service.RenderJob;
+import exe2.slideapp.demopoi.service.RenderedDeck;
+import exe2.slideapp.demopoi.service.RenderJobService;
+import exe2.slideapp.demopoi.service.ResultStore;
+import exe2.slideapp.demopoi.service.ScratchFile;
+import exe2.slideapp.demopoi.service.SlidePreviewService;
+import exe2.slideapp.demopoi.service.TemplateData;
+import exe2.slideapp.demopoi.service.TemplateInspector;
+import exe2.slideapp.demopoi.service.TemplateRegistry;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -14,17 +34,30 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 
 @RestController
@@ -33,7 +66,19 @@ import java.util.Map;
 @Tag(name = "PowerPoint Processing", description = "APIs for processing PowerPoint files with text and image placeholders")
 @Slf4j
 public class PoiController {
+    private static final String OUTPUT_SIZE_HEADER = "X-Output-Size";
+    private static final String WRITE_TIME_HEADER = "X-Write-Time-Ms";
+
     private final PowerPointService powerPointService;
+    private final BatchRenderService batchRenderService;
+    private final DeckComposer deckComposer;
+    private final RenderJobService renderJobService;
+    private final TemplateRegistry templateRegistry;
+    private final DriveTemplateSource driveTemplateSource;
+    private final OutputCache outputCache;
+    private final SlidePreviewService slidePreviewService;
+    private final TemplateInspector templateInspector;
+    private final RemoteImageFetcher remoteImageFetcher;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     @PostMapping(value = "/process-template", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
@@ -47,11 +92,57 @@ public class PoiController {
                1. In your PowerPoint template, use {name} for text replacement
                2. Use {IMAGE:logo} where you want to insert an image
                3. Send the template file with data JSON and image files
+               
+               Delivery modes:
+               - stream (default): the deck is written straight to the response (chunked, no Content-Length)
+               - file: the deck is written to a managed scratch file first so Content-Length is known;
+                 the file is deleted once the response has been sent
+               
+               Template source: upload the .pptx as the file part, or pass the templateId
+               (and optionally templateVersion) of a template stored with POST /templates,
+               or the driveFileId of a template in Google Drive (when ppt.drive.enabled is set).
+               
+               Engines:
+               - poi (default): always uses the Apache POI object model
+               - auto: streaming engine for text-only templates, POI when image placeholders
+                 or repeating table rows are used
+               - streaming: rewrites slide XML directly and copies every other part as-is
+                 (text placeholders and repeating slides only). The text of the deck is the same as with poi,
+                 but the parts are written differently (e.g. repeated slides), so it is opt-in
+               
+               Repeating table rows: put {#items} in any cell of a table row and send "items" as a JSON
+               array of objects; the row is cloned once per element and {field} in its cells is taken from
+               the element. {#items:N} allows N rows per slide and {#items:fit} as many as fit the slide;
+               the remaining rows continue on copies of the slide (rows above the repeating row are repeated,
+               rows below it appear on the last slide only).
+               
+               Repeating slides: put {#customers} in a text box (outside tables) of a slide and send "customers"
+               as a JSON array of objects; the slide is cloned once per element (an empty array removes it) and
+               {field} on each copy is taken from the element. Copies share the layout, pictures and other parts
+               of the original slide; speaker notes stay with the first copy only. The streaming engine writes
+               the copies one at a time while sending the deck, so memory does not grow with the number of slides.
+               
+               Charts: put {CHART:sales} in the name or alt text of a chart and send "sales" as
+               {"categories":["Q1","Q2"],"series":[{"name":"2025","values":[1.5,null]}]}; the chart caches and its
+               embedded workbook are rewritten, extra series are removed and missing ones copied from the last series.
+               Charts need the POI engine (auto switches to it).
+               
+               Output cache (opt-in: ppt.output-cache.enabled and cache=true): identical requests (same template,
+               data, images, engine and output settings) are served from a cached copy and concurrent identical
+               requests render only once. The rendered deck (including the request data) is stored on disk.
+               The response carries an ETag; sending it back in If-None-Match returns 304 without rendering.
+               
+               Compression (ppt.output.*): XML parts are deflated at the requested level (fast, default or max),
+               already-compressed media are stored as-is. With file delivery and the output cache the response
+               carries X-Output-Size, and X-Write-Time-Ms when the deck was written by this request.
                """)
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200",
                      description = "PowerPoint file processed successfully",
                      content = @Content(mediaType = "application/vnd.openxmlformats-officedocument.presentationml.presentation")),
+        @ApiResponse(responseCode = "304",
+                     description = "If-None-Match matches the ETag of the rendered deck",
+                     content = @Content),
         @ApiResponse(responseCode = "400",
                      description = "Invalid file format or request parameters",
                      content = @Content),
@@ -59,13 +150,14 @@ public class PoiController {
                      description = "Internal server error during processing",
                      content = @Content)
     })
-    public ResponseEntity<FileSystemResource> processTemplate(
-            @Parameter(description = "PowerPoint template file (.pptx)", required = true)
-            @RequestPart("file") MultipartFile file,
+    public ResponseEntity<StreamingResponseBody> processTemplate(
+            @Parameter(description = "PowerPoint template file (.pptx), required unless templateId is given")
+            @RequestPart(value = "file", required = false) MultipartFile file,
 
             @Parameter(description = """
                        JSON string containing key-value pairs for text placeholder replacement.
                        Example: {"name":"John Doe","title":"Senior Manager","company":"Tech Corp"}
+                       Arrays of objects fill repeating table rows or slides, e.g. "items":[{"name":"A","qty":"1"}]
                        """, required = true)
             @RequestPart("data") String dataJson,
 
@@ -80,18 +172,602 @@ public class PoiController {
                        Example: {"logo":0,"photo":1,"signature":2}
                        This maps images[0] to {IMAGE:logo}, images[1] to {IMAGE:photo}, etc.
                        """)
-            @RequestPart(value = "imageMapping", required = false) String imageMappingJson) throws Exception {
+            @RequestPart(value = "imageMapping", required = false) String imageMappingJson,
+
+            @Parameter(description = """
+                       JSON mapping of image placeholder keys to http(s) URLs (optional).
+                       Example: {"logo":"https://cdn.example.com/logo.png"}
+                       Images are fetched concurrently before rendering and cached per URL and ETag.
+                       Disabled by default; only hosts listed in ppt.remote-images.allowed-hosts are fetched.
+                       """)
+            @RequestPart(value = "imageUrls", required = false) String imageUrlsJson,
+
+            @Parameter(description = "Delivery mode: stream (default) or file")
+            @RequestParam(value = "delivery", defaultValue = "stream") String delivery,
+
+            @Parameter(description = "Render engine: poi (default), auto or streaming")
+            @RequestParam(value = "engine", defaultValue = "poi") String engineName,
+
+            @Parameter(description = "ID of a stored template to render instead of uploading file")
+            @RequestParam(value = "templateId", required = false) String templateId,
+
+            @Parameter(description = "Version of the stored template (latest by default)")
+            @RequestParam(value = "templateVersion", required = false) Integer templateVersion,
+
+            @Parameter(description = "Google Drive file ID of the template (.pptx or Google Slides)")
+            @RequestParam(value = "driveFileId", required = false) String driveFileId,
+
+            @Parameter(description = "Use the output cache when it is enabled on the server (default false)")
+            @RequestParam(value = "cache", defaultValue = "false") boolean useCache,
+
+            @Parameter(description = """
+                       Zip compression level for XML parts: fast, default or max (configured level by default).
+                       Already-compressed media (png, jpg, mp4...) are stored without recompression.
+                       """)
+            @RequestParam(value = "compression", required = false) String compressionName,
+
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) throws Exception {
 
-        log.info("Processing PowerPoint template: {}", file.getOriginalFilename());
+        TemplateSource template = resolveTemplate(file, templateId, templateVersion, driveFileId);
+        log.info("Processing PowerPoint template: {}", template.filename());
+        RenderEngine engine = RenderEngine.fromParameter(engineName);
+        CompressionPolicy compression = powerPointService.compressionPolicy(compressionName);
 
         // Parse text data
-        Map<String, String> data = objectMapper.readValue(dataJson, new TypeReference<Map<String, String>>() {});
-        log.info("Text placeholders to replace: {}", data.keySet());
+        TemplateData data = TemplateData.parse(dataJson);
+        log.debug("Text placeholders to replace: {}, lists: {}", data.values().keySet(), data.lists().keySet());
 
         // Parse image mapping and create image map
+        Map<String, MultipartFile> images = buildImageMap(imageFiles, imageMappingJson, imageUrlsJson);
+
+        log.info("Starting template processing: {} text replacements, {} lists, {} image replacements",
+                data.values().size(), data.lists().size(), images.size());
+
+        String outputFilename = "processed_" + template.filename();
+        if (useCache && outputCache.isEnabled()) {
+            return processCached(template, data, images, engine, compression, outputFilename, ifNoneMatch);
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + outputFilename + "\"")
+                .header(HttpHeaders.CACHE_CONTROL, "no-cache, no-store, must-revalidate")
+                .header(HttpHeaders.PRAGMA, "no-cache")
+                .header(HttpHeaders.EXPIRES, "0")
+                .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.presentationml.presentation"));
+
+        if ("file".equalsIgnoreCase(delivery)) {
+            // Ghi ra scratch file để biết Content-Length, xóa file sau khi gửi xong
+            PowerPointService.RenderedFile rendered =
+                    powerPointService.renderToScratch(template.content(), data, images, engine, compression);
+            ScratchFile processedFile = rendered.file();
+            log.info("Template processed successfully. Output file: {} ({}, written in {} ms)",
+                    outputFilename, formatFileSize(processedFile.size()), rendered.stats().writeMillis());
+
+            StreamingResponseBody body = StreamingResources.closing(processedFile, out -> {
+                try (InputStream in = processedFile.openInputStream()) {
+                    in.transferTo(out);
+                }
+            });
+            return response.contentLength(processedFile.size())
+                    .header(OUTPUT_SIZE_HEADER, String.valueOf(rendered.stats().size()))
+                    .header(WRITE_TIME_HEADER, String.valueOf(rendered.stats().writeMillis()))
+                    .body(body);
+        }
+
+        if (!"stream".equalsIgnoreCase(delivery)) {
+            throw new IllegalArgumentException("Unknown delivery mode: " + delivery);
+        }
+
+        // Thay thế xong trước khi trả header để lỗi template vẫn trả về JSON error bình thường,
+        // sau đó ghi deck thẳng ra response (chunked)
+        RenderedDeck deck = powerPointService.renderDeck(template.content(), data, images, engine);
+        log.info("Template processed successfully. Streaming output file: {}", outputFilename);
+
+        // Header đã gửi trước khi ghi nên kích thước và thời gian ghi chỉ có trong log
+        StreamingResponseBody body = StreamingResources.closing(deck, out -> {
+            PowerPointService.OutputStats stats = powerPointService.write(deck, compression, out);
+            log.debug("Streamed {} ({}, written in {} ms)", outputFilename,
+                    formatFileSize(stats.size()), stats.writeMillis());
+        });
+        return response.body(body);
+    }
+
+    /**
+     * Trả deck từ output cache (render nếu chưa có). Delivery mode không còn ý nghĩa vì deck đã nằm trên đĩa
+     * nên luôn có Content-Length. Client được phép giữ bản sao nhưng phải hỏi lại bằng If-None-Match.
+     * X-Write-Time-Ms chỉ có khi deck được render ở request này
+     */
+    private ResponseEntity<StreamingResponseBody> processCached(TemplateSource template, TemplateData data,
+                                                               Map<String, MultipartFile> images, RenderEngine engine,
+                                                               CompressionPolicy compression, String outputFilename,
+                                                               String ifNoneMatch) throws Exception {
+        String key = outputCache.key(template.content(), data, images, engine, compression);
+        String eTag = "\"" + key + "\"";
+        if (ifNoneMatch != null && (ifNoneMatch.contains(eTag) || ifNoneMatch.trim().equals("*"))) {
+            log.info("Output for {} unchanged (ETag {}), returning 304", outputFilename, eTag);
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+
+        PowerPointService.OutputStats[] stats = new PowerPointService.OutputStats[1];
+        // Deck được mở ngay trong cache nên vẫn đọc được nếu bị xóa khỏi cache trong lúc gửi
+        OutputCache.OpenedOutput opened = outputCache.openOrRender(key,
+                out -> stats[0] = powerPointService.render(template.content(), data, images, engine, compression, out));
+        OutputCache.CachedOutput output = opened.output();
+        log.info("Template processed successfully. Output file: {} ({})", outputFilename, formatFileSize(output.getSize()));
+
+        StreamingResponseBody body = StreamingResources.closing(opened, out -> opened.in().transferTo(out));
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + outputFilename + "\"")
+                .header(HttpHeaders.CACHE_CONTROL, "no-cache")
+                .header(OUTPUT_SIZE_HEADER, String.valueOf(output.getSize()));
+        if (stats[0] != null) {
+            response.header(WRITE_TIME_HEADER, String.valueOf(stats[0].writeMillis()));
+        }
+        return response
+                .eTag(eTag)
+                .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.presentationml.presentation"))
+                .contentLength(output.getSize())
+                .body(body);
+    }
+
+    @PostMapping(value = "/preview", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(summary = "Render slides of the processed deck to PNG",
+               description = """
+               Accepts the same template, data and image parts as /process-template and returns PNG previews
+               of the rendered deck: a single image/png when one slide is selected, otherwise a ZIP with
+               slide-N.png entries. Slides are drawn in parallel and cached per template, data and size,
+               the rendered deck itself shares the output cache with /process-template.
+               
+               Use quality=low (default width 240) for thumbnail grids: no anti-aliasing, nearest-neighbour
+               image scaling.
+               """)
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200",
+                     description = "PNG of one slide, or a ZIP of PNGs",
+                     content = {@Content(mediaType = "image/png"), @Content(mediaType = "application/zip")}),
+        @ApiResponse(responseCode = "400",
+                     description = "Invalid slide selection, width or request parameters",
+                     content = @Content)
+    })
+    public ResponseEntity<StreamingResponseBody> preview(
+            @Parameter(description = "PowerPoint template file (.pptx), required unless templateId is given")
+            @RequestPart(value = "file", required = false) MultipartFile file,
+
+            @Parameter(description = "JSON data as in /process-template", required = true)
+            @RequestPart("data") String dataJson,
+
+            @Parameter(description = "Array of image files for image placeholders (optional)")
+            @RequestPart(value = "images", required = false) MultipartFile[] imageFiles,
+
+            @Parameter(description = "JSON mapping of image placeholder keys to array indices (optional)")
+            @RequestPart(value = "imageMapping", required = false) String imageMappingJson,
+
+            @Parameter(description = "JSON mapping of image placeholder keys to http(s) URLs (optional)")
+            @RequestPart(value = "imageUrls", required = false) String imageUrlsJson,
+
+            @Parameter(description = "Slides to render, e.g. 1,3,5-7 (all slides by default)")
+            @RequestParam(value = "slides", required = false) String slides,
+
+            @Parameter(description = "Image width in pixels (960 by default, 240 with quality=low)")
+            @RequestParam(value = "width", required = false) Integer width,
+
+            @Parameter(description = "Rendering quality: high (default) or low")
+            @RequestParam(value = "quality", defaultValue = "high") String quality,
+
+            @Parameter(description = "ID of a stored template to render instead of uploading file")
+            @RequestParam(value = "templateId", required = false) String templateId,
+
+            @Parameter(description = "Version of the stored template (latest by default)")
+            @RequestParam(value = "templateVersion", required = false) Integer templateVersion,
+
+            @Parameter(description = "Google Drive file ID of the template (.pptx or Google Slides)")
+            @RequestParam(value = "driveFileId", required = false) String driveFileId) throws Exception {
+
+        TemplateSource template = resolveTemplate(file, templateId, templateVersion, driveFileId);
+        TemplateData data = TemplateData.parse(dataJson);
+        Map<String, MultipartFile> images = buildImageMap(imageFiles, imageMappingJson, imageUrlsJson);
+
+        List<SlidePreviewService.SlideImage> previews = slidePreviewService.render(template.content(), data, images,
+                slides, width, SlidePreviewService.Quality.fromParameter(quality));
+        log.info("Rendered {} slide previews of {}", previews.size(), template.filename());
+
+        String baseName = baseName(template.filename());
+        if (previews.size() == 1) {
+            SlidePreviewService.SlideImage preview = previews.get(0);
+            StreamingResponseBody body = out -> out.write(preview.png());
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION,
+                            "inline; filename=\"" + baseName + "-slide-" + preview.slide() + ".png\"")
+                    .header(HttpHeaders.CACHE_CONTROL, "no-cache")
+                    .contentType(MediaType.IMAGE_PNG)
+                    .contentLength(preview.png().length)
+                    .body(body);
+        }
+
+        // PNG đã nén sẵn nên các entry được lưu nguyên (STORED)
+        StreamingResponseBody body = out -> {
+            ZipOutputStream zip = new ZipOutputStream(out);
+            for (SlidePreviewService.SlideImage preview : previews) {
+                ZipEntry entry = new ZipEntry("slide-" + preview.slide() + ".png");
+                CRC32 crc = new CRC32();
+                crc.update(preview.png());
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(preview.png().length);
+                entry.setCrc(crc.getValue());
+                zip.putNextEntry(entry);
+                zip.write(preview.png());
+                zip.closeEntry();
+            }
+            zip.finish();
+        };
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + baseName + "_preview.zip\"")
+                .header(HttpHeaders.CACHE_CONTROL, "no-cache")
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .body(body);
+    }
+
+    @PostMapping(value = "/inspect", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(summary = "List the placeholders of a template without rendering it",
+               description = """
+               Returns every {key}, {IMAGE:key} and {#list} token, and every {CHART:key} in a chart frame's
+               name or alt text, with its slide, shape type (text, group, table cell, chart), shape id/name and
+               anchor in EMU, plus the keys, image keys, list fields and chart keys the data must provide.
+               The slide XML is scanned with StAX only, results are cached per template content, so this is
+               cheap enough to validate every request before rendering.
+               """)
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200",
+                     description = "Placeholders of the template",
+                     content = @Content(schema = @Schema(implementation = TemplateInspectionResponse.class))),
+        @ApiResponse(responseCode = "400",
+                     description = "Invalid template or request parameters",
+                     content = @Content)
+    })
+    public ResponseEntity<TemplateInspectionResponse> inspect(
+            @Parameter(description = "PowerPoint template file (.pptx), required unless templateId is given")
+            @RequestPart(value = "file", required = false) MultipartFile file,
+
+            @Parameter(description = "ID of a stored template to inspect instead of uploading file")
+            @RequestParam(value = "templateId", required = false) String templateId,
+
+            @Parameter(description = "Version of the stored template (latest by default)")
+            @RequestParam(value = "templateVersion", required = false) Integer templateVersion,
+
+            @Parameter(description = "Google Drive file ID of the template (.pptx or Google Slides)")
+            @RequestParam(value = "driveFileId", required = false) String driveFileId) throws Exception {
+
+        TemplateSource template = resolveTemplate(file, templateId, templateVersion, driveFileId);
+        long start = System.nanoTime();
+        TemplateInspector.Inspection inspection = templateInspector.inspect(template.content());
+        double elapsedMs = (System.nanoTime() - start) / 1_000_000.0;
+        log.info("Inspected {}: {} placeholders on {} slides in {} ms", template.filename(),
+                inspection.placeholders().size(), inspection.slideCount(), String.format("%.2f", elapsedMs));
+
+        return ResponseEntity.ok(TemplateInspectionResponse.builder()
+                .filename(template.filename())
+                .sha256(inspection.sha256())
+                .slideCount(inspection.slideCount())
+                .keys(inspection.keys())
+                .imageKeys(inspection.imageKeys())
+                .lists(inspection.lists())
+                .chartKeys(inspection.chartKeys())
+                .placeholders(inspection.placeholders().stream().map(this::toPlaceholderResponse).toList())
+                .inspectionTimeMs(elapsedMs)
+                .build());
+    }
+
+    @PostMapping(value = "/process-batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(summary = "Render one template for many data rows (mail merge)",
+               description = """
+               Renders the template once per data row, in parallel, and streams back a ZIP
+               containing one .pptx per row. Decks are written as soon as they finish.
+               
+               Rows can be sent as a JSON array of objects or as CSV with a header line.
+               A row that fails to render produces a .error.txt entry instead of failing the batch.
+               Images and imageMapping work as in /process-template and are shared by all rows.
+               """)
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200",
+                     description = "ZIP archive with one deck per row",
+                     content = @Content(mediaType = "application/zip")),
+        @ApiResponse(responseCode = "400",
+                     description = "Invalid rows or request parameters",
+                     content = @Content)
+    })
+    public ResponseEntity<StreamingResponseBody> processBatch(
+            @Parameter(description = "PowerPoint template file (.pptx)", required = true)
+            @RequestPart("file") MultipartFile file,
+
+            @Parameter(description = """
+                       Data rows as a JSON array or CSV with a header line.
+                       Example JSON: [{"name":"John"},{"name":"Jane"}]
+                       Example CSV: name,title\nJohn,Manager\nJane,Engineer
+                       """, required = true)
+            @RequestPart("rows") String rowsData,
+
+            @Parameter(description = "Array of image files shared by all rows (optional)")
+            @RequestPart(value = "images", required = false) MultipartFile[] imageFiles,
+
+            @Parameter(description = "JSON mapping of image placeholder keys to array indices (optional)")
+            @RequestPart(value = "imageMapping", required = false) String imageMappingJson,
+
+            @Parameter(description = "JSON mapping of image placeholder keys to http(s) URLs (optional)")
+            @RequestPart(value = "imageUrls", required = false) String imageUrlsJson) throws Exception {
+
+        log.info("Processing batch for template: {}", file.getOriginalFilename());
+
+        List<Map<String, String>> rows = BatchRowParser.parse(rowsData);
+        batchRenderService.validate(rows);
+        Map<String, MultipartFile> images = buildImageMap(imageFiles, imageMappingJson, imageUrlsJson);
+        byte[] template = file.getBytes();
+        String baseName = baseName(file.getOriginalFilename());
+
+        log.info("Starting batch rendering: {} rows, {} image replacements", rows.size(), images.size());
+
+        StreamingResponseBody body = out -> batchRenderService.renderBatch(template, rows, images, baseName, out);
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + baseName + "_batch.zip\"")
+                .header(HttpHeaders.CACHE_CONTROL, "no-cache, no-store, must-revalidate")
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .body(body);
+    }
+
+    @PostMapping(value = "/compose", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(summary = "Compose one deck from sections of several templates",
+               description = """
+               Renders an ordered list of sections (template + data) and joins their slides into one deck,
+               e.g. a cover, one section per region and an appendix.
+               
+               Each section picks its template with "template" (index into the templates parts), "templateId"
+               (and optionally "templateVersion") or "driveFileId", and carries "data" as in /process-template:
+               [{"template":0,"data":{"title":"Q3"}},{"templateId":"region","data":{"region":"North"}},{"template":1}]
+               
+               Sections are rendered in parallel. Slide masters, layouts, themes and pictures with identical content
+               are stored once, so a template used by many sections adds its masters only once.
+               The deck keeps the slide size of the first section; speaker notes are not carried over.
+               Images and imageMapping work as in /process-template and are shared by all sections.
+               """)
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200",
+                     description = "Composed presentation",
+                     content = @Content(mediaType = "application/vnd.openxmlformats-officedocument.presentationml.presentation")),
+        @ApiResponse(responseCode = "400",
+                     description = "Invalid sections, templates or request parameters",
+                     content = @Content)
+    })
+    public ResponseEntity<StreamingResponseBody> compose(
+            @Parameter(description = """
+                       Sections as a JSON array, in slide order.
+                       Example: [{"template":0,"data":{"title":"Q3"}},{"templateId":"region","data":{"region":"North"}}]
+                       """, required = true)
+            @RequestPart("sections") String sectionsJson,
+
+            @Parameter(description = "Template files (.pptx) referenced by index from the sections")
+            @RequestPart(value = "templates", required = false) MultipartFile[] templateFiles,
+
+            @Parameter(description = "Array of image files shared by all sections (optional)")
+            @RequestPart(value = "images", required = false) MultipartFile[] imageFiles,
+
+            @Parameter(description = "JSON mapping of image placeholder keys to array indices (optional)")
+            @RequestPart(value = "imageMapping", required = false) String imageMappingJson,
+
+            @Parameter(description = "JSON mapping of image placeholder keys to http(s) URLs (optional)")
+            @RequestPart(value = "imageUrls", required = false) String imageUrlsJson,
+
+            @Parameter(description = "Render engine for the sections: poi (default), auto or streaming")
+            @RequestParam(value = "engine", defaultValue = "poi") String engineName,
+
+            @Parameter(description = "Zip compression level for XML parts: fast, default or max (configured level by default)")
+            @RequestParam(value = "compression", required = false) String compressionName) throws Exception {
+
+        RenderEngine engine = RenderEngine.fromParameter(engineName);
+        CompressionPolicy compression = powerPointService.compressionPolicy(compressionName);
+        List<DeckComposer.Section> sections = parseSections(sectionsJson, templateFiles);
+        deckComposer.validate(sections);
+        Map<String, MultipartFile> images = buildImageMap(imageFiles, imageMappingJson, imageUrlsJson);
+
+        log.info("Starting composition: {} sections, {} image replacements", sections.size(), images.size());
+
+        // Ghép xong trước khi trả header để lỗi của section vẫn trả về JSON error bình thường
+        RenderedDeck deck = deckComposer.compose(sections, images, engine);
+        StreamingResponseBody body = StreamingResources.closing(deck, out -> {
+            PowerPointService.OutputStats stats = powerPointService.write(deck, compression, out);
+            log.debug("Streamed composed deck ({}, written in {} ms)", formatFileSize(stats.size()),
+                    stats.writeMillis());
+        });
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"composed.pptx\"")
+                .header(HttpHeaders.CACHE_CONTROL, "no-cache, no-store, must-revalidate")
+                .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.presentationml.presentation"))
+                .body(body);
+    }
+
+    @PostMapping(value = "/jobs", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(summary = "Submit an asynchronous render job",
+               description = """
+               Accepts the same parts as /process-template but returns immediately with a job ID.
+               Poll GET /ppt/jobs/{jobId} for the status and download the deck from
+               GET /ppt/jobs/{jobId}/result once it has succeeded.
+               Returns 429 with Retry-After when the render queue is full.
+               """)
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "202",
+                     description = "Job accepted",
+                     content = @Content(schema = @Schema(implementation = RenderJobResponse.class))),
+        @ApiResponse(responseCode = "429",
+                     description = "Render queue is full (too many jobs or too many bytes of input waiting)",
+                     content = @Content)
+    })
+    public ResponseEntity<RenderJobResponse> submitJob(
+            @Parameter(description = "PowerPoint template file (.pptx)", required = true)
+            @RequestPart("file") MultipartFile file,
+
+            @Parameter(description = "JSON string containing key-value pairs for text placeholder replacement", required = true)
+            @RequestPart("data") String dataJson,
+
+            @Parameter(description = "Array of image files for image placeholders (optional)")
+            @RequestPart(value = "images", required = false) MultipartFile[] imageFiles,
+
+            @Parameter(description = "JSON mapping of image placeholder keys to array indices (optional)")
+            @RequestPart(value = "imageMapping", required = false) String imageMappingJson,
+
+            @Parameter(description = "JSON mapping of image placeholder keys to http(s) URLs (optional)")
+            @RequestPart(value = "imageUrls", required = false) String imageUrlsJson) throws Exception {
+
+        TemplateData data = TemplateData.parse(dataJson);
+        Map<String, MultipartFile> images = buildImageMap(imageFiles, imageMappingJson, imageUrlsJson);
+
+        RenderJob job = renderJobService.submit(file.getBytes(), data, images,
+                "processed_" + file.getOriginalFilename());
+
+        RenderJobResponse response = toJobResponse(job);
+        return ResponseEntity.accepted()
+                .location(URI.create(response.getStatusUrl()))
+                .body(response);
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    @Operation(summary = "Get the status of a render job")
+    public ResponseEntity<RenderJobResponse> getJob(@PathVariable String jobId) {
+        return ResponseEntity.ok(toJobResponse(renderJobService.getJob(jobId)));
+    }
+
+    @GetMapping("/jobs/{jobId}/result")
+    @Operation(summary = "Download the result of a succeeded render job",
+               description = "Returns 409 while the job is queued or running, 422 with the job error once it has "
+                       + "failed, and 404 once the result has expired.")
+    public ResponseEntity<FileSystemResource> getJobResult(@PathVariable String jobId) {
+        ResultStore.StoredResult result = renderJobService.getResult(jobId);
+        RenderJob job = renderJobService.getJob(jobId);
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + job.getOutputFilename() + "\"")
+                .header(HttpHeaders.CACHE_CONTROL, "no-cache, no-store, must-revalidate")
+                .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.presentationml.presentation"))
+                .contentLength(result.size())
+                .body(new FileSystemResource(result.path()));
+    }
+
+    /**
+     * Nội dung template và tên file dùng để đặt tên kết quả
+     */
+    private record TemplateSource(byte[] content, String filename) {
+    }
+
+    /**
+     * Lấy template từ file upload, từ kho template theo templateId hoặc từ Google Drive
+     */
+    private TemplateSource resolveTemplate(MultipartFile file, String templateId, Integer templateVersion,
+                                           String driveFileId) throws IOException {
+        boolean hasFile = file != null && !file.isEmpty();
+        int sources = (hasFile ? 1 : 0) + (templateId != null ? 1 : 0) + (driveFileId != null ? 1 : 0);
+        if (sources > 1) {
+            throw new IllegalArgumentException("Send only one of file, templateId or driveFileId");
+        }
+        if (hasFile) {
+            return new TemplateSource(file.getBytes(), file.getOriginalFilename());
+        }
+        if (templateId != null) {
+            TemplateRegistry.Version version = templateRegistry.get(templateId).version(templateVersion);
+            return new TemplateSource(templateRegistry.load(version), version.filename());
+        }
+        if (driveFileId != null) {
+            DriveTemplateSource.Template template = driveTemplateSource.load(driveFileId);
+            return new TemplateSource(template.content(), template.name());
+        }
+        throw new IllegalArgumentException("A template file, templateId or driveFileId is required");
+    }
+
+    /**
+     * Đọc danh sách section của /compose. Template giống nhau chỉ được lấy một lần
+     * và dùng chung mảng byte, nên DeckComposer chỉ ghép master của nó một lần
+     */
+    private List<DeckComposer.Section> parseSections(String sectionsJson, MultipartFile[] templateFiles)
+            throws IOException {
+        JsonNode root = objectMapper.readTree(sectionsJson);
+        if (root == null || !root.isArray()) {
+            throw new IllegalArgumentException("Sections must be a JSON array");
+        }
+        Map<String, byte[]> templates = new HashMap<>();
+        List<DeckComposer.Section> sections = new ArrayList<>(root.size());
+        for (JsonNode node : root) {
+            if (!node.isObject()) {
+                throw new IllegalArgumentException("Each section must be a JSON object");
+            }
+            MultipartFile file = null;
+            if (node.has("template")) {
+                JsonNode index = node.get("template");
+                if (!index.canConvertToInt() || templateFiles == null
+                        || index.asInt() < 0 || index.asInt() >= templateFiles.length) {
+                    throw new IllegalArgumentException("Section template " + index + " is not an index of the templates parts");
+                }
+                file = templateFiles[index.asInt()];
+            }
+            String templateId = node.hasNonNull("templateId") ? node.get("templateId").asText() : null;
+            Integer templateVersion = node.hasNonNull("templateVersion") ? node.get("templateVersion").asInt() : null;
+            String driveFileId = node.hasNonNull("driveFileId") ? node.get("driveFileId").asText() : null;
+
+            String source = node.path("template").asText() + "|" + templateId + "|" + templateVersion + "|" + driveFileId;
+            byte[] template = templates.get(source);
+            if (template == null) {
+                template = resolveTemplate(file, templateId, templateVersion, driveFileId).content();
+                templates.put(source, template);
+            }
+            JsonNode data = node.path("data");
+            sections.add(new DeckComposer.Section(template, TemplateData.parse(data.isMissingNode() ? "{}" : data.toString())));
+        }
+        return sections;
+    }
+
+    private TemplateInspectionResponse.Placeholder toPlaceholderResponse(TemplateInspector.Placeholder placeholder) {
+        TemplateInspector.Anchor anchor = placeholder.anchor();
+        return TemplateInspectionResponse.Placeholder.builder()
+                .token("{" + placeholder.token() + "}")
+                .kind(placeholder.kind().name())
+                .key(placeholder.key())
+                .list(placeholder.list())
+                .slide(placeholder.slide())
+                .shapeType(placeholder.shapeType().name())
+                .shapeId(placeholder.shapeId())
+                .shapeName(placeholder.shapeName())
+                .row(placeholder.row())
+                .column(placeholder.column())
+                .anchor(anchor == null ? null : TemplateInspectionResponse.Anchor.builder()
+                        .x(anchor.x())
+                        .y(anchor.y())
+                        .width(anchor.width())
+                        .height(anchor.height())
+                        .build())
+                .build();
+    }
+
+    private RenderJobResponse toJobResponse(RenderJob job) {
+        String statusUrl = "/ppt/jobs/" + job.getId();
+        return RenderJobResponse.builder()
+                .jobId(job.getId())
+                .status(job.getStatus().name())
+                .submittedAt(job.getSubmittedAt())
+                .startedAt(job.getStartedAt())
+                .finishedAt(job.getFinishedAt())
+                .outputSize(job.getOutputSize())
+                .error(job.getError())
+                .statusUrl(statusUrl)
+                .resultUrl(job.getStatus() == RenderJob.Status.SUCCEEDED ? statusUrl + "/result" : null)
+                .build();
+    }
+
+    /**
+     * Map image placeholder keys to uploaded files using the imageMapping JSON,
+     * then add the images fetched from imageUrls
+     */
+    private Map<String, MultipartFile> buildImageMap(MultipartFile[] imageFiles, String imageMappingJson,
+                                                     String imageUrlsJson) throws Exception {
         Map<String, MultipartFile> images = new HashMap<>();
         if (imageFiles != null && imageFiles.length > 0) {
-            log.info("Received {} image files", imageFiles.length);
+            log.debug("Received {} image files", imageFiles.length);
 
             if (imageMappingJson != null && !imageMappingJson.trim().isEmpty()) {
                 Map<String, Integer> imageMapping = objectMapper.readValue(imageMappingJson, new TypeReference<Map<String, Integer>>() {});
@@ -102,7 +778,7 @@ public class PoiController {
 
                     if (index >= 0 && index < imageFiles.length) {
                         images.put(key, imageFiles[index]);
-                        log.info("Mapped image placeholder '{}' to file: {} ({})",
+                        log.debug("Mapped image placeholder '{}' to file: {} ({})",
                                 key, imageFiles[index].getOriginalFilename(), formatFileSize(imageFiles[index].getSize()));
                     } else {
                         log.warn("Image index {} for key '{}' is out of bounds (array size: {})",
@@ -114,26 +790,28 @@ public class PoiController {
             }
         }
 
-        log.info("Starting template processing: {} text replacements, {} image replacements",
-                data.size(), images.size());
-
-        // Process the template
-        File processedFile = powerPointService.processTemplate(file, data, images);
-
-        // Prepare response
-        FileSystemResource resource = new FileSystemResource(processedFile);
-        String outputFilename = "processed_" + file.getOriginalFilename();
+        if (imageUrlsJson != null && !imageUrlsJson.trim().isEmpty()) {
+            Map<String, String> imageUrls = objectMapper.readValue(imageUrlsJson, new TypeReference<Map<String, String>>() {});
+            for (String key : imageUrls.keySet()) {
+                if (images.containsKey(key)) {
+                    throw new IllegalArgumentException("Image '" + key + "' is given both as a file and as a URL");
+                }
+            }
+            images.putAll(remoteImageFetcher.fetchAll(imageUrls));
+        }
 
-        log.info("Template processed successfully. Output file: {}", outputFilename);
+        return images;
+    }
 
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + outputFilename + "\"")
-                .header(HttpHeaders.CACHE_CONTROL, "no-cache, no-store, must-revalidate")
-                .header(HttpHeaders.PRAGMA, "no-cache")
-                .header(HttpHeaders.EXPIRES, "0")
-                .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.presentationml.presentation"))
-                .contentLength(processedFile.length())
-                .body(resource);
+    /**
+     * Output name without the .pptx extension
+     */
+    private String baseName(String filename) {
+        if (filename == null || filename.isBlank()) {
+            return "deck";
+        }
+        int dot = filename.lastIndexOf('.');
+        return dot > 0 ? filename.substring(0, dot) : filename;
     }
 
     /**
@@ -0,0 +1,76 @@
+package exe2.slideapp.demopoi.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tài nguyên (scratch file, deck đang giữ bộ nhớ) mà một StreamingResponseBody đóng sau khi ghi.
+ * Body chạy trên thread async nên có thể không bao giờ chạy (client ngắt trước khi dispatch, async timeout,
+ * executor từ chối); khi đó interceptor này đóng tài nguyên lúc async request kết thúc
+ */
+@Slf4j
+public class StreamingResources implements CallableProcessingInterceptor {
+
+    private static final String ATTRIBUTE = StreamingResources.class.getName() + ".pending";
+
+    /**
+     * Body ghi response rồi đóng resource. Nếu body không chạy, resource được đóng khi request kết thúc
+     */
+    static StreamingResponseBody closing(Closeable resource, StreamingResponseBody body) {
+        AtomicBoolean claimed = new AtomicBoolean();
+        register(() -> {
+            if (claimed.compareAndSet(false, true)) {
+                resource.close();
+            }
+        });
+        return out -> {
+            if (!claimed.compareAndSet(false, true)) {
+                throw new IOException("Response was abandoned before it could be written");
+            }
+            try (resource) {
+                body.writeTo(out);
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void register(Closeable cleanup) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return;
+        }
+        List<Closeable> pending = (List<Closeable>) attributes.getAttribute(ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (pending == null) {
+            pending = new ArrayList<>();
+            attributes.setAttribute(ATTRIBUTE, pending, RequestAttributes.SCOPE_REQUEST);
+        }
+        pending.add(cleanup);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+        List<Closeable> pending = (List<Closeable>) request.getAttribute(ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (pending == null) {
+            return;
+        }
+        for (Closeable cleanup : pending) {
+            try {
+                cleanup.close();
+            } catch (IOException | RuntimeException e) {
+                log.warn("Failed to release resources of an abandoned response: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package exe2.slideapp.demopoi.controller;
+
+import exe2.slideapp.demopoi.dto.TemplateResponse;
+import exe2.slideapp.demopoi.service.TemplateRegistry;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.net.URI;
+import java.util.List;
+
+@RestController
+@RequestMapping("/templates")
+@RequiredArgsConstructor
+@Tag(name = "Templates", description = "Server-side template registry, render with /ppt/process-template?templateId=...")
+@Slf4j
+public class TemplateController {
+
+    private final TemplateRegistry templateRegistry;
+
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(summary = "Upload a new template",
+               description = "Stores the template as version 1 and returns its ID. Use the ID as templateId when rendering.")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "201",
+                     description = "Template stored",
+                     content = @Content(schema = @Schema(implementation = TemplateResponse.class))),
+        @ApiResponse(responseCode = "400",
+                     description = "File is not a .pptx template",
+                     content = @Content),
+        @ApiResponse(responseCode = "413",
+                     description = "Template is larger than ppt.templates.max-template-size",
+                     content = @Content)
+    })
+    public ResponseEntity<TemplateResponse> uploadTemplate(
+            @Parameter(description = "PowerPoint template file (.pptx)", required = true)
+            @RequestPart("file") MultipartFile file,
+
+            @Parameter(description = "Display name (defaults to the file name)")
+            @RequestParam(value = "name", required = false) String name) throws Exception {
+
+        TemplateRegistry.StoredTemplate template = templateRegistry.create(name, file);
+        return ResponseEntity.created(URI.create("/templates/" + template.id()))
+                .body(toResponse(template));
+    }
+
+    @GetMapping
+    @Operation(summary = "List all templates")
+    public ResponseEntity<List<TemplateResponse>> listTemplates() {
+        return ResponseEntity.ok(templateRegistry.list().stream().map(this::toResponse).toList());
+    }
+
+    @GetMapping("/{templateId}")
+    @Operation(summary = "Get a template and its versions")
+    public ResponseEntity<TemplateResponse> getTemplate(@PathVariable String templateId) {
+        return ResponseEntity.ok(toResponse(templateRegistry.get(templateId)));
+    }
+
+    @PostMapping(value = "/{templateId}/versions", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(summary = "Upload a new version of a template",
+               description = "Renders by templateId use the latest version unless templateVersion is given.")
+    public ResponseEntity<TemplateResponse> uploadVersion(
+            @PathVariable String templateId,
+
+            @Parameter(description = "PowerPoint template file (.pptx)", required = true)
+            @RequestPart("file") MultipartFile file) throws Exception {
+
+        TemplateRegistry.StoredTemplate template = templateRegistry.addVersion(templateId, file);
+        return ResponseEntity.created(URI.create("/templates/" + templateId + "/versions/" + template.latest().version()))
+                .body(toResponse(template));
+    }
+
+    @GetMapping("/{templateId}/content")
+    @Operation(summary = "Download a template version (latest by default)")
+    public ResponseEntity<FileSystemResource> downloadTemplate(
+            @PathVariable String templateId,
+            @RequestParam(value = "version", required = false) Integer version) {
+
+        TemplateRegistry.Version selected = templateRegistry.get(templateId).version(version);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + selected.filename() + "\"")
+                .eTag("\"" + selected.sha256() + "\"")
+                .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.presentationml.presentation"))
+                .contentLength(selected.size())
+                .body(new FileSystemResource(templateRegistry.getBlobPath(selected)));
+    }
+
+    @DeleteMapping("/{templateId}")
+    @Operation(summary = "Delete a template and all of its versions")
+    public ResponseEntity<Void> deleteTemplate(@PathVariable String templateId) throws Exception {
+        templateRegistry.delete(templateId);
+        return ResponseEntity.noContent().build();
+    }
+
+    @DeleteMapping("/{templateId}/versions/{version}")
+    @Operation(summary = "Delete one version of a template",
+               description = "Deleting the only remaining version deletes the template.")
+    public ResponseEntity<Void> deleteVersion(@PathVariable String templateId, @PathVariable int version) throws Exception {
+        templateRegistry.deleteVersion(templateId, version);
+        return ResponseEntity.noContent().build();
+    }
+
+    private TemplateResponse toResponse(TemplateRegistry.StoredTemplate template) {
+        return TemplateResponse.builder()
+                .templateId(template.id())
+                .name(template.name())
+                .latestVersion(template.latest().version())
+                .createdAt(template.createdAt())
+                .versions(template.versions().stream()
+                        .map(v -> TemplateResponse.Version.builder()
+                                .version(v.version())
+                                .filename(v.filename())
+                                .sha256(v.sha256())
+                                .size(v.size())
+                                .createdAt(v.createdAt())
+                                .build())
+                        .toList())
+                .build();
+    }
+}
@@ -0,0 +1,24 @@
+package exe2.slideapp.demopoi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RenderJobResponse {
+    private String jobId;
+    private String status;
+    private Instant submittedAt;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private long outputSize;
+    private String error;
+    private String statusUrl;
+    private String resultUrl;
+}
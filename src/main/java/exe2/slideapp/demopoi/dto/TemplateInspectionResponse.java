@@ -0,0 +1,54 @@
+package exe2.slideapp.demopoi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TemplateInspectionResponse {
+    private String filename;
+    private String sha256;
+    private int slideCount;
+    private List<String> keys;
+    private List<String> imageKeys;
+    private Map<String, List<String>> lists;
+    private List<String> chartKeys;
+    private List<Placeholder> placeholders;
+    private double inspectionTimeMs;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Placeholder {
+        private String token;
+        private String kind;
+        private String key;
+        private String list;
+        private int slide;
+        private String shapeType;
+        private Integer shapeId;
+        private String shapeName;
+        private Integer row;
+        private Integer column;
+        private Anchor anchor;
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Anchor {
+        private long x;
+        private long y;
+        private long width;
+        private long height;
+    }
+}
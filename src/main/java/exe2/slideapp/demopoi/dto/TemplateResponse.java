@@ -0,0 +1,33 @@
+package exe2.slideapp.demopoi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TemplateResponse {
+    private String templateId;
+    private String name;
+    private int latestVersion;
+    private Instant createdAt;
+    private List<Version> versions;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Version {
+        private int version;
+        private String filename;
+        private String sha256;
+        private long size;
+        private Instant createdAt;
+    }
+}
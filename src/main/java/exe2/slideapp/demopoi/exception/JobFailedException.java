@@ -0,0 +1,16 @@
+package exe2.slideapp.demopoi.exception;
+
+import lombok.Getter;
+
+/**
+ * Exception thrown when the result of a render job is requested but the job has failed
+ */
+@Getter
+public class JobFailedException extends RuntimeException {
+    private final String error;
+
+    public JobFailedException(String message, String error) {
+        super(message);
+        this.error = error;
+    }
+}
@@ -0,0 +1,16 @@
+package exe2.slideapp.demopoi.exception;
+
+import lombok.Getter;
+
+/**
+ * Exception thrown when the result of a render job is requested before the job has succeeded
+ */
+@Getter
+public class JobNotReadyException extends RuntimeException {
+    private final String status;
+
+    public JobNotReadyException(String message, String status) {
+        super(message);
+        this.status = status;
+    }
+}
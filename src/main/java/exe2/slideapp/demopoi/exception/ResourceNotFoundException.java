@@ -0,0 +1,11 @@
+package exe2.slideapp.demopoi.exception;
+
+/**
+ * Exception thrown when a requested resource does not exist or has expired
+ */
+public class ResourceNotFoundException extends RuntimeException {
+
+    public ResourceNotFoundException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,16 @@
+package exe2.slideapp.demopoi.exception;
+
+import lombok.Getter;
+
+/**
+ * Exception thrown when the service cannot accept more work right now
+ */
+@Getter
+public class ServiceOverloadedException extends RuntimeException {
+    private final long retryAfterSeconds;
+
+    public ServiceOverloadedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
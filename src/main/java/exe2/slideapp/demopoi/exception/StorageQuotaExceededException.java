@@ -0,0 +1,18 @@
+package exe2.slideapp.demopoi.exception;
+
+import lombok.Getter;
+
+import java.io.IOException;
+
+/**
+ * Exception thrown when a managed storage area has no room left for a file
+ */
+@Getter
+public class StorageQuotaExceededException extends IOException {
+    private final long quotaBytes;
+
+    public StorageQuotaExceededException(String message, long quotaBytes) {
+        super(message);
+        this.quotaBytes = quotaBytes;
+    }
+}
@@ -0,0 +1,16 @@
+package exe2.slideapp.demopoi.exception;
+
+import lombok.Getter;
+
+/**
+ * Exception thrown when a template would need more memory than this node can ever grant
+ */
+@Getter
+public class TemplateTooLargeException extends RuntimeException {
+    private final long requiredBytes;
+
+    public TemplateTooLargeException(String message, long requiredBytes) {
+        super(message);
+        this.requiredBytes = requiredBytes;
+    }
+}
@@ -0,0 +1,137 @@
+package exe2.slideapp.demopoi.service;
+
+import exe2.slideapp.demopoi.config.BatchProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Render một template với N dòng dữ liệu song song trên mọi CPU và ghi ra ZIP
+ * theo thứ tự deck nào xong trước thì ghi trước. Lỗi của một dòng chỉ tạo file .error.txt
+ * cho dòng đó chứ không làm hỏng cả batch.
+ */
+@Service
+@Slf4j
+public class BatchRenderService {
+
+    private final PowerPointService powerPointService;
+    private final BatchProperties properties;
+    private final ExecutorService executor;
+    private final int parallelism;
+
+    public BatchRenderService(PowerPointService powerPointService, BatchProperties properties) {
+        this.powerPointService = powerPointService;
+        this.properties = properties;
+        this.parallelism = properties.getParallelism() > 0
+                ? properties.getParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "batch-render-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Kiểm tra số dòng trước khi bắt đầu stream response
+     */
+    public void validate(List<Map<String, String>> rows) {
+        if (rows.isEmpty()) {
+            throw new IllegalArgumentException("Batch must contain at least one data row");
+        }
+        if (rows.size() > properties.getMaxRows()) {
+            throw new IllegalArgumentException("Batch contains " + rows.size()
+                    + " rows, maximum is " + properties.getMaxRows());
+        }
+    }
+
+    /**
+     * Render toàn bộ batch và ghi ZIP ra output stream
+     */
+    public void renderBatch(byte[] template, List<Map<String, String>> rows, Map<String, MultipartFile> images,
+                            String baseName, OutputStream out) throws IOException {
+        CompletionService<RowResult> completionService = new ExecutorCompletionService<>(executor);
+        // Mọi dòng dùng chung hash, ước lượng bộ nhớ và cách nén của template
+        PreparedTemplate prepared = new PreparedTemplate(template);
+        CompressionPolicy compression = powerPointService.compressionPolicy(null);
+        List<Future<RowResult>> futures = new ArrayList<>();
+
+        // Giới hạn số deck đang giữ trong bộ nhớ: chỉ submit thêm khi có deck đã được ghi
+        int window = parallelism * 2;
+        int submitted = 0;
+        int failed = 0;
+
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            while (submitted < rows.size() && submitted < window) {
+                futures.add(completionService.submit(renderRow(prepared, compression, rows, submitted++, images)));
+            }
+
+            for (int done = 0; done < rows.size(); done++) {
+                RowResult result = completionService.take().get();
+                if (submitted < rows.size()) {
+                    futures.add(completionService.submit(renderRow(prepared, compression, rows, submitted++, images)));
+                }
+
+                String entryName = String.format("%s_%05d", baseName, result.index() + 1);
+                if (result.error() == null) {
+                    zip.putNextEntry(new ZipEntry(entryName + ".pptx"));
+                    zip.write(result.deck());
+                } else {
+                    failed++;
+                    zip.putNextEntry(new ZipEntry(entryName + ".error.txt"));
+                    zip.write(result.error().getBytes(StandardCharsets.UTF_8));
+                }
+                zip.closeEntry();
+                zip.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Batch rendering interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Batch rendering failed", e.getCause());
+        } finally {
+            // Client ngắt kết nối hoặc lỗi: hủy các dòng chưa render
+            futures.forEach(f -> f.cancel(true));
+        }
+
+        log.info("Batch finished: {} rows, {} failed", rows.size(), failed);
+    }
+
+    private Callable<RowResult> renderRow(PreparedTemplate template, CompressionPolicy compression,
+                                          List<Map<String, String>> rows, int index,
+                                          Map<String, MultipartFile> images) {
+        return () -> {
+            try {
+                ByteArrayOutputStream deck = new ByteArrayOutputStream();
+                powerPointService.render(template, TemplateData.of(rows.get(index)), images, RenderEngine.DEFAULT,
+                        compression, deck);
+                return new RowResult(index, deck.toByteArray(), null);
+            } catch (Exception e) {
+                log.warn("Batch row {} failed: {}", index + 1, e.getMessage());
+                return new RowResult(index, null, e.getClass().getSimpleName() + ": " + e.getMessage());
+            }
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private record RowResult(int index, byte[] deck, String error) {
+    }
+}
@@ -0,0 +1,97 @@
+package exe2.slideapp.demopoi.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Đọc các dòng dữ liệu cho batch từ JSON array hoặc CSV (dòng đầu là header)
+ */
+public final class BatchRowParser {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private BatchRowParser() {
+    }
+
+    public static List<Map<String, String>> parse(String rows) throws IOException {
+        String trimmed = rows == null ? "" : stripBom(rows).strip();
+        if (trimmed.isEmpty()) {
+            throw new IllegalArgumentException("Batch rows must not be empty");
+        }
+        if (trimmed.charAt(0) == '[') {
+            return objectMapper.readValue(trimmed, new TypeReference<List<Map<String, String>>>() {});
+        }
+        return parseCsv(trimmed);
+    }
+
+    /**
+     * Excel và Notepad ghi CSV UTF-8 kèm BOM, nếu giữ lại thì tên cột đầu bắt đầu bằng U+FEFF
+     */
+    private static String stripBom(String rows) {
+        return !rows.isEmpty() && rows.charAt(0) == '\uFEFF' ? rows.substring(1) : rows;
+    }
+
+    /**
+     * CSV theo RFC 4180: hỗ trợ giá trị trong dấu nháy kép, "" là nháy kép, xuống dòng trong nháy
+     */
+    static List<Map<String, String>> parseCsv(String csv) {
+        List<List<String>> records = new ArrayList<>();
+        List<String> record = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < csv.length(); i++) {
+            char c = csv.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < csv.length() && csv.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                record.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == '\r') {
+                if (c == '\r' && i + 1 < csv.length() && csv.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                record.add(field.toString());
+                field.setLength(0);
+                records.add(record);
+                record = new ArrayList<>();
+            } else {
+                field.append(c);
+            }
+        }
+        record.add(field.toString());
+        records.add(record);
+
+        List<String> header = records.get(0);
+        List<Map<String, String>> result = new ArrayList<>(records.size() - 1);
+        for (int r = 1; r < records.size(); r++) {
+            List<String> values = records.get(r);
+            if (values.size() == 1 && values.get(0).isEmpty()) {
+                continue; // bỏ qua dòng trống
+            }
+            Map<String, String> row = new LinkedHashMap<>();
+            for (int c = 0; c < header.size(); c++) {
+                row.put(header.get(c).strip(), c < values.size() ? values.get(c) : "");
+            }
+            result.add(row);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,75 @@
+package exe2.slideapp.demopoi.service;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+/**
+ * MultipartFile giữ nội dung trong bộ nhớ, dùng khi ảnh cần sống lâu hơn HTTP request
+ * (job bất đồng bộ) hoặc không đến từ multipart upload
+ */
+public class ByteArrayMultipartFile implements MultipartFile {
+
+    private final String name;
+    private final String originalFilename;
+    private final String contentType;
+    private final byte[] content;
+
+    public ByteArrayMultipartFile(String name, String originalFilename, String contentType, byte[] content) {
+        this.name = name;
+        this.originalFilename = originalFilename;
+        this.contentType = contentType;
+        this.content = content;
+    }
+
+    /**
+     * Sao chép nội dung của một MultipartFile (ví dụ file upload sẽ bị xóa khi request kết thúc)
+     */
+    public static ByteArrayMultipartFile copyOf(MultipartFile file) throws IOException {
+        return new ByteArrayMultipartFile(file.getName(), file.getOriginalFilename(), file.getContentType(), file.getBytes());
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getOriginalFilename() {
+        return originalFilename;
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return content.length == 0;
+    }
+
+    @Override
+    public long getSize() {
+        return content.length;
+    }
+
+    @Override
+    public byte[] getBytes() {
+        return content;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new ByteArrayInputStream(content);
+    }
+
+    @Override
+    public void transferTo(File dest) throws IOException {
+        Files.write(dest.toPath(), content);
+    }
+}
@@ -0,0 +1,418 @@
+package exe2.slideapp.demopoi.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackageRelationship;
+import org.apache.poi.openxml4j.opc.TargetMode;
+import org.apache.poi.ss.formula.SheetNameFormatter;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xslf.usermodel.*;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.xmlbeans.XmlCursor;
+import org.apache.xmlbeans.XmlException;
+import org.apache.xmlbeans.XmlObject;
+import org.openxmlformats.schemas.drawingml.x2006.chart.*;
+import org.openxmlformats.schemas.presentationml.x2006.main.CTGraphicalObjectFrame;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+
+/**
+ * Chart có {CHART:key} trong tên hoặc alt text của khung chart được điền từ data.charts():
+ * tên, category và giá trị trong cache của từng series được ghi lại, series thừa bị xóa,
+ * thiếu thì nhân bản series cuối (bỏ màu riêng để PowerPoint tô theo thứ tự series).
+ * <p>
+ * Cache được dựng thành chuỗi XML rồi parse một lần thay vì thêm từng điểm qua XMLBeans,
+ * workbook nhúng được thay bằng workbook mới ghi bằng SXSSF (dòng được đẩy ra file tạm),
+ * không dựng XSSF model của workbook cũ. Workbook mới chỉ có một sheet chứa đúng dữ liệu của chart:
+ * các sheet khác, style, number format và công thức của workbook trong template đều bị bỏ
+ * (format hiển thị trên chart vẫn giữ vì formatCode nằm trong cache của chart).
+ * Slide nhân bản có chart riêng (SlideCloner) nên được điền riêng,
+ * chart dùng chung giữa nhiều slide của template chỉ điền một lần
+ */
+@Slf4j
+final class ChartBinder {
+
+    static final String CHART_PREFIX = "CHART:";
+
+    private static final String CHART_NS = "http://schemas.openxmlformats.org/drawingml/2006/chart";
+    private static final String DECLARE = "declare namespace c='" + CHART_NS + "' ";
+    // Nội dung của một phần tử cache, XMLBeans parse xml-fragment thành nội dung của kiểu đích
+    private static final String FRAGMENT_START = "<xml-fragment xmlns:c=\"" + CHART_NS + "\">";
+    private static final String FRAGMENT_END = "</xml-fragment>";
+    private static final String XLSX_CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+    private static final String DEFAULT_SHEET = "Sheet1";
+    private static final int ROW_WINDOW = 200;
+
+    private ChartBinder() {
+    }
+
+    /**
+     * Điền mọi chart có key trong charts, trả về số chart đã điền
+     */
+    static int bind(XMLSlideShow ppt, Map<String, ChartData> charts) throws IOException {
+        if (charts.isEmpty()) {
+            return 0;
+        }
+        Set<XSLFChart> filled = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (XSLFSlide slide : ppt.getSlides()) {
+            bindShapes(slide.getShapes(), charts, filled);
+        }
+        return filled.size();
+    }
+
+    private static void bindShapes(List<XSLFShape> shapes, Map<String, ChartData> charts, Set<XSLFChart> filled)
+            throws IOException {
+        for (XSLFShape shape : shapes) {
+            if (shape instanceof XSLFGroupShape group) {
+                bindShapes(group.getShapes(), charts, filled);
+            } else if (shape instanceof XSLFGraphicFrame frame && frame.hasChart()) {
+                String key = findKey(frame, charts);
+                if (key == null) {
+                    continue;
+                }
+                XSLFChart chart = frame.getChart();
+                if (chart != null && filled.add(chart)) {
+                    fill(chart, key, charts.get(key));
+                }
+            }
+        }
+    }
+
+    /**
+     * Key của token {CHART:key} đầu tiên có trong charts, tìm trong tên rồi alt text của khung chart
+     */
+    private static String findKey(XSLFGraphicFrame frame, Map<String, ChartData> charts) {
+        String[] found = {null};
+        PlaceholderTokenizer.TokenConsumer match = (start, end, token) -> {
+            if (found[0] == null && token.startsWith(CHART_PREFIX)
+                    && charts.containsKey(token.substring(CHART_PREFIX.length()))) {
+                found[0] = token.substring(CHART_PREFIX.length());
+            }
+        };
+        PlaceholderTokenizer.forEachToken(frame.getShapeName(), match);
+        if (found[0] == null && frame.getXmlObject() instanceof CTGraphicalObjectFrame ct) {
+            PlaceholderTokenizer.forEachToken(ct.getNvGraphicFramePr().getCNvPr().getDescr(), match);
+        }
+        return found[0];
+    }
+
+    private static void fill(XSLFChart chart, String key, ChartData data) throws IOException {
+        CTPlotArea plotArea = chart.getCTChart().getPlotArea();
+        XmlObject[] existing = plotArea.selectPath(DECLARE + "./*/c:ser");
+        if (existing.length == 0) {
+            throw new IllegalArgumentException("Chart {" + CHART_PREFIX + key + "} has no series to fill");
+        }
+        String sheet = sheetName(existing[0]);
+        XmlObject[] series = resizeSeries(plotArea, existing, data.series().size());
+        boolean numericCategories = hasNumericCategories(series[0]) && allNumeric(data.categories());
+
+        try {
+            for (int i = 0; i < series.length; i++) {
+                fillSeries(series[i], i, data, sheet, numericCategories);
+            }
+        } catch (XmlException e) {
+            throw new IOException("Failed to build chart cache for {" + CHART_PREFIX + key + "}", e);
+        }
+        writeWorkbook(chart, sheet, data, numericCategories);
+        log.debug("Filled chart {} with {} series x {} points", key, series.length, data.categories().size());
+    }
+
+    /**
+     * Xóa series thừa từ cuối, hoặc nhân bản series cuối cho đủ số series của data
+     */
+    private static XmlObject[] resizeSeries(CTPlotArea plotArea, XmlObject[] existing, int wanted) {
+        if (existing.length == wanted) {
+            return existing;
+        }
+        if (existing.length > wanted) {
+            for (int i = existing.length - 1; i >= wanted; i--) {
+                try (XmlCursor cursor = existing[i].newCursor()) {
+                    cursor.removeXml();
+                }
+            }
+            return Arrays.copyOf(existing, wanted);
+        }
+
+        long nextIdx = 0;
+        long nextOrder = 0;
+        for (XmlObject ser : existing) {
+            nextIdx = Math.max(nextIdx, unsignedValue(ser, "idx") + 1);
+            nextOrder = Math.max(nextOrder, unsignedValue(ser, "order") + 1);
+        }
+        XmlObject last = existing[existing.length - 1];
+        for (int i = existing.length; i < wanted; i++) {
+            // Chèn ngay sau series cuối để giữ đúng thứ tự phần tử của nhóm chart
+            try (XmlCursor source = last.newCursor(); XmlCursor target = last.newCursor()) {
+                target.toEndToken();
+                target.toNextToken();
+                source.copyXml(target);
+            }
+        }
+        XmlObject[] series = plotArea.selectPath(DECLARE + "./*/c:ser");
+        for (int i = existing.length; i < series.length; i++) {
+            XmlObject copy = series[i];
+            setUnsignedValue(copy, "idx", nextIdx++);
+            setUnsignedValue(copy, "order", nextOrder++);
+            // Bỏ màu, điểm tô riêng và extLst (chứa id duy nhất của series gốc)
+            removeChildren(copy, "spPr");
+            removeChildren(copy, "dPt");
+            removeChildren(copy, "extLst");
+        }
+        return series;
+    }
+
+    private static void fillSeries(XmlObject ser, int index, ChartData data, String sheet, boolean numericCategories)
+            throws XmlException {
+        ChartData.Series series = data.series().get(index);
+        int points = data.categories().size();
+        String column = CellReference.convertNumToColString(index + 1);
+        String sheetRef = SheetNameFormatter.format(sheet) + "!";
+
+        CTSerTx tx = (CTSerTx) child(ser, "tx");
+        if (tx != null) {
+            if (tx.isSetV()) {
+                tx.unsetV();
+            }
+            CTStrRef strRef = tx.isSetStrRef() ? tx.getStrRef() : tx.addNewStrRef();
+            strRef.setF(sheetRef + "$" + column + "$1");
+            strRef.setStrCache(parseStrCache(List.of(series.name())));
+        }
+
+        XmlObject categoryNode = child(ser, "cat");
+        if (categoryNode == null) {
+            categoryNode = child(ser, "xVal");
+        }
+        if (categoryNode instanceof CTAxDataSource categories) {
+            clearDataSource(categories);
+            String range = sheetRef + "$A$2:$A$" + (points + 1);
+            if (numericCategories) {
+                CTNumRef numRef = categories.addNewNumRef();
+                numRef.setF(range);
+                List<Double> values = new ArrayList<>(points);
+                for (String category : data.categories()) {
+                    values.add(Double.parseDouble(category.trim()));
+                }
+                numRef.setNumCache(parseNumCache(values, "General"));
+            } else {
+                CTStrRef strRef = categories.addNewStrRef();
+                strRef.setF(range);
+                strRef.setStrCache(parseStrCache(data.categories()));
+            }
+        }
+
+        XmlObject valueNode = child(ser, "val");
+        if (valueNode == null) {
+            valueNode = child(ser, "yVal");
+        }
+        if (!(valueNode instanceof CTNumDataSource values)) {
+            throw new IllegalArgumentException("Chart series " + (index + 1) + " has no numeric values to fill");
+        }
+        String formatCode = "General";
+        if (values.isSetNumRef() && values.getNumRef().isSetNumCache()
+                && values.getNumRef().getNumCache().getFormatCode() != null) {
+            formatCode = values.getNumRef().getNumCache().getFormatCode();
+        }
+        if (values.isSetNumLit()) {
+            values.unsetNumLit();
+        }
+        CTNumRef numRef = values.isSetNumRef() ? values.getNumRef() : values.addNewNumRef();
+        numRef.setF(sheetRef + "$" + column + "$2:$" + column + "$" + (points + 1));
+        numRef.setNumCache(parseNumCache(series.values(), formatCode));
+    }
+
+    private static void clearDataSource(CTAxDataSource source) {
+        if (source.isSetMultiLvlStrRef()) {
+            source.unsetMultiLvlStrRef();
+        }
+        if (source.isSetNumRef()) {
+            source.unsetNumRef();
+        }
+        if (source.isSetNumLit()) {
+            source.unsetNumLit();
+        }
+        if (source.isSetStrRef()) {
+            source.unsetStrRef();
+        }
+        if (source.isSetStrLit()) {
+            source.unsetStrLit();
+        }
+    }
+
+    private static CTStrData parseStrCache(List<String> values) throws XmlException {
+        StringBuilder xml = new StringBuilder(64 + values.size() * 24);
+        xml.append(FRAGMENT_START).append("<c:ptCount val=\"")
+                .append(values.size()).append("\"/>");
+        for (int i = 0; i < values.size(); i++) {
+            xml.append("<c:pt idx=\"").append(i).append("\"><c:v>");
+            escape(values.get(i), xml);
+            xml.append("</c:v></c:pt>");
+        }
+        return CTStrData.Factory.parse(xml.append(FRAGMENT_END).toString());
+    }
+
+    /**
+     * Điểm null không có phần tử c:pt (điểm trống)
+     */
+    private static CTNumData parseNumCache(List<Double> values, String formatCode) throws XmlException {
+        StringBuilder xml = new StringBuilder(96 + values.size() * 32);
+        xml.append(FRAGMENT_START).append("<c:formatCode>");
+        escape(formatCode, xml);
+        xml.append("</c:formatCode><c:ptCount val=\"").append(values.size()).append("\"/>");
+        for (int i = 0; i < values.size(); i++) {
+            Double value = values.get(i);
+            if (value != null) {
+                xml.append("<c:pt idx=\"").append(i).append("\"><c:v>").append(number(value)).append("</c:v></c:pt>");
+            }
+        }
+        return CTNumData.Factory.parse(xml.append(FRAGMENT_END).toString());
+    }
+
+    /**
+     * Thay workbook nhúng (c:externalData) bằng workbook mới: A1 trống, tên series ở dòng 1,
+     * category ở cột A và giá trị mỗi series một cột, khớp với công thức đã ghi trong chart.
+     * Chỉ ghi một sheet, ô không có style (nội dung khác của workbook cũ không được giữ)
+     */
+    private static void writeWorkbook(XSLFChart chart, String sheetName, ChartData data, boolean numericCategories)
+            throws IOException {
+        CTChartSpace chartSpace = chart.getCTChartSpace();
+        if (!chartSpace.isSetExternalData()) {
+            return;
+        }
+        PackagePart chartPart = chart.getPackagePart();
+        PackageRelationship relationship = chartPart.getRelationship(chartSpace.getExternalData().getId());
+        if (relationship == null || relationship.getTargetMode() == TargetMode.EXTERNAL) {
+            return;
+        }
+        PackagePart embedded;
+        try {
+            embedded = chartPart.getRelatedPart(relationship);
+        } catch (InvalidFormatException e) {
+            throw new IOException("Invalid embedded workbook of chart " + chartPart.getPartName(), e);
+        }
+        if (embedded == null || !XLSX_CONTENT_TYPE.equals(embedded.getContentType())) {
+            log.debug("Chart {} has no embedded .xlsx, only the chart cache is updated", chartPart.getPartName());
+            return;
+        }
+
+        SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_WINDOW);
+        try (OutputStream out = embedded.getOutputStream()) {
+            Sheet sheet = workbook.createSheet(sheetName);
+            Row header = sheet.createRow(0);
+            for (int s = 0; s < data.series().size(); s++) {
+                header.createCell(s + 1).setCellValue(data.series().get(s).name());
+            }
+            for (int r = 0; r < data.categories().size(); r++) {
+                Row row = sheet.createRow(r + 1);
+                String category = data.categories().get(r);
+                if (numericCategories) {
+                    row.createCell(0).setCellValue(Double.parseDouble(category.trim()));
+                } else {
+                    row.createCell(0).setCellValue(category);
+                }
+                for (int s = 0; s < data.series().size(); s++) {
+                    Double value = data.series().get(s).values().get(r);
+                    if (value != null) {
+                        row.createCell(s + 1).setCellValue(value);
+                    }
+                }
+            }
+            workbook.write(out);
+        } finally {
+            workbook.dispose();
+            workbook.close();
+        }
+    }
+
+    /**
+     * Tên sheet trong công thức giá trị của series đầu tiên, ví dụ 'Sales data'!$B$2:$B$5
+     */
+    private static String sheetName(XmlObject ser) {
+        XmlObject valueNode = child(ser, "val");
+        if (valueNode == null) {
+            valueNode = child(ser, "yVal");
+        }
+        if (valueNode instanceof CTNumDataSource values && values.isSetNumRef()) {
+            String formula = values.getNumRef().getF();
+            int bang = formula == null ? -1 : formula.lastIndexOf('!');
+            if (bang > 0) {
+                String name = formula.substring(0, bang);
+                if (name.length() > 1 && name.startsWith("'") && name.endsWith("'")) {
+                    name = name.substring(1, name.length() - 1).replace("''", "'");
+                }
+                return name;
+            }
+        }
+        return DEFAULT_SHEET;
+    }
+
+    private static boolean hasNumericCategories(XmlObject ser) {
+        XmlObject categoryNode = child(ser, "cat");
+        if (categoryNode == null) {
+            categoryNode = child(ser, "xVal");
+        }
+        return categoryNode instanceof CTAxDataSource categories && (categories.isSetNumRef() || categories.isSetNumLit());
+    }
+
+    /**
+     * Category "NaN", "Infinity" được ghi như text: chúng không phải giá trị hợp lệ của trục số
+     */
+    private static boolean allNumeric(List<String> values) {
+        for (String value : values) {
+            try {
+                if (!Double.isFinite(Double.parseDouble(value.trim()))) {
+                    return false;
+                }
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static XmlObject child(XmlObject parent, String name) {
+        XmlObject[] children = parent.selectPath(DECLARE + "./c:" + name);
+        return children.length == 0 ? null : children[0];
+    }
+
+    private static void removeChildren(XmlObject parent, String name) {
+        for (XmlObject child : parent.selectPath(DECLARE + "./c:" + name)) {
+            try (XmlCursor cursor = child.newCursor()) {
+                cursor.removeXml();
+            }
+        }
+    }
+
+    private static long unsignedValue(XmlObject ser, String name) {
+        return child(ser, name) instanceof CTUnsignedInt value ? value.getVal() : 0;
+    }
+
+    private static void setUnsignedValue(XmlObject ser, String name, long value) {
+        if (child(ser, name) instanceof CTUnsignedInt element) {
+            element.setVal(value);
+        }
+    }
+
+    private static String number(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private static void escape(String text, StringBuilder out) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&' -> out.append("&amp;");
+                case '<' -> out.append("&lt;");
+                case '>' -> out.append("&gt;");
+                default -> out.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package exe2.slideapp.demopoi.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data cho một chart có {CHART:key} trong tên hoặc alt text, ví dụ:
+ * {"categories":["Q1","Q2"],"series":[{"name":"2024","values":[1.5,2]},{"name":"2025","values":[3,null]}]}
+ * Giá trị null là điểm trống. Text chứa ký tự không hợp lệ trong XML (ký tự điều khiển) và số NaN/vô cực
+ * bị từ chối ngay khi parse thay vì làm hỏng XML của chart lúc render
+ */
+public record ChartData(List<String> categories, List<Series> series) {
+
+    public record Series(String name, List<Double> values) {
+    }
+
+    /**
+     * Object JSON có mảng "series" được coi là data của chart
+     */
+    static boolean isChartData(JsonNode value) {
+        return value.isObject() && value.path("series").isArray();
+    }
+
+    static ChartData parse(String key, JsonNode value) {
+        JsonNode categoriesNode = value.path("categories");
+        if (!categoriesNode.isArray() || categoriesNode.isEmpty()) {
+            throw new IllegalArgumentException("Chart '" + key + "' needs a non-empty categories array");
+        }
+        List<String> categories = new ArrayList<>(categoriesNode.size());
+        for (JsonNode category : categoriesNode) {
+            categories.add(category.isNull() ? "" : text(key, category.asText()));
+        }
+
+        JsonNode seriesNode = value.path("series");
+        if (seriesNode.isEmpty()) {
+            throw new IllegalArgumentException("Chart '" + key + "' needs at least one series");
+        }
+        List<Series> series = new ArrayList<>(seriesNode.size());
+        for (JsonNode item : seriesNode) {
+            JsonNode valuesNode = item.path("values");
+            if (!valuesNode.isArray() || valuesNode.size() != categories.size()) {
+                throw new IllegalArgumentException("Each series of chart '" + key + "' needs a values array with "
+                        + categories.size() + " entries (one per category)");
+            }
+            List<Double> values = new ArrayList<>(valuesNode.size());
+            for (JsonNode point : valuesNode) {
+                if (point.isNull()) {
+                    values.add(null);
+                } else if (point.isNumber()) {
+                    // Số quá lớn cho double thành vô cực
+                    if (!Double.isFinite(point.asDouble())) {
+                        throw new IllegalArgumentException("Values of chart '" + key + "' must be finite numbers, got "
+                                + point.asText());
+                    }
+                    values.add(point.asDouble());
+                } else {
+                    throw new IllegalArgumentException("Values of chart '" + key + "' must be numbers or null");
+                }
+            }
+            String name = item.path("name").isMissingNode() || item.path("name").isNull()
+                    ? "Series " + (series.size() + 1)
+                    : text(key, item.path("name").asText());
+            series.add(new Series(name, values));
+        }
+        return new ChartData(categories, series);
+    }
+
+    /**
+     * Từ chối ký tự XML 1.0 không cho phép (ký tự điều khiển trừ tab và xuống dòng, U+FFFE, U+FFFF,
+     * surrogate lẻ): chart cache và workbook nhúng không ghi được chúng
+     */
+    private static String text(String key, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            boolean valid;
+            if (Character.isHighSurrogate(c)) {
+                valid = i + 1 < value.length() && Character.isLowSurrogate(value.charAt(++i));
+            } else if (c < 0x20) {
+                valid = c == '\t' || c == '\n' || c == '\r';
+            } else {
+                valid = c < 0xFFFE && !Character.isLowSurrogate(c);
+            }
+            if (!valid) {
+                throw new IllegalArgumentException(String.format(
+                        "Chart '%s' contains a character that is not allowed in XML (U+%04X)", key, (int) c));
+            }
+        }
+        return value;
+    }
+}
@@ -0,0 +1,58 @@
+package exe2.slideapp.demopoi.service;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * Cách nén deck đầu ra: XML và các part khác được deflate theo level,
+ * media đã nén sẵn (ảnh, audio, video) được ghi STORED vì deflate lại gần như không giảm kích thước
+ */
+public record CompressionPolicy(Level level, boolean storeMedia, Set<String> storedExtensions) {
+
+    public static final Set<String> DEFAULT_STORED_EXTENSIONS =
+            Set.of("png", "jpg", "jpeg", "gif", "wdp", "mp3", "m4a", "mp4", "m4v", "mov", "wmv");
+
+    public static final CompressionPolicy DEFAULT = new CompressionPolicy(Level.DEFAULT, true, DEFAULT_STORED_EXTENSIONS);
+
+    /**
+     * Mức deflate cho các part không được lưu STORED
+     */
+    public enum Level {
+        FAST(Deflater.BEST_SPEED),
+        DEFAULT(Deflater.DEFAULT_COMPRESSION),
+        MAX(Deflater.BEST_COMPRESSION);
+
+        private final int deflaterLevel;
+
+        Level(int deflaterLevel) {
+            this.deflaterLevel = deflaterLevel;
+        }
+
+        public int getDeflaterLevel() {
+            return deflaterLevel;
+        }
+
+        public static Level fromParameter(String value) {
+            if (value == null || value.isBlank()) {
+                return DEFAULT;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown compression level: " + value + " (expected fast, default or max)");
+            }
+        }
+    }
+
+    /**
+     * Entry có được ghi STORED không, theo phần mở rộng của tên
+     */
+    boolean stores(String entryName) {
+        if (!storeMedia) {
+            return false;
+        }
+        int dot = entryName.lastIndexOf('.');
+        return dot >= 0 && storedExtensions.contains(entryName.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,311 @@
+package exe2.slideapp.demopoi.service;
+
+import exe2.slideapp.demopoi.config.ComposeProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ghép một deck từ danh sách section có thứ tự (template + data), ví dụ bìa, các phần theo vùng, phụ lục.
+ * <ol>
+ *   <li>Các section được render song song như một request /process-template bình thường</li>
+ *   <li>Deck của section đầu là deck đích. Master của mỗi template khác nhau được chép vào đó một lần</li>
+ *   <li>Slide của các section sau được chép vào cuối deck đích theo layout tương ứng</li>
+ * </ol>
+ * Việc ghép làm trên part của package (PackageMerger) nên master, layout, theme, ảnh trùng nội dung
+ * chỉ được lưu một lần và thời gian ghép không phụ thuộc vào số layout của mỗi template.
+ * Deck của section được render ra file tạm. Bộ nhớ cho việc ghép chỉ được giữ chỗ khi mọi section
+ * đã render xong (render của section tự chờ permit riêng), một lần cho trường hợp xấu nhất, rồi trả
+ * dần sau mỗi bước ghép: trong lúc giữ permit không bao giờ chờ thêm ngân sách
+ */
+@Service
+@Slf4j
+public class DeckComposer {
+
+    // Deck trung gian được đọc lại ngay nên chỉ nén nhanh
+    private static final CompressionPolicy SECTION_COMPRESSION = new CompressionPolicy(
+            CompressionPolicy.Level.FAST, true, CompressionPolicy.DEFAULT_STORED_EXTENSIONS);
+
+    /**
+     * Một section của deck ghép
+     */
+    public record Section(byte[] template, TemplateData data) {
+    }
+
+    private final PowerPointService powerPointService;
+    private final MemoryAdmission memoryAdmission;
+    private final ScratchSpace scratchSpace;
+    private final ComposeProperties properties;
+    private final ExecutorService executor;
+
+    public DeckComposer(PowerPointService powerPointService, MemoryAdmission memoryAdmission,
+                        ScratchSpace scratchSpace, ComposeProperties properties) {
+        this.powerPointService = powerPointService;
+        this.memoryAdmission = memoryAdmission;
+        this.scratchSpace = scratchSpace;
+        this.properties = properties;
+        int parallelism = properties.getParallelism() > 0
+                ? properties.getParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "compose-render-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Kiểm tra số section trước khi bắt đầu stream response
+     */
+    public void validate(List<Section> sections) {
+        if (sections.isEmpty()) {
+            throw new IllegalArgumentException("Composition must contain at least one section");
+        }
+        if (sections.size() > properties.getMaxSections()) {
+            throw new IllegalArgumentException("Composition contains " + sections.size()
+                    + " sections, maximum is " + properties.getMaxSections());
+        }
+    }
+
+    /**
+     * Render các section và ghép thành một deck chưa ghi. Người gọi ghi deck rồi close() như RenderedDeck
+     * của PowerPointService.renderDeck
+     */
+    public RenderedDeck compose(List<Section> sections, Map<String, MultipartFile> images, RenderEngine engine)
+            throws IOException {
+        validate(sections);
+        long start = System.nanoTime();
+        SectionFiles files = new SectionFiles();
+        List<Future<ScratchFile>> rendered = new ArrayList<>(sections.size());
+        for (Section section : sections) {
+            rendered.add(executor.submit(() -> renderSection(section, images, engine, files)));
+        }
+
+        // Template dùng cho nhiều section (thường cùng một mảng byte) chỉ được hash và ghép master một lần
+        Map<byte[], String> digests = new IdentityHashMap<>();
+        List<String> sectionTemplates = new ArrayList<>(sections.size());
+        for (Section section : sections) {
+            sectionTemplates.add(digests.computeIfAbsent(section.template(), DeckComposer::sha256));
+        }
+
+        MemoryAdmission.Permit permit = null;
+        OPCPackage target = null;
+        try {
+            List<ScratchFile> decks = new ArrayList<>(sections.size());
+            for (Future<ScratchFile> section : rendered) {
+                decks.add(await(section));
+            }
+            long renderNanos = System.nanoTime() - start;
+
+            // Mỗi bước ghép cần tối đa bấy nhiêu: deck đích (bản nén và các part), master của template mới,
+            // mọi part của deck section
+            long[] templateNeeds = new long[sections.size()];
+            long[] sectionNeeds = new long[sections.size()];
+            Set<String> seen = new HashSet<>();
+            long remaining = 0;
+            for (int i = 0; i < sections.size(); i++) {
+                if (seen.add(sectionTemplates.get(i))) {
+                    templateNeeds[i] = memoryAdmission.estimatePackage(sections.get(i).template());
+                }
+                sectionNeeds[i] = memoryAdmission.estimatePackage(decks.get(i).getPath())
+                        + (i == 0 ? Files.size(decks.get(0).getPath()) : 0);
+                remaining += templateNeeds[i] + sectionNeeds[i];
+            }
+            // Chờ ngân sách một lần, khi chưa giữ gì
+            permit = memoryAdmission.admit(Math.min(remaining, memoryAdmission.getBudgetBytes()));
+
+            Map<String, Map<String, String>> layoutMaps = new HashMap<>();
+            PackageMerger merger = null;
+            long kept = 0;
+            for (int i = 0; i < sections.size(); i++) {
+                String digest = sectionTemplates.get(i);
+                long need = templateNeeds[i] + sectionNeeds[i];
+                permit.growTo(kept + need);
+                try (ScratchFile deck = decks.get(i)) {
+                    if (merger == null) {
+                        target = open(Files.readAllBytes(deck.getPath()));
+                        OPCPackage base = open(sections.get(0).template());
+                        try {
+                            merger = new PackageMerger(target, base);
+                            layoutMaps.put(digest, merger.importTemplate(base));
+                        } finally {
+                            base.revert();
+                        }
+                        kept = sectionNeeds[0] + merger.getCopiedBytes();
+                    } else {
+                        long before = merger.getCopiedBytes();
+                        if (!layoutMaps.containsKey(digest)) {
+                            OPCPackage pkg = open(sections.get(i).template());
+                            try {
+                                layoutMaps.put(digest, merger.importTemplate(pkg));
+                            } finally {
+                                pkg.revert();
+                            }
+                        }
+                        OPCPackage section = PackageMerger.openSection(deck.getPath());
+                        try {
+                            merger.importSlides(section, layoutMaps.get(digest));
+                        } finally {
+                            section.revert();
+                        }
+                        kept += merger.getCopiedBytes() - before;
+                    }
+                }
+                // Trả lại phần không được chép (master, ảnh trùng...) nhưng vẫn đủ cho các bước sau
+                remaining -= need;
+                permit.shrinkTo(kept + remaining);
+            }
+            merger.finish();
+
+            log.info("Composed {} sections from {} templates (waited {} ms for renders, total {} ms, {} KB reserved): "
+                            + "{} slides imported, masters imported {} reused {}, shared parts imported {} reused {}",
+                    sections.size(), layoutMaps.size(), renderNanos / 1_000_000,
+                    (System.nanoTime() - start) / 1_000_000, permit.getBytes() / 1024, merger.getImportedSlides(),
+                    merger.getImportedMasters(), merger.getReusedMasters(), merger.getImportedParts(),
+                    merger.getReusedParts());
+            return new ComposedDeck(target, permit, scratchSpace);
+        } catch (IOException | RuntimeException e) {
+            if (target != null) {
+                target.revert();
+            }
+            if (permit != null) {
+                permit.close();
+            }
+            throw e;
+        } finally {
+            // Lỗi ở một section: hủy các section chưa render, deck của section đang render bị xóa khi xong
+            rendered.forEach(f -> f.cancel(true));
+            files.closeAll();
+        }
+    }
+
+    /**
+     * Render section ra file tạm để deck đã xong không nằm trong heap trong lúc chờ các section trước
+     */
+    private ScratchFile renderSection(Section section, Map<String, MultipartFile> images, RenderEngine engine,
+                                      SectionFiles files) throws Exception {
+        ScratchFile deck = scratchSpace.create("compose-section", ".pptx");
+        try {
+            try (OutputStream out = deck.openOutputStream()) {
+                powerPointService.render(section.template(), section.data(), images, engine, SECTION_COMPRESSION, out);
+            }
+            files.add(deck);
+            return deck;
+        } catch (Exception e) {
+            deck.close();
+            throw e;
+        }
+    }
+
+    private static OPCPackage open(byte[] deck) throws IOException {
+        try {
+            return OPCPackage.open(new ByteArrayInputStream(deck));
+        } catch (InvalidFormatException e) {
+            throw new IllegalArgumentException("Section template is not a valid .pptx file", e);
+        }
+    }
+
+    private static ScratchFile await(Future<ScratchFile> section) throws IOException {
+        try {
+            return section.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Composition interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException("Section rendering failed", e.getCause());
+        }
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Deck đã render của các section. Section chỉ được thêm khi render xong, nên file không bị xóa
+     * trong lúc đang ghi; section xong sau closeAll tự xóa deck của nó
+     */
+    private static final class SectionFiles {
+        private final List<ScratchFile> files = new ArrayList<>();
+        private boolean closed;
+
+        synchronized void add(ScratchFile file) {
+            if (closed) {
+                file.close();
+                throw new CancellationException("Composition already finished");
+            }
+            files.add(file);
+        }
+
+        synchronized void closeAll() {
+            closed = true;
+            files.forEach(ScratchFile::close);
+            files.clear();
+        }
+    }
+
+    /**
+     * Deck ghép được ghi thẳng từ package, không cần parse lại bằng XMLSlideShow
+     */
+    private static final class ComposedDeck implements RenderedDeck {
+        private final OPCPackage pkg;
+        private final MemoryAdmission.Permit permit;
+        private final ScratchSpace scratchSpace;
+
+        ComposedDeck(OPCPackage pkg, MemoryAdmission.Permit permit, ScratchSpace scratchSpace) {
+            this.pkg = pkg;
+            this.permit = permit;
+            this.scratchSpace = scratchSpace;
+        }
+
+        @Override
+        public void write(OutputStream out, CompressionPolicy compression) throws IOException {
+            DeckZipOutputStream zip = new DeckZipOutputStream(out, compression, scratchSpace);
+            try {
+                pkg.save(zip);
+                // POI chỉ finish, không close stream của người gọi
+                zip.flush();
+            } finally {
+                zip.discardSpool();
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                pkg.revert();
+            } finally {
+                permit.close();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,47 @@
+package exe2.slideapp.demopoi.service;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.poi.xslf.usermodel.XMLSlideShow;
+import org.apache.poi.xslf.usermodel.XSLFPictureData;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Cache picture part trong phạm vi một deck: ảnh cùng nội dung (SHA-256) chỉ lưu một part
+ * và được tham chiếu từ mọi slide dùng nó
+ */
+class DeckPictureCache {
+
+    private final XMLSlideShow ppt;
+    private final Map<ImageOptimizer.PreparedImage, XSLFPictureData> byImage = new IdentityHashMap<>();
+    private final Map<String, XSLFPictureData> byHash = new HashMap<>();
+    private long embeddedBytes;
+
+    DeckPictureCache(XMLSlideShow ppt) {
+        this.ppt = ppt;
+    }
+
+    XSLFPictureData get(ImageOptimizer.PreparedImage image) {
+        XSLFPictureData cached = byImage.get(image);
+        if (cached != null) {
+            return cached;
+        }
+
+        XSLFPictureData pictureData = byHash.computeIfAbsent(DigestUtils.sha256Hex(image.data()),
+                hash -> {
+                    embeddedBytes += image.data().length;
+                    return ppt.addPicture(image.data(), image.type());
+                });
+        byImage.put(image, pictureData);
+        return pictureData;
+    }
+
+    /**
+     * Tổng số byte của các picture part đã thêm vào deck
+     */
+    long getEmbeddedBytes() {
+        return embeddedBytes;
+    }
+}
@@ -0,0 +1,153 @@
+package exe2.slideapp.demopoi.service;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+
+/**
+ * ZipArchiveOutputStream áp dụng CompressionPolicy. POI (ZipPackage) dùng luôn stream này
+ * khi được truyền vào XMLSlideShow.write, nên mọi part của deck đi qua putArchiveEntry ở đây.
+ * <p>
+ * Entry STORED ghi ra stream không seek được phải có sẵn size và CRC trong local header,
+ * nên nội dung của entry media được đệm lại rồi mới ghi: tối đa SPOOL_THRESHOLD trong heap
+ * (buffer dùng lại giữa các entry), phần lớn hơn được chuyển ra file tạm của ScratchSpace.
+ * Entry copy thô (addRawArchiveEntry) giữ nguyên cách nén của template
+ */
+class DeckZipOutputStream extends ZipArchiveOutputStream {
+
+    static final int SPOOL_THRESHOLD = 1024 * 1024;
+
+    private final CompressionPolicy policy;
+    private final ScratchSpace scratchSpace;
+    private final Buffer stored = new Buffer();
+    private final CRC32 crc = new CRC32();
+    private ZipArchiveEntry pendingStored;
+    private ScratchFile spool;
+    private OutputStream spoolOut;
+
+    /**
+     * @param scratchSpace nơi đệm entry STORED lớn; null khi không có part media nào được ghi qua
+     *                     putArchiveEntry (engine streaming copy media dạng thô), khi đó chỉ đệm trong heap
+     */
+    DeckZipOutputStream(OutputStream out, CompressionPolicy policy, ScratchSpace scratchSpace) {
+        super(out);
+        this.policy = policy;
+        this.scratchSpace = scratchSpace;
+        setLevel(policy.level().getDeflaterLevel());
+    }
+
+    @Override
+    public void putArchiveEntry(ZipArchiveEntry entry) throws IOException {
+        if (entry.getMethod() != ZipArchiveEntry.STORED && policy.stores(entry.getName())) {
+            if (isSeekable()) {
+                entry.setMethod(ZipArchiveEntry.STORED);
+            } else {
+                pendingStored = entry;
+                stored.reset();
+                crc.reset();
+                return;
+            }
+        }
+        super.putArchiveEntry(entry);
+    }
+
+    @Override
+    public void write(byte[] b, int offset, int length) throws IOException {
+        if (pendingStored == null) {
+            super.write(b, offset, length);
+            return;
+        }
+        crc.update(b, offset, length);
+        if (spoolOut == null && scratchSpace != null && stored.size() + length > SPOOL_THRESHOLD) {
+            spool = scratchSpace.create("deck-entry", ".bin");
+            spoolOut = spool.openOutputStream();
+            stored.writeTo(spoolOut);
+            stored.reset();
+        }
+        if (spoolOut != null) {
+            spoolOut.write(b, offset, length);
+        } else {
+            stored.write(b, offset, length);
+        }
+    }
+
+    @Override
+    public void closeArchiveEntry() throws IOException {
+        if (pendingStored == null) {
+            super.closeArchiveEntry();
+            return;
+        }
+        ZipArchiveEntry entry = pendingStored;
+        pendingStored = null;
+        try {
+            entry.setMethod(ZipArchiveEntry.STORED);
+            entry.setCrc(crc.getValue());
+            if (spoolOut == null) {
+                entry.setSize(stored.size());
+                super.putArchiveEntry(entry);
+                super.write(stored.array(), 0, stored.size());
+            } else {
+                spoolOut.close();
+                spoolOut = null;
+                entry.setSize(spool.size());
+                super.putArchiveEntry(entry);
+                try (InputStream in = spool.openInputStream()) {
+                    byte[] chunk = stored.array();
+                    int read;
+                    while ((read = in.read(chunk)) > 0) {
+                        super.write(chunk, 0, read);
+                    }
+                }
+            }
+            super.closeArchiveEntry();
+        } finally {
+            discardSpool();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            discardSpool();
+        }
+    }
+
+    /**
+     * Xóa file đệm của entry đang ghi dở. Người gọi không close stream (để không đóng stream bên dưới)
+     * phải gọi hàm này khi ghi lỗi giữa chừng
+     */
+    void discardSpool() throws IOException {
+        if (spool == null) {
+            return;
+        }
+        try {
+            if (spoolOut != null) {
+                spoolOut.close();
+            }
+        } finally {
+            spoolOut = null;
+            spool.close();
+            spool = null;
+        }
+    }
+
+    /**
+     * ByteArrayOutputStream cho đọc thẳng mảng bên trong, không copy
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(64 * 1024);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+}
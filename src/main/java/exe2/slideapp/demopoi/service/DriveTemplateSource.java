@@ -0,0 +1,319 @@
+package exe2.slideapp.demopoi.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.DriveScopes;
+import com.google.api.services.drive.model.File;
+import com.google.auth.http.HttpCredentialsAdapter;
+import com.google.auth.oauth2.GoogleCredentials;
+import exe2.slideapp.demopoi.config.DriveProperties;
+import exe2.slideapp.demopoi.exception.ResourceNotFoundException;
+import exe2.slideapp.demopoi.exception.TemplateTooLargeException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+
+/**
+ * Đọc template từ Google Drive theo file ID, có cache trên đĩa local.
+ * Bản cache được kiểm tra lại với md5Checksum (hoặc modifiedTime với file Google Slides)
+ * và chỉ tải lại khi file trên Drive đã thay đổi. Các request cùng file ID đang chờ Drive
+ * dùng chung một lần gọi.
+ */
+@Service
+@Slf4j
+public class DriveTemplateSource {
+
+    static final String GOOGLE_SLIDES_MIME_TYPE = "application/vnd.google-apps.presentation";
+    static final String PPTX_MIME_TYPE = "application/vnd.openxmlformats-officedocument.presentationml.presentation";
+    private static final String METADATA_FIELDS = "id,name,mimeType,md5Checksum,modifiedTime,size";
+    private static final Pattern FILE_ID = Pattern.compile("[A-Za-z0-9_-]{1,200}");
+
+    private final DriveProperties properties;
+    private final ObjectMapper objectMapper;
+    private final Drive drive;
+    private final Path cacheDirectory;
+    private final Map<String, CachedFile> cache = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<CachedFile>> inFlight = new ConcurrentHashMap<>();
+
+    public DriveTemplateSource(DriveProperties properties, ObjectMapper objectMapper) throws IOException {
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.cacheDirectory = Paths.get(properties.getCacheDirectory());
+        if (!properties.isEnabled()) {
+            this.drive = null;
+            return;
+        }
+        this.drive = createClient(properties);
+        Files.createDirectories(cacheDirectory);
+        loadCacheIndex();
+    }
+
+    /**
+     * Template đọc từ Drive
+     */
+    public record Template(String name, byte[] content) {
+    }
+
+    /**
+     * Thông tin của bản cache, lưu cạnh file nội dung dưới dạng &lt;fileId&gt;.json
+     */
+    record CachedFile(String fileId, String name, String md5Checksum, String modifiedTime, long size,
+                      Instant validatedAt) {
+        CachedFile validated(Instant now) {
+            return new CachedFile(fileId, name, md5Checksum, modifiedTime, size, now);
+        }
+    }
+
+    public boolean isEnabled() {
+        return drive != null;
+    }
+
+    public Template load(String fileId) throws IOException {
+        if (!isEnabled()) {
+            throw new IllegalArgumentException("Google Drive templates are not enabled (ppt.drive.enabled)");
+        }
+        if (fileId == null || !FILE_ID.matcher(fileId).matches()) {
+            throw new IllegalArgumentException("Invalid Google Drive file ID: " + fileId);
+        }
+
+        CachedFile cached = cache.get(fileId);
+        if (cached == null || cached.validatedAt().plus(properties.getRevalidateAfter()).isBefore(Instant.now())) {
+            cached = refreshShared(fileId);
+        }
+        return new Template(cached.name(), Files.readAllBytes(contentPath(fileId)));
+    }
+
+    /**
+     * Chỉ một thread kiểm tra/tải mỗi file ID, các thread khác chờ kết quả của nó
+     */
+    private CachedFile refreshShared(String fileId) throws IOException {
+        CompletableFuture<CachedFile> own = new CompletableFuture<>();
+        CompletableFuture<CachedFile> existing = inFlight.putIfAbsent(fileId, own);
+        if (existing != null) {
+            try {
+                return existing.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for Drive file " + fileId, e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException io) {
+                    throw io;
+                }
+                if (e.getCause() instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+
+        try {
+            CachedFile result = refresh(fileId);
+            own.complete(result);
+            return result;
+        } catch (IOException | RuntimeException e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(fileId, own);
+        }
+    }
+
+    private CachedFile refresh(String fileId) throws IOException {
+        CachedFile cached = cache.get(fileId);
+        File metadata;
+        try {
+            metadata = drive.files().get(fileId)
+                    .setFields(METADATA_FIELDS)
+                    .setSupportsAllDrives(true)
+                    .execute();
+        } catch (GoogleJsonResponseException e) {
+            if (e.getStatusCode() == 404) {
+                throw new ResourceNotFoundException("Google Drive file not found: " + fileId);
+            }
+            throw e;
+        } catch (IOException e) {
+            if (cached != null) {
+                log.warn("Drive unavailable, using cached copy of {}: {}", fileId, e.getMessage());
+                return cached;
+            }
+            throw e;
+        }
+
+        if (cached != null && isSameRevision(cached, metadata)) {
+            log.debug("Drive file {} unchanged, using cached copy", fileId);
+            return saveIndex(cached.validated(Instant.now()));
+        }
+        return download(fileId, metadata);
+    }
+
+    private static boolean isSameRevision(CachedFile cached, File metadata) {
+        if (metadata.getMd5Checksum() != null) {
+            return metadata.getMd5Checksum().equals(cached.md5Checksum());
+        }
+        return metadata.getModifiedTime() != null
+                && metadata.getModifiedTime().toStringRfc3339().equals(cached.modifiedTime());
+    }
+
+    private CachedFile download(String fileId, File metadata) throws IOException {
+        long maxSize = properties.getMaxFileSize().toBytes();
+        if (metadata.getSize() != null && metadata.getSize() > maxSize) {
+            throw new TemplateTooLargeException("Drive file " + fileId + " is larger than the maximum of "
+                    + maxSize / (1024 * 1024) + " MB", metadata.getSize());
+        }
+
+        boolean googleSlides = GOOGLE_SLIDES_MIME_TYPE.equals(metadata.getMimeType());
+        Path partial = Files.createTempFile(cacheDirectory, fileId + "-", ".part");
+        try {
+            MessageDigest md5 = md5();
+            // Metadata không có size với file Google Slides (và có thể sai), nên giới hạn được kiểm tra
+            // trong lúc tải: vượt maxSize thì ngắt download ngay thay vì ghi hết rồi mới từ chối
+            try (OutputStream out = new BoundedOutputStream(
+                    new DigestOutputStream(Files.newOutputStream(partial), md5), fileId, maxSize)) {
+                if (googleSlides) {
+                    drive.files().export(fileId, PPTX_MIME_TYPE).executeMediaAndDownloadTo(out);
+                } else {
+                    drive.files().get(fileId).setSupportsAllDrives(true).executeMediaAndDownloadTo(out);
+                }
+            }
+            long size = Files.size(partial);
+            String checksum = HexFormat.of().formatHex(md5.digest());
+            if (metadata.getMd5Checksum() != null && !metadata.getMd5Checksum().equalsIgnoreCase(checksum)) {
+                throw new IOException("Checksum mismatch for Drive file " + fileId);
+            }
+            Files.move(partial, contentPath(fileId), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            String modifiedTime = metadata.getModifiedTime() != null ? metadata.getModifiedTime().toStringRfc3339() : null;
+            String name = metadata.getName() != null ? metadata.getName() : fileId;
+            if (googleSlides && !name.endsWith(".pptx")) {
+                name = name + ".pptx";
+            }
+            log.info("Downloaded Drive file {} ({}, {} bytes)", fileId, name, size);
+            return saveIndex(new CachedFile(fileId, name, metadata.getMd5Checksum(), modifiedTime, size, Instant.now()));
+        } finally {
+            Files.deleteIfExists(partial);
+        }
+    }
+
+    private CachedFile saveIndex(CachedFile file) throws IOException {
+        Path partial = cacheDirectory.resolve(file.fileId() + ".json.part");
+        objectMapper.writeValue(partial.toFile(), file);
+        Files.move(partial, cacheDirectory.resolve(file.fileId() + ".json"),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        cache.put(file.fileId(), file);
+        return file;
+    }
+
+    private void loadCacheIndex() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(cacheDirectory, "*.{json,part}")) {
+            for (Path file : files) {
+                if (file.toString().endsWith(".part")) {
+                    Files.deleteIfExists(file);
+                    continue;
+                }
+                try (InputStream in = Files.newInputStream(file)) {
+                    CachedFile cached = objectMapper.readValue(in, CachedFile.class);
+                    if (Files.exists(contentPath(cached.fileId()))) {
+                        cache.put(cached.fileId(), cached);
+                    }
+                } catch (IOException e) {
+                    log.warn("Skipping unreadable Drive cache entry {}: {}", file, e.getMessage());
+                }
+            }
+        }
+        log.info("Drive template cache has {} files in {}", cache.size(), cacheDirectory);
+    }
+
+    private Path contentPath(String fileId) {
+        return cacheDirectory.resolve(fileId + ".pptx");
+    }
+
+    private static Drive createClient(DriveProperties properties) throws IOException {
+        HttpCredentialsAdapter credentials = null;
+        if (properties.getCredentialsFile() != null && !properties.getCredentialsFile().isBlank()) {
+            try (InputStream in = Files.newInputStream(Paths.get(properties.getCredentialsFile()))) {
+                credentials = new HttpCredentialsAdapter(GoogleCredentials.fromStream(in)
+                        .createScoped(List.of(DriveScopes.DRIVE_READONLY)));
+            }
+        } else {
+            log.warn("ppt.drive.credentials-file is not set, Drive requests are sent without credentials");
+        }
+
+        HttpCredentialsAdapter auth = credentials;
+        int connectTimeout = (int) properties.getConnectTimeout().toMillis();
+        int readTimeout = (int) properties.getReadTimeout().toMillis();
+        HttpRequestInitializer initializer = request -> {
+            if (auth != null) {
+                auth.initialize(request);
+            }
+            request.setConnectTimeout(connectTimeout);
+            request.setReadTimeout(readTimeout);
+        };
+        return new Drive.Builder(new NetHttpTransport(), GsonFactory.getDefaultInstance(), initializer)
+                .setRootUrl(properties.getRootUrl())
+                .setApplicationName(properties.getApplicationName())
+                .build();
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Stream ghi ném TemplateTooLargeException ngay khi số byte vượt giới hạn
+     */
+    private static final class BoundedOutputStream extends FilterOutputStream {
+        private final String fileId;
+        private final long maxSize;
+        private long written;
+
+        BoundedOutputStream(OutputStream out, String fileId, long maxSize) {
+            super(out);
+            this.fileId = fileId;
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            account(1);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            account(len);
+            out.write(b, off, len);
+        }
+
+        private void account(int bytes) {
+            written += bytes;
+            if (written > maxSize) {
+                throw new TemplateTooLargeException("Drive file " + fileId + " is larger than the maximum of "
+                        + maxSize / (1024 * 1024) + " MB", written);
+            }
+        }
+    }
+}
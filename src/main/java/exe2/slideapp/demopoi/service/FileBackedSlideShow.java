@@ -0,0 +1,61 @@
+package exe2.slideapp.demopoi.service;
+
+import exe2.slideapp.demopoi.exception.InvalidFileFormatException;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.xslf.usermodel.XMLSlideShow;
+
+import java.io.IOException;
+
+/**
+ * XMLSlideShow mở từ file template đã spool, zip entry chỉ được đọc khi cần.
+ * Part không bị sửa (media lớn) được copy thẳng từ file khi ghi, không nằm trong heap.
+ * <p>
+ * Package phải mở READ_WRITE thì POI mới cho ghi ra stream, nhưng close() của POI sẽ ghi đè
+ * lại file nguồn, nên ở đây close() chỉ revert (bỏ thay đổi) và trả lại file spool
+ */
+class FileBackedSlideShow extends XMLSlideShow {
+
+    private final TemplatePool.Spool spool;
+    private boolean closed;
+
+    private FileBackedSlideShow(OPCPackage pkg, TemplatePool.Spool spool) {
+        super(pkg);
+        this.spool = spool;
+    }
+
+    /**
+     * Mở một bản mới từ file spool. Người gọi đã retain spool, bản này nhận tham chiếu đó
+     * và trả lại khi close() (hoặc ngay khi mở lỗi)
+     */
+    static FileBackedSlideShow open(TemplatePool.Spool spool) throws IOException {
+        OPCPackage pkg = null;
+        try {
+            pkg = OPCPackage.open(spool.getPath().toFile(), PackageAccess.READ_WRITE);
+            return new FileBackedSlideShow(pkg, spool);
+        } catch (InvalidFormatException e) {
+            spool.release();
+            throw new InvalidFileFormatException("Template is not a valid .pptx file: " + e.getMessage());
+        } catch (RuntimeException e) {
+            if (pkg != null) {
+                pkg.revert();
+            }
+            spool.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            getPackage().revert();
+        } finally {
+            spool.release();
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package exe2.slideapp.demopoi.service;
+
+import exe2.slideapp.demopoi.config.ImageProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.sl.usermodel.PictureData;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.*;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chuẩn bị ảnh trước khi chèn vào deck: resize về đúng kích thước placeholder theo DPI cấu hình,
+ * chuyển BMP/TIFF sang PNG/JPEG và nén lại. Các ảnh được xử lý song song.
+ */
+@Component
+@Slf4j
+public class ImageOptimizer {
+
+    private static final double POINTS_PER_INCH = 72.0;
+
+    private final ImageProperties properties;
+    private final ExecutorService executor;
+
+    public ImageOptimizer(ImageProperties properties) {
+        this.properties = properties;
+        int threads = properties.getParallelism() > 0
+                ? properties.getParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "image-optimizer-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Ảnh gốc cần chèn vào một khung có kích thước widthPt x heightPt (point)
+     */
+    public record ImageRequest(byte[] data, String filename, PictureData.PictureType fallbackType,
+                               double widthPt, double heightPt) {
+    }
+
+    /**
+     * Ảnh đã sẵn sàng để nhúng: width/height là kích thước pixel của data
+     */
+    public record PreparedImage(byte[] data, PictureData.PictureType type, int width, int height) {
+    }
+
+    /**
+     * Chuẩn bị toàn bộ ảnh, song song nếu bật optimize. Ảnh không đọc được sẽ không có trong kết quả
+     */
+    public <K> Map<K, PreparedImage> prepareAll(Map<K, ImageRequest> requests) throws InterruptedException {
+        Map<K, PreparedImage> result = new HashMap<>();
+        if (!properties.isOptimize() || requests.size() <= 1) {
+            for (Map.Entry<K, ImageRequest> entry : requests.entrySet()) {
+                putPrepared(result, entry.getKey(), entry.getValue());
+            }
+            return result;
+        }
+
+        Map<K, Future<PreparedImage>> futures = new LinkedHashMap<>();
+        for (Map.Entry<K, ImageRequest> entry : requests.entrySet()) {
+            futures.put(entry.getKey(), executor.submit(() -> prepareQuietly(entry.getValue())));
+        }
+        try {
+            for (Map.Entry<K, Future<PreparedImage>> entry : futures.entrySet()) {
+                PreparedImage prepared = entry.getValue().get();
+                if (prepared != null) {
+                    result.put(entry.getKey(), prepared);
+                }
+            }
+        } catch (ExecutionException e) {
+            // prepareQuietly đã nuốt mọi Exception, chỉ còn Error (ví dụ OutOfMemoryError khi giải mã ảnh quá lớn)
+            // lọt qua được; ném lại nguyên như ở nhánh tuần tự
+            throw (Error) e.getCause();
+        } finally {
+            futures.values().forEach(f -> f.cancel(true));
+        }
+        return result;
+    }
+
+    private <K> void putPrepared(Map<K, PreparedImage> result, K key, ImageRequest request) {
+        PreparedImage prepared = prepareQuietly(request);
+        if (prepared != null) {
+            result.put(key, prepared);
+        }
+    }
+
+    private PreparedImage prepareQuietly(ImageRequest request) {
+        try {
+            return prepare(request);
+        } catch (Exception e) {
+            log.error("Failed to prepare image '{}': {}", request.filename(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Chuẩn bị một ảnh. Trả về null nếu không đọc được kích thước
+     */
+    public PreparedImage prepare(ImageRequest request) throws IOException {
+        ImageProbe.ImageInfo info = ImageProbe.probe(request.data());
+        if (info == null || info.width() <= 0 || info.height() <= 0) {
+            return null;
+        }
+        PictureData.PictureType type = info.type() != null ? info.type() : request.fallbackType();
+        PreparedImage original = new PreparedImage(request.data(), type, info.width(), info.height());
+        if (!properties.isOptimize()) {
+            return original;
+        }
+
+        // Kích thước pixel cần thiết để hiển thị khung ở DPI đích
+        double targetWidth = request.widthPt() / POINTS_PER_INCH * properties.getDpi();
+        double targetHeight = request.heightPt() / POINTS_PER_INCH * properties.getDpi();
+        double scale = Math.min(1.0, Math.min(targetWidth / info.width(), targetHeight / info.height()));
+        boolean transcode = type == PictureData.PictureType.BMP || type == PictureData.PictureType.TIFF;
+
+        if (scale >= 1.0 && !transcode) {
+            return original;
+        }
+
+        int newWidth = Math.max(1, (int) Math.round(info.width() * scale));
+        int newHeight = Math.max(1, (int) Math.round(info.height() * scale));
+        BufferedImage source = decode(request.data(), scale);
+        if (source == null) {
+            return original;
+        }
+        BufferedImage resized = resize(source, newWidth, newHeight);
+
+        PictureData.PictureType outputType = outputType(type, resized.getColorModel().hasAlpha());
+        byte[] encoded = encode(resized, outputType);
+
+        // Không dùng kết quả nếu lớn hơn ảnh gốc (trừ khi bắt buộc phải transcode)
+        if (!transcode && encoded.length >= request.data().length) {
+            return original;
+        }
+        log.debug("Optimized image '{}': {}x{} {} ({} bytes) -> {}x{} {} ({} bytes)",
+                request.filename(), info.width(), info.height(), type, request.data().length,
+                newWidth, newHeight, outputType, encoded.length);
+        return new PreparedImage(encoded, outputType, newWidth, newHeight);
+    }
+
+    /**
+     * Decode với subsampling khi cần thu nhỏ nhiều, để không phải giữ toàn bộ pixel gốc trong heap
+     */
+    private BufferedImage decode(byte[] data, double scale) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(data))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                // Giữ lại gấp ~2 lần kích thước đích để bước resize bicubic vẫn mịn
+                int subsampling = Math.max(1, (int) (1.0 / scale) / 2);
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private BufferedImage resize(BufferedImage source, int width, int height) {
+        if (source.getWidth() == width && source.getHeight() == height) {
+            return source;
+        }
+        int imageType = source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage target = new BufferedImage(width, height, imageType);
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    private PictureData.PictureType outputType(PictureData.PictureType type, boolean hasAlpha) {
+        if (type == PictureData.PictureType.JPEG || type == PictureData.PictureType.PNG) {
+            return type;
+        }
+        return switch (properties.getTranscodeFormat().toLowerCase(Locale.ROOT)) {
+            case "png" -> PictureData.PictureType.PNG;
+            case "jpeg", "jpg" -> hasAlpha ? PictureData.PictureType.PNG : PictureData.PictureType.JPEG;
+            default -> hasAlpha || type == PictureData.PictureType.GIF
+                    ? PictureData.PictureType.PNG
+                    : PictureData.PictureType.JPEG;
+        };
+    }
+
+    private byte[] encode(BufferedImage image, PictureData.PictureType type) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (type != PictureData.PictureType.JPEG) {
+            ImageIO.write(image, "png", out);
+            return out.toByteArray();
+        }
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(properties.getJpegQuality());
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
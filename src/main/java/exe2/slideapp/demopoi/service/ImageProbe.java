@@ -0,0 +1,116 @@
+package exe2.slideapp.demopoi.service;
+
+import org.apache.poi.sl.usermodel.PictureData;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Đọc định dạng và kích thước ảnh chỉ từ header (PNG IHDR, JPEG SOF, GIF, BMP),
+ * không decode pixel. Định dạng khác dùng ImageReader chỉ đọc metadata.
+ */
+public final class ImageProbe {
+
+    private ImageProbe() {
+    }
+
+    /**
+     * Kết quả probe: type null nếu không nhận ra định dạng từ magic bytes
+     */
+    public record ImageInfo(PictureData.PictureType type, int width, int height) {
+    }
+
+    /**
+     * Trả về null nếu không đọc được kích thước
+     */
+    public static ImageInfo probe(byte[] data) throws IOException {
+        if (data.length >= 24 && (data[0] & 0xFF) == 0x89 && data[1] == 'P' && data[2] == 'N' && data[3] == 'G') {
+            // IHDR luôn là chunk đầu tiên: width/height big-endian tại offset 16 và 20
+            return new ImageInfo(PictureData.PictureType.PNG, readIntBE(data, 16), readIntBE(data, 20));
+        }
+        if (data.length >= 10 && data[0] == 'G' && data[1] == 'I' && data[2] == 'F') {
+            return new ImageInfo(PictureData.PictureType.GIF, readShortLE(data, 6), readShortLE(data, 8));
+        }
+        if (data.length >= 26 && data[0] == 'B' && data[1] == 'M') {
+            // BITMAPINFOHEADER: height âm nghĩa là ảnh top-down
+            return new ImageInfo(PictureData.PictureType.BMP, readIntLE(data, 18), Math.abs(readIntLE(data, 22)));
+        }
+        if (data.length >= 4 && (data[0] & 0xFF) == 0xFF && (data[1] & 0xFF) == 0xD8) {
+            ImageInfo jpeg = probeJpeg(data);
+            if (jpeg != null) {
+                return jpeg;
+            }
+        }
+        return probeWithImageReader(data);
+    }
+
+    /**
+     * Duyệt các marker JPEG tới SOFn (bỏ qua DHT C4, JPG C8, DAC CC)
+     */
+    private static ImageInfo probeJpeg(byte[] data) {
+        int pos = 2;
+        while (pos + 9 < data.length) {
+            if ((data[pos] & 0xFF) != 0xFF) {
+                return null;
+            }
+            int marker = data[pos + 1] & 0xFF;
+            if (marker == 0xFF) {
+                pos++; // byte đệm
+                continue;
+            }
+            if (marker == 0xD8 || marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                pos += 2; // marker không có payload
+                continue;
+            }
+            int length = readShortBE(data, pos + 2);
+            if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                int height = readShortBE(data, pos + 5);
+                int width = readShortBE(data, pos + 7);
+                return new ImageInfo(PictureData.PictureType.JPEG, width, height);
+            }
+            pos += 2 + length;
+        }
+        return null;
+    }
+
+    private static ImageInfo probeWithImageReader(byte[] data) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(data))) {
+            if (in == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                PictureData.PictureType type = "tif".equalsIgnoreCase(reader.getFormatName())
+                        || "tiff".equalsIgnoreCase(reader.getFormatName()) ? PictureData.PictureType.TIFF : null;
+                return new ImageInfo(type, reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static int readIntBE(byte[] b, int off) {
+        return ((b[off] & 0xFF) << 24) | ((b[off + 1] & 0xFF) << 16) | ((b[off + 2] & 0xFF) << 8) | (b[off + 3] & 0xFF);
+    }
+
+    private static int readShortBE(byte[] b, int off) {
+        return ((b[off] & 0xFF) << 8) | (b[off + 1] & 0xFF);
+    }
+
+    private static int readIntLE(byte[] b, int off) {
+        return (b[off] & 0xFF) | ((b[off + 1] & 0xFF) << 8) | ((b[off + 2] & 0xFF) << 16) | ((b[off + 3] & 0xFF) << 24);
+    }
+
+    private static int readShortLE(byte[] b, int off) {
+        return (b[off] & 0xFF) | ((b[off + 1] & 0xFF) << 8);
+    }
+}
@@ -0,0 +1,49 @@
+package exe2.slideapp.demopoi.service;
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Giá trị cho một phần tử của danh sách lặp (dòng bảng hoặc slide): field của phần tử,
+ * marker (thay bằng chuỗi rỗng), rồi data chung. Không copy data chung cho mỗi phần tử
+ */
+final class ItemValues extends AbstractMap<String, String> {
+    private final Map<String, String> item;
+    private final Map<String, String> values;
+    private final String marker;
+
+    ItemValues(Map<String, String> item, Map<String, String> values, String marker) {
+        this.item = item;
+        this.values = values;
+        this.marker = marker;
+    }
+
+    @Override
+    public String get(Object key) {
+        String value = item.get(key);
+        if (value != null) {
+            return value;
+        }
+        return marker.equals(key) ? "" : values.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return item.containsKey(key) || marker.equals(key) || values.containsKey(key);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return false;
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        Map<String, String> merged = new HashMap<>(values);
+        merged.put(marker, "");
+        merged.putAll(item);
+        return merged.entrySet();
+    }
+}
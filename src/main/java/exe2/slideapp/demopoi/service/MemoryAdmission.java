@@ -0,0 +1,258 @@
+package exe2.slideapp.demopoi.service;
+
+import exe2.slideapp.demopoi.config.AdmissionProperties;
+import exe2.slideapp.demopoi.exception.InvalidFileFormatException;
+import exe2.slideapp.demopoi.exception.ServiceOverloadedException;
+import exe2.slideapp.demopoi.exception.TemplateTooLargeException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control trước khi parse template: ước lượng bộ nhớ cần dùng từ central directory
+ * của file zip (không giải nén) và giữ chỗ trong một ngân sách chung. Request không đủ chỗ
+ * sẽ chờ tối đa maxWait rồi bị từ chối, nên một file lớn không thể làm OOM cả node.
+ */
+@Component
+@Slf4j
+public class MemoryAdmission {
+
+    // Semaphore đếm theo KB để ngân sách lớn vẫn nằm trong int
+    private static final int UNIT = 1024;
+
+    private static final long LARGE_ENTRY_BYTES = 1024 * 1024;
+
+    private final AdmissionProperties properties;
+    private final long budgetBytes;
+    private final Semaphore budget;
+
+    public MemoryAdmission(AdmissionProperties properties) {
+        this.properties = properties;
+        this.budgetBytes = properties.getMemoryBudget() != null
+                ? properties.getMemoryBudget().toBytes()
+                : (long) (Runtime.getRuntime().maxMemory() * properties.getMaxHeapFraction());
+        this.budget = new Semaphore(toUnits(budgetBytes), true);
+        log.info("Render memory budget: {} MB", budgetBytes / (1024 * 1024));
+    }
+
+    /**
+     * Phần ngân sách đã giữ chỗ, close() để trả lại
+     */
+    public final class Permit implements Closeable {
+        private int units;
+        private boolean released;
+
+        private Permit(int units) {
+            this.units = units;
+        }
+
+        public synchronized long getBytes() {
+            return (long) units * UNIT;
+        }
+
+        /**
+         * Giữ thêm cho đủ bytes mà không chờ: người đang giữ permit mà chờ thêm ngân sách có thể làm nghẽn
+         * semaphore fair (hold-and-wait). Không đủ chỗ lúc này thì báo quá tải như admit
+         */
+        public synchronized void growTo(long bytes) {
+            int wanted = toUnits(bytes);
+            if (released || wanted <= units || !properties.isEnabled()) {
+                return;
+            }
+            if (bytes > budgetBytes) {
+                throw new TemplateTooLargeException("Template needs about " + bytes / 1024
+                        + " KB to render, more than the node budget of " + budgetBytes / 1024 + " KB", bytes);
+            }
+            try {
+                if (!budget.tryAcquire(wanted - units, 0, TimeUnit.MILLISECONDS)) {
+                    throw new ServiceOverloadedException("Not enough memory to render this template right now",
+                            Math.max(1, properties.getMaxWait().toSeconds()));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ServiceOverloadedException("Interrupted while reserving render memory",
+                        Math.max(1, properties.getMaxWait().toSeconds()));
+            }
+            units = wanted;
+        }
+
+        /**
+         * Trả lại phần giữ chỗ vượt quá bytes, khi lượng thực dùng đã biết và nhỏ hơn ước lượng
+         */
+        public synchronized void shrinkTo(long bytes) {
+            int keep = toUnits(bytes);
+            if (!released && keep < units) {
+                budget.release(units - keep);
+                units = keep;
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!released) {
+                released = true;
+                budget.release(units);
+            }
+        }
+    }
+
+    /**
+     * Ước lượng và giữ chỗ bộ nhớ cho template, chờ nếu ngân sách đang hết
+     */
+    public Permit admit(byte[] template) throws IOException {
+        return admit(estimate(template));
+    }
+
+    /**
+     * Giữ chỗ một lượng bộ nhớ đã được người gọi ước lượng sẵn
+     */
+    public Permit admit(long required) throws IOException {
+        if (!properties.isEnabled()) {
+            return new Permit(0);
+        }
+        if (required > budgetBytes) {
+            throw new TemplateTooLargeException("Template needs about " + required / 1024
+                    + " KB to render, more than the node budget of " + budgetBytes / 1024 + " KB", required);
+        }
+
+        int units = toUnits(required);
+        try {
+            if (!budget.tryAcquire(units, properties.getMaxWait().toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new ServiceOverloadedException("Not enough memory to render this template right now",
+                        Math.max(1, properties.getMaxWait().toSeconds()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for render memory", e);
+        }
+        log.debug("Admitted template needing {} bytes ({} bytes still available)", required, getAvailableBytes());
+        return new Permit(units);
+    }
+
+    /**
+     * Như admit(long) nhưng không chờ: null nếu lúc này ngân sách không đủ hoặc required lớn hơn cả ngân sách
+     */
+    public Permit tryAdmit(long required) {
+        if (!properties.isEnabled()) {
+            return new Permit(0);
+        }
+        if (required > budgetBytes) {
+            return null;
+        }
+        int units = toUnits(required);
+        try {
+            // tryAcquire có timeout vẫn xếp hàng sau các request đang chờ của semaphore fair
+            if (!budget.tryAcquire(units, 0, TimeUnit.MILLISECONDS)) {
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        log.debug("Admitted {} bytes without waiting ({} bytes still available)", required, getAvailableBytes());
+        return new Permit(units);
+    }
+
+    /**
+     * Ước lượng heap cần để mở template: XML part nhân hệ số DOM, part khác (media) tính 1:1.
+     * Đồng thời từ chối zip bomb dựa trên kích thước khai báo trong central directory
+     */
+    public long estimate(byte[] template) throws IOException {
+        return estimate(template, true, true);
+    }
+
+    /**
+     * Như estimate(byte[]) cho template mở file-backed: part không phải XML (media) đọc từ file khi ghi,
+     * không tính vào heap
+     */
+    public long estimateFileBacked(byte[] template) throws IOException {
+        return estimate(template, false, true);
+    }
+
+    /**
+     * Như estimate(byte[]) cho deck chỉ được mở ở mức part của OPC (không dựng DOM): mọi part tính 1:1
+     */
+    public long estimatePackage(byte[] deck) throws IOException {
+        return estimate(deck, true, false);
+    }
+
+    /**
+     * Như estimatePackage(byte[]) cho deck nằm trên đĩa: chỉ tính các part khi được đọc vào heap
+     */
+    public long estimatePackage(Path deck) throws IOException {
+        return estimate(ZipFile.builder().setPath(deck), 0, true, false);
+    }
+
+    private long estimate(byte[] template, boolean loadsMedia, boolean parsesXml) throws IOException {
+        // Bản gốc (byte[]) cũng nằm trong heap suốt quá trình render
+        return estimate(ZipFile.builder().setSeekableByteChannel(new SeekableInMemoryByteChannel(template)),
+                template.length, loadsMedia, parsesXml);
+    }
+
+    private long estimate(ZipFile.Builder source, long heldBytes, boolean loadsMedia, boolean parsesXml)
+            throws IOException {
+        long xmlBytes = 0;
+        long otherBytes = 0;
+
+        try (ZipFile zip = source.setIgnoreLocalFileHeader(true).get()) {
+            Enumeration<ZipArchiveEntry> entries = zip.getEntries();
+            while (entries.hasMoreElements()) {
+                ZipArchiveEntry entry = entries.nextElement();
+                long size = entry.getSize();
+                long compressed = entry.getCompressedSize();
+                if (size < 0) {
+                    throw new InvalidFileFormatException("Template entry " + entry.getName() + " has no declared size");
+                }
+                if (size > LARGE_ENTRY_BYTES && compressed > 0
+                        && size / compressed > properties.getMaxCompressionRatio()) {
+                    throw new InvalidFileFormatException("Template entry " + entry.getName()
+                            + " has a suspicious compression ratio (" + size / compressed + ":1)");
+                }
+                String name = entry.getName();
+                if (name.endsWith(".xml") || name.endsWith(".rels")) {
+                    xmlBytes += size;
+                } else {
+                    otherBytes += size;
+                }
+            }
+        } catch (IOException e) {
+            throw new InvalidFileFormatException("Template is not a valid .pptx (zip) file: " + e.getMessage());
+        }
+
+        long unpacked = xmlBytes + otherBytes;
+        if (unpacked > properties.getMaxUnpackedSize().toBytes()) {
+            throw new InvalidFileFormatException("Template unpacks to " + unpacked / (1024 * 1024)
+                    + " MB, maximum is " + properties.getMaxUnpackedSize().toMegabytes() + " MB");
+        }
+        return heldBytes + xmlBytes * (parsesXml ? properties.getXmlExpansionFactor() : 1)
+                + (loadsMedia ? otherBytes : 0);
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public long getAvailableBytes() {
+        return (long) budget.availablePermits() * UNIT;
+    }
+
+    /**
+     * Bộ nhớ đang được giữ chỗ bởi các deck đang mở
+     */
+    public long getReservedBytes() {
+        return budgetBytes - getAvailableBytes();
+    }
+
+    private static int toUnits(long bytes) {
+        return (int) Math.min(Integer.MAX_VALUE, (bytes + UNIT - 1) / UNIT);
+    }
+}
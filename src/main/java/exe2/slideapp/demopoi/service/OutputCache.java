@@ -0,0 +1,326 @@
+package exe2.slideapp.demopoi.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import exe2.slideapp.demopoi.config.ImageProperties;
+import exe2.slideapp.demopoi.config.OutputCacheProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache deck đã render trên đĩa, khóa bằng hash của template, data (dạng JSON chuẩn hóa),
+ * nội dung ảnh, engine và cấu hình ảnh hưởng tới đầu ra (cách nén, xử lý ảnh, phiên bản định dạng).
+ * Khóa cũng là ETag nên client gửi If-None-Match nhận 304 mà không cần render.
+ * Các request giống hệt nhau chạy đồng thời chỉ render một lần, vượt dung lượng thì xóa theo LRU.
+ * Cache tắt mặc định vì data của request được ghi ra đĩa
+ */
+@Component
+@Slf4j
+public class OutputCache {
+
+    // Deck vừa render chỉ bị xóa trước khi mở khi cache quá nhỏ so với lượng request đồng thời
+    private static final int MAX_OPEN_ATTEMPTS = 3;
+    // Tăng khi cách render thay đổi để deck cũ nạp lại từ đĩa không còn khớp khóa nào (và bị xóa dần theo LRU)
+    static final int FORMAT_VERSION = 2;
+
+    private final OutputCacheProperties properties;
+    private final ImageProperties imageProperties;
+    private final Path directory;
+    private final ObjectMapper canonicalMapper;
+    private final Map<String, CachedOutput> entries = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<CachedOutput>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter coalesced;
+
+    public OutputCache(OutputCacheProperties properties, ImageProperties imageProperties, MeterRegistry registry)
+            throws IOException {
+        this.properties = properties;
+        this.imageProperties = imageProperties;
+        this.directory = Paths.get(properties.getDirectory());
+        this.canonicalMapper = new ObjectMapper().configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+        this.hits = Counter.builder("ppt.output.cache.requests").tag("result", "hit").register(registry);
+        this.misses = Counter.builder("ppt.output.cache.requests").tag("result", "miss").register(registry);
+        this.coalesced = Counter.builder("ppt.output.cache.requests").tag("result", "coalesced").register(registry);
+        Gauge.builder("ppt.output.cache.size", totalBytes, AtomicLong::get)
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+        if (properties.isEnabled()) {
+            Files.createDirectories(directory);
+            loadExisting();
+        }
+    }
+
+    /**
+     * Một deck trong cache. lastAccess dùng cho LRU
+     */
+    public static final class CachedOutput {
+        private final String key;
+        private final Path path;
+        private final long size;
+        private volatile Instant lastAccess;
+
+        CachedOutput(String key, Path path, long size, Instant lastAccess) {
+            this.key = key;
+            this.path = path;
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * ETag (strong) của deck
+         */
+        public String getETag() {
+            return "\"" + key + "\"";
+        }
+    }
+
+    /**
+     * Deck trong cache đã được mở để đọc. Sau khi mở, file bị xóa khỏi cache vẫn đọc tiếp được
+     */
+    public record OpenedOutput(CachedOutput output, InputStream in) implements Closeable {
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * Khóa cache của một request render. compression là cách nén thực tế (đã áp cấu hình ppt.output.*)
+     */
+    public String key(byte[] template, TemplateData data, Map<String, MultipartFile> images,
+                      RenderEngine engine, CompressionPolicy compression) throws IOException {
+        MessageDigest digest = sha256();
+        update(digest, String.valueOf(FORMAT_VERSION).getBytes(StandardCharsets.UTF_8));
+        update(digest, engine.name().getBytes(StandardCharsets.UTF_8));
+        update(digest, (compression.level().name() + ":" + compression.storeMedia() + ":"
+                + String.join(",", new TreeSet<>(compression.storedExtensions()))).getBytes(StandardCharsets.UTF_8));
+        update(digest, (imageProperties.isOptimize() + ":" + imageProperties.getDpi() + ":"
+                + imageProperties.getJpegQuality() + ":" + imageProperties.getTranscodeFormat())
+                .getBytes(StandardCharsets.UTF_8));
+        update(digest, sha256().digest(template));
+        // Key của map được sắp xếp nên thứ tự trong JSON gửi lên không làm đổi khóa
+        update(digest, canonicalMapper.writeValueAsBytes(data));
+        for (Map.Entry<String, MultipartFile> image : new TreeMap<>(images).entrySet()) {
+            update(digest, image.getKey().getBytes(StandardCharsets.UTF_8));
+            update(digest, sha256().digest(image.getValue().getBytes()));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Trả về deck đã cache, hoặc render bằng writer nếu chưa có.
+     * Nếu request cùng khóa đang render thì chờ và dùng chung kết quả
+     */
+    public CachedOutput getOrRender(String key, ResultStore.ResultWriter writer) throws Exception {
+        CachedOutput cached = lookup(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        CompletableFuture<CachedOutput> own = new CompletableFuture<>();
+        CompletableFuture<CachedOutput> existing = inFlight.putIfAbsent(key, own);
+        if (existing != null) {
+            coalesced.increment();
+            try {
+                return existing.get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            }
+        }
+
+        try {
+            // Request trước có thể vừa render xong giữa lookup và putIfAbsent
+            CachedOutput result = lookup(key);
+            if (result == null) {
+                misses.increment();
+                result = render(key, writer);
+            }
+            own.complete(result);
+            return result;
+        } catch (Exception e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    /**
+     * Như getOrRender nhưng trả về deck đã mở. File được mở dưới cùng lock với việc xóa theo LRU nên không thể
+     * bị xóa giữa lúc tra và lúc mở; nếu deck đã bị xóa trước đó thì coi như cache miss và render lại
+     */
+    public OpenedOutput openOrRender(String key, ResultStore.ResultWriter writer) throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            CachedOutput output = getOrRender(key, writer);
+            InputStream in = open(output);
+            if (in != null) {
+                return new OpenedOutput(output, in);
+            }
+            if (attempt == MAX_OPEN_ATTEMPTS) {
+                throw new IOException("Cached output " + key + " was evicted before it could be read");
+            }
+            log.debug("Cached output {} was evicted before it was opened, rendering again", key);
+        }
+    }
+
+    private synchronized InputStream open(CachedOutput output) throws IOException {
+        try {
+            return Files.newInputStream(output.path);
+        } catch (NoSuchFileException e) {
+            remove(output);
+            return null;
+        }
+    }
+
+    private CachedOutput lookup(String key) {
+        CachedOutput cached = entries.get(key);
+        if (cached == null) {
+            return null;
+        }
+        if (!Files.exists(cached.path)) {
+            remove(cached);
+            return null;
+        }
+        cached.lastAccess = Instant.now();
+        try {
+            Files.setLastModifiedTime(cached.path, FileTime.from(cached.lastAccess));
+        } catch (IOException e) {
+            log.debug("Failed to touch cached output {}: {}", cached.path, e.getMessage());
+        }
+        return cached;
+    }
+
+    private CachedOutput render(String key, ResultStore.ResultWriter writer) throws Exception {
+        Path partial = directory.resolve(key + ".part");
+        Path target = directory.resolve(key + ".pptx");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(partial), 64 * 1024)) {
+            writer.write(out);
+        } catch (Exception e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+        Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        CachedOutput output = new CachedOutput(key, target, Files.size(target), Instant.now());
+        add(output);
+        enforceSizeLimit(key);
+        return output;
+    }
+
+    private void add(CachedOutput output) {
+        CachedOutput previous = entries.put(output.key, output);
+        if (previous != null) {
+            totalBytes.addAndGet(-previous.size);
+        }
+        totalBytes.addAndGet(output.size);
+    }
+
+    private void remove(CachedOutput output) {
+        if (entries.remove(output.key, output)) {
+            totalBytes.addAndGet(-output.size);
+        }
+    }
+
+    /**
+     * Xóa các deck ít được dùng gần đây nhất cho tới khi tổng dung lượng nằm trong giới hạn.
+     * Deck vừa render (keep) không bị xóa. Response đã mở file (openOrRender) vẫn đọc tiếp được
+     */
+    private synchronized void enforceSizeLimit(String keep) {
+        long max = properties.getMaxSize().toBytes();
+        if (totalBytes.get() <= max) {
+            return;
+        }
+        List<CachedOutput> candidates = new ArrayList<>(entries.values());
+        candidates.sort(Comparator.comparing(output -> output.lastAccess));
+        for (CachedOutput output : candidates) {
+            if (totalBytes.get() <= max) {
+                break;
+            }
+            if (output.key.equals(keep)) {
+                continue;
+            }
+            remove(output);
+            try {
+                Files.deleteIfExists(output.path);
+                log.debug("Evicted cached output {}", output.key);
+            } catch (IOException e) {
+                log.warn("Failed to delete cached output {}: {}", output.path, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Nạp lại các deck còn trên đĩa, thời gian sửa file là lần dùng gần nhất
+     */
+    private void loadExisting() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.{pptx,part}")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".part")) {
+                    Files.deleteIfExists(file);
+                    continue;
+                }
+                String key = name.substring(0, name.length() - ".pptx".length());
+                add(new CachedOutput(key, file, Files.size(file), Files.getLastModifiedTime(file).toInstant()));
+            }
+        }
+        enforceSizeLimit(null);
+        log.info("Output cache has {} decks ({} bytes) in {}", entries.size(), totalBytes.get(), directory);
+    }
+
+    private static void update(MessageDigest digest, byte[] value) {
+        // Tiền tố độ dài để các trường ghép nối không thể trùng nhau
+        int length = value.length;
+        digest.update(new byte[]{(byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length});
+        digest.update(value);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,641 @@
+package exe2.slideapp.demopoi.service;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.poi.ooxml.POIXMLTypeLoader;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackagePartName;
+import org.apache.poi.openxml4j.opc.PackageRelationship;
+import org.apache.poi.openxml4j.opc.PackageRelationshipCollection;
+import org.apache.poi.openxml4j.opc.PackageRelationshipTypes;
+import org.apache.poi.openxml4j.opc.PackagingURIHelper;
+import org.apache.poi.openxml4j.opc.TargetMode;
+import org.apache.poi.openxml4j.util.ZipFileZipEntrySource;
+import org.apache.poi.xslf.usermodel.XSLFRelation;
+import org.apache.xmlbeans.XmlCursor;
+import org.apache.xmlbeans.XmlException;
+import org.apache.xmlbeans.XmlObject;
+import org.openxmlformats.schemas.presentationml.x2006.main.CTSlideIdList;
+import org.openxmlformats.schemas.presentationml.x2006.main.CTSlideIdListEntry;
+import org.openxmlformats.schemas.presentationml.x2006.main.CTSlideMasterIdList;
+import org.openxmlformats.schemas.presentationml.x2006.main.CTSlideMasterIdListEntry;
+import org.openxmlformats.schemas.presentationml.x2006.main.PresentationDocument;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Ghép các deck vào package của deck ghép, làm việc trực tiếp trên part của OPC nên không parse XML
+ * của slide, master hay layout:
+ * <ul>
+ *   <li>slide master của mỗi template (kèm layout, theme, ảnh) được chép một lần</li>
+ *   <li>slide được chép nguyên XML, quan hệ tới layout trỏ sang layout tương ứng trong deck ghép</li>
+ * </ul>
+ * Part được so bằng hash nội dung (bytes, content type và hash của các part được tham chiếu):
+ * master đã có thì dùng lại cùng với layout của nó, theme, ảnh, chart trùng chỉ được ghi một lần.
+ * Notes và comment của slide không được chép vì cần notes master và danh sách tác giả của deck nguồn
+ */
+final class PackageMerger {
+
+    private static final String SLIDE_MASTER = XSLFRelation.SLIDE_MASTER.getRelation();
+    private static final String SLIDE_LAYOUT = XSLFRelation.SLIDE_LAYOUT.getRelation();
+    private static final String SLIDE = XSLFRelation.SLIDE.getRelation();
+    private static final Set<String> SKIPPED_SLIDE_RELATIONS =
+            Set.of(XSLFRelation.NOTES.getRelation(), XSLFRelation.COMMENTS.getRelation());
+    private static final String PML_NS = "http://schemas.openxmlformats.org/presentationml/2006/main";
+    // Chọn bằng XmlCursor: poi-ooxml-lite không có kiểu XMLBeans của sldLayoutIdLst
+    private static final String LAYOUT_IDS = "declare namespace p='" + PML_NS + "' ./p:sldMaster/p:sldLayoutIdLst/p:sldLayoutId";
+    private static final QName ID = new QName("", "id");
+    private static final Pattern MEDIA = Pattern.compile("/ppt/media/.*");
+    // Id của master và layout trong presentation.xml/slideMasterN.xml dùng chung một dải, bắt đầu từ 2^31
+    private static final long FIRST_ID = 0x80000000L;
+    private static final long FIRST_SLIDE_ID = 256;
+    // Quan hệ tới part của deck section không cần khi chép slide: master, layout, theme đã được ghép
+    // theo template, notes không được chép. Bỏ qua part chỉ dùng qua các quan hệ này thì OPC không phải
+    // đọc và parse rels của chúng cho mỗi section
+    private static final Set<String> SECTION_SKIPPED_RELATIONS = Set.of(SLIDE_MASTER, SLIDE_LAYOUT,
+            XSLFRelation.THEME.getRelation(), XSLFRelation.NOTES.getRelation(), XSLFRelation.NOTES_MASTER.getRelation(),
+            "http://schemas.openxmlformats.org/officeDocument/2006/relationships/handoutMaster");
+    // Layout quay lại master của nó: đánh dấu thay vì hash để không lặp vô hạn
+    private static final String BACK_REFERENCE = "back-reference";
+
+    private final OPCPackage target;
+    private final PackagePart presentation;
+    private final PresentationDocument presentationXml;
+    // Hash của master → tên part master trong deck ghép
+    private final Map<String, PackagePartName> masters = new HashMap<>();
+    // Hash của theme, ảnh và các part dùng chung khác → tên part trong deck ghép
+    private final Map<String, PackagePartName> shared = new HashMap<>();
+    private final Map<String, Integer> nextIndex = new HashMap<>();
+    private long nextId;
+    private long nextSlideId = FIRST_SLIDE_ID;
+    private boolean presentationChanged;
+    private int importedMasters;
+    private int reusedMasters;
+    private int importedSlides;
+    private int importedParts;
+    private int reusedParts;
+    private long copiedBytes;
+
+    /**
+     * target là deck render từ base (template của section đầu tiên): part của base giữ nguyên tên trong target,
+     * nên master và part dùng chung của base được đăng ký theo hash tính trên base. Media của target được
+     * đăng ký theo hash của chính nó
+     */
+    PackageMerger(OPCPackage target, OPCPackage base) throws IOException {
+        this.target = target;
+        this.presentation = mainPart(target);
+        try (InputStream in = presentation.getInputStream()) {
+            this.presentationXml = PresentationDocument.Factory.parse(in, POIXMLTypeLoader.DEFAULT_XML_OPTIONS);
+        } catch (XmlException e) {
+            throw new IOException("Invalid presentation.xml in composed deck", e);
+        }
+        this.nextId = firstFreeId();
+        if (presentationXml.getPresentation().isSetSldIdLst()) {
+            for (CTSlideIdListEntry entry : presentationXml.getPresentation().getSldIdLst().getSldIdArray()) {
+                nextSlideId = Math.max(nextSlideId, entry.getId() + 1);
+            }
+        }
+
+        // Ảnh của slide trong deck đích cũng dùng được cho master chép vào sau
+        Map<PackagePartName, String> targetKeys = new HashMap<>();
+        for (PackagePart part : target.getPartsByName(MEDIA)) {
+            shared.putIfAbsent(partKey(part, targetKeys, new HashSet<>()), part.getPartName());
+        }
+        Map<PackagePartName, String> keys = new HashMap<>();
+        for (PackagePart master : masterParts(base)) {
+            if (target.containPart(master.getPartName())) {
+                masters.put(partKey(master, keys, new HashSet<>()), master.getPartName());
+                registerShared(master, keys, new HashSet<>());
+            }
+        }
+    }
+
+    /**
+     * Bảo đảm mọi master của template có trong deck ghép.
+     * Trả về tên part layout trong template → tên part layout tương ứng trong deck ghép
+     */
+    Map<String, String> importTemplate(OPCPackage template) throws IOException {
+        Map<PackagePartName, String> keys = new HashMap<>();
+        Map<String, String> layouts = new HashMap<>();
+        for (PackagePart master : masterParts(template)) {
+            String key = partKey(master, keys, new HashSet<>());
+            PackagePartName existing = masters.get(key);
+            if (existing != null) {
+                reusedMasters++;
+                // Cùng hash nên cùng id quan hệ: layout rIdN của master nguồn là layout rIdN của master đích
+                PackagePart targetMaster = target.getPart(existing);
+                for (PackageRelationship rel : relationships(master, SLIDE_LAYOUT)) {
+                    layouts.put(targetName(rel), targetName(targetMaster.getRelationship(rel.getId())));
+                }
+            } else {
+                masters.put(key, copyMaster(master, keys, layouts));
+                importedMasters++;
+            }
+        }
+        return layouts;
+    }
+
+    /**
+     * Mở deck của một section để importSlides: chỉ các entry cần cho slide, entry được đọc từ file khi cần
+     */
+    static OPCPackage openSection(Path deck) throws IOException {
+        ZipFile zip = ZipFile.builder().setPath(deck).get();
+        try {
+            return OPCPackage.open(new SectionEntries(zip));
+        } catch (InvalidFormatException | RuntimeException e) {
+            zip.close();
+            throw new IOException("Section deck is not a valid .pptx file", e);
+        }
+    }
+
+    /**
+     * Chép slide của một deck vào cuối deck ghép theo thứ tự trong presentation.xml của nó.
+     * layouts là kết quả importTemplate của template đã render ra deck đó
+     */
+    int importSlides(OPCPackage section, Map<String, String> layouts) throws IOException {
+        PackagePart main = mainPart(section);
+        PresentationDocument xml;
+        try (InputStream in = main.getInputStream()) {
+            xml = PresentationDocument.Factory.parse(in, POIXMLTypeLoader.DEFAULT_XML_OPTIONS);
+        } catch (XmlException e) {
+            throw new IOException("Invalid presentation.xml in section deck", e);
+        }
+        if (!xml.getPresentation().isSetSldIdLst()) {
+            return 0;
+        }
+
+        // Đặt tên trước để link giữa các slide của section trỏ đúng sang bản chép
+        List<PackagePart> slides = new ArrayList<>();
+        Map<PackagePartName, PackagePartName> names = new HashMap<>();
+        for (CTSlideIdListEntry entry : xml.getPresentation().getSldIdLst().getSldIdArray()) {
+            PackagePart slide = related(main, main.getRelationship(entry.getId2()));
+            slides.add(slide);
+            names.put(slide.getPartName(), nextName(slide.getPartName()));
+        }
+
+        Map<PackagePartName, String> keys = new HashMap<>();
+        CTSlideIdList list = presentationXml.getPresentation().isSetSldIdLst()
+                ? presentationXml.getPresentation().getSldIdLst()
+                : presentationXml.getPresentation().addNewSldIdLst();
+        for (PackagePart source : slides) {
+            PackagePartName name = names.get(source.getPartName());
+            PackagePart slide = target.createPart(name, source.getContentType());
+            copyContent(source, slide);
+            for (PackageRelationship rel : relationships(source, null)) {
+                String type = rel.getRelationshipType();
+                if (rel.getTargetMode() == TargetMode.EXTERNAL) {
+                    slide.addRelationship(rel.getTargetURI(), TargetMode.EXTERNAL, type, rel.getId());
+                } else if (SLIDE_LAYOUT.equals(type)) {
+                    String layout = layouts.get(targetName(rel));
+                    if (layout == null) {
+                        throw new IOException("Layout " + targetName(rel) + " of " + source.getPartName()
+                                + " was not merged into the composed deck");
+                    }
+                    slide.addRelationship(partName(layout), TargetMode.INTERNAL, type, rel.getId());
+                } else if (SLIDE.equals(type)) {
+                    PackagePartName linked = names.get(related(source, rel).getPartName());
+                    slide.addRelationship(linked != null ? linked : name, TargetMode.INTERNAL, type, rel.getId());
+                } else if (!SKIPPED_SLIDE_RELATIONS.contains(type)) {
+                    slide.addRelationship(importShared(related(source, rel), keys), TargetMode.INTERNAL, type, rel.getId());
+                }
+            }
+            PackageRelationship rel = presentation.addRelationship(name, TargetMode.INTERNAL, SLIDE);
+            CTSlideIdListEntry entry = list.addNewSldId();
+            entry.setId(nextSlideId++);
+            entry.setId2(rel.getId());
+        }
+        presentationChanged = true;
+        importedSlides += slides.size();
+        return slides.size();
+    }
+
+    /**
+     * Ghi lại presentation.xml nếu có master hoặc slide mới
+     */
+    void finish() throws IOException {
+        if (!presentationChanged) {
+            return;
+        }
+        try (OutputStream out = presentation.getOutputStream()) {
+            presentationXml.save(out, POIXMLTypeLoader.DEFAULT_XML_OPTIONS);
+        }
+        presentationChanged = false;
+    }
+
+    int getImportedMasters() {
+        return importedMasters;
+    }
+
+    int getReusedMasters() {
+        return reusedMasters;
+    }
+
+    int getImportedSlides() {
+        return importedSlides;
+    }
+
+    int getImportedParts() {
+        return importedParts;
+    }
+
+    int getReusedParts() {
+        return reusedParts;
+    }
+
+    /**
+     * Tổng dung lượng các part đã ghi vào deck ghép (slide, master, layout và part dùng chung mới)
+     */
+    long getCopiedBytes() {
+        return copiedBytes;
+    }
+
+    private PackagePartName copyMaster(PackagePart source, Map<PackagePartName, String> keys,
+                                       Map<String, String> layouts) throws IOException {
+        PackagePartName name = nextName(source.getPartName());
+        PackagePart master = target.createPart(name, source.getContentType());
+        for (PackageRelationship rel : relationships(source, null)) {
+            if (rel.getTargetMode() == TargetMode.EXTERNAL) {
+                master.addRelationship(rel.getTargetURI(), TargetMode.EXTERNAL, rel.getRelationshipType(), rel.getId());
+            } else if (SLIDE_LAYOUT.equals(rel.getRelationshipType())) {
+                PackagePart layout = related(source, rel);
+                PackagePartName copy = copyLayout(layout, name, keys);
+                layouts.put(layout.getPartName().getName(), copy.getName());
+                master.addRelationship(copy, TargetMode.INTERNAL, rel.getRelationshipType(), rel.getId());
+            } else {
+                master.addRelationship(importShared(related(source, rel), keys), TargetMode.INTERNAL,
+                        rel.getRelationshipType(), rel.getId());
+            }
+        }
+
+        // Id của layout phải duy nhất trong cả deck nên được đánh số lại
+        try (InputStream in = source.getInputStream(); OutputStream out = master.getOutputStream()) {
+            XmlObject xml = XmlObject.Factory.parse(in, POIXMLTypeLoader.DEFAULT_XML_OPTIONS);
+            try (XmlCursor cursor = xml.newCursor()) {
+                cursor.selectPath(LAYOUT_IDS);
+                while (cursor.toNextSelection()) {
+                    cursor.setAttributeText(ID, String.valueOf(nextId++));
+                }
+            }
+            xml.save(out, POIXMLTypeLoader.DEFAULT_XML_OPTIONS);
+        } catch (XmlException e) {
+            throw new IOException("Invalid slide master " + source.getPartName(), e);
+        }
+        copiedBytes += Math.max(0, source.getSize());
+
+        PackageRelationship rel = presentation.addRelationship(name, TargetMode.INTERNAL, SLIDE_MASTER);
+        CTSlideMasterIdList list = presentationXml.getPresentation().isSetSldMasterIdLst()
+                ? presentationXml.getPresentation().getSldMasterIdLst()
+                : presentationXml.getPresentation().addNewSldMasterIdLst();
+        CTSlideMasterIdListEntry entry = list.addNewSldMasterId();
+        entry.setId(nextId++);
+        entry.setId2(rel.getId());
+        presentationChanged = true;
+        return name;
+    }
+
+    private PackagePartName copyLayout(PackagePart source, PackagePartName master, Map<PackagePartName, String> keys)
+            throws IOException {
+        PackagePartName name = nextName(source.getPartName());
+        PackagePart layout = target.createPart(name, source.getContentType());
+        copyContent(source, layout);
+        for (PackageRelationship rel : relationships(source, null)) {
+            if (rel.getTargetMode() == TargetMode.EXTERNAL) {
+                layout.addRelationship(rel.getTargetURI(), TargetMode.EXTERNAL, rel.getRelationshipType(), rel.getId());
+            } else if (SLIDE_MASTER.equals(rel.getRelationshipType())) {
+                layout.addRelationship(master, TargetMode.INTERNAL, rel.getRelationshipType(), rel.getId());
+            } else {
+                layout.addRelationship(importShared(related(source, rel), keys), TargetMode.INTERNAL,
+                        rel.getRelationshipType(), rel.getId());
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Theme, ảnh và part khác: dùng lại part cùng hash đã có, nếu chưa có thì chép cả các part nó tham chiếu
+     */
+    private PackagePartName importShared(PackagePart source, Map<PackagePartName, String> keys) throws IOException {
+        String key = partKey(source, keys, new HashSet<>());
+        PackagePartName existing = shared.get(key);
+        if (existing != null) {
+            reusedParts++;
+            return existing;
+        }
+        PackagePartName name = nextName(source.getPartName());
+        PackagePart part = target.createPart(name, source.getContentType());
+        shared.put(key, name);
+        importedParts++;
+        copyContent(source, part);
+        for (PackageRelationship rel : relationships(source, null)) {
+            if (rel.getTargetMode() == TargetMode.EXTERNAL) {
+                part.addRelationship(rel.getTargetURI(), TargetMode.EXTERNAL, rel.getRelationshipType(), rel.getId());
+            } else {
+                part.addRelationship(importShared(related(source, rel), keys), TargetMode.INTERNAL,
+                        rel.getRelationshipType(), rel.getId());
+            }
+        }
+        return name;
+    }
+
+    private void registerShared(PackagePart part, Map<PackagePartName, String> keys, Set<PackagePartName> visited)
+            throws IOException {
+        if (!visited.add(part.getPartName())) {
+            return;
+        }
+        for (PackageRelationship rel : relationships(part, null)) {
+            if (rel.getTargetMode() == TargetMode.EXTERNAL || SLIDE_MASTER.equals(rel.getRelationshipType())) {
+                continue;
+            }
+            PackagePart related = related(part, rel);
+            if (!SLIDE_LAYOUT.equals(rel.getRelationshipType()) && target.containPart(related.getPartName())) {
+                shared.putIfAbsent(partKey(related, keys, new HashSet<>()), related.getPartName());
+            }
+            registerShared(related, keys, visited);
+        }
+    }
+
+    /**
+     * Hash của content type, nội dung và các quan hệ (id, kiểu, hash của part đích) của một part
+     */
+    private String partKey(PackagePart part, Map<PackagePartName, String> keys, Set<PackagePartName> visiting)
+            throws IOException {
+        PackagePartName name = part.getPartName();
+        String cached = keys.get(name);
+        if (cached != null) {
+            return cached;
+        }
+        if (!visiting.add(name)) {
+            return BACK_REFERENCE;
+        }
+        MessageDigest digest = sha256();
+        update(digest, part.getContentType());
+        try (InputStream in = part.getInputStream()) {
+            in.transferTo(new DigestOutputStream(OutputStream.nullOutputStream(), digest));
+        }
+        for (PackageRelationship rel : relationships(part, null)) {
+            update(digest, rel.getId());
+            update(digest, rel.getRelationshipType());
+            update(digest, rel.getTargetMode() == TargetMode.EXTERNAL
+                    ? rel.getTargetURI().toString()
+                    : partKey(related(part, rel), keys, visiting));
+        }
+        visiting.remove(name);
+        String key = HexFormat.of().formatHex(digest.digest());
+        keys.put(name, key);
+        return key;
+    }
+
+    /**
+     * Id nhỏ nhất chưa dùng bởi master trong presentation.xml hay layout trong các master của deck
+     */
+    private long firstFreeId() throws IOException {
+        long max = FIRST_ID - 1;
+        if (presentationXml.getPresentation().isSetSldMasterIdLst()) {
+            for (CTSlideMasterIdListEntry entry : presentationXml.getPresentation().getSldMasterIdLst().getSldMasterIdArray()) {
+                max = Math.max(max, entry.getId());
+            }
+        }
+        for (PackagePart master : masterParts(target)) {
+            try (InputStream in = master.getInputStream();
+                 XmlCursor cursor = XmlObject.Factory.parse(in, POIXMLTypeLoader.DEFAULT_XML_OPTIONS).newCursor()) {
+                cursor.selectPath(LAYOUT_IDS);
+                while (cursor.toNextSelection()) {
+                    max = Math.max(max, Long.parseLong(cursor.getAttributeText(ID)));
+                }
+            } catch (XmlException | NumberFormatException e) {
+                throw new IOException("Invalid slide master " + master.getPartName(), e);
+            }
+        }
+        return max + 1;
+    }
+
+    /**
+     * Tên part chưa có trong deck ghép cùng thư mục và tiền tố, ví dụ /ppt/theme/theme3.xml
+     */
+    private PackagePartName nextName(PackagePartName source) throws IOException {
+        String path = source.getName();
+        int dot = path.lastIndexOf('.');
+        String extension = dot > path.lastIndexOf('/') ? path.substring(dot) : "";
+        String prefix = path.substring(0, path.length() - extension.length()).replaceAll("\\d+$", "");
+        int index = nextIndex.getOrDefault(prefix + extension, 1);
+        try {
+            PackagePartName name;
+            do {
+                name = PackagingURIHelper.createPartName(prefix + index++ + extension);
+            } while (target.containPart(name));
+            nextIndex.put(prefix + extension, index);
+            return name;
+        } catch (InvalidFormatException e) {
+            throw new IOException("Invalid part name " + path, e);
+        }
+    }
+
+    private static PackagePartName partName(String name) throws IOException {
+        try {
+            return PackagingURIHelper.createPartName(name);
+        } catch (InvalidFormatException e) {
+            throw new IOException("Invalid part name " + name, e);
+        }
+    }
+
+    private void copyContent(PackagePart source, PackagePart target) throws IOException {
+        try (InputStream in = source.getInputStream(); OutputStream out = target.getOutputStream()) {
+            copiedBytes += in.transferTo(out);
+        }
+    }
+
+    private static List<PackagePart> masterParts(OPCPackage pkg) throws IOException {
+        PackagePart main = mainPart(pkg);
+        List<PackagePart> parts = new ArrayList<>();
+        for (PackageRelationship rel : relationships(main, SLIDE_MASTER)) {
+            parts.add(related(main, rel));
+        }
+        return parts;
+    }
+
+    private static PackagePart mainPart(OPCPackage pkg) throws IOException {
+        List<PackagePart> parts = pkg.getPartsByRelationshipType(PackageRelationshipTypes.CORE_DOCUMENT);
+        if (parts.isEmpty()) {
+            throw new IOException("Package has no presentation part");
+        }
+        return parts.get(0);
+    }
+
+    /**
+     * Quan hệ của part, type null là mọi quan hệ
+     */
+    private static PackageRelationshipCollection relationships(PackagePart part, String type) throws IOException {
+        try {
+            return type == null ? part.getRelationships() : part.getRelationshipsByType(type);
+        } catch (InvalidFormatException e) {
+            throw new IOException("Invalid relationships of " + part.getPartName(), e);
+        }
+    }
+
+    private static PackagePart related(PackagePart part, PackageRelationship rel) throws IOException {
+        try {
+            PackagePart related = part.getRelatedPart(rel);
+            if (related == null) {
+                throw new IOException("Missing part " + rel.getTargetURI() + " referenced by " + part.getPartName());
+            }
+            return related;
+        } catch (InvalidFormatException e) {
+            throw new IOException("Invalid relationship " + rel.getId() + " of " + part.getPartName(), e);
+        }
+    }
+
+    private static String targetName(PackageRelationship rel) {
+        return PackagingURIHelper.resolvePartUri(rel.getSourceURI(), rel.getTargetURI()).getPath();
+    }
+
+    /**
+     * Entry của deck section trừ các part chỉ dùng qua quan hệ trong SECTION_SKIPPED_RELATIONS (và rels của chúng).
+     * Part mà slide cũng dùng, ví dụ themeOverride của chart hay ảnh dùng chung với layout, vẫn được giữ
+     */
+    private static final class SectionEntries extends ZipFileZipEntrySource {
+
+        private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newFactory();
+
+        static {
+            INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        }
+
+        private final ZipFile zip;
+        private final Set<String> skipped = new HashSet<>();
+
+        SectionEntries(ZipFile zip) throws IOException {
+            super(zip);
+            this.zip = zip;
+            findSkippedParts();
+        }
+
+        @Override
+        public Enumeration<? extends ZipArchiveEntry> getEntries() {
+            List<ZipArchiveEntry> entries = new ArrayList<>();
+            for (Enumeration<? extends ZipArchiveEntry> all = super.getEntries(); all.hasMoreElements(); ) {
+                ZipArchiveEntry entry = all.nextElement();
+                if (!skipped.contains(entry.getName())) {
+                    entries.add(entry);
+                }
+            }
+            return Collections.enumeration(entries);
+        }
+
+        @Override
+        public ZipArchiveEntry getEntry(String path) {
+            return skipped.contains(path) ? null : super.getEntry(path);
+        }
+
+        /**
+         * Đi theo rels từ presentation.xml: part tới được từ slide (trừ qua quan hệ bị bỏ) được giữ,
+         * part chỉ tới được qua quan hệ bị bỏ thì bỏ qua
+         */
+        private void findSkippedParts() throws IOException {
+            String main = null;
+            for (String[] rel : relationships("")) {
+                if (PackageRelationshipTypes.CORE_DOCUMENT.equals(rel[0])) {
+                    main = rel[1];
+                }
+            }
+            if (main == null) {
+                return;
+            }
+
+            Set<String> kept = new HashSet<>(Set.of(main));
+            Set<String> dropped = new HashSet<>();
+            Deque<String> keep = new ArrayDeque<>();
+            Deque<String> drop = new ArrayDeque<>();
+            for (String[] rel : relationships(main)) {
+                if (SLIDE.equals(rel[0])) {
+                    keep.push(rel[1]);
+                } else if (SECTION_SKIPPED_RELATIONS.contains(rel[0])) {
+                    drop.push(rel[1]);
+                }
+            }
+            while (!keep.isEmpty()) {
+                String part = keep.pop();
+                if (kept.add(part)) {
+                    for (String[] rel : relationships(part)) {
+                        (SECTION_SKIPPED_RELATIONS.contains(rel[0]) ? drop : keep).push(rel[1]);
+                    }
+                }
+            }
+            while (!drop.isEmpty()) {
+                String part = drop.pop();
+                if (!kept.contains(part) && dropped.add(part)) {
+                    relationships(part).forEach(rel -> drop.push(rel[1]));
+                }
+            }
+            for (String part : dropped) {
+                skipped.add(part);
+                skipped.add(relsName(part));
+            }
+        }
+
+        /**
+         * Kiểu và tên part đích (không có '/' đầu) của các quan hệ nội bộ của part, part rỗng là rels của package
+         */
+        private List<String[]> relationships(String part) throws IOException {
+            ZipArchiveEntry entry = zip.getEntry(relsName(part));
+            if (entry == null) {
+                return List.of();
+            }
+            List<String[]> relationships = new ArrayList<>();
+            try (InputStream in = zip.getInputStream(entry)) {
+                XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(in);
+                try {
+                    URI source = URI.create("/" + part);
+                    while (reader.hasNext()) {
+                        if (reader.next() == XMLStreamConstants.START_ELEMENT
+                                && "Relationship".equals(reader.getLocalName())
+                                && !"External".equals(reader.getAttributeValue(null, "TargetMode"))) {
+                            String target = source.resolve(reader.getAttributeValue(null, "Target")).getPath();
+                            relationships.add(new String[]{reader.getAttributeValue(null, "Type"), target.substring(1)});
+                        }
+                    }
+                } finally {
+                    reader.close();
+                }
+            } catch (XMLStreamException | IllegalArgumentException | NullPointerException e) {
+                throw new IOException("Invalid relationships part " + entry.getName(), e);
+            }
+            return relationships;
+        }
+
+        private static String relsName(String part) {
+            int slash = part.lastIndexOf('/');
+            return part.substring(0, slash + 1) + "_rels/" + part.substring(slash + 1) + ".rels";
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
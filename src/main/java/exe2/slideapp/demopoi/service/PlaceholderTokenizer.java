@@ -0,0 +1,223 @@
+package exe2.slideapp.demopoi.service;
+
+import java.util.Map;
+
+/**
+ * Quét text một lần để tìm các token {key} và {IMAGE:key}, tra từng token trong map.
+ * Chi phí tỉ lệ với độ dài text chứ không phụ thuộc số key trong data,
+ * và không cấp phát gì với text không chứa dấu '{'.
+ */
+public final class PlaceholderTokenizer {
+
+    public static final String IMAGE_PREFIX = "IMAGE:";
+
+    private PlaceholderTokenizer() {
+    }
+
+    /**
+     * Callback cho mỗi token: start là vị trí '{', end là vị trí ngay sau '}'
+     */
+    @FunctionalInterface
+    public interface TokenConsumer {
+        void accept(int start, int end, String key);
+    }
+
+    /**
+     * Callback cho mỗi token khi thay thế theo run: hit cho biết key có trong values không
+     */
+    @FunctionalInterface
+    public interface TokenListener {
+        void accept(String key, boolean hit);
+    }
+
+    /**
+     * Kiểm tra nhanh text có thể chứa placeholder hay không
+     */
+    public static boolean mayContainToken(String text) {
+        return text != null && text.indexOf('{') >= 0;
+    }
+
+    /**
+     * Duyệt lần lượt mọi token trong text
+     */
+    public static void forEachToken(String text, TokenConsumer consumer) {
+        if (text == null) {
+            return;
+        }
+        int open = text.indexOf('{');
+        while (open >= 0) {
+            int close = text.indexOf('}', open + 1);
+            if (close < 0) {
+                return;
+            }
+            // Lấy dấu '{' gần nhất trước '}' để "{a{b}" cho token {b}
+            open = text.lastIndexOf('{', close - 1);
+            consumer.accept(open, close + 1, text.substring(open + 1, close));
+            open = text.indexOf('{', close + 1);
+        }
+    }
+
+    /**
+     * Thay thế mọi token {key} có trong values. Token không có trong map được giữ nguyên.
+     * Trả về chính đối tượng text nếu không có gì thay đổi
+     */
+    public static String replace(String text, Map<String, String> values) {
+        if (!mayContainToken(text) || values.isEmpty()) {
+            return text;
+        }
+
+        StringBuilder out = null;
+        int copied = 0;
+        int open = text.indexOf('{');
+        while (open >= 0) {
+            int close = text.indexOf('}', open + 1);
+            if (close < 0) {
+                break;
+            }
+            open = text.lastIndexOf('{', close - 1);
+            String value = values.get(text.substring(open + 1, close));
+            if (value != null) {
+                if (out == null) {
+                    out = new StringBuilder(text.length() + value.length());
+                }
+                out.append(text, copied, open).append(value);
+                copied = close + 1;
+            }
+            open = text.indexOf('{', close + 1);
+        }
+
+        if (out == null) {
+            return text;
+        }
+        return out.append(text, copied, text.length()).toString();
+    }
+
+    /**
+     * Thay thế token trên text gộp của các run liên tiếp trong một paragraph. Giá trị được đặt vào run
+     * chứa dấu '{' nên giữ định dạng của token, phần còn lại của token bị xóa khỏi các run sau,
+     * text thường giữ nguyên run của nó. Run null được coi là rỗng.
+     * Trả về text mới của từng run, hoặc null nếu không có token nào được thay
+     */
+    public static String[] replaceAcrossRuns(String[] runs, Map<String, String> values, TokenListener listener) {
+        int count = runs.length;
+        if (count == 0) {
+            return null;
+        }
+        int[] runEnds = new int[count];
+        StringBuilder joined = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (runs[i] != null) {
+                joined.append(runs[i]);
+            }
+            runEnds[i] = joined.length();
+        }
+        String text = joined.toString();
+        if (!mayContainToken(text)) {
+            return null;
+        }
+
+        StringBuilder[] result = new StringBuilder[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = new StringBuilder();
+        }
+        RunCursor cursor = new RunCursor(runEnds);
+        int[] copied = {0};
+        boolean[] changed = {false};
+        forEachToken(text, (start, end, key) -> {
+            String value = values.get(key);
+            listener.accept(key, value != null);
+            if (value == null) {
+                return;
+            }
+            copyRange(text, copied[0], start, cursor, result);
+            result[cursor.at(start)].append(value);
+            copied[0] = end;
+            changed[0] = true;
+        });
+        if (!changed[0]) {
+            return null;
+        }
+        copyRange(text, copied[0], text.length(), cursor, result);
+
+        String[] texts = new String[count];
+        for (int i = 0; i < count; i++) {
+            texts[i] = result[i].toString();
+        }
+        return texts;
+    }
+
+    /**
+     * Run bị thay thế làm rỗng (có text trước khi thay, rỗng sau khi thay) và có thể bỏ khỏi paragraph.
+     * Nếu bỏ hết thì paragraph không còn run nào, khi đó giữ lại run đầu tiên để dòng trống vẫn giữ cỡ chữ của nó
+     */
+    public static boolean[] emptiedRuns(String[] original, String[] replaced) {
+        boolean[] emptied = new boolean[original.length];
+        boolean allRemoved = true;
+        for (int i = 0; i < original.length; i++) {
+            boolean wasEmpty = original[i] == null || original[i].isEmpty();
+            emptied[i] = !wasEmpty && replaced[i].isEmpty();
+            allRemoved &= emptied[i];
+        }
+        if (allRemoved && emptied.length > 0) {
+            emptied[0] = false;
+        }
+        return emptied;
+    }
+
+    private static void copyRange(String text, int from, int to, RunCursor cursor, StringBuilder[] result) {
+        while (from < to) {
+            int run = cursor.at(from);
+            int chunkEnd = Math.min(to, cursor.runEnds[run]);
+            result[run].append(text, from, chunkEnd);
+            from = chunkEnd;
+        }
+    }
+
+    /**
+     * Vị trí hiện tại trong các run. Token được duyệt theo thứ tự nên offset chỉ tăng dần
+     * và cả paragraph chỉ quét runEnds một lần, thay vì quét lại từ run đầu cho mỗi đoạn
+     */
+    private static final class RunCursor {
+        private final int[] runEnds;
+        private int run;
+
+        RunCursor(int[] runEnds) {
+            this.runEnds = runEnds;
+        }
+
+        /**
+         * Run chứa ký tự tại offset (bỏ qua các run rỗng). offset không được nhỏ hơn lần gọi trước
+         */
+        int at(int offset) {
+            while (runEnds[run] <= offset) {
+                run++;
+            }
+            return run;
+        }
+    }
+
+    /**
+     * Tìm key của token {IMAGE:key} đầu tiên có trong images, null nếu không có
+     */
+    public static String findImageKey(String text, Map<String, ?> images) {
+        if (!mayContainToken(text) || images.isEmpty()) {
+            return null;
+        }
+        int open = text.indexOf('{');
+        while (open >= 0) {
+            int close = text.indexOf('}', open + 1);
+            if (close < 0) {
+                return null;
+            }
+            open = text.lastIndexOf('{', close - 1);
+            if (text.startsWith(IMAGE_PREFIX, open + 1)) {
+                String key = text.substring(open + 1 + IMAGE_PREFIX.length(), close);
+                if (images.containsKey(key)) {
+                    return key;
+                }
+            }
+            open = text.indexOf('{', close + 1);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,50 @@
+package exe2.slideapp.demopoi.service;
+
+import org.apache.poi.xslf.usermodel.XMLSlideShow;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Deck render bằng XMLSlideShow. Giữ phần ngân sách bộ nhớ đã cấp cho tới khi close()
+ */
+class PoiRenderedDeck implements RenderedDeck {
+
+    private final XMLSlideShow slideShow;
+    private final MemoryAdmission.Permit permit;
+    private final ScratchSpace scratchSpace;
+
+    PoiRenderedDeck(XMLSlideShow slideShow, MemoryAdmission.Permit permit, ScratchSpace scratchSpace) {
+        this.slideShow = slideShow;
+        this.permit = permit;
+        this.scratchSpace = scratchSpace;
+    }
+
+    XMLSlideShow getSlideShow() {
+        return slideShow;
+    }
+
+    /**
+     * ZipPackage của POI ghi thẳng vào DeckZipOutputStream khi nhận được một ZipArchiveOutputStream
+     */
+    @Override
+    public void write(OutputStream out, CompressionPolicy compression) throws IOException {
+        DeckZipOutputStream zip = new DeckZipOutputStream(out, compression, scratchSpace);
+        try {
+            slideShow.write(zip);
+            // POI chỉ finish, không close stream của người gọi
+            zip.flush();
+        } finally {
+            zip.discardSpool();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            slideShow.close();
+        } finally {
+            permit.close();
+        }
+    }
+}
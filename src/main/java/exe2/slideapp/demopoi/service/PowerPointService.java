@@ -1,142 +1,406 @@
 package exe2.slideapp.demopoi.service;
 
+import exe2.slideapp.demopoi.config.OutputProperties;
 import lombok.Getter;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.poi.sl.usermodel.PictureData;
 import org.apache.poi.xslf.usermodel.*;
+import org.openxmlformats.schemas.drawingml.x2006.main.CTRegularTextRun;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import javax.imageio.ImageIO;
-import java.awt.*;
 import java.awt.geom.Rectangle2D;
-import java.awt.image.BufferedImage;
 import java.io.*;
 import java.util.*;
 import java.util.List;
 
 @Service
 @Slf4j
+@RequiredArgsConstructor
 public class PowerPointService {
+    private final TemplatePool templatePool;
+    private final ScratchSpace scratchSpace;
+    private final ImageOptimizer imageOptimizer;
+    private final MemoryAdmission memoryAdmission;
+    private final StreamingTemplateEngine streamingEngine;
+    private final RenderMetrics renderMetrics;
+    private final OutputProperties outputProperties;
 
-    public java.io.File processTemplate(MultipartFile file, Map<String, String> data, Map<String,MultipartFile> images) throws Exception {
-        java.io.File tempFile = java.io.File.createTempFile("pptx-template", ".pptx");
+    /**
+     * Kích thước deck đã ghi và thời gian ghi (nén zip)
+     */
+    public record OutputStats(long size, long writeNanos) {
+        public long writeMillis() {
+            return writeNanos / 1_000_000;
+        }
+    }
 
-        try (InputStream fis = file.getInputStream();
-             XMLSlideShow ppt = new XMLSlideShow(fis);
-             FileOutputStream fos = new FileOutputStream(tempFile)) {
+    /**
+     * Deck đã render vào scratch file cùng thống kê lúc ghi
+     */
+    public record RenderedFile(ScratchFile file, OutputStats stats) {
+    }
 
-            // Debug: in ra số lượng slides
-            log.info("Total slides: " + ppt.getSlides().size());
-            log.info("Processing {} text placeholders and {} image placeholders", data.size(), images.size());
+    /**
+     * Cách nén đầu ra cho một request. level null/rỗng là mức trong ppt.output.compression-level
+     */
+    public CompressionPolicy compressionPolicy(String level) {
+        String effective = level == null || level.isBlank() ? outputProperties.getCompressionLevel() : level;
+        Set<String> extensions = CompressionPolicy.DEFAULT_STORED_EXTENSIONS;
+        if (!outputProperties.getStoredExtensions().isEmpty()) {
+            extensions = new HashSet<>();
+            for (String extension : outputProperties.getStoredExtensions()) {
+                extensions.add(extension.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        return new CompressionPolicy(CompressionPolicy.Level.fromParameter(effective),
+                outputProperties.isStoreMedia(), Set.copyOf(extensions));
+    }
 
-            int slideIndex = 0;
-            for (XSLFSlide slide : ppt.getSlides()) {
-                log.info("Processing slide " + (slideIndex + 1));
-                replaceTextInSlide(slide, data);
-                replaceImagesInSlide(slide, images, ppt);
-                slideIndex++;
+    /**
+     * Render template vào một file tạm trong ScratchSpace.
+     * Người gọi phải close ScratchFile (xóa file) sau khi đã gửi response
+     */
+    public ScratchFile processTemplate(MultipartFile file, Map<String, String> data, Map<String,MultipartFile> images) throws Exception {
+        return processTemplate(file, data, images, RenderEngine.DEFAULT);
+    }
+
+    public ScratchFile processTemplate(MultipartFile file, Map<String, String> data, Map<String,MultipartFile> images,
+                                       RenderEngine engine) throws Exception {
+        return processTemplate(file.getBytes(), data, images, engine);
+    }
+
+    public ScratchFile processTemplate(byte[] template, Map<String, String> data, Map<String,MultipartFile> images,
+                                       RenderEngine engine) throws Exception {
+        return processTemplate(template, TemplateData.of(data), images, engine);
+    }
+
+    public ScratchFile processTemplate(byte[] template, TemplateData data, Map<String,MultipartFile> images,
+                                       RenderEngine engine) throws Exception {
+        return renderToScratch(template, data, images, engine, compressionPolicy(null)).file();
+    }
+
+    public RenderedFile renderToScratch(byte[] template, TemplateData data, Map<String,MultipartFile> images,
+                                        RenderEngine engine, CompressionPolicy compression) throws Exception {
+        ScratchFile scratchFile = scratchSpace.create("pptx-template", ".pptx");
+
+        OutputStats stats;
+        try (OutputStream out = scratchFile.openOutputStream()) {
+            stats = render(template, data, images, engine, compression, out);
+        } catch (Exception e) {
+            scratchFile.close();
+            throw e;
+        }
+
+        return new RenderedFile(scratchFile, stats);
+    }
+
+    /**
+     * Render template với data/images và ghi kết quả .pptx ra output stream
+     */
+    public OutputStats render(byte[] template, Map<String, String> data, Map<String, MultipartFile> images, OutputStream out) throws Exception {
+        return render(template, data, images, RenderEngine.DEFAULT, out);
+    }
+
+    public OutputStats render(byte[] template, Map<String, String> data, Map<String, MultipartFile> images,
+                              RenderEngine engine, OutputStream out) throws Exception {
+        return render(template, TemplateData.of(data), images, engine, out);
+    }
+
+    public OutputStats render(byte[] template, TemplateData data, Map<String, MultipartFile> images,
+                              RenderEngine engine, OutputStream out) throws Exception {
+        return render(template, data, images, engine, compressionPolicy(null), out);
+    }
+
+    public OutputStats render(byte[] template, TemplateData data, Map<String, MultipartFile> images,
+                              RenderEngine engine, CompressionPolicy compression, OutputStream out) throws Exception {
+        return render(new PreparedTemplate(template), data, images, engine, compression, out);
+    }
+
+    /**
+     * Như trên với template dùng lại qua nhiều lần render (hash và ước lượng bộ nhớ chỉ tính một lần)
+     */
+    public OutputStats render(PreparedTemplate template, TemplateData data, Map<String, MultipartFile> images,
+                              RenderEngine engine, CompressionPolicy compression, OutputStream out) throws Exception {
+        try (RenderedDeck deck = renderDeck(template, data, images, engine)) {
+            return write(deck, compression, out);
+        }
+    }
+
+    /**
+     * Ghi deck và đo số byte đầu ra cùng thời gian ghi
+     */
+    public OutputStats write(RenderedDeck deck, CompressionPolicy compression, OutputStream out) throws IOException {
+        long[] written = new long[1];
+        OutputStream counting = new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                written[0]++;
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                written[0] += len;
+                out.write(b, off, len);
             }
+        };
+        long start = System.nanoTime();
+        deck.write(counting, compression);
+        counting.flush();
+        return new OutputStats(written[0], System.nanoTime() - start);
+    }
+
+    /**
+     * Render bằng engine đã chọn. AUTO thử engine streaming trước và chuyển sang POI
+     * khi template có image placeholder cần thay thế hoặc dòng bảng lặp
+     */
+    public RenderedDeck renderDeck(byte[] template, Map<String, String> data, Map<String, MultipartFile> images,
+                                   RenderEngine engine) throws Exception {
+        return renderDeck(template, TemplateData.of(data), images, engine);
+    }
 
-            ppt.write(fos);
+    public RenderedDeck renderDeck(byte[] template, TemplateData data, Map<String, MultipartFile> images,
+                                   RenderEngine engine) throws Exception {
+        return renderDeck(new PreparedTemplate(template), data, images, engine);
+    }
+
+    public RenderedDeck renderDeck(PreparedTemplate template, TemplateData data, Map<String, MultipartFile> images,
+                                   RenderEngine engine) throws Exception {
+        long start = System.nanoTime();
+        RenderStats stats = new RenderStats();
+        renderMetrics.renderStarted();
+        try {
+            return renderMetrics.track(renderWithEngine(template, data, images, engine, stats), stats, start);
+        } catch (Exception e) {
+            renderMetrics.renderFailed();
+            throw e;
         }
+    }
+
+    /**
+     * Thay thế text/images và trả về deck chưa ghi, để người gọi ghi thẳng ra response.
+     * Người gọi phải close deck sau khi ghi để trả lại bộ nhớ đã giữ chỗ
+     */
+    public RenderedDeck renderDeck(byte[] template, Map<String, String> data, Map<String, MultipartFile> images) throws Exception {
+        return renderDeck(template, data, images, RenderEngine.DEFAULT);
+    }
+
+    private RenderedDeck renderWithEngine(PreparedTemplate template, TemplateData data, Map<String, MultipartFile> images,
+                                          RenderEngine engine, RenderStats stats) throws Exception {
+        if (engine == RenderEngine.POI) {
+            return renderWithPoi(template, data, images, stats);
+        }
+        try {
+            RenderedDeck deck = streamingEngine.render(template, data, images, stats);
+            stats.engine = "streaming";
+            return deck;
+        } catch (StreamingTemplateEngine.UnsupportedTemplateException e) {
+            if (engine == RenderEngine.STREAMING) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+            log.debug("Falling back to POI engine: {}", e.getMessage());
+            stats.reset();
+            return renderWithPoi(template, data, images, stats);
+        }
+    }
+
+    private RenderedDeck renderWithPoi(PreparedTemplate template, TemplateData data, Map<String, MultipartFile> images,
+                                       RenderStats stats) throws Exception {
+        // Giữ chỗ bộ nhớ theo kích thước giải nén trước khi parse, chờ hoặc từ chối nếu hết ngân sách.
+        // Deck mở file-backed nên chỉ XML part tính vào heap, media đọc từ file spool khi ghi
+        long phaseStart = System.nanoTime();
+        MemoryAdmission.Permit permit = memoryAdmission.admit(template.fileBackedEstimate(memoryAdmission));
+        stats.endPhase(RenderMetrics.Phase.ADMISSION, phaseStart);
+        XMLSlideShow ppt = null;
+        try {
+            // Lấy bản đã parse sẵn từ pool thay vì parse lại file .pptx mỗi request
+            phaseStart = System.nanoTime();
+            ppt = templatePool.acquire(template);
+            stats.endPhase(RenderMetrics.Phase.LOAD, phaseStart);
+
+            log.debug("Processing {} slides with {} text placeholders, {} lists and {} image placeholders",
+                    ppt.getSlides().size(), data.values().size(), data.lists().size(), images.size());
+
+            phaseStart = System.nanoTime();
+            // Slide lặp và slide nối tiếp của bảng lặp được tạo trước khi POI đọc shape, dòng lặp được nhân bản sau cùng
+            SlideRepeater.expand(ppt, data, stats);
+            TableRowRepeater repeater = TableRowRepeater.prepare(ppt, data);
+            replaceTextInDeck(ppt, data.values(), repeater, stats);
+            stats.endPhase(RenderMetrics.Phase.TEXT, phaseStart);
+
+            phaseStart = System.nanoTime();
+            replaceImagesInDeck(ppt, images, repeater, stats);
+            stats.endPhase(RenderMetrics.Phase.IMAGES, phaseStart);
+
+            if (!data.charts().isEmpty()) {
+                phaseStart = System.nanoTime();
+                int charts = ChartBinder.bind(ppt, data.charts());
+                stats.endPhase(RenderMetrics.Phase.CHARTS, phaseStart);
+                log.debug("Filled {} charts", charts);
+            }
 
-        return tempFile;
+            phaseStart = System.nanoTime();
+            repeater.expand(stats);
+            stats.endPhase(RenderMetrics.Phase.TEXT, phaseStart);
+            return new PoiRenderedDeck(ppt, permit, scratchSpace);
+        } catch (Exception e) {
+            if (ppt != null) {
+                ppt.close();
+            }
+            permit.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Thay thế text placeholder trên mọi slide của deck
+     */
+    void replaceTextInDeck(XMLSlideShow ppt, Map<String, String> data, RenderStats stats) {
+        replaceTextInDeck(ppt, data, TableRowRepeater.NONE, stats);
+    }
+
+    private void replaceTextInDeck(XMLSlideShow ppt, Map<String, String> data, TableRowRepeater repeater,
+                                   RenderStats stats) {
+        int slideIndex = 0;
+        for (XSLFSlide slide : ppt.getSlides()) {
+            log.debug("Processing slide {}", slideIndex + 1);
+            replaceTextInSlide(slide, data, repeater, stats);
+            slideIndex++;
+        }
+        stats.slides += slideIndex;
     }
 
     /**
      * Duyệt toàn bộ shape trong 1 slide và thay thế placeholder {KEY} bằng value
      */
-    private void replaceTextInSlide(XSLFSlide slide, Map<String, String> data) {
+    private void replaceTextInSlide(XSLFSlide slide, Map<String, String> data, TableRowRepeater repeater,
+                                    RenderStats stats) {
         for (XSLFShape shape : slide.getShapes()) {
-            handleTextShape(shape, data);
+            handleTextShape(shape, data, repeater, stats);
         }
     }
 
     /**
-     * Xử lý thay thế image placeholders trong slide
+     * Xử lý thay thế image placeholders trên toàn bộ deck:
+     * tìm placeholders trên mọi slide, chuẩn bị ảnh (song song nếu bật optimize), rồi mới chèn
      */
-    private void replaceImagesInSlide(XSLFSlide slide, Map<String, MultipartFile> images, XMLSlideShow ppt) throws IOException {
+    void replaceImagesInDeck(XMLSlideShow ppt, Map<String, MultipartFile> images, RenderStats stats) throws Exception {
+        replaceImagesInDeck(ppt, images, TableRowRepeater.NONE, stats);
+    }
+
+    private void replaceImagesInDeck(XMLSlideShow ppt, Map<String, MultipartFile> images, TableRowRepeater repeater,
+                                     RenderStats stats) throws Exception {
         if (images == null || images.isEmpty()) {
             return;
         }
 
-        List<XSLFShape> shapesToRemove = new ArrayList<>();
-        List<ImagePlaceholder> imagesToAdd = new ArrayList<>();
-
-        // Tìm tất cả text shapes có chứa image placeholders
-        for (XSLFShape shape : slide.getShapes()) {
-            findImagePlaceholders(shape, images, shapesToRemove, imagesToAdd);
+        // Bước 1: tìm tất cả text shapes có chứa image placeholders trên mọi slide
+        Map<XSLFSlide, List<ImagePlaceholder>> imagesBySlide = new LinkedHashMap<>();
+        Map<XSLFSlide, List<XSLFShape>> shapesBySlide = new LinkedHashMap<>();
+        for (XSLFSlide slide : ppt.getSlides()) {
+            List<XSLFShape> shapesToRemove = new ArrayList<>();
+            List<ImagePlaceholder> imagesToAdd = new ArrayList<>();
+            for (XSLFShape shape : slide.getShapes()) {
+                findImagePlaceholders(shape, images, repeater, shapesToRemove, imagesToAdd);
+            }
+            if (!imagesToAdd.isEmpty()) {
+                imagesBySlide.put(slide, imagesToAdd);
+                shapesBySlide.put(slide, shapesToRemove);
+            }
         }
-
-        // Thêm images mới vào slide
-        for (ImagePlaceholder imgPlaceholder : imagesToAdd) {
-            addImageToSlide(slide, ppt, imgPlaceholder);
+        if (imagesBySlide.isEmpty()) {
+            return;
         }
 
-        // Xóa các text shapes đã được thay thế
-        for (XSLFShape shape : shapesToRemove) {
-            slide.removeShape(shape);
+        // Bước 2: chuẩn bị ảnh theo kích thước khung, mỗi file chỉ đọc một lần
+        Map<MultipartFile, byte[]> imageBytes = new IdentityHashMap<>();
+        Map<ImageKey, ImageOptimizer.ImageRequest> requests = new HashMap<>();
+        for (List<ImagePlaceholder> placeholders : imagesBySlide.values()) {
+            for (ImagePlaceholder imgPlaceholder : placeholders) {
+                ImageKey key = ImageKey.of(imgPlaceholder);
+                if (requests.containsKey(key)) {
+                    continue;
+                }
+                MultipartFile imageFile = imgPlaceholder.getFile();
+                byte[] data = imageBytes.get(imageFile);
+                if (data == null) {
+                    data = imageFile.getBytes();
+                    imageBytes.put(imageFile, data);
+                }
+                requests.put(key, new ImageOptimizer.ImageRequest(data, imageFile.getOriginalFilename(),
+                        determinePictureType(imageFile.getOriginalFilename()),
+                        imgPlaceholder.getWidth(), imgPlaceholder.getHeight()));
+            }
         }
+        Map<ImageKey, ImageOptimizer.PreparedImage> prepared = imageOptimizer.prepareAll(requests);
+
+        // Bước 3: thêm images mới vào slide và xóa các text shapes đã được thay thế.
+        // Ảnh trùng nội dung chỉ lưu một picture part cho cả deck
+        DeckPictureCache pictures = new DeckPictureCache(ppt);
+        for (Map.Entry<XSLFSlide, List<ImagePlaceholder>> entry : imagesBySlide.entrySet()) {
+            XSLFSlide slide = entry.getKey();
+            for (ImagePlaceholder imgPlaceholder : entry.getValue()) {
+                addImageToSlide(slide, pictures, imgPlaceholder, prepared.get(ImageKey.of(imgPlaceholder)));
+            }
+            for (XSLFShape shape : shapesBySlide.get(slide)) {
+                slide.removeShape(shape);
+            }
+        }
+        stats.imageBytes += pictures.getEmbeddedBytes();
     }
 
     /**
      * Tìm image placeholders trong shapes
      */
-    private void findImagePlaceholders(XSLFShape shape, Map<String, MultipartFile> images,
+    private void findImagePlaceholders(XSLFShape shape, Map<String, MultipartFile> images, TableRowRepeater repeater,
                                      List<XSLFShape> shapesToRemove, List<ImagePlaceholder> imagesToAdd) {
         if (shape instanceof XSLFTextShape textShape) {
             String text = extractTextFromShape(textShape);
 
-            // Kiểm tra xem có image placeholder không
-            for (Map.Entry<String, MultipartFile> entry : images.entrySet()) {
-                String key = entry.getKey();
-                String placeholder = "{IMAGE:" + key + "}";
-
-                if (text.contains(placeholder)) {
-                    log.info("Found image placeholder '{}' in text: '{}'", placeholder, text);
-
-                    // Lưu thông tin vị trí và kích thước của shape để thay thế
-                    Rectangle2D anchor = shape.getAnchor();
-                    ImagePlaceholder imgPlaceholder = new ImagePlaceholder(
-                        key, entry.getValue(), anchor.getX(), anchor.getY(),
-                        anchor.getWidth(), anchor.getHeight()
-                    );
-                    imagesToAdd.add(imgPlaceholder);
-                    shapesToRemove.add(shape);
-                    break; // Chỉ xử lý một placeholder mỗi shape
-                }
+            // Kiểm tra xem có image placeholder không (quét text một lần)
+            String key = PlaceholderTokenizer.findImageKey(text, images);
+            if (key != null) {
+                log.debug("Found image placeholder '{IMAGE:{}}' in text: '{}'", key, text);
+
+                // Lưu thông tin vị trí và kích thước của shape để thay thế
+                Rectangle2D anchor = shape.getAnchor();
+                ImagePlaceholder imgPlaceholder = new ImagePlaceholder(
+                    key, images.get(key), anchor.getX(), anchor.getY(),
+                    anchor.getWidth(), anchor.getHeight()
+                );
+                imagesToAdd.add(imgPlaceholder);
+                shapesToRemove.add(shape); // Chỉ xử lý một placeholder mỗi shape
             }
         }
         // Xử lý group shapes
         else if (shape instanceof XSLFGroupShape group) {
             for (XSLFShape inner : group.getShapes()) {
-                findImagePlaceholders(inner, images, shapesToRemove, imagesToAdd);
+                findImagePlaceholders(inner, images, repeater, shapesToRemove, imagesToAdd);
             }
         }
         // Xử lý table cells
         else if (shape instanceof XSLFTable table) {
             for (XSLFTableRow row : table.getRows()) {
+                if (repeater.isTemplateRow(row)) {
+                    continue;
+                }
                 for (XSLFTableCell cell : row.getCells()) {
                     String cellText = extractTextFromCell(cell);
 
-                    for (Map.Entry<String, MultipartFile> entry : images.entrySet()) {
-                        String key = entry.getKey();
-                        String placeholder = "{IMAGE:" + key + "}";
-
-                        if (cellText.contains(placeholder)) {
-                            log.info("Found image placeholder '{}' in table cell", placeholder);
-
-                            // Xóa text trong cell và thêm image
-                            clearCellText(cell);
-                            Rectangle2D cellAnchor = cell.getAnchor();
-                            ImagePlaceholder imgPlaceholder = new ImagePlaceholder(
-                                key, entry.getValue(), cellAnchor.getX(), cellAnchor.getY(),
-                                cellAnchor.getWidth(), cellAnchor.getHeight()
-                            );
-                            imagesToAdd.add(imgPlaceholder);
-                            break;
-                        }
+                    String key = PlaceholderTokenizer.findImageKey(cellText, images);
+                    if (key != null) {
+                        log.debug("Found image placeholder '{IMAGE:{}}' in table cell", key);
+
+                        // Xóa text trong cell và thêm image
+                        clearCellText(cell);
+                        Rectangle2D cellAnchor = cell.getAnchor();
+                        ImagePlaceholder imgPlaceholder = new ImagePlaceholder(
+                            key, images.get(key), cellAnchor.getX(), cellAnchor.getY(),
+                            cellAnchor.getWidth(), cellAnchor.getHeight()
+                        );
+                        imagesToAdd.add(imgPlaceholder);
                     }
                 }
             }
@@ -176,26 +440,19 @@ public class PowerPointService {
 //            log.error("Failed to add image for placeholder '{}': {}", imgPlaceholder.getKey(), e.getMessage());
 //        }
 //    }
-    private void addImageToSlide(XSLFSlide slide, XMLSlideShow ppt, ImagePlaceholder imgPlaceholder) throws IOException {
+    private void addImageToSlide(XSLFSlide slide, DeckPictureCache pictures, ImagePlaceholder imgPlaceholder,
+                                 ImageOptimizer.PreparedImage image) {
         try {
             MultipartFile imageFile = imgPlaceholder.getFile();
-            byte[] imageData = imageFile.getBytes();
-
-            // Đọc ảnh gốc để lấy kích thước
-            BufferedImage bimg = ImageIO.read(imageFile.getInputStream());
-            if (bimg == null) {
+            if (image == null) {
                 log.error("Invalid image format for file: {}", imageFile.getOriginalFilename());
                 return;
             }
-            int imgWidth = bimg.getWidth();
-            int imgHeight = bimg.getHeight();
-
-            // Xác định định dạng ảnh
-            PictureData.PictureType pictureType = determinePictureType(imageFile.getOriginalFilename());
+            // Kích thước đọc từ header ảnh (hoặc của ảnh đã resize), không decode pixel
+            int imgWidth = image.width();
+            int imgHeight = image.height();
 
-            // Thêm ảnh vào presentation
-            XSLFPictureData pictureData = ppt.addPicture(imageData, pictureType);
-            XSLFPictureShape pictureShape = slide.createPicture(pictureData);
+            XSLFPictureShape pictureShape = slide.createPicture(pictures.get(image));
 
             // Lấy khung anchor từ placeholder
             double anchorX = imgPlaceholder.getX();
@@ -220,7 +477,7 @@ public class PowerPointService {
             Rectangle2D newAnchor = new Rectangle2D.Double(newX, newY, newWidth, newHeight);
             pictureShape.setAnchor(newAnchor);
 
-            log.info("Successfully added image '{}' ({}x{}) scaled to {}x{} at position ({}, {})",
+            log.debug("Successfully added image '{}' ({}x{}) scaled to {}x{} at position ({}, {})",
                     imageFile.getOriginalFilename(), imgWidth, imgHeight,
                     newWidth, newHeight, newX, newY);
 
@@ -291,25 +548,29 @@ public class PowerPointService {
     /**
      * Đệ quy xử lý shape (text, group, bảng) với cải thiện xử lý text runs
      */
-    private void handleTextShape(XSLFShape shape, Map<String, String> data) {
+    private void handleTextShape(XSLFShape shape, Map<String, String> data, TableRowRepeater repeater,
+                                 RenderStats stats) {
         if (shape instanceof XSLFTextShape textShape) {
             // Cải thiện: xử lý từng paragraph một cách toàn diện
             for (XSLFTextParagraph paragraph : textShape.getTextParagraphs()) {
-                replacePlaceholdersInParagraph(paragraph, data);
+                replacePlaceholdersInParagraph(paragraph, data, stats);
             }
         }
         // Nếu shape là group thì duyệt tiếp
         else if (shape instanceof XSLFGroupShape group) {
             for (XSLFShape inner : group.getShapes()) {
-                handleTextShape(inner, data);
+                handleTextShape(inner, data, repeater, stats);
             }
         }
         // Nếu shape là bảng
         else if (shape instanceof XSLFTable table) {
             for (XSLFTableRow row : table.getRows()) {
+                if (repeater.isTemplateRow(row)) {
+                    continue;
+                }
                 for (XSLFTableCell cell : row.getCells()) {
                     for (XSLFTextParagraph paragraph : cell.getTextParagraphs()) {
-                        replacePlaceholdersInParagraph(paragraph, data);
+                        replacePlaceholdersInParagraph(paragraph, data, stats);
                     }
                 }
             }
@@ -317,53 +578,64 @@ public class PowerPointService {
     }
 
     /**
-     * Xử lý placeholder trong paragraph một cách thông minh hơn
-     * Phương pháp này sẽ gộp toàn bộ text của paragraph, thay thế, rồi gán lại
+     * Thay placeholder trong paragraph, kể cả token bị tách qua nhiều run.
+     * Chỉ run chứa token bị sửa: giá trị nằm ở run chứa dấu '{' (giữ định dạng của token),
+     * run bị thay thế làm rỗng được bỏ khỏi paragraph thay vì để lại {@code <a:r>} rỗng.
+     * Paragraph không có dấu '{' sẽ được bỏ qua mà không cấp phát gì
      */
-    private void replacePlaceholdersInParagraph(XSLFTextParagraph paragraph, Map<String, String> data) {
+    private void replacePlaceholdersInParagraph(XSLFTextParagraph paragraph, Map<String, String> data,
+                                                RenderStats stats) {
+        stats.paragraphs++;
         List<XSLFTextRun> runs = paragraph.getTextRuns();
         if (runs.isEmpty()) {
             return;
         }
 
-        // Gộp toàn bộ text từ tất cả runs
-        StringBuilder fullText = new StringBuilder();
+        // Bỏ qua sớm nếu không run nào chứa '{'
+        boolean hasToken = false;
         for (XSLFTextRun run : runs) {
-            String text = run.getRawText();
-            if (text != null) {
-                fullText.append(text);
+            if (PlaceholderTokenizer.mayContainToken(run.getRawText())) {
+                hasToken = true;
+                break;
             }
         }
-
-        String originalText = fullText.toString();
-        String replacedText = originalText;
-
-        // Debug: in ra text gốc
-        if (!originalText.trim().isEmpty()) {
-            log.debug("Original text: " + originalText);
+        if (!hasToken) {
+            return;
         }
 
-        // Thay thế tất cả placeholders
-        for (Map.Entry<String, String> entry : data.entrySet()) {
-            String placeholder = "{" + entry.getKey() + "}";
-            replacedText = replacedText.replace(placeholder, entry.getValue());
+        String[] original = new String[runs.size()];
+        for (int i = 0; i < original.length; i++) {
+            original[i] = runs.get(i).getRawText();
         }
-
-        // Nếu có thay đổi, cập nhật lại paragraph
-        if (!originalText.equals(replacedText)) {
-            log.debug("Replaced text: " + replacedText);
-
-            // Xóa tất cả runs hiện tại trừ run đầu tiên
-            XSLFTextRun firstRun = runs.get(0);
-
-            // Xóa các runs khác
-            for (int i = runs.size() - 1; i > 0; i--) {
-                // Không thể xóa trực tiếp, nên ta sẽ set text rỗng
-                runs.get(i).setText("");
+        String[] replaced = PlaceholderTokenizer.replaceAcrossRuns(original, data, stats::countPlaceholder);
+        if (replaced == null) {
+            return;
+        }
+        log.debug("Replaced runs: {} -> {}", original, replaced);
+
+        boolean[] emptied = PlaceholderTokenizer.emptiedRuns(original, replaced);
+        // Duyệt ngược vì removeTextRun làm dịch chỉ số các run phía sau
+        List<XSLFTextRun> snapshot = new ArrayList<>(runs);
+        for (int i = snapshot.size() - 1; i >= 0; i--) {
+            if (replaced[i].equals(original[i])) {
+                continue;
             }
+            XSLFTextRun run = snapshot.get(i);
+            if (emptied[i] && run.getXmlObject() instanceof CTRegularTextRun) {
+                paragraph.removeTextRun(run);
+            } else {
+                run.setText(replaced[i]);
+            }
+        }
+    }
 
-            // Gán text mới vào run đầu tiên
-            firstRun.setText(replacedText);
+    /**
+     * Khóa ảnh đã chuẩn bị: cùng file và cùng kích thước khung thì dùng chung kết quả
+     */
+    private record ImageKey(MultipartFile file, long width, long height) {
+        static ImageKey of(ImagePlaceholder imgPlaceholder) {
+            return new ImageKey(imgPlaceholder.getFile(),
+                    Math.round(imgPlaceholder.getWidth()), Math.round(imgPlaceholder.getHeight()));
         }
     }
 
@@ -0,0 +1,55 @@
+package exe2.slideapp.demopoi.service;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.IOException;
+
+/**
+ * Nội dung template cùng các giá trị suy ra từ nó (hash, ước lượng bộ nhớ), chỉ tính lần đầu khi cần.
+ * Batch dùng chung một bản cho mọi dòng nên template không bị hash và quét central directory lại mỗi dòng
+ */
+public final class PreparedTemplate {
+
+    private final byte[] content;
+    private String hash;
+    private long estimate = -1;
+    private long fileBackedEstimate = -1;
+
+    public PreparedTemplate(byte[] content) {
+        this.content = content;
+    }
+
+    public byte[] getContent() {
+        return content;
+    }
+
+    /**
+     * SHA-256 của nội dung, khóa của TemplatePool
+     */
+    public synchronized String getHash() {
+        if (hash == null) {
+            hash = DigestUtils.sha256Hex(content);
+        }
+        return hash;
+    }
+
+    /**
+     * MemoryAdmission.estimate của template (cũng là bước kiểm tra zip bomb)
+     */
+    synchronized long estimate(MemoryAdmission memoryAdmission) throws IOException {
+        if (estimate < 0) {
+            estimate = memoryAdmission.estimate(content);
+        }
+        return estimate;
+    }
+
+    /**
+     * MemoryAdmission.estimateFileBacked của template
+     */
+    synchronized long fileBackedEstimate(MemoryAdmission memoryAdmission) throws IOException {
+        if (fileBackedEstimate < 0) {
+            fileBackedEstimate = memoryAdmission.estimateFileBacked(content);
+        }
+        return fileBackedEstimate;
+    }
+}
@@ -0,0 +1,398 @@
+package exe2.slideapp.demopoi.service;
+
+import exe2.slideapp.demopoi.config.RemoteImageProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tải ảnh placeholder từ URL trước khi render. Mọi URL của một request được tải song song
+ * trên một pool thread chung, số request tới mỗi host bị giới hạn và mỗi lần tải có timeout.
+ * Ảnh được giữ trong cache LRU theo URL và ETag: trong revalidateAfter dùng luôn,
+ * sau đó chỉ gửi If-None-Match, nên logo phổ biến chỉ được tải một lần trên mỗi node.
+ * Các request cùng URL đang chờ dùng chung một lần tải.
+ * <p>
+ * Chỉ host trong allowedHosts được tải. Redirect được theo thủ công để kiểm tra lại từng đích,
+ * và mỗi lượt đều từ chối host phân giải ra địa chỉ loopback, link-local hoặc mạng nội bộ
+ */
+@Service
+@Slf4j
+public class RemoteImageFetcher {
+
+    private static final int MAX_REDIRECTS = 5;
+
+    private final RemoteImageProperties properties;
+    private final HttpClient client;
+    private final ExecutorService executor;
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<CachedImage>> inFlight = new ConcurrentHashMap<>();
+
+    // accessOrder = true => thứ tự duyệt là LRU
+    private final LinkedHashMap<String, CachedImage> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong cachedBytes = new AtomicLong();
+    private final Counter hits;
+    private final Counter revalidated;
+    private final Counter misses;
+
+    public RemoteImageFetcher(RemoteImageProperties properties, MeterRegistry registry) {
+        this.properties = properties;
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(properties.getConnectTimeout())
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, properties.getFetchThreads()), r -> {
+            Thread t = new Thread(r, "image-fetch-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.hits = Counter.builder("ppt.remote.images.requests").tag("result", "hit").register(registry);
+        this.revalidated = Counter.builder("ppt.remote.images.requests").tag("result", "revalidated").register(registry);
+        this.misses = Counter.builder("ppt.remote.images.requests").tag("result", "miss").register(registry);
+        Gauge.builder("ppt.remote.images.cache.size", cachedBytes, AtomicLong::get)
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+    }
+
+    /**
+     * Ảnh đã tải. validatedAt là lần cuối server xác nhận nội dung (200 hoặc 304)
+     */
+    record CachedImage(String url, String etag, String contentType, byte[] content, Instant validatedAt) {
+        CachedImage validated(Instant now) {
+            return new CachedImage(url, etag, contentType, content, now);
+        }
+    }
+
+    /**
+     * Tải song song ảnh cho các key, trả về theo key như ảnh upload
+     *
+     * @throws IllegalArgumentException nếu URL không hợp lệ, không được phép hoặc không tải được
+     */
+    public Map<String, MultipartFile> fetchAll(Map<String, String> urls) throws IOException {
+        if (urls.isEmpty()) {
+            return Map.of();
+        }
+        if (!properties.isEnabled()) {
+            throw new IllegalArgumentException("Image URLs are not enabled (ppt.remote-images.enabled)");
+        }
+
+        // Kiểm tra hết URL trước khi tải, URL trùng nhau trong một request chỉ tải một lần
+        Map<String, URI> uris = new LinkedHashMap<>();
+        urls.forEach((key, url) -> uris.put(key, validate(key, url)));
+        Map<URI, CompletableFuture<CachedImage>> byUrl = new HashMap<>();
+        for (URI uri : uris.values()) {
+            byUrl.computeIfAbsent(uri, u -> CompletableFuture.supplyAsync(() -> {
+                try {
+                    return load(u);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor));
+        }
+
+        Map<String, MultipartFile> images = new HashMap<>();
+        for (Map.Entry<String, URI> entry : uris.entrySet()) {
+            CachedImage image = await(entry.getKey(), byUrl.get(entry.getValue()));
+            images.put(entry.getKey(), new ByteArrayMultipartFile(entry.getKey(), fileName(image.url()),
+                    image.contentType(), image.content()));
+        }
+        log.debug("Fetched {} images from {} URLs", images.size(), byUrl.size());
+        return images;
+    }
+
+    /**
+     * Tổng số byte ảnh đang giữ trong cache
+     */
+    public long getCachedBytes() {
+        return cachedBytes.get();
+    }
+
+    private CachedImage await(String key, CompletableFuture<CachedImage> future) throws IOException {
+        try {
+            // Mỗi lần tải đã có timeout riêng, đây chỉ chặn trường hợp pool bị nghẽn
+            return future.get(properties.getRequestTimeout().toMillis() * 2, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching image '" + key + "'", e);
+        } catch (TimeoutException e) {
+            throw new IllegalArgumentException("Timed out fetching image '" + key + "'");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof IllegalArgumentException invalid) {
+                throw new IllegalArgumentException("Image '" + key + "': " + invalid.getMessage());
+            }
+            throw new IllegalArgumentException("Could not fetch image '" + key + "': " + cause.getMessage());
+        }
+    }
+
+    private URI validate(String key, String url) {
+        URI uri;
+        try {
+            uri = url == null ? null : new URI(url.trim());
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Invalid URL for image '" + key + "': " + url);
+        }
+        if (uri == null || !isHttp(uri)) {
+            throw new IllegalArgumentException("Image '" + key + "' must be an http(s) URL: " + url);
+        }
+        if (!isAllowedHost(uri.getHost())) {
+            throw new IllegalArgumentException("Host " + uri.getHost() + " is not allowed for image '" + key + "'");
+        }
+        return uri;
+    }
+
+    private static boolean isHttp(URI uri) {
+        return uri.getHost() != null
+                && ("http".equalsIgnoreCase(uri.getScheme()) || "https".equalsIgnoreCase(uri.getScheme()));
+    }
+
+    private boolean isAllowedHost(String host) {
+        String normalized = host.toLowerCase(Locale.ROOT);
+        for (String entry : properties.getAllowedHosts()) {
+            String candidate = entry.toLowerCase(Locale.ROOT);
+            if (normalized.equals(candidate) || normalized.endsWith("." + candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private CachedImage load(URI uri) throws IOException {
+        String url = uri.toString();
+        CachedImage cached;
+        synchronized (cache) {
+            cached = cache.get(url);
+        }
+        if (cached != null && cached.validatedAt().plus(properties.getRevalidateAfter()).isAfter(Instant.now())) {
+            hits.increment();
+            return cached;
+        }
+        return refreshShared(uri, cached);
+    }
+
+    /**
+     * Chỉ một thread tải mỗi URL, các thread khác chờ kết quả của nó
+     */
+    private CachedImage refreshShared(URI uri, CachedImage cached) throws IOException {
+        String url = uri.toString();
+        CompletableFuture<CachedImage> own = new CompletableFuture<>();
+        CompletableFuture<CachedImage> existing = inFlight.putIfAbsent(url, own);
+        if (existing != null) {
+            try {
+                return existing.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for image " + url, e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException io) {
+                    throw io;
+                }
+                if (e.getCause() instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+
+        try {
+            CachedImage result = fetch(uri, cached);
+            own.complete(result);
+            return result;
+        } catch (IOException | RuntimeException e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(url, own);
+        }
+    }
+
+    /**
+     * Tải uri, theo tối đa MAX_REDIRECTS redirect. Mỗi lượt kiểm tra host và địa chỉ trước khi kết nối
+     */
+    private CachedImage fetch(URI uri, CachedImage cached) throws IOException {
+        URI current = uri;
+        for (int redirects = 0; ; redirects++) {
+            checkAddress(current);
+            Semaphore permits = hostPermits.computeIfAbsent(current.getHost().toLowerCase(Locale.ROOT),
+                    host -> new Semaphore(Math.max(1, properties.getMaxConnectionsPerHost()), true));
+            try {
+                if (!permits.tryAcquire(properties.getRequestTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+                    throw new IOException("timed out waiting for a connection to " + current.getHost());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for a connection to " + current.getHost(), e);
+            }
+
+            try {
+                HttpRequest.Builder request = HttpRequest.newBuilder(current)
+                        .timeout(properties.getRequestTimeout())
+                        .GET();
+                if (cached != null && cached.etag() != null) {
+                    request.header("If-None-Match", cached.etag());
+                }
+
+                HttpResponse<InputStream> response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+                try (InputStream body = response.body()) {
+                    if (!isRedirect(response.statusCode())) {
+                        return read(uri, cached, response, body);
+                    }
+                    if (redirects >= MAX_REDIRECTS) {
+                        throw new IllegalArgumentException(uri + " redirected more than " + MAX_REDIRECTS + " times");
+                    }
+                    current = redirectTarget(current, response);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while fetching " + current, e);
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    private static boolean isRedirect(int status) {
+        return status == 301 || status == 302 || status == 303 || status == 307 || status == 308;
+    }
+
+    /**
+     * Đích của redirect, phải là http(s) tới host được phép như URL ban đầu
+     */
+    private URI redirectTarget(URI current, HttpResponse<?> response) {
+        String location = response.headers().firstValue("Location")
+                .orElseThrow(() -> new IllegalArgumentException(current + " redirected without a Location"));
+        URI target;
+        try {
+            target = current.resolve(new URI(location.trim()));
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            throw new IllegalArgumentException(current + " redirected to an invalid URL: " + location);
+        }
+        if (!isHttp(target)) {
+            throw new IllegalArgumentException(current + " redirected to a non-http(s) URL: " + location);
+        }
+        if (!isAllowedHost(target.getHost())) {
+            throw new IllegalArgumentException(current + " redirected to host " + target.getHost()
+                    + ", which is not allowed");
+        }
+        return target;
+    }
+
+    /**
+     * Từ chối host phân giải ra địa chỉ không được ra ngoài internet (trừ khi allowPrivateAddresses)
+     */
+    private void checkAddress(URI uri) throws IOException {
+        if (properties.isAllowPrivateAddresses()) {
+            return;
+        }
+        for (InetAddress address : InetAddress.getAllByName(uri.getHost())) {
+            if (isPrivate(address)) {
+                throw new IllegalArgumentException("Host " + uri.getHost() + " resolves to a private address "
+                        + address.getHostAddress());
+            }
+        }
+    }
+
+    static boolean isPrivate(InetAddress address) {
+        if (address.isAnyLocalAddress() || address.isLoopbackAddress() || address.isLinkLocalAddress()
+                || address.isSiteLocalAddress() || address.isMulticastAddress()) {
+            return true;
+        }
+        byte[] bytes = address.getAddress();
+        if (address instanceof Inet6Address) {
+            // fc00::/7 (unique local)
+            return (bytes[0] & 0xfe) == 0xfc;
+        }
+        // 100.64.0.0/10 (carrier-grade NAT)
+        return (bytes[0] & 0xff) == 100 && (bytes[1] & 0xc0) == 64;
+    }
+
+    /**
+     * Kết quả của lượt cuối (không phải redirect). Ảnh được cache theo URL ban đầu
+     */
+    private CachedImage read(URI uri, CachedImage cached, HttpResponse<InputStream> response, InputStream body)
+            throws IOException {
+        if (response.statusCode() == 304 && cached != null) {
+            revalidated.increment();
+            log.debug("Image {} not modified", uri);
+            return store(cached.validated(Instant.now()));
+        }
+        if (response.statusCode() != 200) {
+            throw new IllegalArgumentException(uri + " returned HTTP " + response.statusCode());
+        }
+
+        long maxSize = properties.getMaxImageSize().toBytes();
+        long declared = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+        if (declared > maxSize) {
+            throw new IllegalArgumentException(uri + " is larger than the maximum of "
+                    + maxSize / (1024 * 1024) + " MB");
+        }
+        byte[] content = body.readNBytes((int) Math.min(Integer.MAX_VALUE - 8, maxSize + 1));
+        if (content.length > maxSize) {
+            throw new IllegalArgumentException(uri + " is larger than the maximum of "
+                    + maxSize / (1024 * 1024) + " MB");
+        }
+
+        misses.increment();
+        String etag = response.headers().firstValue("ETag").orElse(null);
+        String contentType = response.headers().firstValue("Content-Type").orElse(null);
+        log.debug("Fetched image {} ({} bytes, ETag {})", uri, content.length, etag);
+        return store(new CachedImage(uri.toString(), etag, contentType, content, Instant.now()));
+    }
+
+    /**
+     * Đưa ảnh vào cache, bỏ ảnh ít dùng gần đây nhất nếu vượt cacheSize. Ảnh lớn hơn cả cache không được giữ
+     */
+    private CachedImage store(CachedImage image) {
+        long max = properties.getCacheSize().toBytes();
+        synchronized (cache) {
+            CachedImage previous = cache.remove(image.url());
+            if (previous != null) {
+                cachedBytes.addAndGet(-previous.content().length);
+            }
+            if (image.content().length > max) {
+                return image;
+            }
+            Iterator<CachedImage> it = cache.values().iterator();
+            while (cachedBytes.get() + image.content().length > max && it.hasNext()) {
+                cachedBytes.addAndGet(-it.next().content().length);
+                it.remove();
+            }
+            cache.put(image.url(), image);
+            cachedBytes.addAndGet(image.content().length);
+        }
+        return image;
+    }
+
+    private static String fileName(String url) {
+        String path = URI.create(url).getPath();
+        if (path == null || path.isEmpty() || path.endsWith("/")) {
+            return "image";
+        }
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,38 @@
+package exe2.slideapp.demopoi.service;
+
+import java.util.Locale;
+
+/**
+ * Engine dùng để render một request
+ */
+public enum RenderEngine {
+    /**
+     * Dùng STREAMING khi có thể, tự chuyển sang POI khi template cần đến object model
+     */
+    AUTO,
+    /**
+     * Luôn dùng XMLSlideShow của POI
+     */
+    POI,
+    /**
+     * Chỉ thay thế text bằng StAX trên slide XML, các part khác được copy nguyên dạng nén
+     */
+    STREAMING;
+
+    /**
+     * Engine khi request không chỉ định. STREAMING cho kết quả khác về cấu trúc (part được ghi lại, marker lặp
+     * được mở rộng theo cách riêng) nên chỉ dùng khi client chọn auto hoặc streaming
+     */
+    public static final RenderEngine DEFAULT = POI;
+
+    public static RenderEngine fromParameter(String value) {
+        if (value == null || value.isBlank()) {
+            return DEFAULT;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown render engine: " + value);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package exe2.slideapp.demopoi.service;
+
+import lombok.Getter;
+
+import java.time.Instant;
+
+/**
+ * Trạng thái của một job render bất đồng bộ
+ */
+@Getter
+public class RenderJob {
+
+    public enum Status {
+        QUEUED, RUNNING, SUCCEEDED, FAILED
+    }
+
+    private final String id;
+    private final String outputFilename;
+    private final Instant submittedAt = Instant.now();
+    private volatile Status status = Status.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile long outputSize;
+    private volatile String error;
+
+    RenderJob(String id, String outputFilename) {
+        this.id = id;
+        this.outputFilename = outputFilename;
+    }
+
+    void markRunning() {
+        startedAt = Instant.now();
+        status = Status.RUNNING;
+    }
+
+    void markSucceeded(long outputSize) {
+        this.outputSize = outputSize;
+        finishedAt = Instant.now();
+        status = Status.SUCCEEDED;
+    }
+
+    void markFailed(String error) {
+        this.error = error;
+        finishedAt = Instant.now();
+        status = Status.FAILED;
+    }
+}
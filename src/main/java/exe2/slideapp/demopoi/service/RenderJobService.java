@@ -0,0 +1,170 @@
+package exe2.slideapp.demopoi.service;
+
+import exe2.slideapp.demopoi.config.JobProperties;
+import exe2.slideapp.demopoi.exception.JobFailedException;
+import exe2.slideapp.demopoi.exception.JobNotReadyException;
+import exe2.slideapp.demopoi.exception.ResourceNotFoundException;
+import exe2.slideapp.demopoi.exception.ServiceOverloadedException;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Render bất đồng bộ: job chạy trên pool worker giới hạn với hàng đợi có sức chứa cố định, tính cả theo
+ * số job lẫn tổng dung lượng input đang chờ. Hàng đợi đầy thì từ chối ngay (429) thay vì giữ request
+ * thread của Tomcat
+ */
+@Service
+@Slf4j
+public class RenderJobService {
+
+    private final PowerPointService powerPointService;
+    private final ResultStore resultStore;
+    private final JobProperties properties;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, RenderJob> jobs = new ConcurrentHashMap<>();
+    // Template và ảnh của job đang chờ nằm trong heap cho tới khi worker nhận job
+    private final AtomicLong queuedBytes = new AtomicLong();
+
+    public RenderJobService(PowerPointService powerPointService, ResultStore resultStore, JobProperties properties) {
+        this.powerPointService = powerPointService;
+        this.resultStore = resultStore;
+        this.properties = properties;
+        int workers = properties.getWorkers() > 0
+                ? properties.getWorkers()
+                : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(properties.getQueueCapacity()),
+                r -> {
+                    Thread t = new Thread(r, "render-job-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Đưa job vào hàng đợi. Ảnh được sao chép vào bộ nhớ vì file upload bị xóa khi request kết thúc
+     */
+    public RenderJob submit(byte[] template, TemplateData data, Map<String, MultipartFile> images,
+                            String outputFilename) throws IOException {
+        long size = template.length + images.values().stream().mapToLong(MultipartFile::getSize).sum();
+        if (!reserveQueuedBytes(size)) {
+            throw new ServiceOverloadedException("Render queue is full ("
+                    + properties.getMaxQueuedBytes().toMegabytes() + " MB of input waiting)", 5);
+        }
+
+        RenderJob job = new RenderJob(UUID.randomUUID().toString(), outputFilename);
+        try {
+            Map<String, MultipartFile> retainedImages = new HashMap<>();
+            for (Map.Entry<String, MultipartFile> entry : images.entrySet()) {
+                retainedImages.put(entry.getKey(), ByteArrayMultipartFile.copyOf(entry.getValue()));
+            }
+            jobs.put(job.getId(), job);
+            executor.execute(() -> {
+                queuedBytes.addAndGet(-size);
+                run(job, template, data, retainedImages);
+            });
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            queuedBytes.addAndGet(-size);
+            throw new ServiceOverloadedException("Render queue is full ("
+                    + properties.getQueueCapacity() + " jobs waiting)", 5);
+        } catch (IOException | RuntimeException e) {
+            jobs.remove(job.getId());
+            queuedBytes.addAndGet(-size);
+            throw e;
+        }
+        log.info("Render job {} queued ({} waiting)", job.getId(), executor.getQueue().size());
+        return job;
+    }
+
+    public RenderJob getJob(String id) {
+        RenderJob job = jobs.get(id);
+        if (job == null) {
+            throw new ResourceNotFoundException("Render job not found or expired: " + id);
+        }
+        return job;
+    }
+
+    /**
+     * Kết quả của job đã thành công. Job lỗi không bao giờ có kết quả nên được báo riêng, người gọi không poll tiếp
+     */
+    public ResultStore.StoredResult getResult(String id) {
+        RenderJob job = getJob(id);
+        if (job.getStatus() == RenderJob.Status.FAILED) {
+            throw new JobFailedException("Render job " + id + " failed", job.getError());
+        }
+        if (job.getStatus() != RenderJob.Status.SUCCEEDED) {
+            throw new JobNotReadyException("Render job " + id + " has no result yet", job.getStatus().name());
+        }
+        ResultStore.StoredResult result = resultStore.get(id);
+        if (result == null) {
+            throw new ResourceNotFoundException("Result of render job " + id + " has been evicted");
+        }
+        return result;
+    }
+
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    public long getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
+    /**
+     * Hàng đợi rỗng luôn nhận job, để một template lớn hơn giới hạn vẫn render được khi node rảnh
+     */
+    private boolean reserveQueuedBytes(long size) {
+        long limit = properties.getMaxQueuedBytes().toBytes();
+        while (true) {
+            long queued = queuedBytes.get();
+            if (queued > 0 && queued + size > limit) {
+                return false;
+            }
+            if (queuedBytes.compareAndSet(queued, queued + size)) {
+                return true;
+            }
+        }
+    }
+
+    private void run(RenderJob job, byte[] template, TemplateData data, Map<String, MultipartFile> images) {
+        job.markRunning();
+        try {
+            ResultStore.StoredResult result = resultStore.store(job.getId(),
+                    out -> powerPointService.render(template, data, images, RenderEngine.DEFAULT, out));
+            job.markSucceeded(result.size());
+            log.info("Render job {} finished ({} bytes)", job.getId(), result.size());
+        } catch (Exception e) {
+            log.error("Render job {} failed: {}", job.getId(), e.getMessage(), e);
+            job.markFailed(e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Xóa trạng thái của các job đã kết thúc quá resultTtl
+     */
+    @Scheduled(fixedDelayString = "PT1M")
+    public void evictExpiredJobs() {
+        Instant cutoff = Instant.now().minus(properties.getResultTtl());
+        jobs.values().removeIf(job -> job.getFinishedAt() != null && job.getFinishedAt().isBefore(cutoff));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
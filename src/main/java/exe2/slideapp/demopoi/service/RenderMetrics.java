@@ -0,0 +1,156 @@
+package exe2.slideapp.demopoi.service;
+
+import io.micrometer.core.instrument.*;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Metrics của pipeline render (Micrometer): thời gian từng phase có histogram để xem p99,
+ * counter cho slide/paragraph/placeholder/ảnh và gauge cho số render đang chạy
+ * cùng bộ nhớ đang giữ chỗ cho các deck đang mở
+ */
+@Component
+public class RenderMetrics {
+
+    /**
+     * Các phase của một request render
+     */
+    public enum Phase {
+        MULTIPART, ADMISSION, LOAD, TEXT, IMAGES, CHARTS, WRITE;
+
+        String tag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final MeterRegistry registry;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Counter slides;
+    private final Counter paragraphs;
+    private final Counter placeholdersHit;
+    private final Counter placeholdersMissed;
+    private final Counter imageBytes;
+
+    public RenderMetrics(MeterRegistry registry, MemoryAdmission memoryAdmission, TemplatePool templatePool) {
+        this.registry = registry;
+        this.slides = Counter.builder("ppt.render.slides")
+                .description("Slides processed")
+                .register(registry);
+        this.paragraphs = Counter.builder("ppt.render.paragraphs")
+                .description("Paragraphs scanned for placeholders")
+                .register(registry);
+        this.placeholdersHit = Counter.builder("ppt.render.placeholders")
+                .description("Text placeholders found in templates")
+                .tag("result", "hit")
+                .register(registry);
+        this.placeholdersMissed = Counter.builder("ppt.render.placeholders")
+                .description("Text placeholders found in templates")
+                .tag("result", "miss")
+                .register(registry);
+        this.imageBytes = Counter.builder("ppt.render.image.bytes")
+                .description("Image bytes embedded into rendered decks")
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+
+        Gauge.builder("ppt.render.in.flight", inFlight, AtomicInteger::get)
+                .description("Renders started whose deck has not been closed yet")
+                .register(registry);
+        Gauge.builder("ppt.render.reserved.memory", memoryAdmission, MemoryAdmission::getReservedBytes)
+                .description("Heap reserved by open decks (admission estimate)")
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+        Gauge.builder("ppt.render.memory.budget", memoryAdmission, MemoryAdmission::getBudgetBytes)
+                .description("Heap budget shared by all renders")
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+        Gauge.builder("ppt.template.pool.memory", templatePool, TemplatePool::getUsedBytes)
+                .description("Estimated heap held by pre-parsed templates")
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+    }
+
+    /**
+     * Ghi thời gian một phase. engine là "none" với các phase chạy trước khi chọn engine
+     */
+    public void recordPhase(Phase phase, String engine, long nanos) {
+        timer("ppt.render.phase", phase.tag(), engine).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void renderStarted() {
+        inFlight.incrementAndGet();
+    }
+
+    void renderFailed() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Ghi số liệu của phần render đã xong và bọc deck để đo phase write,
+     * render chỉ được tính là kết thúc khi deck được close
+     */
+    RenderedDeck track(RenderedDeck deck, RenderStats stats, long startNanos) {
+        for (Phase phase : Phase.values()) {
+            if (stats.hasPhase(phase)) {
+                recordPhase(phase, stats.engine, stats.getPhaseNanos(phase));
+            }
+        }
+        slides.increment(stats.slides);
+        paragraphs.increment(stats.paragraphs);
+        placeholdersHit.increment(stats.placeholdersHit);
+        placeholdersMissed.increment(stats.placeholdersMissed);
+        imageBytes.increment(stats.imageBytes);
+        return new TrackedDeck(deck, stats.engine, startNanos);
+    }
+
+    private Timer timer(String name, String phase, String engine) {
+        return timers.computeIfAbsent(name + '|' + phase + '|' + engine, key -> {
+            Timer.Builder builder = Timer.builder(name).publishPercentileHistogram();
+            if (phase != null) {
+                builder.tag("phase", phase);
+            }
+            return builder.tag("engine", engine).register(registry);
+        });
+    }
+
+    private class TrackedDeck implements RenderedDeck {
+        private final RenderedDeck delegate;
+        private final String engine;
+        private final long startNanos;
+        private boolean closed;
+
+        TrackedDeck(RenderedDeck delegate, String engine, long startNanos) {
+            this.delegate = delegate;
+            this.engine = engine;
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public void write(OutputStream out, CompressionPolicy compression) throws IOException {
+            long start = System.nanoTime();
+            delegate.write(out, compression);
+            recordPhase(Phase.WRITE, engine, System.nanoTime() - start);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                delegate.close();
+            } finally {
+                if (!closed) {
+                    closed = true;
+                    inFlight.decrementAndGet();
+                    timer("ppt.render", null, engine).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+    }
+}
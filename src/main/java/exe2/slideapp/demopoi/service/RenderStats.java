@@ -0,0 +1,65 @@
+package exe2.slideapp.demopoi.service;
+
+import java.util.Arrays;
+
+/**
+ * Số liệu của một lần render. Được cộng dồn cục bộ trong lúc render
+ * rồi ghi vào RenderMetrics một lần, để vòng lặp chính không phải chạm vào meter
+ */
+class RenderStats {
+
+    private final long[] phaseNanos = new long[RenderMetrics.Phase.values().length];
+    private final boolean[] phaseRecorded = new boolean[phaseNanos.length];
+
+    String engine = "poi";
+    int slides;
+    int paragraphs;
+    int placeholdersHit;
+    int placeholdersMissed;
+    long imageBytes;
+
+    /**
+     * Bỏ số liệu đã ghi, khi phải render lại bằng engine khác
+     */
+    void reset() {
+        Arrays.fill(phaseNanos, 0);
+        Arrays.fill(phaseRecorded, false);
+        engine = "poi";
+        slides = 0;
+        paragraphs = 0;
+        placeholdersHit = 0;
+        placeholdersMissed = 0;
+        imageBytes = 0;
+    }
+
+    /**
+     * Cộng thời gian đã chạy kể từ start (System.nanoTime()) vào phase
+     */
+    void endPhase(RenderMetrics.Phase phase, long start) {
+        phaseNanos[phase.ordinal()] += System.nanoTime() - start;
+        phaseRecorded[phase.ordinal()] = true;
+    }
+
+    boolean hasPhase(RenderMetrics.Phase phase) {
+        return phaseRecorded[phase.ordinal()];
+    }
+
+    long getPhaseNanos(RenderMetrics.Phase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    /**
+     * Listener của PlaceholderTokenizer.replaceAcrossRuns: đếm token có trong data (hit) và không có (miss)
+     * ngay trong lượt thay thế, không quét lại text. Token ảnh không được tính
+     */
+    void countPlaceholder(String key, boolean hit) {
+        if (key.startsWith(PlaceholderTokenizer.IMAGE_PREFIX)) {
+            return;
+        }
+        if (hit) {
+            placeholdersHit++;
+        } else {
+            placeholdersMissed++;
+        }
+    }
+}
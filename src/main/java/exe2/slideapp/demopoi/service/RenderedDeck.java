@@ -0,0 +1,21 @@
+package exe2.slideapp.demopoi.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Deck đã thay thế xong nhưng chưa ghi. Người gọi phải close() sau khi ghi
+ * để trả lại tài nguyên (bộ nhớ đã giữ chỗ, object model)
+ */
+public interface RenderedDeck extends Closeable {
+
+    /**
+     * Ghi deck với CompressionPolicy.DEFAULT
+     */
+    default void write(OutputStream out) throws IOException {
+        write(out, CompressionPolicy.DEFAULT);
+    }
+
+    void write(OutputStream out, CompressionPolicy compression) throws IOException;
+}
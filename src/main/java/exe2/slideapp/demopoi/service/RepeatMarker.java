@@ -0,0 +1,84 @@
+package exe2.slideapp.demopoi.service;
+
+import java.util.Map;
+
+/**
+ * Marker lặp {#key}, dùng chung cho slide lặp, dòng bảng lặp (cả hai engine) và TemplateInspector.
+ * Trong ô bảng có thể thêm giới hạn mỗi slide: {#key:N} hoặc {#key:fit};
+ * rowsPerSlide = 0 là không giới hạn, -1 là tính theo chiều cao slide
+ *
+ * @param token token không có dấu ngoặc, ví dụ "#items:5" (được thay bằng chuỗi rỗng khi điền)
+ */
+record RepeatMarker(String token, String key, int rowsPerSlide) {
+
+    static final String PREFIX = "#";
+    static final int FIT = -1;
+    private static final String FIT_OPTION = "fit";
+
+    static boolean isMarker(String token) {
+        return token.startsWith(PREFIX);
+    }
+
+    /**
+     * Key của marker (phần trước ':'), không kiểm tra giới hạn
+     */
+    static String keyOf(String token) {
+        String spec = token.substring(PREFIX.length());
+        int colon = spec.indexOf(':');
+        return colon < 0 ? spec : spec.substring(0, colon);
+    }
+
+    /**
+     * @throws IllegalArgumentException nếu giới hạn không phải số dương hoặc 'fit'
+     */
+    static RepeatMarker parse(String token) {
+        String spec = token.substring(PREFIX.length());
+        int colon = spec.indexOf(':');
+        if (colon < 0) {
+            return new RepeatMarker(token, spec, 0);
+        }
+        String option = spec.substring(colon + 1).strip();
+        int rows;
+        if (FIT_OPTION.equalsIgnoreCase(option)) {
+            rows = FIT;
+        } else {
+            try {
+                rows = Integer.parseInt(option);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid repeat marker {" + token + "}: expected a row count or 'fit'");
+            }
+            if (rows < 1) {
+                throw new IllegalArgumentException("Invalid repeat marker {" + token + "}: row count must be positive");
+            }
+        }
+        return new RepeatMarker(token, spec.substring(0, colon), rows);
+    }
+
+    /**
+     * Marker đầu tiên trong text có key trong lists (marker của danh sách không có trong data bị bỏ qua)
+     */
+    static RepeatMarker find(String text, Map<String, ?> lists) {
+        if (lists.isEmpty() || !PlaceholderTokenizer.mayContainToken(text)) {
+            return null;
+        }
+        RepeatMarker[] found = new RepeatMarker[1];
+        PlaceholderTokenizer.forEachToken(text, (start, end, token) -> {
+            if (found[0] == null && isMarker(token) && lists.containsKey(keyOf(token))) {
+                found[0] = parse(token);
+            }
+        });
+        return found[0];
+    }
+
+    /**
+     * Như find, cho text ngoài bảng: giới hạn dòng chỉ có nghĩa trong ô bảng
+     */
+    static RepeatMarker findSlideMarker(String text, Map<String, ?> lists) {
+        RepeatMarker marker = find(text, lists);
+        if (marker != null && marker.rowsPerSlide() != 0) {
+            throw new IllegalArgumentException("Repeat marker {" + marker.token()
+                    + "} outside a table cannot have a row limit");
+        }
+        return marker;
+    }
+}
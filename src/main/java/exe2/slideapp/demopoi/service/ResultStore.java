@@ -0,0 +1,132 @@
+package exe2.slideapp.demopoi.service;
+
+import exe2.slideapp.demopoi.config.JobProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Kho kết quả render trên đĩa local: mỗi kết quả sống tối đa resultTtl,
+ * tổng dung lượng vượt maxResultStorage thì xóa kết quả cũ nhất trước
+ */
+@Component
+@Slf4j
+public class ResultStore {
+
+    private final Path directory;
+    private final JobProperties properties;
+    private final Map<String, StoredResult> results = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+
+    public ResultStore(JobProperties properties) throws IOException {
+        this.properties = properties;
+        this.directory = Paths.get(properties.getResultDirectory());
+        Files.createDirectories(directory);
+        // Trạng thái job chỉ nằm trong bộ nhớ nên kết quả của lần chạy trước không còn dùng được
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(directory, "*.{pptx,part}")) {
+            for (Path leftover : leftovers) {
+                Files.deleteIfExists(leftover);
+            }
+        }
+    }
+
+    /**
+     * Hàm ghi nội dung kết quả
+     */
+    @FunctionalInterface
+    public interface ResultWriter {
+        void write(OutputStream out) throws Exception;
+    }
+
+    /**
+     * Một kết quả đã lưu
+     */
+    public record StoredResult(String id, Path path, long size, Instant createdAt) {
+    }
+
+    /**
+     * Ghi kết quả vào file tạm rồi đổi tên, nên không bao giờ đọc được kết quả dở dang
+     */
+    public StoredResult store(String id, ResultWriter writer) throws Exception {
+        Path partial = directory.resolve(id + ".part");
+        Path target = directory.resolve(id + ".pptx");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(partial), 64 * 1024)) {
+            writer.write(out);
+        } catch (Exception e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+        Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        StoredResult result = new StoredResult(id, target, Files.size(target), Instant.now());
+        results.put(id, result);
+        totalBytes.addAndGet(result.size());
+        enforceSizeLimit();
+        return result;
+    }
+
+    /**
+     * Trả về null nếu kết quả không tồn tại hoặc đã bị xóa
+     */
+    public StoredResult get(String id) {
+        return results.get(id);
+    }
+
+    public void delete(String id) {
+        StoredResult result = results.remove(id);
+        if (result != null) {
+            totalBytes.addAndGet(-result.size());
+            try {
+                Files.deleteIfExists(result.path());
+            } catch (IOException e) {
+                log.warn("Failed to delete result {}: {}", result.path(), e.getMessage());
+            }
+        }
+    }
+
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    /**
+     * Xóa các kết quả hết hạn
+     */
+    @Scheduled(fixedDelayString = "PT1M")
+    public void evictExpired() {
+        Instant cutoff = Instant.now().minus(properties.getResultTtl());
+        results.values().stream()
+                .filter(result -> result.createdAt().isBefore(cutoff))
+                .map(StoredResult::id)
+                .toList()
+                .forEach(id -> {
+                    log.debug("Result {} expired", id);
+                    delete(id);
+                });
+    }
+
+    private void enforceSizeLimit() {
+        long max = properties.getMaxResultStorage().toBytes();
+        if (totalBytes.get() <= max) {
+            return;
+        }
+        results.values().stream()
+                .sorted(Comparator.comparing(StoredResult::createdAt))
+                .toList()
+                .forEach(result -> {
+                    if (totalBytes.get() > max) {
+                        log.debug("Evicting result {} to stay under {} bytes", result.id(), max);
+                        delete(result.id());
+                    }
+                });
+    }
+}
@@ -0,0 +1,79 @@
+package exe2.slideapp.demopoi.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Một file tạm thuộc ScratchSpace. Dung lượng ghi vào được tính vào quota,
+ * close() xóa file và trả lại quota
+ */
+@Slf4j
+public class ScratchFile implements Closeable {
+
+    private final ScratchSpace space;
+    private final Path path;
+    private long size;
+    private boolean closed;
+
+    ScratchFile(ScratchSpace space, Path path) {
+        this.space = space;
+        this.path = path;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Số byte đã ghi vào file
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * Stream ghi vào file, mỗi lần ghi đều kiểm tra quota
+     */
+    public OutputStream openOutputStream() throws IOException {
+        OutputStream out = new BufferedOutputStream(Files.newOutputStream(path), 64 * 1024);
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                account(1);
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                account(len);
+                out.write(b, off, len);
+            }
+        };
+    }
+
+    public InputStream openInputStream() throws IOException {
+        return Files.newInputStream(path);
+    }
+
+    private synchronized void account(long bytes) throws IOException {
+        space.reserve(bytes);
+        size += bytes;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        space.release(size);
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Failed to delete scratch file {}: {}", path, e.getMessage());
+        }
+    }
+}
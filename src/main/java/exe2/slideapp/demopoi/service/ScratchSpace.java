@@ -0,0 +1,141 @@
+package exe2.slideapp.demopoi.service;
+
+import exe2.slideapp.demopoi.config.ScratchProperties;
+import exe2.slideapp.demopoi.exception.StorageQuotaExceededException;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Vùng file tạm có quota. Mọi file được tạo ở đây đều phải được close (xóa) sau khi dùng,
+ * thay cho File.createTempFile không bao giờ được dọn.
+ * <p>
+ * Mỗi process dùng một thư mục con riêng và giữ file lock trên nó, nên nhiều instance có thể
+ * dùng chung thư mục cấu hình mà không xóa file của nhau
+ */
+@Component
+@Slf4j
+public class ScratchSpace {
+
+    private static final String RUN_PREFIX = "run-";
+    private static final String LOCK_FILE = ".lock";
+    private static final Duration LOCK_GRACE = Duration.ofMinutes(1);
+
+    private final Path root;
+    private final Path directory;
+    private final long quotaBytes;
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+
+    public ScratchSpace(ScratchProperties properties) throws IOException {
+        this.root = Paths.get(properties.getDirectory());
+        this.quotaBytes = properties.getQuota().toBytes();
+        Files.createDirectories(root);
+        purgeLeftovers();
+        this.directory = Files.createTempDirectory(root, RUN_PREFIX);
+        this.lockChannel = FileChannel.open(directory.resolve(LOCK_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.lock = lockChannel.lock();
+    }
+
+    /**
+     * Tạo một file tạm mới trong vùng scratch
+     */
+    public ScratchFile create(String prefix, String suffix) throws IOException {
+        return new ScratchFile(this, Files.createTempFile(directory, prefix, suffix));
+    }
+
+    /**
+     * Số byte các file tạm đang chiếm
+     */
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    void reserve(long bytes) throws StorageQuotaExceededException {
+        long used = usedBytes.addAndGet(bytes);
+        if (used > quotaBytes) {
+            usedBytes.addAndGet(-bytes);
+            throw new StorageQuotaExceededException("Scratch space quota of " + quotaBytes + " bytes exceeded", quotaBytes);
+        }
+    }
+
+    void release(long bytes) {
+        usedBytes.addAndGet(-bytes);
+    }
+
+    /**
+     * Thư mục chứa file tạm của process này
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        try {
+            lock.release();
+            lockChannel.close();
+            FileSystemUtils.deleteRecursively(directory);
+        } catch (IOException e) {
+            log.warn("Failed to delete scratch directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    /**
+     * Xóa thư mục còn sót lại từ process đã chết (bị kill giữa chừng). Lock của process chết được hệ điều hành
+     * trả lại, thư mục còn bị lock thuộc về instance khác đang chạy nên được giữ nguyên
+     */
+    private void purgeLeftovers() throws IOException {
+        List<Path> runs;
+        try (Stream<Path> children = Files.list(root)) {
+            runs = children.filter(p -> Files.isDirectory(p) && p.getFileName().toString().startsWith(RUN_PREFIX))
+                    .toList();
+        }
+        for (Path run : runs) {
+            try {
+                if (isAbandoned(run)) {
+                    FileSystemUtils.deleteRecursively(run);
+                    log.info("Purged scratch directory {} left by a terminated process", run);
+                }
+            } catch (IOException e) {
+                log.warn("Failed to purge scratch directory {}: {}", run, e.getMessage());
+            }
+        }
+    }
+
+    private static boolean isAbandoned(Path run) throws IOException {
+        Path lockFile = run.resolve(LOCK_FILE);
+        if (!Files.exists(lockFile)) {
+            // Process chết trước khi kịp tạo lock, hoặc instance khác vừa tạo thư mục và sắp lock
+            return Files.getLastModifiedTime(run).toInstant().isBefore(Instant.now().minus(LOCK_GRACE));
+        }
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.WRITE)) {
+            FileLock probe = channel.tryLock();
+            if (probe == null) {
+                return false;
+            }
+            probe.release();
+            return true;
+        } catch (OverlappingFileLockException e) {
+            // Lock do một ScratchSpace khác trong cùng JVM giữ
+            return false;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package exe2.slideapp.demopoi.service;
+
+import org.apache.poi.ooxml.POIXMLDocumentPart;
+import org.apache.poi.ooxml.POIXMLRelation;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.*;
+import org.apache.poi.xslf.usermodel.*;
+import org.apache.xmlbeans.XmlCursor;
+import org.openxmlformats.schemas.presentationml.x2006.main.CTSlide;
+
+import javax.xml.namespace.QName;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Nhân bản slide ở mức XML: copy cây shape rồi trỏ bản sao tới cùng layout, ảnh và các part khác
+ * của slide gốc bằng relationship mới (không copy nội dung part). Không tạo đối tượng shape của POI,
+ * nên XML của bản sao vẫn sửa trực tiếp được trước khi render.
+ * <p>
+ * Riêng chart được copy thành part mới cùng workbook nhúng của nó: PowerPoint không cho hai khung chart
+ * dùng chung một part, và mỗi bản sao phải điền được dữ liệu chart riêng
+ */
+final class SlideCloner {
+
+    private static final String RELATIONSHIPS_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+    private SlideCloner() {
+    }
+
+    /**
+     * Tạo bản sao của source và đặt nó tại vị trí position trong deck
+     */
+    static XSLFSlide cloneSlide(XMLSlideShow ppt, XSLFSlide source, int position) {
+        XSLFSlide copy = cloneSlide(ppt, source);
+        ppt.setSlideOrder(copy, position);
+        return copy;
+    }
+
+    /**
+     * Tạo bản sao của source ở cuối deck. setSlideOrder ghi lại cả danh sách slide,
+     * nên khi tạo nhiều bản sao thì sắp xếp một lần sau cùng
+     */
+    static XSLFSlide cloneSlide(XMLSlideShow ppt, XSLFSlide source) {
+        XSLFSlide copy = ppt.createSlide(source.getSlideLayout());
+
+        // Id của relationship trong bản sao có thể khác slide gốc (layout đã chiếm rId1)
+        Map<String, String> ids = new HashMap<>();
+        for (POIXMLDocumentPart.RelationPart relation : source.getRelationParts()) {
+            POIXMLDocumentPart part = relation.getDocumentPart();
+            if (part instanceof XSLFSlideLayout || part instanceof XSLFNotes || part instanceof XSLFComments) {
+                continue;
+            }
+            POIXMLRelation type = XSLFRelation.getInstance(relation.getRelationship().getRelationshipType());
+            if (type == null) {
+                continue;
+            }
+            if (part instanceof XSLFChart chart) {
+                part = cloneChart(ppt, chart);
+            }
+            POIXMLDocumentPart.RelationPart added = copy.addRelation(null, type, part);
+            ids.put(relation.getRelationship().getId(), added.getRelationship().getId());
+        }
+        try {
+            for (PackageRelationship relation : source.getPackagePart().getRelationships()) {
+                if (relation.getTargetMode() == TargetMode.EXTERNAL) {
+                    PackageRelationship added = copy.getPackagePart().addExternalRelationship(
+                            relation.getTargetURI().toString(), relation.getRelationshipType());
+                    ids.put(relation.getId(), added.getId());
+                }
+            }
+        } catch (InvalidFormatException e) {
+            throw new IllegalStateException("Cannot read relationships of slide " + source.getSlideNumber(), e);
+        }
+
+        // set() trên spTree giữ nguyên đối tượng mà XSLFSheet đã cache
+        CTSlide from = source.getXmlObject();
+        CTSlide to = copy.getXmlObject();
+        to.getCSld().getSpTree().set(from.getCSld().getSpTree().copy());
+        if (from.getCSld().isSetBg()) {
+            to.getCSld().setBg(from.getCSld().getBg());
+        }
+        if (from.isSetClrMapOvr()) {
+            to.setClrMapOvr(from.getClrMapOvr());
+        }
+        if (from.isSetShowMasterSp()) {
+            to.setShowMasterSp(from.getShowMasterSp());
+        }
+        remapRelationshipIds(to, ids);
+        return copy;
+    }
+
+    /**
+     * Chart mới có nội dung của source. Relationship của chart (workbook nhúng, style, màu, theme override...)
+     * giữ nguyên id, part đích được copy để chart mới không sửa nhầm workbook của chart gốc
+     */
+    private static XSLFChart cloneChart(XMLSlideShow ppt, XSLFChart source) {
+        XSLFChart chart = ppt.createChart();
+        chart.getCTChartSpace().set(source.getCTChartSpace().copy());
+        try {
+            PackagePart from = source.getPackagePart();
+            PackagePart to = chart.getPackagePart();
+            for (PackageRelationship relation : from.getRelationships()) {
+                if (relation.getTargetMode() == TargetMode.EXTERNAL) {
+                    to.addExternalRelationship(relation.getTargetURI().toString(), relation.getRelationshipType(),
+                            relation.getId());
+                    continue;
+                }
+                PackagePart target = from.getRelatedPart(relation);
+                to.addRelationship(copyPart(target).getPartName(), TargetMode.INTERNAL,
+                        relation.getRelationshipType(), relation.getId());
+            }
+        } catch (InvalidFormatException | IOException e) {
+            throw new IllegalStateException("Cannot copy chart " + source.getPackagePart().getPartName(), e);
+        }
+        return chart;
+    }
+
+    /**
+     * Copy nội dung part sang tên mới cùng thư mục. Relationship của part được giữ, trỏ tới cùng đích
+     */
+    private static PackagePart copyPart(PackagePart source) throws InvalidFormatException, IOException {
+        OPCPackage pkg = source.getPackage();
+        String name = source.getPartName().getName();
+        int dot = name.lastIndexOf('.');
+        String base = name.substring(0, dot).replaceAll("\\d+$", "");
+        String extension = name.substring(dot);
+        PackagePartName copyName;
+        int index = 1;
+        do {
+            copyName = PackagingURIHelper.createPartName(base + index++ + extension);
+        } while (pkg.containPart(copyName));
+
+        PackagePart copy = pkg.createPart(copyName, source.getContentType());
+        try (InputStream in = source.getInputStream(); OutputStream out = copy.getOutputStream()) {
+            in.transferTo(out);
+        }
+        for (PackageRelationship relation : source.getRelationships()) {
+            if (relation.getTargetMode() == TargetMode.EXTERNAL) {
+                copy.addExternalRelationship(relation.getTargetURI().toString(), relation.getRelationshipType(),
+                        relation.getId());
+            } else {
+                copy.addRelationship(source.getRelatedPart(relation).getPartName(), TargetMode.INTERNAL,
+                        relation.getRelationshipType(), relation.getId());
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Đổi các thuộc tính r:id, r:embed, r:link... sang id tương ứng trong bản sao
+     */
+    private static void remapRelationshipIds(CTSlide slide, Map<String, String> ids) {
+        try (XmlCursor cursor = slide.newCursor()) {
+            while (cursor.hasNextToken()) {
+                if (!cursor.toNextToken().isAttr()) {
+                    continue;
+                }
+                QName name = cursor.getName();
+                if (RELATIONSHIPS_NS.equals(name.getNamespaceURI())) {
+                    String mapped = ids.get(cursor.getTextValue());
+                    if (mapped != null) {
+                        cursor.setTextValue(mapped);
+                    }
+                }
+            }
+        }
+    }
+}
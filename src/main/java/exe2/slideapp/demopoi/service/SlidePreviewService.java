@@ -0,0 +1,379 @@
+package exe2.slideapp.demopoi.service;
+
+import exe2.slideapp.demopoi.config.PreviewProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.xslf.usermodel.XMLSlideShow;
+import org.apache.poi.xslf.usermodel.XSLFSlide;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Vẽ slide của deck đã render ra PNG. Các slide được chia thành từng đoạn và vẽ song song,
+ * mỗi thread vẽ trên bản XMLSlideShow riêng (POI không cho vẽ đồng thời trên cùng một deck).
+ * Ảnh được cache trong bộ nhớ theo khóa của output cache (template, data, ảnh), số slide,
+ * chiều rộng và chất lượng; deck đã render dùng chung output cache với /process-template
+ */
+@Service
+@Slf4j
+public class SlidePreviewService {
+
+    private static final int MAX_SLIDE_COUNTS = 1000;
+
+    private final PowerPointService powerPointService;
+    private final OutputCache outputCache;
+    private final MemoryAdmission memoryAdmission;
+    private final PreviewProperties properties;
+    private final ExecutorService executor;
+    private final int parallelism;
+
+    // accessOrder = true => thứ tự duyệt là LRU
+    private final LinkedHashMap<String, byte[]> images = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Integer> slideCounts = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > MAX_SLIDE_COUNTS;
+        }
+    };
+    private final AtomicLong cachedBytes = new AtomicLong();
+    private final Counter hits;
+    private final Counter misses;
+
+    public SlidePreviewService(PowerPointService powerPointService, OutputCache outputCache,
+                               MemoryAdmission memoryAdmission, PreviewProperties properties, MeterRegistry registry) {
+        this.powerPointService = powerPointService;
+        this.outputCache = outputCache;
+        this.memoryAdmission = memoryAdmission;
+        this.properties = properties;
+        this.parallelism = properties.getParallelism() > 0
+                ? properties.getParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "slide-preview-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.hits = Counter.builder("ppt.preview.cache.requests").tag("result", "hit").register(registry);
+        this.misses = Counter.builder("ppt.preview.cache.requests").tag("result", "miss").register(registry);
+        Gauge.builder("ppt.preview.cache.size", cachedBytes, AtomicLong::get)
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+    }
+
+    /**
+     * Chất lượng vẽ. LOW tắt khử răng cưa và nội suy ảnh, dùng cho lưới thumbnail
+     */
+    public enum Quality {
+        HIGH, LOW;
+
+        public static Quality fromParameter(String value) {
+            if (value == null || value.isBlank()) {
+                return HIGH;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown preview quality: " + value);
+            }
+        }
+    }
+
+    /**
+     * Ảnh PNG của một slide, slide đánh số từ 1
+     */
+    public record SlideImage(int slide, byte[] png) {
+    }
+
+    /**
+     * Render deck (hoặc lấy từ output cache) rồi vẽ các slide được chọn
+     *
+     * @param slides danh sách slide dạng "1,3,5-7", null hoặc "all" là mọi slide
+     * @param width  chiều rộng ảnh, null là mặc định theo chất lượng
+     */
+    public List<SlideImage> render(byte[] template, TemplateData data, Map<String, MultipartFile> images,
+                                   String slides, Integer width, Quality quality) throws Exception {
+        int targetWidth = resolveWidth(width, quality);
+        String deckKey = outputCache.key(template, data, images, RenderEngine.DEFAULT,
+                powerPointService.compressionPolicy(null));
+
+        // Đã biết số slide thì có thể trả hết từ cache mà không cần render deck
+        Integer knownCount;
+        synchronized (this) {
+            knownCount = slideCounts.get(deckKey);
+        }
+        if (knownCount != null) {
+            List<SlideImage> cached = lookupAll(deckKey, parseSlides(slides, knownCount), targetWidth, quality);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        byte[] deck = renderDeck(deckKey, template, data, images);
+        int wanted = knownCount != null ? Math.max(1, Math.min(parallelism, parseSlides(slides, knownCount).size()))
+                : parallelism;
+        Reservation reservation = reserveCopies(deck, wanted);
+        try (MemoryAdmission.Permit permit = reservation.permit();
+             XMLSlideShow ppt = new XMLSlideShow(new ByteArrayInputStream(deck))) {
+            int count = ppt.getSlides().size();
+            synchronized (this) {
+                slideCounts.put(deckKey, count);
+            }
+
+            List<Integer> requested = parseSlides(slides, count);
+            Map<Integer, byte[]> result = new HashMap<>();
+            List<Integer> missing = new ArrayList<>();
+            for (int slide : requested) {
+                byte[] png = lookup(imageKey(deckKey, slide, targetWidth, quality));
+                if (png != null) {
+                    result.put(slide, png);
+                } else {
+                    missing.add(slide);
+                }
+            }
+            result.putAll(drawParallel(ppt, deck, deckKey, missing, reservation.copies(), targetWidth, quality));
+            log.debug("Preview of {} slides: {} from cache, {} drawn", requested.size(),
+                    requested.size() - missing.size(), missing.size());
+
+            List<SlideImage> ordered = new ArrayList<>(requested.size());
+            for (int slide : requested) {
+                ordered.add(new SlideImage(slide, result.get(slide)));
+            }
+            return ordered;
+        }
+    }
+
+    private int resolveWidth(Integer width, Quality quality) {
+        if (width == null) {
+            return quality == Quality.LOW ? properties.getLowResWidth() : properties.getDefaultWidth();
+        }
+        if (width < 16 || width > properties.getMaxWidth()) {
+            throw new IllegalArgumentException("Preview width must be between 16 and " + properties.getMaxWidth());
+        }
+        return width;
+    }
+
+    /**
+     * Deck đã render. Dùng output cache nếu bật để /process-template và /preview không render hai lần
+     */
+    private byte[] renderDeck(String deckKey, byte[] template, TemplateData data,
+                              Map<String, MultipartFile> images) throws Exception {
+        if (outputCache.isEnabled()) {
+            try (OutputCache.OpenedOutput opened = outputCache.openOrRender(deckKey,
+                    out -> powerPointService.render(template, data, images, RenderEngine.DEFAULT, out))) {
+                return opened.in().readAllBytes();
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(template.length);
+        powerPointService.render(template, data, images, RenderEngine.DEFAULT, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Bộ nhớ đã giữ chỗ cho copies bản deck mở đồng thời
+     */
+    private record Reservation(MemoryAdmission.Permit permit, int copies) {
+    }
+
+    /**
+     * Giữ chỗ một lần cho tối đa wanted bản deck mở đồng thời. Ngân sách không đủ thì giảm số bản,
+     * cuối cùng chờ cho một bản như render thường. Không chờ permit khác khi đang giữ một permit,
+     * nên các request preview không thể giữ chỗ của nhau rồi cùng chờ
+     */
+    private Reservation reserveCopies(byte[] deck, int wanted) throws IOException {
+        long estimate = memoryAdmission.estimate(deck);
+        long fitting = memoryAdmission.getBudgetBytes() / Math.max(1, estimate);
+        for (int copies = (int) Math.min(wanted, fitting); copies > 1; copies--) {
+            MemoryAdmission.Permit permit = memoryAdmission.tryAdmit(copies * estimate);
+            if (permit != null) {
+                return new Reservation(permit, copies);
+            }
+        }
+        return new Reservation(memoryAdmission.admit(estimate), 1);
+    }
+
+    /**
+     * Chia các slide cần vẽ thành tối đa copies đoạn liên tiếp. Đoạn đầu vẽ trên thread hiện tại
+     * với bản đã mở, các đoạn còn lại chạy trên pool, mỗi đoạn tự mở một bản deck trong phần đã giữ chỗ
+     */
+    private Map<Integer, byte[]> drawParallel(XMLSlideShow ppt, byte[] deck, String deckKey, List<Integer> slides,
+                                              int copies, int width, Quality quality) throws IOException {
+        if (slides.isEmpty()) {
+            return Map.of();
+        }
+        int chunks = Math.min(copies, slides.size());
+        int chunkSize = (slides.size() + chunks - 1) / chunks;
+        List<Future<Map<Integer, byte[]>>> futures = new ArrayList<>();
+        try {
+            for (int from = chunkSize; from < slides.size(); from += chunkSize) {
+                List<Integer> chunk = slides.subList(from, Math.min(slides.size(), from + chunkSize));
+                futures.add(executor.submit(() -> {
+                    try (XMLSlideShow copy = new XMLSlideShow(new ByteArrayInputStream(deck))) {
+                        return draw(copy, deckKey, chunk, width, quality);
+                    }
+                }));
+            }
+
+            Map<Integer, byte[]> result = new HashMap<>(draw(ppt, deckKey, slides.subList(0, Math.min(chunkSize, slides.size())),
+                    width, quality));
+            for (Future<Map<Integer, byte[]>> future : futures) {
+                result.putAll(future.get());
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Preview rendering interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException("Preview rendering failed", e.getCause());
+        } finally {
+            futures.forEach(f -> f.cancel(true));
+        }
+    }
+
+    private Map<Integer, byte[]> draw(XMLSlideShow ppt, String deckKey, List<Integer> slides, int width,
+                                      Quality quality) throws IOException {
+        Dimension pageSize = ppt.getPageSize();
+        double scale = (double) width / pageSize.getWidth();
+        int height = (int) Math.max(1, Math.round(pageSize.getHeight() * scale));
+        List<XSLFSlide> deckSlides = ppt.getSlides();
+
+        Map<Integer, byte[]> result = new HashMap<>();
+        for (int slide : slides) {
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = image.createGraphics();
+            try {
+                applyHints(graphics, quality);
+                graphics.setPaint(Color.WHITE);
+                graphics.fillRect(0, 0, width, height);
+                graphics.scale(scale, scale);
+                deckSlides.get(slide - 1).draw(graphics);
+            } finally {
+                graphics.dispose();
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(image, "png", out);
+            byte[] png = out.toByteArray();
+            store(imageKey(deckKey, slide, width, quality), png);
+            result.put(slide, png);
+        }
+        return result;
+    }
+
+    private static void applyHints(Graphics2D graphics, Quality quality) {
+        if (quality == Quality.LOW) {
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+            graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+            graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            graphics.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_SPEED);
+            return;
+        }
+        graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        graphics.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+    }
+
+    /**
+     * Đọc danh sách slide dạng "1,3,5-7". Kết quả tăng dần, không trùng
+     */
+    static List<Integer> parseSlides(String spec, int count) {
+        if (spec == null || spec.isBlank() || spec.trim().equalsIgnoreCase("all")) {
+            List<Integer> all = new ArrayList<>(count);
+            for (int i = 1; i <= count; i++) {
+                all.add(i);
+            }
+            return all;
+        }
+
+        SortedSet<Integer> slides = new TreeSet<>();
+        for (String part : spec.split(",")) {
+            String range = part.trim();
+            int dash = range.indexOf('-', 1);
+            int from;
+            int to;
+            try {
+                from = Integer.parseInt((dash < 0 ? range : range.substring(0, dash)).trim());
+                to = dash < 0 ? from : Integer.parseInt(range.substring(dash + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid slide selection: " + spec);
+            }
+            if (from < 1 || to > count || from > to) {
+                throw new IllegalArgumentException("Slide selection " + range + " is outside the deck (1-" + count + ")");
+            }
+            for (int i = from; i <= to; i++) {
+                slides.add(i);
+            }
+        }
+        return new ArrayList<>(slides);
+    }
+
+    private List<SlideImage> lookupAll(String deckKey, List<Integer> slides, int width, Quality quality) {
+        List<SlideImage> result = new ArrayList<>(slides.size());
+        synchronized (this) {
+            for (int slide : slides) {
+                byte[] png = images.get(imageKey(deckKey, slide, width, quality));
+                if (png == null) {
+                    return null;
+                }
+                result.add(new SlideImage(slide, png));
+            }
+        }
+        hits.increment(slides.size());
+        return result;
+    }
+
+    private synchronized byte[] lookup(String key) {
+        byte[] png = images.get(key);
+        (png != null ? hits : misses).increment();
+        return png;
+    }
+
+    private synchronized void store(String key, byte[] png) {
+        long max = properties.getCacheSize().toBytes();
+        if (png.length > max) {
+            return;
+        }
+        byte[] previous = images.put(key, png);
+        cachedBytes.addAndGet(png.length - (previous != null ? previous.length : 0));
+        Iterator<byte[]> eldest = images.values().iterator();
+        while (cachedBytes.get() > max && eldest.hasNext()) {
+            byte[] evicted = eldest.next();
+            eldest.remove();
+            cachedBytes.addAndGet(-evicted.length);
+        }
+    }
+
+    private static String imageKey(String deckKey, int slide, int width, Quality quality) {
+        return deckKey + ':' + slide + ':' + width + ':' + quality;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,479 @@
+package exe2.slideapp.demopoi.service;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.*;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Các thay đổi ở mức package cho slide lặp của engine streaming: tên part của các bản sao,
+ * relationship của bản sao (copy của slide gốc, bỏ notes và comments nên layout, ảnh... dùng chung),
+ * và presentation.xml, presentation.xml.rels, [Content_Types].xml đã ghi lại.
+ * Nội dung slide của bản sao không nằm ở đây, nó được sinh lần lượt khi ghi deck
+ */
+final class SlideRepeatPlan {
+
+    private static final String PRESENTATION = "ppt/presentation.xml";
+    private static final String PRESENTATION_RELS = "ppt/_rels/presentation.xml.rels";
+    private static final String CONTENT_TYPES = "[Content_Types].xml";
+    private static final String PRESENTATION_NS = "http://schemas.openxmlformats.org/presentationml/2006/main";
+    private static final String RELATIONSHIPS_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String PACKAGE_RELS_NS = "http://schemas.openxmlformats.org/package/2006/relationships";
+    private static final String CONTENT_TYPES_NS = "http://schemas.openxmlformats.org/package/2006/content-types";
+    private static final String SLIDE_TYPE = RELATIONSHIPS_NS + "/slide";
+    private static final String NOTES_TYPE = RELATIONSHIPS_NS + "/notesSlide";
+    private static final String COMMENTS_TYPE = RELATIONSHIPS_NS + "/comments";
+    private static final String CHART_TYPE = RELATIONSHIPS_NS + "/chart";
+    private static final Pattern SLIDE_NUMBER = Pattern.compile("ppt/slides/slide(\\d+)\\.xml");
+    private static final Pattern RELATIONSHIP_ID = Pattern.compile("rId(\\d+)");
+
+    private static final QName ID = new QName("id");
+    private static final QName RELATIONSHIP_ID_ATTRIBUTE = new QName(RELATIONSHIPS_NS, "id");
+    private static final QName SLIDE_ID = new QName(PRESENTATION_NS, "sldId");
+    private static final QName RELATIONSHIP = new QName(PACKAGE_RELS_NS, "Relationship");
+    private static final QName RELATIONSHIPS = new QName(PACKAGE_RELS_NS, "Relationships");
+    private static final QName OVERRIDE = new QName(CONTENT_TYPES_NS, "Override");
+    private static final QName TYPES = new QName(CONTENT_TYPES_NS, "Types");
+
+    /**
+     * Slide có marker {#key}: items.get(0) điền vào chính slide gốc, items.get(i) vào clones.get(i - 1)
+     */
+    record Repeat(String slide, String key, List<Map<String, String>> items) {
+    }
+
+    /**
+     * Bản sao của một slide gốc: tên part slide và part relationship
+     */
+    record Clone(String slide, String rels, Map<String, String> item) {
+    }
+
+    private final Map<String, Repeat> repeats = new LinkedHashMap<>();
+    private final Map<String, List<Clone>> clones = new HashMap<>();
+    private final Map<String, byte[]> cloneRels = new HashMap<>();
+    private final Map<String, byte[]> rewritten = new HashMap<>();
+    private final Set<String> removed = new HashSet<>();
+
+    private final XMLInputFactory inputFactory;
+    private final XMLOutputFactory outputFactory;
+    private final XMLEventFactory eventFactory;
+
+    private SlideRepeatPlan(XMLInputFactory inputFactory, XMLOutputFactory outputFactory, XMLEventFactory eventFactory) {
+        this.inputFactory = inputFactory;
+        this.outputFactory = outputFactory;
+        this.eventFactory = eventFactory;
+    }
+
+    static SlideRepeatPlan create(ZipFile zip, List<Repeat> repeats, XMLInputFactory inputFactory,
+                                  XMLOutputFactory outputFactory, XMLEventFactory eventFactory)
+            throws IOException, StreamingTemplateEngine.UnsupportedTemplateException {
+        SlideRepeatPlan plan = new SlideRepeatPlan(inputFactory, outputFactory, eventFactory);
+        try {
+            plan.build(zip, repeats);
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to plan repeated slides: " + e.getMessage(), e);
+        }
+        return plan;
+    }
+
+    Repeat repeat(String slide) {
+        return repeats.get(slide);
+    }
+
+    /**
+     * Bản sao được ghi ngay sau part slide gốc (hoặc part relationship của nó)
+     */
+    List<Clone> clonesOf(String slide) {
+        return clones.getOrDefault(slide, List.of());
+    }
+
+    byte[] cloneRels(String slide) {
+        return cloneRels.get(slide);
+    }
+
+    /**
+     * Part slide gốc có relationship là rels, null nếu rels không thuộc slide lặp nào
+     */
+    String slideOfRels(String rels) {
+        for (Repeat repeat : repeats.values()) {
+            if (relsName(repeat.slide()).equals(rels)) {
+                return repeat.slide();
+            }
+        }
+        return null;
+    }
+
+    Map<String, byte[]> rewritten() {
+        return rewritten;
+    }
+
+    boolean isRemoved(String name) {
+        return removed.contains(name);
+    }
+
+    private void build(ZipFile zip, List<Repeat> found)
+            throws IOException, XMLStreamException, StreamingTemplateEngine.UnsupportedTemplateException {
+        int nextSlide = 0;
+        for (ZipArchiveEntry entry : Collections.list(zip.getEntries())) {
+            Matcher matcher = SLIDE_NUMBER.matcher(entry.getName());
+            if (matcher.matches()) {
+                nextSlide = Math.max(nextSlide, Integer.parseInt(matcher.group(1)));
+            }
+        }
+
+        for (Repeat repeat : found) {
+            repeats.put(repeat.slide(), repeat);
+            byte[] rels = read(zip, relsName(repeat.slide()));
+            if (repeat.items().isEmpty()) {
+                removed.add(repeat.slide());
+                if (rels != null) {
+                    removed.add(relsName(repeat.slide()));
+                    String notes = notesOf(repeat.slide(), rels);
+                    if (notes != null) {
+                        removed.add(notes);
+                        removed.add(relsName(notes));
+                    }
+                }
+                continue;
+            }
+            // Mỗi bản sao cần part chart riêng (xem SlideCloner), engine streaming không copy part
+            if (repeat.items().size() > 1 && rels != null && hasRelationship(rels, CHART_TYPE)) {
+                throw new StreamingTemplateEngine.UnsupportedTemplateException("Repeating slide " + repeat.slide()
+                        + " with a chart requires the POI engine");
+            }
+            List<Clone> slideClones = new ArrayList<>(repeat.items().size() - 1);
+            for (int i = 1; i < repeat.items().size(); i++) {
+                String name = "ppt/slides/slide" + (++nextSlide) + ".xml";
+                slideClones.add(new Clone(name, relsName(name), repeat.items().get(i)));
+            }
+            clones.put(repeat.slide(), slideClones);
+            if (rels != null) {
+                cloneRels.put(repeat.slide(), withoutNotes(rels));
+            }
+        }
+
+        Map<String, String> slideIds = rewritePresentationRels(zip);
+        rewritePresentation(zip, slideIds);
+        rewriteContentTypes(zip);
+    }
+
+    /**
+     * Thêm relationship tới các bản sao, bỏ relationship tới part bị xóa.
+     * Trả về id relationship của mỗi part slide (slide gốc và bản sao)
+     */
+    private Map<String, String> rewritePresentationRels(ZipFile zip) throws IOException, XMLStreamException {
+        byte[] xml = require(zip, PRESENTATION_RELS);
+        Map<String, String> ids = new HashMap<>();
+        int nextId = 0;
+        XMLEventReader reader = inputFactory.createXMLEventReader(new ByteArrayInputStream(xml));
+        while (reader.hasNext()) {
+            XMLEvent event = reader.nextEvent();
+            if (event.isStartElement() && RELATIONSHIP.equals(event.asStartElement().getName())) {
+                StartElement element = event.asStartElement();
+                String id = attribute(element, "Id");
+                Matcher matcher = RELATIONSHIP_ID.matcher(id);
+                if (matcher.matches()) {
+                    nextId = Math.max(nextId, Integer.parseInt(matcher.group(1)));
+                }
+                if (SLIDE_TYPE.equals(attribute(element, "Type"))) {
+                    ids.put(resolve("ppt/", attribute(element, "Target")), id);
+                }
+            }
+        }
+        reader.close();
+
+        Map<String, String> cloneIds = new HashMap<>();
+        for (Repeat repeat : repeats.values()) {
+            if (!ids.containsKey(repeat.slide())) {
+                throw new IOException("Slide " + repeat.slide() + " is not listed in the presentation");
+            }
+            for (Clone clone : clonesOf(repeat.slide())) {
+                cloneIds.put(clone.slide(), "rId" + (++nextId));
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(xml.length + cloneIds.size() * 128);
+        reader = inputFactory.createXMLEventReader(new ByteArrayInputStream(xml));
+        XMLEventWriter writer = outputFactory.createXMLEventWriter(out, "UTF-8");
+        while (reader.hasNext()) {
+            XMLEvent event = reader.nextEvent();
+            // Bỏ cả relationship tới notes của slide bị xóa (POI ghi chúng vào presentation.xml.rels)
+            if (event.isStartElement() && RELATIONSHIP.equals(event.asStartElement().getName())
+                    && !"External".equals(attribute(event.asStartElement(), "TargetMode"))
+                    && removed.contains(resolve("ppt/", attribute(event.asStartElement(), "Target")))) {
+                skipElement(reader);
+                continue;
+            }
+            if (event.isEndElement() && RELATIONSHIPS.equals(event.asEndElement().getName())) {
+                String prefix = event.asEndElement().getName().getPrefix();
+                for (Repeat repeat : repeats.values()) {
+                    for (Clone clone : clonesOf(repeat.slide())) {
+                        writeEmpty(writer, prefix, PACKAGE_RELS_NS, "Relationship", List.of(
+                                eventFactory.createAttribute("Id", cloneIds.get(clone.slide())),
+                                eventFactory.createAttribute("Type", SLIDE_TYPE),
+                                eventFactory.createAttribute("Target", clone.slide().substring("ppt/".length()))));
+                    }
+                }
+            }
+            writer.add(event);
+        }
+        writer.close();
+        reader.close();
+        rewritten.put(PRESENTATION_RELS, out.toByteArray());
+
+        ids.putAll(cloneIds);
+        return ids;
+    }
+
+    /**
+     * Chèn sldId của các bản sao ngay sau slide gốc, bỏ sldId của slide bị xóa
+     */
+    private void rewritePresentation(ZipFile zip, Map<String, String> relationshipIds) throws IOException, XMLStreamException {
+        byte[] xml = require(zip, PRESENTATION);
+        Map<String, String> slideOfId = new HashMap<>();
+        relationshipIds.forEach((slide, id) -> slideOfId.put(id, slide));
+
+        long nextSlideId = 255;
+        XMLEventReader reader = inputFactory.createXMLEventReader(new ByteArrayInputStream(xml));
+        while (reader.hasNext()) {
+            XMLEvent event = reader.nextEvent();
+            if (event.isStartElement() && SLIDE_ID.equals(event.asStartElement().getName())) {
+                nextSlideId = Math.max(nextSlideId, Long.parseLong(attribute(event.asStartElement(), ID)));
+            }
+        }
+        reader.close();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(xml.length + relationshipIds.size() * 64);
+        reader = inputFactory.createXMLEventReader(new ByteArrayInputStream(xml));
+        XMLEventWriter writer = outputFactory.createXMLEventWriter(out, "UTF-8");
+        while (reader.hasNext()) {
+            XMLEvent event = reader.nextEvent();
+            if (!event.isStartElement() || !SLIDE_ID.equals(event.asStartElement().getName())) {
+                writer.add(event);
+                continue;
+            }
+            StartElement element = event.asStartElement();
+            Repeat repeat = repeats.get(slideOfId.get(attribute(element, RELATIONSHIP_ID_ATTRIBUTE)));
+            if (repeat != null && repeat.items().isEmpty()) {
+                skipElement(reader);
+                continue;
+            }
+            writer.add(event);
+            if (repeat == null) {
+                continue;
+            }
+            copyElement(reader, writer);
+            String relationshipPrefix = element.getAttributeByName(RELATIONSHIP_ID_ATTRIBUTE).getName().getPrefix();
+            for (Clone clone : clonesOf(repeat.slide())) {
+                if (nextSlideId >= Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Too many slides in the generated deck");
+                }
+                writeEmpty(writer, element.getName().getPrefix(), PRESENTATION_NS, "sldId", List.of(
+                        eventFactory.createAttribute("id", Long.toString(++nextSlideId)),
+                        eventFactory.createAttribute(relationshipPrefix, RELATIONSHIPS_NS, "id",
+                                relationshipIds.get(clone.slide()))));
+            }
+        }
+        writer.close();
+        reader.close();
+        rewritten.put(PRESENTATION, out.toByteArray());
+    }
+
+    /**
+     * Thêm Override cho part của các bản sao (cùng content type với slide gốc), bỏ Override của part bị xóa
+     */
+    private void rewriteContentTypes(ZipFile zip) throws IOException, XMLStreamException {
+        byte[] xml = require(zip, CONTENT_TYPES);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(xml.length + clones.size() * 128);
+        XMLEventReader reader = inputFactory.createXMLEventReader(new ByteArrayInputStream(xml));
+        XMLEventWriter writer = outputFactory.createXMLEventWriter(out, "UTF-8");
+        Map<String, String> slideTypes = new HashMap<>();
+        while (reader.hasNext()) {
+            XMLEvent event = reader.nextEvent();
+            if (event.isStartElement() && OVERRIDE.equals(event.asStartElement().getName())) {
+                String part = resolve("", attribute(event.asStartElement(), "PartName"));
+                if (removed.contains(part)) {
+                    skipElement(reader);
+                    continue;
+                }
+                if (repeats.containsKey(part)) {
+                    slideTypes.put(part, attribute(event.asStartElement(), "ContentType"));
+                }
+            }
+            if (event.isEndElement() && TYPES.equals(event.asEndElement().getName())) {
+                String prefix = event.asEndElement().getName().getPrefix();
+                for (Repeat repeat : repeats.values()) {
+                    String contentType = slideTypes.get(repeat.slide());
+                    if (contentType == null) {
+                        // Slide gốc dùng Default theo phần mở rộng, bản sao cũng vậy
+                        continue;
+                    }
+                    for (Clone clone : clonesOf(repeat.slide())) {
+                        writeEmpty(writer, prefix, CONTENT_TYPES_NS, "Override", List.of(
+                                eventFactory.createAttribute("PartName", "/" + clone.slide()),
+                                eventFactory.createAttribute("ContentType", contentType)));
+                    }
+                }
+            }
+            writer.add(event);
+        }
+        writer.close();
+        reader.close();
+        rewritten.put(CONTENT_TYPES, out.toByteArray());
+    }
+
+    /**
+     * Relationship của bản sao: như slide gốc nhưng không có notes (notes trỏ ngược về một slide)
+     * và comments (mỗi slide có part comments riêng)
+     */
+    private byte[] withoutNotes(byte[] rels) throws XMLStreamException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(rels.length);
+        XMLEventReader reader = inputFactory.createXMLEventReader(new ByteArrayInputStream(rels));
+        XMLEventWriter writer = outputFactory.createXMLEventWriter(out, "UTF-8");
+        while (reader.hasNext()) {
+            XMLEvent event = reader.nextEvent();
+            if (event.isStartElement() && RELATIONSHIP.equals(event.asStartElement().getName())) {
+                String type = attribute(event.asStartElement(), "Type");
+                if (NOTES_TYPE.equals(type) || COMMENTS_TYPE.equals(type)) {
+                    skipElement(reader);
+                    continue;
+                }
+            }
+            writer.add(event);
+        }
+        writer.close();
+        reader.close();
+        return out.toByteArray();
+    }
+
+    private boolean hasRelationship(byte[] rels, String type) throws XMLStreamException {
+        XMLEventReader reader = inputFactory.createXMLEventReader(new ByteArrayInputStream(rels));
+        try {
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isStartElement() && RELATIONSHIP.equals(event.asStartElement().getName())
+                        && type.equals(attribute(event.asStartElement(), "Type"))) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private String notesOf(String slide, byte[] rels) throws XMLStreamException {
+        XMLEventReader reader = inputFactory.createXMLEventReader(new ByteArrayInputStream(rels));
+        try {
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isStartElement() && RELATIONSHIP.equals(event.asStartElement().getName())
+                        && NOTES_TYPE.equals(attribute(event.asStartElement(), "Type"))
+                        && !"External".equals(attribute(event.asStartElement(), "TargetMode"))) {
+                    return resolve(slide.substring(0, slide.lastIndexOf('/') + 1),
+                            attribute(event.asStartElement(), "Target"));
+                }
+            }
+            return null;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void writeEmpty(XMLEventWriter writer, String prefix, String namespace, String localName,
+                            List<Attribute> attributes) throws XMLStreamException {
+        writer.add(eventFactory.createStartElement(prefix, namespace, localName, attributes.iterator(), null));
+        writer.add(eventFactory.createEndElement(prefix, namespace, localName));
+    }
+
+    /**
+     * Ghi phần còn lại của phần tử vừa đọc thẻ mở
+     */
+    private static void copyElement(XMLEventReader reader, XMLEventWriter writer) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            XMLEvent event = reader.nextEvent();
+            if (event.isStartElement()) {
+                depth++;
+            } else if (event.isEndElement()) {
+                depth--;
+            }
+            writer.add(event);
+        }
+    }
+
+    /**
+     * Bỏ qua phần còn lại của phần tử vừa đọc thẻ mở
+     */
+    private static void skipElement(XMLEventReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            XMLEvent event = reader.nextEvent();
+            if (event.isStartElement()) {
+                depth++;
+            } else if (event.isEndElement()) {
+                depth--;
+            }
+        }
+    }
+
+    private static String attribute(StartElement element, String localName) {
+        return attribute(element, new QName(localName));
+    }
+
+    private static String attribute(StartElement element, QName name) {
+        Attribute attribute = element.getAttributeByName(name);
+        return attribute != null ? attribute.getValue() : null;
+    }
+
+    static String relsName(String part) {
+        int slash = part.lastIndexOf('/');
+        return part.substring(0, slash + 1) + "_rels/" + part.substring(slash + 1) + ".rels";
+    }
+
+    /**
+     * Tên entry trong zip của target relationship, tính từ thư mục chứa part nguồn
+     */
+    private static String resolve(String directory, String target) {
+        if (target.startsWith("/")) {
+            return target.substring(1);
+        }
+        Deque<String> segments = new ArrayDeque<>();
+        for (String segment : (directory + target).split("/")) {
+            if (segment.equals("..")) {
+                segments.pollLast();
+            } else if (!segment.isEmpty() && !segment.equals(".")) {
+                segments.addLast(segment);
+            }
+        }
+        return String.join("/", segments);
+    }
+
+    private static byte[] read(ZipFile zip, String name) throws IOException {
+        ZipArchiveEntry entry = zip.getEntry(name);
+        if (entry == null) {
+            return null;
+        }
+        try (InputStream in = zip.getInputStream(entry)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static byte[] require(ZipFile zip, String name) throws IOException {
+        byte[] content = read(zip, name);
+        if (content == null) {
+            throw new IOException("Template has no " + name);
+        }
+        return content;
+    }
+}
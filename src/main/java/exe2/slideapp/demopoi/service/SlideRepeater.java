@@ -0,0 +1,138 @@
+package exe2.slideapp.demopoi.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.xslf.usermodel.XMLSlideShow;
+import org.apache.poi.xslf.usermodel.XSLFSlide;
+import org.openxmlformats.schemas.drawingml.x2006.main.*;
+import org.openxmlformats.schemas.presentationml.x2006.main.CTGraphicalObjectFrame;
+import org.openxmlformats.schemas.presentationml.x2006.main.CTGroupShape;
+import org.openxmlformats.schemas.presentationml.x2006.main.CTShape;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Slide lặp cho đường POI: slide có marker {#key} trong một text shape (không phải trong bảng)
+ * được nhân bản cho từng phần tử của danh sách key, mỗi bản sao dùng {field} của phần tử.
+ * Danh sách rỗng thì slide bị xóa. Bản sao dùng chung layout và ảnh với slide gốc (xem SlideCloner).
+ * <p>
+ * Engine streaming làm việc này khi ghi deck mà không dựng object model;
+ * đường POI chỉ dùng khi template còn cần POI (ảnh, dòng bảng lặp)
+ */
+@Slf4j
+final class SlideRepeater {
+
+    private SlideRepeater() {
+    }
+
+    /**
+     * Nhân bản và điền các slide lặp. Phải gọi trước TableRowRepeater.prepare và trước khi POI đọc shape
+     */
+    static void expand(XMLSlideShow ppt, TemplateData data, RenderStats stats) {
+        if (data.lists().isEmpty()) {
+            return;
+        }
+        for (XSLFSlide slide : new ArrayList<>(ppt.getSlides())) {
+            RepeatMarker found = findMarker(slide, data);
+            if (found == null) {
+                continue;
+            }
+            String key = found.key();
+            List<Map<String, String>> items = data.lists().get(key);
+            int index = ppt.getSlides().indexOf(slide);
+            if (items.isEmpty()) {
+                ppt.removeSlide(index);
+                continue;
+            }
+
+            // Bản sao được tạo từ slide gốc chưa điền, ở cuối deck
+            String marker = found.token();
+            int trailing = ppt.getSlides().size() - index - 1;
+            for (int i = 1; i < items.size(); i++) {
+                XSLFSlide copy = SlideCloner.cloneSlide(ppt, slide);
+                fill(copy, new ItemValues(items.get(i), data.values(), marker), data, stats);
+            }
+            fill(slide, new ItemValues(items.get(0), data.values(), marker), data, stats);
+
+            // Đưa các slide vốn nằm sau slide gốc ra sau các bản sao
+            int last = ppt.getSlides().size() - 1;
+            for (int t = 0; t < trailing; t++) {
+                ppt.setSlideOrder(ppt.getSlides().get(index + 1), last);
+            }
+            log.debug("Repeated slide {} for {} items of '{}'", index + 1, items.size(), key);
+        }
+    }
+
+    /**
+     * Marker slide lặp đầu tiên trong các text shape của slide, null nếu không có
+     */
+    private static RepeatMarker findMarker(XSLFSlide slide, TemplateData data) {
+        List<CTTextParagraph> paragraphs = new ArrayList<>();
+        collectShapeParagraphs(slide.getXmlObject().getCSld().getSpTree(), paragraphs);
+        for (CTTextParagraph paragraph : paragraphs) {
+            RepeatMarker marker = RepeatMarker.findSlideMarker(TableRowRepeater.paragraphText(paragraph), data.lists());
+            if (marker != null) {
+                return marker;
+            }
+        }
+        return null;
+    }
+
+    private static void collectShapeParagraphs(CTGroupShape group, List<CTTextParagraph> paragraphs) {
+        for (CTShape shape : group.getSpArray()) {
+            if (shape.isSetTxBody()) {
+                paragraphs.addAll(List.of(shape.getTxBody().getPArray()));
+            }
+        }
+        for (CTGroupShape inner : group.getGrpSpArray()) {
+            collectShapeParagraphs(inner, paragraphs);
+        }
+    }
+
+    /**
+     * Điền field của phần tử vào text shape và ô bảng của slide.
+     * Dòng lặp của bảng giữ nguyên để TableRowRepeater điền bằng phần tử của dòng
+     */
+    private static void fill(XSLFSlide slide, ItemValues values, TemplateData data, RenderStats stats) {
+        CTGroupShape tree = slide.getXmlObject().getCSld().getSpTree();
+        List<CTTextParagraph> paragraphs = new ArrayList<>();
+        collectShapeParagraphs(tree, paragraphs);
+        collectTableParagraphs(tree, data, paragraphs);
+        for (CTTextParagraph paragraph : paragraphs) {
+            TableRowRepeater.fillParagraph(paragraph, values, stats);
+        }
+    }
+
+    private static void collectTableParagraphs(CTGroupShape group, TemplateData data, List<CTTextParagraph> paragraphs) {
+        for (CTGraphicalObjectFrame frame : group.getGraphicFrameArray()) {
+            CTTable table = TableRowRepeater.table(frame);
+            if (table == null) {
+                continue;
+            }
+            for (CTTableRow row : table.getTrArray()) {
+                List<CTTextParagraph> cells = new ArrayList<>();
+                for (CTTableCell cell : row.getTcArray()) {
+                    if (cell.isSetTxBody()) {
+                        cells.addAll(List.of(cell.getTxBody().getPArray()));
+                    }
+                }
+                if (!isRepeatRow(cells, data)) {
+                    paragraphs.addAll(cells);
+                }
+            }
+        }
+        for (CTGroupShape inner : group.getGrpSpArray()) {
+            collectTableParagraphs(inner, data, paragraphs);
+        }
+    }
+
+    private static boolean isRepeatRow(List<CTTextParagraph> paragraphs, TemplateData data) {
+        for (CTTextParagraph paragraph : paragraphs) {
+            if (RepeatMarker.find(TableRowRepeater.paragraphText(paragraph), data.lists()) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,508 @@
+package exe2.slideapp.demopoi.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+import org.springframework.stereotype.Component;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.*;
+import javax.xml.stream.events.XMLEvent;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Engine thay thế text không dùng XMLSlideShow: đọc slide XML bằng StAX, thay placeholder
+ * trong các {@code <a:t>} (kể cả placeholder bị tách qua nhiều run), còn mọi entry khác
+ * (media, layout, theme...) được copy nguyên dạng nén, không giải nén.
+ * Slide lặp {#key} được sinh lần lượt khi ghi deck nên bộ nhớ không tăng theo số phần tử.
+ * Chỉ áp dụng được cho template không có image placeholder và dòng bảng lặp.
+ */
+@Component
+@Slf4j
+public class StreamingTemplateEngine {
+
+    private static final String DRAWING_NS = "http://schemas.openxmlformats.org/drawingml/2006/main";
+    private static final QName PARAGRAPH = new QName(DRAWING_NS, "p");
+    private static final QName TEXT = new QName(DRAWING_NS, "t");
+    private static final QName RUN = new QName(DRAWING_NS, "r");
+    private static final QName TABLE = new QName(DRAWING_NS, "tbl");
+    private static final Pattern SLIDE_ENTRY = Pattern.compile("ppt/slides/slide\\d+\\.xml");
+
+    // Slide XML gốc, bản đã ghi lại và paragraph đang đệm cùng nằm trong heap
+    private static final int SLIDE_EXPANSION_FACTOR = 3;
+
+    private final MemoryAdmission memoryAdmission;
+    private final XMLInputFactory inputFactory;
+    private final XMLOutputFactory outputFactory;
+    private final XMLEventFactory eventFactory;
+
+    public StreamingTemplateEngine(MemoryAdmission memoryAdmission) {
+        this.memoryAdmission = memoryAdmission;
+        this.inputFactory = XMLInputFactory.newFactory();
+        // Slide XML không có DTD, tắt hẳn để tránh XXE
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        this.outputFactory = XMLOutputFactory.newFactory();
+        this.eventFactory = XMLEventFactory.newFactory();
+    }
+
+    /**
+     * Template có image placeholder cần đến object model của POI
+     */
+    public static class UnsupportedTemplateException extends Exception {
+        public UnsupportedTemplateException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Thay thế text trong mọi slide. Người gọi phải close deck sau khi ghi
+     *
+     * @throws UnsupportedTemplateException nếu gặp token {IMAGE:key} có key trong images
+     */
+    public RenderedDeck render(byte[] template, Map<String, String> data, Map<String, ?> images)
+            throws IOException, UnsupportedTemplateException {
+        return render(template, TemplateData.of(data), images, new RenderStats());
+    }
+
+    RenderedDeck render(byte[] template, Map<String, String> data, Map<String, ?> images, RenderStats stats)
+            throws IOException, UnsupportedTemplateException {
+        return render(template, TemplateData.of(data), images, stats);
+    }
+
+    /**
+     * Như trên, kèm danh sách cho slide lặp
+     *
+     * @throws UnsupportedTemplateException nếu gặp image placeholder, dòng bảng lặp hoặc có data chart
+     */
+    RenderedDeck render(byte[] template, TemplateData data, Map<String, ?> images, RenderStats stats)
+            throws IOException, UnsupportedTemplateException {
+        return render(new PreparedTemplate(template), data, images, stats);
+    }
+
+    RenderedDeck render(PreparedTemplate prepared, TemplateData data, Map<String, ?> images, RenderStats stats)
+            throws IOException, UnsupportedTemplateException {
+        if (!data.charts().isEmpty()) {
+            throw new UnsupportedTemplateException("Chart data " + data.charts().keySet() + " requires the POI engine");
+        }
+        long phaseStart = System.nanoTime();
+        // Vẫn kiểm tra zip bomb như đường POI, nhưng chỉ giữ chỗ cho slide XML thay vì cả DOM
+        prepared.estimate(memoryAdmission);
+        byte[] template = prepared.getContent();
+        Map<String, byte[]> rewritten = new HashMap<>();
+
+        try (ZipFile zip = openZip(template)) {
+            long slideBytes = 0;
+            for (ZipArchiveEntry entry : Collections.list(zip.getEntries())) {
+                if (SLIDE_ENTRY.matcher(entry.getName()).matches()) {
+                    slideBytes += entry.getSize();
+                }
+            }
+
+            MemoryAdmission.Permit permit = memoryAdmission.admit(template.length + slideBytes * SLIDE_EXPANSION_FACTOR);
+            stats.endPhase(RenderMetrics.Phase.ADMISSION, phaseStart);
+            try {
+                phaseStart = System.nanoTime();
+                List<SlideRepeatPlan.Repeat> repeats = new ArrayList<>();
+                for (ZipArchiveEntry entry : Collections.list(zip.getEntries())) {
+                    if (!SLIDE_ENTRY.matcher(entry.getName()).matches()) {
+                        continue;
+                    }
+                    byte[] slideXml;
+                    try (InputStream in = zip.getInputStream(entry)) {
+                        slideXml = in.readAllBytes();
+                    }
+                    String key = findRepeatKey(entry.getName(), slideXml, data.lists());
+                    if (key == null) {
+                        stats.slides++;
+                        byte[] result = rewriteSlide(entry.getName(), slideXml, data.values(), images, stats);
+                        if (result != null) {
+                            rewritten.put(entry.getName(), result);
+                        }
+                        continue;
+                    }
+
+                    // Phần tử đầu điền vào chính slide gốc (cũng để phát hiện image placeholder ngay),
+                    // các bản sao được sinh khi ghi
+                    List<Map<String, String>> items = data.lists().get(key);
+                    repeats.add(new SlideRepeatPlan.Repeat(entry.getName(), key, items));
+                    stats.slides += items.size();
+                    if (!items.isEmpty()) {
+                        ByteArrayOutputStream out = new ByteArrayOutputStream(slideXml.length + 1024);
+                        rewriteSlide(entry.getName(), slideXml, new ItemValues(items.get(0), data.values(), RepeatMarker.PREFIX + key), images, out, stats);
+                        rewritten.put(entry.getName(), out.toByteArray());
+                    }
+                }
+
+                SlideRepeatPlan plan = null;
+                if (!repeats.isEmpty()) {
+                    plan = SlideRepeatPlan.create(zip, repeats, inputFactory, outputFactory, eventFactory);
+                    rewritten.putAll(plan.rewritten());
+                }
+                stats.endPhase(RenderMetrics.Phase.TEXT, phaseStart);
+                log.debug("Streaming engine rewrote {} slide parts, {} repeated slides", rewritten.size(), repeats.size());
+                return new StreamingRenderedDeck(template, rewritten, plan, data.values(), permit);
+            } catch (IOException | UnsupportedTemplateException | RuntimeException e) {
+                permit.close();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Ghi lại một slide. Trả về null nếu slide không có gì thay đổi để copy nguyên bản nén
+     */
+    private byte[] rewriteSlide(String name, byte[] slideXml, Map<String, String> data, Map<String, ?> images,
+                                RenderStats stats) throws IOException, UnsupportedTemplateException {
+        if (!containsBrace(slideXml)) {
+            return null;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(slideXml.length + 1024);
+        return rewriteSlide(name, slideXml, data, images, out, stats) ? out.toByteArray() : null;
+    }
+
+    /**
+     * Ghi slide đã thay thế ra out, trả về true nếu có placeholder được thay thế
+     */
+    private boolean rewriteSlide(String name, byte[] slideXml, Map<String, String> data, Map<String, ?> images,
+                                 OutputStream out, RenderStats stats) throws IOException, UnsupportedTemplateException {
+        boolean changed = false;
+        try {
+            XMLEventReader reader = inputFactory.createXMLEventReader(new ByteArrayInputStream(slideXml));
+            XMLEventWriter writer = outputFactory.createXMLEventWriter(out, "UTF-8");
+            ParagraphBuffer paragraph = null;
+
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (paragraph == null) {
+                    if (event.isStartElement() && PARAGRAPH.equals(event.asStartElement().getName())) {
+                        paragraph = new ParagraphBuffer();
+                        paragraph.events.add(event);
+                    } else {
+                        writer.add(event);
+                    }
+                    continue;
+                }
+
+                paragraph.add(event);
+                if (paragraph.isComplete()) {
+                    changed |= paragraph.flush(writer, data, images, name, stats);
+                    paragraph = null;
+                }
+            }
+            writer.close();
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to rewrite " + name + ": " + e.getMessage(), e);
+        }
+        return changed;
+    }
+
+    /**
+     * Key của marker slide lặp {#key} trong text ngoài bảng, null nếu slide không lặp
+     *
+     * @throws UnsupportedTemplateException nếu slide có dòng bảng lặp
+     */
+    private String findRepeatKey(String name, byte[] slideXml, Map<String, List<Map<String, String>>> lists)
+            throws IOException, UnsupportedTemplateException {
+        if (lists.isEmpty() || !containsBrace(slideXml)) {
+            return null;
+        }
+
+        String key = null;
+        try {
+            XMLStreamReader reader = inputFactory.createXMLStreamReader(new ByteArrayInputStream(slideXml));
+            int tableDepth = 0;
+            boolean inText = false;
+            StringBuilder paragraph = null;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    QName element = reader.getName();
+                    if (TABLE.equals(element)) {
+                        tableDepth++;
+                    } else if (PARAGRAPH.equals(element)) {
+                        paragraph = new StringBuilder();
+                    } else if (TEXT.equals(element)) {
+                        inText = true;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    QName element = reader.getName();
+                    if (TABLE.equals(element)) {
+                        tableDepth--;
+                    } else if (TEXT.equals(element)) {
+                        inText = false;
+                    } else if (PARAGRAPH.equals(element) && paragraph != null) {
+                        String found = repeatMarker(name, paragraph.toString(), tableDepth > 0, lists);
+                        if (key == null) {
+                            key = found;
+                        }
+                        paragraph = null;
+                    }
+                } else if (inText && paragraph != null && event == XMLStreamConstants.CHARACTERS) {
+                    paragraph.append(reader.getText());
+                }
+            }
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to read " + name + ": " + e.getMessage(), e);
+        }
+        return key;
+    }
+
+    private static String repeatMarker(String name, String text, boolean inTable,
+                                       Map<String, List<Map<String, String>>> lists) throws UnsupportedTemplateException {
+        if (!inTable) {
+            RepeatMarker marker = RepeatMarker.findSlideMarker(text, lists);
+            return marker != null ? marker.key() : null;
+        }
+        RepeatMarker marker = RepeatMarker.find(text, lists);
+        if (marker != null) {
+            throw new UnsupportedTemplateException("Repeating table rows {" + marker.token() + "} in " + name
+                    + " require the POI engine");
+        }
+        return null;
+    }
+
+    private static boolean containsBrace(byte[] xml) {
+        for (byte b : xml) {
+            if (b == '{') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ZipFile openZip(byte[] template) throws IOException {
+        return ZipFile.builder()
+                .setSeekableByteChannel(new SeekableInMemoryByteChannel(template))
+                .setIgnoreLocalFileHeader(true)
+                .get();
+    }
+
+    /**
+     * Các event của một {@code <a:p>}. Text của mỗi {@code <a:t>} được gom lại thành một slot
+     * để có thể gộp toàn bộ text của paragraph rồi chia lại cho đúng run sau khi thay thế.
+     * Vị trí {@code <a:r>} chứa mỗi slot được ghi lại để bỏ được run bị thay thế làm rỗng
+     */
+    private class ParagraphBuffer {
+        private final List<XMLEvent> events = new ArrayList<>();
+        // Text gốc của từng slot, slot được đánh dấu bằng phần tử null trong events
+        private final List<StringBuilder> slotTexts = new ArrayList<>();
+        // Khoảng [start, end) trong events của <a:r> chứa slot, null nếu slot nằm trong <a:fld>
+        private final List<int[]> slotRuns = new ArrayList<>();
+        private int depth = 1;
+        private StringBuilder currentText;
+        private int[] currentRun;
+
+        void add(XMLEvent event) {
+            if (event.isStartElement()) {
+                depth++;
+                QName element = event.asStartElement().getName();
+                if (RUN.equals(element)) {
+                    currentRun = new int[]{events.size(), -1};
+                }
+                events.add(event);
+                if (TEXT.equals(element)) {
+                    currentText = new StringBuilder();
+                    slotTexts.add(currentText);
+                    slotRuns.add(currentRun);
+                    events.add(null);
+                }
+            } else if (event.isEndElement()) {
+                depth--;
+                currentText = null;
+                events.add(event);
+                if (currentRun != null && RUN.equals(event.asEndElement().getName())) {
+                    currentRun[1] = events.size();
+                    currentRun = null;
+                }
+            } else if (currentText != null && event.isCharacters()) {
+                currentText.append(event.asCharacters().getData());
+            } else {
+                events.add(event);
+            }
+        }
+
+        boolean isComplete() {
+            return depth == 0;
+        }
+
+        /**
+         * Ghi paragraph ra writer, trả về true nếu có placeholder được thay thế
+         */
+        boolean flush(XMLEventWriter writer, Map<String, String> data, Map<String, ?> images, String name,
+                      RenderStats stats) throws XMLStreamException, UnsupportedTemplateException {
+            stats.paragraphs++;
+            String[] original = new String[slotTexts.size()];
+            for (int i = 0; i < original.length; i++) {
+                original[i] = slotTexts.get(i).toString();
+            }
+            String[] texts = redistribute(original, data, images, name, stats);
+
+            BitSet removed = new BitSet();
+            if (texts != null) {
+                boolean[] emptied = PlaceholderTokenizer.emptiedRuns(original, texts);
+                for (int i = 0; i < emptied.length; i++) {
+                    int[] run = slotRuns.get(i);
+                    if (emptied[i] && run != null && run[1] > run[0]) {
+                        removed.set(run[0], run[1]);
+                    }
+                }
+            }
+
+            int slot = 0;
+            for (int i = 0; i < events.size(); i++) {
+                XMLEvent event = events.get(i);
+                if (event == null) {
+                    String text = texts != null ? texts[slot] : original[slot];
+                    slot++;
+                    if (!text.isEmpty() && !removed.get(i)) {
+                        writer.add(eventFactory.createCharacters(text));
+                    }
+                } else if (!removed.get(i)) {
+                    writer.add(event);
+                }
+            }
+            return texts != null;
+        }
+
+        /**
+         * Thay thế token trên text đã gộp (xem PlaceholderTokenizer.replaceAcrossRuns).
+         * Trả về null nếu không có gì thay đổi
+         */
+        private String[] redistribute(String[] original, Map<String, String> data, Map<String, ?> images,
+                                      String name, RenderStats stats) throws UnsupportedTemplateException {
+            if (original.length == 0) {
+                return null;
+            }
+            String fullText = original.length == 1 ? original[0] : String.join("", original);
+            if (!PlaceholderTokenizer.mayContainToken(fullText)) {
+                return null;
+            }
+            String imageKey = PlaceholderTokenizer.findImageKey(fullText, images);
+            if (imageKey != null) {
+                throw new UnsupportedTemplateException("Image placeholder {" + PlaceholderTokenizer.IMAGE_PREFIX
+                        + imageKey + "} in " + name + " requires the POI engine");
+            }
+            return PlaceholderTokenizer.replaceAcrossRuns(original, data, stats::countPlaceholder);
+        }
+    }
+
+    /**
+     * Deck của engine streaming: chỉ giữ template gốc, các part đã ghi lại và kế hoạch slide lặp
+     */
+    private class StreamingRenderedDeck implements RenderedDeck {
+
+        private final byte[] template;
+        private final Map<String, byte[]> rewritten;
+        private final SlideRepeatPlan plan;
+        private final Map<String, String> values;
+        private final MemoryAdmission.Permit permit;
+
+        StreamingRenderedDeck(byte[] template, Map<String, byte[]> rewritten, SlideRepeatPlan plan,
+                              Map<String, String> values, MemoryAdmission.Permit permit) {
+            this.template = template;
+            this.rewritten = rewritten;
+            this.plan = plan;
+            this.values = values;
+            this.permit = permit;
+        }
+
+        /**
+         * Ghi các entry theo thứ tự vật lý của template. Entry không đổi được copy dạng nén thô
+         * (kể cả media, không tốn CPU), chỉ part được ghi lại mới được deflate theo compression.
+         * Bản sao của slide lặp được ghi ngay sau slide gốc và relationship của nó
+         */
+        @Override
+        public void write(OutputStream out, CompressionPolicy compression) throws IOException {
+            try (ZipFile zip = openZip(template)) {
+                // Media được copy thô nên không entry nào cần đệm ra ScratchSpace
+                ZipArchiveOutputStream zipOut = new DeckZipOutputStream(out, compression, null);
+                Enumeration<ZipArchiveEntry> entries = zip.getEntriesInPhysicalOrder();
+                while (entries.hasMoreElements()) {
+                    ZipArchiveEntry entry = entries.nextElement();
+                    if (plan != null && plan.isRemoved(entry.getName())) {
+                        continue;
+                    }
+                    byte[] content = rewritten.get(entry.getName());
+                    if (content == null) {
+                        zipOut.addRawArchiveEntry(entry, zip.getRawInputStream(entry));
+                    } else {
+                        putEntry(zipOut, entry.getName(), entry.getTime(), content);
+                    }
+                    if (plan != null) {
+                        writeClones(zip, entry, zipOut);
+                    }
+                }
+                // Không close để không đóng luôn stream của người gọi
+                zipOut.finish();
+                zipOut.flush();
+            }
+        }
+
+        private void writeClones(ZipFile zip, ZipArchiveEntry entry, ZipArchiveOutputStream zipOut) throws IOException {
+            SlideRepeatPlan.Repeat repeat = plan.repeat(entry.getName());
+            if (repeat != null) {
+                // Mỗi bản sao được thay thế từ XML gốc vào một buffer dùng lại rồi ghi vào zip, không giữ lại.
+                // Không ghi thẳng vào zip: XMLEventWriter ghi từng mẩu nhỏ và flush cả response khi close
+                byte[] slideXml;
+                try (InputStream in = zip.getInputStream(entry)) {
+                    slideXml = in.readAllBytes();
+                }
+                String marker = RepeatMarker.PREFIX + repeat.key();
+                RenderStats discarded = new RenderStats();
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream(slideXml.length + 1024);
+                for (SlideRepeatPlan.Clone clone : plan.clonesOf(entry.getName())) {
+                    buffer.reset();
+                    try {
+                        rewriteSlide(clone.slide(), slideXml, new ItemValues(clone.item(), values, marker),
+                                Map.of(), buffer, discarded);
+                    } catch (UnsupportedTemplateException e) {
+                        // Không có ảnh nào được truyền vào nên không thể xảy ra
+                        throw new IllegalStateException(e);
+                    }
+                    ZipArchiveEntry cloneEntry = new ZipArchiveEntry(clone.slide());
+                    cloneEntry.setMethod(ZipArchiveEntry.DEFLATED);
+                    cloneEntry.setTime(entry.getTime());
+                    zipOut.putArchiveEntry(cloneEntry);
+                    buffer.writeTo(zipOut);
+                    zipOut.closeArchiveEntry();
+                }
+                return;
+            }
+
+            String slide = plan.slideOfRels(entry.getName());
+            if (slide != null) {
+                byte[] rels = plan.cloneRels(slide);
+                for (SlideRepeatPlan.Clone clone : plan.clonesOf(slide)) {
+                    putEntry(zipOut, clone.rels(), entry.getTime(), rels);
+                }
+            }
+        }
+
+        private void putEntry(ZipArchiveOutputStream zipOut, String name, long time, byte[] content) throws IOException {
+            ZipArchiveEntry replacement = new ZipArchiveEntry(name);
+            replacement.setMethod(ZipArchiveEntry.DEFLATED);
+            replacement.setTime(time);
+            zipOut.putArchiveEntry(replacement);
+            zipOut.write(content);
+            zipOut.closeArchiveEntry();
+        }
+
+        @Override
+        public void close() {
+            permit.close();
+        }
+    }
+}
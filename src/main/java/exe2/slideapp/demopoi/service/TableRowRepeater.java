@@ -0,0 +1,318 @@
+package exe2.slideapp.demopoi.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.ooxml.util.POIXMLUnits;
+import org.apache.poi.xslf.usermodel.XMLSlideShow;
+import org.apache.poi.xslf.usermodel.XSLFSlide;
+import org.apache.poi.xslf.usermodel.XSLFTableRow;
+import org.apache.xmlbeans.XmlCursor;
+import org.apache.xmlbeans.XmlObject;
+import org.openxmlformats.schemas.drawingml.x2006.main.*;
+import org.openxmlformats.schemas.presentationml.x2006.main.CTGraphicalObjectFrame;
+import org.openxmlformats.schemas.presentationml.x2006.main.CTGroupShape;
+
+import java.util.*;
+
+/**
+ * Dòng bảng lặp: dòng có marker {#key} được nhân bản cho từng phần tử của danh sách key trong data,
+ * các ô của dòng dùng {field} của phần tử (ưu tiên hơn giá trị cùng tên ngoài danh sách).
+ * {#key:N} giới hạn N dòng mỗi slide, {#key:fit} tính số dòng vừa chiều cao slide;
+ * phần dư chuyển sang các slide nối tiếp (bản sao của slide gốc, các dòng phía trên dòng lặp
+ * được lặp lại, các dòng phía dưới chỉ nằm ở slide cuối). Bảng không giới hạn trên cùng slide
+ * chỉ nằm ở slide đầu.
+ * <p>
+ * Làm việc trực tiếp trên XML: mỗi dòng được copy một lần bằng cursor vào ngay sau dòng trước,
+ * không dùng XSLFTable.insertRow (đánh lại chỉ số toàn bảng sau mỗi ô)
+ */
+@Slf4j
+final class TableRowRepeater {
+
+    private static final String DRAWING_NS = "http://schemas.openxmlformats.org/drawingml/2006/main";
+
+    private record RepeatTable(CTGraphicalObjectFrame frame, CTTable table, int templateRow, RepeatMarker marker) {
+    }
+
+    /**
+     * Phần dòng lặp của một bảng trên một slide: phần tử [from, to) của danh sách
+     */
+    private record Expansion(RepeatTable repeat, List<Map<String, String>> items, boolean keepTrailingRows) {
+    }
+
+    static final TableRowRepeater NONE = new TableRowRepeater(List.of(), Map.of());
+
+    private final List<Expansion> expansions;
+    private final Set<CTTableRow> templateRows = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Map<String, String> values;
+
+    private TableRowRepeater(List<Expansion> expansions, Map<String, String> values) {
+        this.expansions = expansions;
+        this.values = values;
+        expansions.forEach(expansion -> templateRows.add(
+                expansion.repeat().table().getTrArray(expansion.repeat().templateRow())));
+    }
+
+    /**
+     * Tìm các dòng lặp và tạo trước slide nối tiếp cho bảng dài hơn giới hạn mỗi slide.
+     * Phải gọi trước khi POI đọc shape của slide để bản sao nhận đúng XML gốc
+     */
+    static TableRowRepeater prepare(XMLSlideShow ppt, TemplateData data) {
+        if (data.lists().isEmpty()) {
+            return NONE;
+        }
+        long slideHeight = ppt.getCTPresentation().getSldSz().getCy();
+        List<XSLFSlide> slides = new ArrayList<>(ppt.getSlides());
+        List<Expansion> expansions = new ArrayList<>();
+        int added = 0;
+        for (int s = 0; s < slides.size(); s++) {
+            XSLFSlide slide = slides.get(s);
+            List<RepeatTable> repeats = findRepeatTables(slide, data);
+            if (repeats.isEmpty()) {
+                continue;
+            }
+
+            int[] rowsPerSlide = new int[repeats.size()];
+            int pages = 1;
+            for (int i = 0; i < repeats.size(); i++) {
+                RepeatTable repeat = repeats.get(i);
+                rowsPerSlide[i] = rowsPerSlide(repeat, slideHeight);
+                int items = data.lists().get(repeat.marker().key()).size();
+                if (rowsPerSlide[i] > 0 && items > rowsPerSlide[i]) {
+                    pages = Math.max(pages, (items + rowsPerSlide[i] - 1) / rowsPerSlide[i]);
+                }
+            }
+
+            // Sao chép slide khi bảng còn nguyên dòng mẫu
+            List<List<RepeatTable>> pageRepeats = new ArrayList<>(pages);
+            pageRepeats.add(repeats);
+            int position = s + added;
+            for (int page = 1; page < pages; page++) {
+                XSLFSlide copy = SlideCloner.cloneSlide(ppt, slide, position + page);
+                pageRepeats.add(findRepeatTables(copy, data));
+            }
+            added += pages - 1;
+
+            for (int page = 0; page < pages; page++) {
+                List<RepeatTable> tables = pageRepeats.get(page);
+                for (int i = 0; i < tables.size(); i++) {
+                    RepeatTable repeat = tables.get(i);
+                    List<Map<String, String>> items = data.lists().get(repeat.marker().key());
+                    if (rowsPerSlide[i] == 0) {
+                        // Slide phải chia trang vì bảng khác: bảng không giới hạn nằm trọn ở slide đầu,
+                        // kể cả các dòng phía dưới, và bị bỏ khỏi các slide nối tiếp
+                        if (page == 0) {
+                            expansions.add(new Expansion(repeat, items, true));
+                        } else {
+                            removeFrame(repeat.frame());
+                        }
+                        continue;
+                    }
+                    int from = Math.min(items.size(), page * rowsPerSlide[i]);
+                    int to = Math.min(items.size(), from + rowsPerSlide[i]);
+                    expansions.add(new Expansion(repeat, items.subList(from, to), page == pages - 1));
+                }
+            }
+            if (pages > 1) {
+                log.debug("Repeating rows on slide {} continue onto {} more slides", position + 1, pages - 1);
+            }
+        }
+        return expansions.isEmpty() ? NONE : new TableRowRepeater(expansions, data.values());
+    }
+
+    private static void removeFrame(CTGraphicalObjectFrame frame) {
+        try (XmlCursor cursor = frame.newCursor()) {
+            cursor.removeXml();
+        }
+    }
+
+    /**
+     * Dòng mẫu không được thay text/ảnh như dòng thường, nó được điền khi nhân bản
+     */
+    boolean isTemplateRow(XSLFTableRow row) {
+        return !templateRows.isEmpty() && templateRows.contains(row.getXmlObject());
+    }
+
+    /**
+     * Nhân bản các dòng lặp. Gọi sau cùng, ngay trước khi ghi deck: XSLFTable dựng danh sách dòng
+     * với chi phí bình phương theo số dòng, nên bảng đã mở rộng không được để POI đọc lại
+     */
+    void expand(RenderStats stats) {
+        for (Expansion expansion : expansions) {
+            expandTable(expansion.repeat(), expansion.items(), values, expansion.keepTrailingRows(), stats);
+        }
+    }
+
+    private static List<RepeatTable> findRepeatTables(XSLFSlide slide, TemplateData data) {
+        List<RepeatTable> repeats = new ArrayList<>();
+        collectRepeatTables(slide.getXmlObject().getCSld().getSpTree(), data, repeats);
+        return repeats;
+    }
+
+    private static void collectRepeatTables(CTGroupShape group, TemplateData data, List<RepeatTable> repeats) {
+        for (CTGraphicalObjectFrame frame : group.getGraphicFrameArray()) {
+            CTTable table = table(frame);
+            if (table == null) {
+                continue;
+            }
+            CTTableRow[] rows = table.getTrArray();
+            for (int r = 0; r < rows.length; r++) {
+                RepeatMarker marker = findMarker(rows[r], data);
+                if (marker != null) {
+                    // Mỗi bảng chỉ có một dòng lặp
+                    repeats.add(new RepeatTable(frame, table, r, marker));
+                    break;
+                }
+            }
+        }
+        for (CTGroupShape inner : group.getGrpSpArray()) {
+            collectRepeatTables(inner, data, repeats);
+        }
+    }
+
+    static CTTable table(CTGraphicalObjectFrame frame) {
+        CTGraphicalObjectData graphicData = frame.getGraphic() != null ? frame.getGraphic().getGraphicData() : null;
+        if (graphicData == null) {
+            return null;
+        }
+        try (XmlCursor cursor = graphicData.newCursor()) {
+            if (!cursor.toChild(DRAWING_NS, "tbl")) {
+                return null;
+            }
+            XmlObject table = cursor.getObject();
+            return table instanceof CTTable ctTable ? ctTable : null;
+        }
+    }
+
+    private static RepeatMarker findMarker(CTTableRow row, TemplateData data) {
+        for (CTTableCell cell : row.getTcArray()) {
+            if (!cell.isSetTxBody()) {
+                continue;
+            }
+            for (CTTextParagraph paragraph : cell.getTxBody().getPArray()) {
+                RepeatMarker marker = RepeatMarker.find(paragraphText(paragraph), data.lists());
+                if (marker != null) {
+                    return marker;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Số dòng lặp tối đa trên mỗi slide. Với fit: phần chiều cao slide còn lại dưới đầu bảng,
+     * trừ các dòng không lặp, chia cho chiều cao dòng mẫu (chiều cao tối thiểu, chữ dài có thể làm dòng cao hơn)
+     */
+    private static int rowsPerSlide(RepeatTable repeat, long slideHeight) {
+        int rows = repeat.marker().rowsPerSlide();
+        if (rows != RepeatMarker.FIT) {
+            return rows;
+        }
+        long top = repeat.frame().getXfrm() != null && repeat.frame().getXfrm().getOff() != null
+                ? POIXMLUnits.parseLength(repeat.frame().getXfrm().getOff().xgetY()) : 0;
+        long available = slideHeight - top;
+        long templateHeight = 0;
+        CTTableRow[] tableRows = repeat.table().getTrArray();
+        for (int r = 0; r < tableRows.length; r++) {
+            long height = POIXMLUnits.parseLength(tableRows[r].xgetH());
+            if (r == repeat.templateRow()) {
+                templateHeight = height;
+            } else {
+                available -= height;
+            }
+        }
+        if (templateHeight <= 0) {
+            return 0;
+        }
+        return (int) Math.max(1, available / templateHeight);
+    }
+
+    /**
+     * Chèn một bản sao của dòng mẫu cho mỗi phần tử (sau dòng mẫu, theo thứ tự), rồi xóa dòng mẫu.
+     * keepTrailingRows = false thì xóa các dòng phía dưới dòng lặp (dòng tổng chỉ nằm ở slide cuối)
+     */
+    private static void expandTable(RepeatTable repeat, List<Map<String, String>> items, Map<String, String> values,
+                                    boolean keepTrailingRows, RenderStats stats) {
+        CTTableRow[] rows = repeat.table().getTrArray();
+        CTTableRow template = rows[repeat.templateRow()];
+
+        try (XmlCursor source = template.newCursor(); XmlCursor insertAt = template.newCursor()) {
+            insertAt.toEndToken();
+            insertAt.toNextToken();
+            for (Map<String, String> item : items) {
+                // copyXml chèn bản sao của <a:tr> tại insertAt và để insertAt ngay sau nó
+                source.copyXml(insertAt);
+                try (XmlCursor inserted = insertAt.newCursor()) {
+                    inserted.toPrevSibling();
+                    fillRow((CTTableRow) inserted.getObject(), new ItemValues(item, values, repeat.marker().token()), stats);
+                }
+            }
+        }
+
+        removeRow(template);
+        if (!keepTrailingRows) {
+            for (int r = repeat.templateRow() + 1; r < rows.length; r++) {
+                removeRow(rows[r]);
+            }
+        }
+    }
+
+    private static void removeRow(CTTableRow row) {
+        try (XmlCursor cursor = row.newCursor()) {
+            cursor.removeXml();
+        }
+    }
+
+    /**
+     * Thay placeholder trong từng paragraph của dòng
+     */
+    private static void fillRow(CTTableRow row, Map<String, String> values, RenderStats stats) {
+        for (CTTableCell cell : row.getTcArray()) {
+            if (!cell.isSetTxBody()) {
+                continue;
+            }
+            for (CTTextParagraph paragraph : cell.getTxBody().getPArray()) {
+                fillParagraph(paragraph, values, stats);
+            }
+        }
+    }
+
+    /**
+     * Thay placeholder theo run như PowerPointService: giá trị giữ định dạng của run chứa token,
+     * run bị thay thế làm rỗng được bỏ khỏi paragraph
+     */
+    static void fillParagraph(CTTextParagraph paragraph, Map<String, String> values, RenderStats stats) {
+        CTRegularTextRun[] runs = paragraph.getRArray();
+        String[] original = new String[runs.length];
+        boolean hasToken = false;
+        for (int i = 0; i < runs.length; i++) {
+            original[i] = runs[i].getT();
+            hasToken |= PlaceholderTokenizer.mayContainToken(original[i]);
+        }
+        if (!hasToken) {
+            return;
+        }
+        String[] replaced = PlaceholderTokenizer.replaceAcrossRuns(original, values, stats::countPlaceholder);
+        if (replaced == null) {
+            return;
+        }
+        boolean[] emptied = PlaceholderTokenizer.emptiedRuns(original, replaced);
+        for (int i = runs.length - 1; i >= 0; i--) {
+            if (emptied[i]) {
+                paragraph.removeR(i);
+            } else if (!replaced[i].equals(original[i])) {
+                runs[i].setT(replaced[i]);
+            }
+        }
+    }
+
+    static String paragraphText(CTTextParagraph paragraph) {
+        CTRegularTextRun[] runs = paragraph.getRArray();
+        if (runs.length == 1) {
+            return runs[0].getT();
+        }
+        StringBuilder text = new StringBuilder();
+        for (CTRegularTextRun run : runs) {
+            text.append(run.getT());
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,76 @@
+package exe2.slideapp.demopoi.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Data để render một template: giá trị text cho các placeholder {key},
+ * danh sách (mảng JSON các object) cho các dòng bảng lặp {#key} và data của chart {CHART:key}
+ */
+public record TemplateData(Map<String, String> values, Map<String, List<Map<String, String>>> lists,
+                           // Bỏ qua khi rỗng để khóa output cache của request không có chart không đổi
+                           @JsonInclude(JsonInclude.Include.NON_EMPTY) Map<String, ChartData> charts) {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    public static TemplateData of(Map<String, String> values) {
+        return new TemplateData(values, Map.of(), Map.of());
+    }
+
+    /**
+     * Đọc data JSON của request. Giá trị chuỗi/số/boolean là placeholder text,
+     * mảng các object là danh sách cho dòng lặp, object có mảng "series" là data của chart (xem ChartData), ví dụ:
+     * {"title":"Q3","items":[{"name":"A","qty":1},{"name":"B","qty":2}]}
+     */
+    public static TemplateData parse(String json) throws IOException {
+        JsonNode root = objectMapper.readTree(json);
+        if (root == null || !root.isObject()) {
+            throw new IllegalArgumentException("Data must be a JSON object");
+        }
+
+        Map<String, String> values = new HashMap<>();
+        Map<String, List<Map<String, String>>> lists = new HashMap<>();
+        Map<String, ChartData> charts = new HashMap<>();
+        for (Iterator<Map.Entry<String, JsonNode>> fields = root.fields(); fields.hasNext(); ) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JsonNode value = field.getValue();
+            if (value.isArray()) {
+                List<Map<String, String>> items = new ArrayList<>(value.size());
+                for (JsonNode item : value) {
+                    if (!item.isObject()) {
+                        throw new IllegalArgumentException("Items of list '" + field.getKey() + "' must be JSON objects");
+                    }
+                    items.add(toValues(item));
+                }
+                lists.put(field.getKey(), items);
+            } else if (ChartData.isChartData(value)) {
+                charts.put(field.getKey(), ChartData.parse(field.getKey(), value));
+            } else if (value.isObject()) {
+                throw new IllegalArgumentException("Value of '" + field.getKey()
+                        + "' must be text, an array of objects or chart data with a series array");
+            } else if (!value.isNull()) {
+                // null giữ nguyên placeholder như khi key không có trong data
+                values.put(field.getKey(), text(value));
+            }
+        }
+        return new TemplateData(values, lists, charts);
+    }
+
+    private static Map<String, String> toValues(JsonNode object) {
+        Map<String, String> values = new LinkedHashMap<>();
+        object.fields().forEachRemaining(field -> {
+            if (!field.getValue().isNull()) {
+                values.put(field.getKey(), text(field.getValue()));
+            }
+        });
+        return values;
+    }
+
+    private static String text(JsonNode value) {
+        return value.isValueNode() ? value.asText() : value.toString();
+    }
+}
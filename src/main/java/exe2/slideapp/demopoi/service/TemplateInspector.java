@@ -0,0 +1,503 @@
+package exe2.slideapp.demopoi.service;
+
+import exe2.slideapp.demopoi.config.InspectProperties;
+import exe2.slideapp.demopoi.exception.InvalidFileFormatException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+import org.springframework.stereotype.Service;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.*;
+
+/**
+ * Liệt kê placeholder của template mà không render: quét slide XML bằng StAX (XMLStreamReader),
+ * không dựng object model của POI. Kết quả được cache theo SHA-256 của template,
+ * nên client có thể kiểm tra data trước mỗi request mà gần như không tốn gì
+ */
+@Service
+@Slf4j
+public class TemplateInspector {
+
+    private static final String DRAWING_NS = "http://schemas.openxmlformats.org/drawingml/2006/main";
+    private static final String PRESENTATION_NS = "http://schemas.openxmlformats.org/presentationml/2006/main";
+    private static final String RELATIONSHIPS_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String CHART_URI = "http://schemas.openxmlformats.org/drawingml/2006/chart";
+    private static final String PRESENTATION_PART = "ppt/presentation.xml";
+    private static final String PRESENTATION_RELS = "ppt/_rels/presentation.xml.rels";
+    private static final String SLIDE_RELATIONSHIP = "/relationships/slide";
+
+    private final MemoryAdmission memoryAdmission;
+    private final XMLInputFactory inputFactory;
+    private final Map<String, Inspection> cache;
+
+    public TemplateInspector(MemoryAdmission memoryAdmission, InspectProperties properties) {
+        this.memoryAdmission = memoryAdmission;
+        this.inputFactory = XMLInputFactory.newFactory();
+        // Slide XML không có DTD, tắt hẳn để tránh XXE
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        int cacheEntries = properties.getCacheEntries();
+        // accessOrder = true => bỏ template ít được kiểm tra gần đây nhất
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Inspection> eldest) {
+                return size() > cacheEntries;
+            }
+        };
+    }
+
+    /**
+     * Loại token: {key}, {IMAGE:key}, marker lặp {#key} hoặc {CHART:key} trong tên/alt text của khung chart
+     */
+    public enum Kind {
+        TEXT, IMAGE, LIST, CHART
+    }
+
+    /**
+     * Nơi chứa token: text shape trên slide, text shape trong group, ô bảng hoặc khung chart
+     */
+    public enum ShapeType {
+        TEXT, GROUP, TABLE_CELL, CHART
+    }
+
+    /**
+     * Vị trí và kích thước (EMU) trên slide, đã quy đổi qua các group bao ngoài
+     */
+    public record Anchor(long x, long y, long width, long height) {
+    }
+
+    /**
+     * Một token trong template. slide bắt đầu từ 1, row/column (từ 0) chỉ có với ô bảng.
+     * list là danh sách lặp mà token thuộc về (slide lặp hoặc dòng lặp), null nếu lấy từ data chung.
+     * anchor null khi shape kế thừa vị trí từ layout
+     */
+    public record Placeholder(String token, Kind kind, String key, String list, int slide, ShapeType shapeType,
+                              Integer shapeId, String shapeName, Integer row, Integer column, Anchor anchor) {
+    }
+
+    /**
+     * Kết quả kiểm tra: mọi placeholder theo thứ tự slide, cùng tóm tắt key cần gửi trong data.
+     * lists ánh xạ key của danh sách sang các field dùng trong phần lặp
+     * (field không có trong phần tử sẽ lấy từ data chung khi render), chartKeys là key của data.charts
+     */
+    public record Inspection(String sha256, int slideCount, List<Placeholder> placeholders, List<String> keys,
+                             List<String> imageKeys, Map<String, List<String>> lists, List<String> chartKeys) {
+    }
+
+    /**
+     * Kiểm tra template, dùng lại kết quả đã cache nếu cùng nội dung
+     */
+    public Inspection inspect(byte[] template) throws IOException {
+        String hash = DigestUtils.sha256Hex(template);
+        synchronized (cache) {
+            Inspection cached = cache.get(hash);
+            if (cached != null) {
+                log.debug("Inspection cache hit for {}", hash);
+                return cached;
+            }
+        }
+
+        // Cùng kiểm tra zip bomb như khi render
+        memoryAdmission.estimate(template);
+        Inspection inspection;
+        try (ZipFile zip = ZipFile.builder()
+                .setSeekableByteChannel(new SeekableInMemoryByteChannel(template))
+                .setIgnoreLocalFileHeader(true)
+                .get()) {
+            inspection = scan(hash, zip);
+        }
+
+        synchronized (cache) {
+            cache.put(hash, inspection);
+        }
+        return inspection;
+    }
+
+    private Inspection scan(String hash, ZipFile zip) throws IOException {
+        List<String> slides = slideOrder(zip);
+        List<Placeholder> placeholders = new ArrayList<>();
+        for (int i = 0; i < slides.size(); i++) {
+            ZipArchiveEntry entry = zip.getEntry(slides.get(i));
+            if (entry == null) {
+                throw new InvalidFileFormatException("Template is missing slide part " + slides.get(i));
+            }
+            try (InputStream in = zip.getInputStream(entry)) {
+                placeholders.addAll(scanSlide(in, i + 1));
+            } catch (XMLStreamException e) {
+                throw new InvalidFileFormatException("Slide " + entry.getName() + " is not valid XML: " + e.getMessage());
+            }
+        }
+
+        Set<String> keys = new LinkedHashSet<>();
+        Set<String> imageKeys = new LinkedHashSet<>();
+        Set<String> chartKeys = new LinkedHashSet<>();
+        Map<String, Set<String>> lists = new LinkedHashMap<>();
+        for (Placeholder placeholder : placeholders) {
+            switch (placeholder.kind()) {
+                case IMAGE -> imageKeys.add(placeholder.key());
+                case CHART -> chartKeys.add(placeholder.key());
+                case LIST -> lists.computeIfAbsent(placeholder.key(), k -> new LinkedHashSet<>());
+                case TEXT -> {
+                    if (placeholder.list() == null) {
+                        keys.add(placeholder.key());
+                    } else {
+                        lists.computeIfAbsent(placeholder.list(), k -> new LinkedHashSet<>()).add(placeholder.key());
+                    }
+                }
+            }
+        }
+        Map<String, List<String>> listFields = new LinkedHashMap<>();
+        lists.forEach((list, fields) -> listFields.put(list, List.copyOf(fields)));
+        return new Inspection(hash, slides.size(), List.copyOf(placeholders), List.copyOf(keys),
+                List.copyOf(imageKeys), Collections.unmodifiableMap(listFields), List.copyOf(chartKeys));
+    }
+
+    /**
+     * Tên part của các slide theo thứ tự trình chiếu (sldIdLst của presentation.xml)
+     */
+    private List<String> slideOrder(ZipFile zip) throws IOException {
+        ZipArchiveEntry presentation = zip.getEntry(PRESENTATION_PART);
+        ZipArchiveEntry rels = zip.getEntry(PRESENTATION_RELS);
+        if (presentation == null || rels == null) {
+            throw new InvalidFileFormatException("Template is not a PowerPoint presentation: missing " + PRESENTATION_PART);
+        }
+
+        Map<String, String> targets = new HashMap<>();
+        List<String> order = new ArrayList<>();
+        try {
+            try (InputStream in = zip.getInputStream(rels)) {
+                XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT && "Relationship".equals(reader.getLocalName())
+                            && String.valueOf(reader.getAttributeValue(null, "Type")).endsWith(SLIDE_RELATIONSHIP)) {
+                        String target = URI.create("/" + PRESENTATION_PART)
+                                .resolve(reader.getAttributeValue(null, "Target")).getPath();
+                        targets.put(reader.getAttributeValue(null, "Id"), target.substring(1));
+                    }
+                }
+                reader.close();
+            }
+            try (InputStream in = zip.getInputStream(presentation)) {
+                XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT && "sldId".equals(reader.getLocalName())
+                            && PRESENTATION_NS.equals(reader.getNamespaceURI())) {
+                        String target = targets.get(reader.getAttributeValue(RELATIONSHIPS_NS, "id"));
+                        if (target != null) {
+                            order.add(target);
+                        }
+                    }
+                }
+                reader.close();
+            }
+        } catch (XMLStreamException | IllegalArgumentException e) {
+            throw new InvalidFileFormatException("Template presentation part is not valid: " + e.getMessage());
+        }
+        return order;
+    }
+
+    /**
+     * Shape hoặc group đang mở cùng xfrm của nó. Group có thêm chOff/chExt để quy đổi tọa độ con
+     */
+    private static final class Frame {
+        private final boolean group;
+        private final boolean graphicFrame;
+        private Integer id;
+        private String name;
+        private String description;
+        private boolean chart;
+        private boolean hasXfrm;
+        private long x, y, width, height;
+        private long childX, childY, childWidth, childHeight;
+
+        Frame(boolean group, boolean graphicFrame) {
+            this.group = group;
+            this.graphicFrame = graphicFrame;
+        }
+    }
+
+    /**
+     * Token tìm thấy khi quét, trước khi biết nó thuộc danh sách lặp nào
+     */
+    private record Found(String token, Kind kind, String key, ShapeType shapeType, Integer shapeId, String shapeName,
+                         int table, Integer row, Integer column, Anchor anchor) {
+    }
+
+    private List<Placeholder> scanSlide(InputStream in, int slide) throws XMLStreamException {
+        List<Found> found = new ArrayList<>();
+        Deque<Frame> frames = new ArrayDeque<>();
+        Frame xfrmOwner = null;
+        StringBuilder text = null;
+        boolean inText = false;
+        int table = -1;
+        boolean inTable = false;
+        int row = -1;
+        int column = -1;
+
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+        try {
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String ns = reader.getNamespaceURI();
+                    String name = reader.getLocalName();
+                    if (PRESENTATION_NS.equals(ns)) {
+                        switch (name) {
+                            case "grpSp" -> frames.push(new Frame(true, false));
+                            case "graphicFrame" -> frames.push(new Frame(false, true));
+                            case "sp", "pic", "cxnSp" -> frames.push(new Frame(false, false));
+                            case "cNvPr" -> {
+                                Frame frame = frames.peek();
+                                if (frame != null && frame.id == null) {
+                                    frame.id = parseId(reader.getAttributeValue(null, "id"));
+                                    frame.name = reader.getAttributeValue(null, "name");
+                                    frame.description = reader.getAttributeValue(null, "descr");
+                                }
+                            }
+                            // graphicFrame dùng p:xfrm thay cho a:xfrm
+                            case "xfrm" -> xfrmOwner = startXfrm(frames);
+                            default -> {
+                            }
+                        }
+                    } else if (DRAWING_NS.equals(ns)) {
+                        switch (name) {
+                            case "xfrm" -> xfrmOwner = startXfrm(frames);
+                            case "off", "chOff", "ext", "chExt" -> {
+                                if (xfrmOwner != null) {
+                                    readXfrmChild(reader, name, xfrmOwner);
+                                }
+                            }
+                            case "tbl" -> {
+                                table++;
+                                inTable = true;
+                                row = -1;
+                            }
+                            case "tr" -> {
+                                row++;
+                                column = -1;
+                            }
+                            case "tc" -> column++;
+                            case "graphicData" -> {
+                                Frame frame = frames.peek();
+                                if (frame != null && frame.graphicFrame) {
+                                    frame.chart = CHART_URI.equals(reader.getAttributeValue(null, "uri"));
+                                }
+                            }
+                            case "p" -> text = new StringBuilder();
+                            case "t" -> inText = text != null;
+                            default -> {
+                            }
+                        }
+                    }
+                } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                    if (inText) {
+                        text.append(reader.getText());
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    String ns = reader.getNamespaceURI();
+                    String name = reader.getLocalName();
+                    if (PRESENTATION_NS.equals(ns)) {
+                        switch (name) {
+                            case "graphicFrame" -> {
+                                // Token chart nằm trong thuộc tính của cNvPr, anchor chỉ có sau khi đọc xong xfrm
+                                collectChartTokens(frames, found);
+                                frames.pop();
+                            }
+                            case "grpSp", "sp", "pic", "cxnSp" -> frames.pop();
+                            case "xfrm" -> xfrmOwner = null;
+                            default -> {
+                            }
+                        }
+                    } else if (DRAWING_NS.equals(ns)) {
+                        switch (name) {
+                            case "xfrm" -> xfrmOwner = null;
+                            case "tbl" -> inTable = false;
+                            case "t" -> inText = false;
+                            case "p" -> {
+                                if (text != null && PlaceholderTokenizer.mayContainToken(text.toString())) {
+                                    collectTokens(text.toString(), frames, inTable, table, row, column, found);
+                                }
+                                text = null;
+                            }
+                            default -> {
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return resolveLists(found, slide);
+    }
+
+    private static Frame startXfrm(Deque<Frame> frames) {
+        Frame frame = frames.peek();
+        if (frame == null || frame.hasXfrm) {
+            return null;
+        }
+        frame.hasXfrm = true;
+        return frame;
+    }
+
+    private static void readXfrmChild(XMLStreamReader reader, String name, Frame frame) {
+        switch (name) {
+            case "off" -> {
+                frame.x = parseCoordinate(reader.getAttributeValue(null, "x"));
+                frame.y = parseCoordinate(reader.getAttributeValue(null, "y"));
+            }
+            case "ext" -> {
+                frame.width = parseCoordinate(reader.getAttributeValue(null, "cx"));
+                frame.height = parseCoordinate(reader.getAttributeValue(null, "cy"));
+            }
+            case "chOff" -> {
+                frame.childX = parseCoordinate(reader.getAttributeValue(null, "x"));
+                frame.childY = parseCoordinate(reader.getAttributeValue(null, "y"));
+            }
+            case "chExt" -> {
+                frame.childWidth = parseCoordinate(reader.getAttributeValue(null, "cx"));
+                frame.childHeight = parseCoordinate(reader.getAttributeValue(null, "cy"));
+            }
+            default -> {
+            }
+        }
+    }
+
+    private static void collectTokens(String text, Deque<Frame> frames, boolean inTable, int table, int row,
+                                      int column, List<Found> found) {
+        Frame shape = frames.peek();
+        boolean grouped = frames.stream().anyMatch(frame -> frame.group);
+        ShapeType shapeType = inTable ? ShapeType.TABLE_CELL : grouped ? ShapeType.GROUP : ShapeType.TEXT;
+        Anchor anchor = anchor(frames);
+        PlaceholderTokenizer.forEachToken(text, (start, end, token) -> {
+            Kind kind;
+            String key;
+            if (token.startsWith(PlaceholderTokenizer.IMAGE_PREFIX)) {
+                kind = Kind.IMAGE;
+                key = token.substring(PlaceholderTokenizer.IMAGE_PREFIX.length());
+            } else if (RepeatMarker.isMarker(token)) {
+                kind = Kind.LIST;
+                key = RepeatMarker.keyOf(token);
+            } else {
+                kind = Kind.TEXT;
+                key = token;
+            }
+            found.add(new Found(token, kind, key, shapeType, shape == null ? null : shape.id,
+                    shape == null ? null : shape.name, inTable ? table : -1,
+                    inTable ? row : null, inTable ? column : null, anchor));
+        });
+    }
+
+    /**
+     * {CHART:key} trong tên hoặc alt text của khung, giống cách ChartBinder tìm chart cần điền
+     */
+    private static void collectChartTokens(Deque<Frame> frames, List<Found> found) {
+        Frame frame = frames.peek();
+        if (!frame.chart) {
+            return;
+        }
+        Anchor anchor = anchor(frames);
+        Set<String> seen = new HashSet<>();
+        PlaceholderTokenizer.TokenConsumer collect = (start, end, token) -> {
+            if (token.startsWith(ChartBinder.CHART_PREFIX) && seen.add(token)) {
+                found.add(new Found(token, Kind.CHART, token.substring(ChartBinder.CHART_PREFIX.length()),
+                        ShapeType.CHART, frame.id, frame.name, -1, null, null, anchor));
+            }
+        };
+        PlaceholderTokenizer.forEachToken(frame.name, collect);
+        PlaceholderTokenizer.forEachToken(frame.description, collect);
+    }
+
+    /**
+     * Vị trí của shape trong cùng, quy đổi lần lượt qua các group bao ngoài về tọa độ slide
+     */
+    private static Anchor anchor(Deque<Frame> frames) {
+        Iterator<Frame> it = frames.iterator();
+        if (!it.hasNext()) {
+            return null;
+        }
+        Frame shape = it.next();
+        if (!shape.hasXfrm) {
+            return null;
+        }
+        double x = shape.x;
+        double y = shape.y;
+        double width = shape.width;
+        double height = shape.height;
+        while (it.hasNext()) {
+            Frame group = it.next();
+            if (!group.hasXfrm) {
+                continue;
+            }
+            double scaleX = group.childWidth == 0 ? 1 : (double) group.width / group.childWidth;
+            double scaleY = group.childHeight == 0 ? 1 : (double) group.height / group.childHeight;
+            x = group.x + (x - group.childX) * scaleX;
+            y = group.y + (y - group.childY) * scaleY;
+            width *= scaleX;
+            height *= scaleY;
+        }
+        return new Anchor(Math.round(x), Math.round(y), Math.round(width), Math.round(height));
+    }
+
+    /**
+     * Gán danh sách lặp cho token: marker {#key} ngoài bảng áp dụng cho cả slide,
+     * marker trong ô bảng áp dụng cho dòng chứa nó
+     */
+    private static List<Placeholder> resolveLists(List<Found> found, int slide) {
+        String slideList = null;
+        Map<String, String> rowLists = new HashMap<>();
+        for (Found token : found) {
+            if (token.kind() != Kind.LIST) {
+                continue;
+            }
+            if (token.table() < 0) {
+                if (slideList == null) {
+                    slideList = token.key();
+                }
+            } else {
+                rowLists.putIfAbsent(token.table() + ":" + token.row(), token.key());
+            }
+        }
+
+        List<Placeholder> placeholders = new ArrayList<>(found.size());
+        for (Found token : found) {
+            String list = token.table() < 0 ? null : rowLists.get(token.table() + ":" + token.row());
+            if (list == null) {
+                // data.charts dùng chung cho mọi bản sao của slide lặp
+                list = switch (token.kind()) {
+                    case LIST -> token.key();
+                    case CHART -> null;
+                    default -> slideList;
+                };
+            }
+            placeholders.add(new Placeholder(token.token(), token.kind(), token.key(), list, slide, token.shapeType(),
+                    token.shapeId(), token.shapeName(), token.row(), token.column(), token.anchor()));
+        }
+        return placeholders;
+    }
+
+    private static Integer parseId(String value) {
+        try {
+            return value == null ? null : Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static long parseCoordinate(String value) {
+        try {
+            return value == null ? 0 : Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
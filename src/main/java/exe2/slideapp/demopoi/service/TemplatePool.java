@@ -0,0 +1,261 @@
+package exe2.slideapp.demopoi.service;
+
+import exe2.slideapp.demopoi.config.TemplatePoolProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.xslf.usermodel.XMLSlideShow;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool các bản XMLSlideShow đã parse sẵn, khóa theo SHA-256 của nội dung template.
+ * Mỗi request nhận một bản riêng (và tự close), pool parse bù ở background.
+ * Bộ nhớ ước lượng bị giới hạn cứng, vượt quá thì loại template ít dùng nhất (LRU).
+ * <p>
+ * Template được spool một lần ra ScratchSpace và mỗi bản mở file-backed (FileBackedSlideShow),
+ * nên pool không giữ byte[] của template và media không bị nạp vào heap.
+ */
+@Component
+@Slf4j
+public class TemplatePool {
+
+    private final TemplatePoolProperties properties;
+    private final ScratchSpace scratchSpace;
+    private final ExecutorService refillExecutor;
+
+    // accessOrder = true => thứ tự duyệt là LRU
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes;
+
+    public TemplatePool(TemplatePoolProperties properties, ScratchSpace scratchSpace) {
+        this.properties = properties;
+        this.scratchSpace = scratchSpace;
+        AtomicInteger counter = new AtomicInteger();
+        this.refillExecutor = Executors.newFixedThreadPool(Math.max(1, properties.getRefillThreads()), r -> {
+            Thread t = new Thread(r, "template-pool-refill-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Lấy một bản đã parse của template. Người gọi sở hữu bản này và phải close sau khi dùng
+     */
+    public XMLSlideShow acquire(byte[] content) throws IOException {
+        return acquire(new PreparedTemplate(content));
+    }
+
+    /**
+     * Như acquire(byte[]) với hash đã tính sẵn của template
+     */
+    public XMLSlideShow acquire(PreparedTemplate template) throws IOException {
+        byte[] content = template.getContent();
+        if (!properties.isEnabled()) {
+            return FileBackedSlideShow.open(spool(content));
+        }
+
+        String hash = template.getHash();
+        XMLSlideShow copy = null;
+        Entry entry;
+
+        synchronized (this) {
+            entry = entries.get(hash);
+            if (entry != null) {
+                copy = entry.warm.pollFirst();
+                if (copy != null) {
+                    usedBytes -= entry.copyCost;
+                } else {
+                    entry.spool.retain();
+                }
+                scheduleRefill(entry);
+            }
+        }
+
+        if (copy != null) {
+            log.debug("Template pool hit for {}", hash);
+            return copy;
+        }
+        log.debug("Template pool miss for {}", hash);
+        if (entry != null) {
+            return FileBackedSlideShow.open(entry.spool);
+        }
+
+        // Spool ngoài lock; request khác cùng template có thể spool song song, bản thua dùng riêng rồi bị xóa
+        Spool spool = spool(content);
+        synchronized (this) {
+            if (!entries.containsKey(hash)) {
+                entry = new Entry(hash, spool, (long) content.length * properties.getExpansionFactor());
+                if (reserve(entry.copyCost, null)) {
+                    spool.retain();
+                    entries.put(hash, entry);
+                    scheduleRefill(entry);
+                } else {
+                    log.debug("Template {} is too large for the pool, parsing directly", hash);
+                }
+            }
+        }
+        return FileBackedSlideShow.open(spool);
+    }
+
+    /**
+     * Số byte (ước lượng) pool đang giữ
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    private void scheduleRefill(Entry entry) {
+        if (entry.refilling || entry.warm.size() >= properties.getWarmCopies()) {
+            return;
+        }
+        entry.refilling = true;
+        refillExecutor.execute(() -> refill(entry));
+    }
+
+    private void refill(Entry entry) {
+        try {
+            while (true) {
+                synchronized (this) {
+                    if (entries.get(entry.hash) != entry || entry.warm.size() >= properties.getWarmCopies()) {
+                        return;
+                    }
+                    entry.spool.retain();
+                }
+
+                XMLSlideShow copy = FileBackedSlideShow.open(entry.spool);
+
+                synchronized (this) {
+                    if (entries.get(entry.hash) != entry || !reserve(entry.copyCost, entry)) {
+                        closeQuietly(copy);
+                        return;
+                    }
+                    usedBytes += entry.copyCost;
+                    entry.warm.addLast(copy);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Failed to refill template pool for {}: {}", entry.hash, e.getMessage());
+        } finally {
+            synchronized (this) {
+                entry.refilling = false;
+            }
+        }
+    }
+
+    /**
+     * Đảm bảo còn đủ chỗ cho {@code bytes}, loại các entry LRU (trừ {@code keep}) nếu cần.
+     * Phải gọi khi đang giữ lock
+     */
+    private boolean reserve(long bytes, Entry keep) {
+        long max = properties.getMaxMemory().toBytes();
+        if (bytes > max) {
+            return false;
+        }
+        Iterator<Entry> it = entries.values().iterator();
+        while (usedBytes + bytes > max && it.hasNext()) {
+            Entry eldest = it.next();
+            if (eldest == keep) {
+                continue;
+            }
+            it.remove();
+            evict(eldest);
+        }
+        return usedBytes + bytes <= max;
+    }
+
+    private void evict(Entry entry) {
+        log.debug("Evicting template {} from pool", entry.hash);
+        usedBytes -= entry.warm.size() * entry.copyCost;
+        XMLSlideShow copy;
+        while ((copy = entry.warm.pollFirst()) != null) {
+            closeQuietly(copy);
+        }
+        // Bản đang được request dùng vẫn giữ file cho tới khi close
+        entry.spool.release();
+    }
+
+    /**
+     * Ghi template ra một file scratch, người gọi giữ tham chiếu đầu tiên
+     */
+    private Spool spool(byte[] content) throws IOException {
+        ScratchFile file = scratchSpace.create("pptx-source", ".pptx");
+        try (OutputStream out = file.openOutputStream()) {
+            out.write(content);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+        return new Spool(file);
+    }
+
+    private void closeQuietly(XMLSlideShow ppt) {
+        try {
+            ppt.close();
+        } catch (IOException e) {
+            log.debug("Failed to close pooled slideshow: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refillExecutor.shutdownNow();
+        synchronized (this) {
+            entries.values().forEach(this::evict);
+            entries.clear();
+        }
+    }
+
+    /**
+     * File template đã spool, đếm tham chiếu: entry của pool và mỗi bản đang mở giữ một tham chiếu,
+     * file bị xóa khi tham chiếu cuối cùng được trả
+     */
+    static final class Spool {
+        private final ScratchFile file;
+        private int references = 1;
+
+        private Spool(ScratchFile file) {
+            this.file = file;
+        }
+
+        Path getPath() {
+            return file.getPath();
+        }
+
+        synchronized void retain() {
+            if (references == 0) {
+                throw new IllegalStateException("Template spool " + file.getPath() + " is already deleted");
+            }
+            references++;
+        }
+
+        synchronized void release() {
+            if (--references == 0) {
+                file.close();
+            }
+        }
+    }
+
+    /**
+     * Một template trong pool cùng các bản đã parse sẵn
+     */
+    private static class Entry {
+        private final String hash;
+        private final Spool spool;
+        private final long copyCost;
+        private final Deque<XMLSlideShow> warm = new ArrayDeque<>();
+        private boolean refilling;
+
+        Entry(String hash, Spool spool, long copyCost) {
+            this.hash = hash;
+            this.spool = spool;
+            this.copyCost = copyCost;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package exe2.slideapp.demopoi.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import exe2.slideapp.demopoi.config.TemplateRegistryProperties;
+import exe2.slideapp.demopoi.exception.InvalidFileFormatException;
+import exe2.slideapp.demopoi.exception.ResourceNotFoundException;
+import exe2.slideapp.demopoi.exception.TemplateTooLargeException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Kho template trên server: client upload template một lần rồi render bằng templateId.
+ * Nội dung được lưu theo SHA-256 (blobs/&lt;sha256&gt;.pptx), metadata của mỗi template là một file JSON.
+ * Khi render, blob được đọc thẳng từ file: pipeline render cần byte[] riêng cho mỗi request
+ * và page cache của hệ điều hành đã giữ các blob hay dùng
+ */
+@Service
+@Slf4j
+public class TemplateRegistry {
+
+    private final Path blobDirectory;
+    private final Path metadataDirectory;
+    private final long maxTemplateSize;
+    private final ObjectMapper objectMapper;
+    private final Map<String, StoredTemplate> templates = new ConcurrentHashMap<>();
+
+    public TemplateRegistry(TemplateRegistryProperties properties, ObjectMapper objectMapper) throws IOException {
+        Path directory = Paths.get(properties.getDirectory());
+        this.blobDirectory = directory.resolve("blobs");
+        this.metadataDirectory = directory.resolve("meta");
+        this.maxTemplateSize = properties.getMaxTemplateSize().toBytes();
+        this.objectMapper = objectMapper;
+        Files.createDirectories(blobDirectory);
+        Files.createDirectories(metadataDirectory);
+        loadMetadata();
+    }
+
+    /**
+     * Một version của template
+     */
+    public record Version(int version, String filename, String sha256, long size, Instant createdAt) {
+    }
+
+    /**
+     * Template đã lưu, versions luôn sắp theo số version tăng dần
+     */
+    public record StoredTemplate(String id, String name, Instant createdAt, List<Version> versions) {
+
+        public Version latest() {
+            return versions.get(versions.size() - 1);
+        }
+
+        /**
+         * Version cụ thể, hoặc version mới nhất nếu version là null
+         */
+        public Version version(Integer version) {
+            if (version == null) {
+                return latest();
+            }
+            return versions.stream()
+                    .filter(v -> v.version() == version)
+                    .findFirst()
+                    .orElseThrow(() -> new ResourceNotFoundException("Template " + id + " has no version " + version));
+        }
+    }
+
+    /**
+     * Tạo template mới với version 1. Upload ít khi xảy ra nên mọi thay đổi kho đều được tuần tự hóa,
+     * tránh việc blob vừa lưu bị xóa bởi một lệnh delete chạy song song
+     */
+    public synchronized StoredTemplate create(String name, MultipartFile file) throws IOException {
+        Version version = storeBlob(file, 1);
+        String id = UUID.randomUUID().toString();
+        String templateName = name != null && !name.isBlank() ? name : file.getOriginalFilename();
+        StoredTemplate template = new StoredTemplate(id, templateName, version.createdAt(), List.of(version));
+        saveMetadata(template);
+        templates.put(id, template);
+        log.info("Registered template {} ({}) with {} bytes", id, templateName, version.size());
+        return template;
+    }
+
+    /**
+     * Thêm version mới cho template đã có
+     */
+    public synchronized StoredTemplate addVersion(String id, MultipartFile file) throws IOException {
+        StoredTemplate current = get(id);
+        Version version = storeBlob(file, current.latest().version() + 1);
+        List<Version> versions = new ArrayList<>(current.versions());
+        versions.add(version);
+        StoredTemplate updated = new StoredTemplate(id, current.name(), current.createdAt(), List.copyOf(versions));
+        saveMetadata(updated);
+        templates.put(id, updated);
+        log.info("Added version {} to template {}", version.version(), id);
+        return updated;
+    }
+
+    public List<StoredTemplate> list() {
+        return templates.values().stream()
+                .sorted(Comparator.comparing(StoredTemplate::createdAt))
+                .toList();
+    }
+
+    public StoredTemplate get(String id) {
+        StoredTemplate template = id != null ? templates.get(id) : null;
+        if (template == null) {
+            throw new ResourceNotFoundException("Template not found: " + id);
+        }
+        return template;
+    }
+
+    /**
+     * Xóa template cùng mọi version. Blob chỉ bị xóa khi không còn version nào dùng nó
+     */
+    public synchronized void delete(String id) throws IOException {
+        StoredTemplate template = get(id);
+        templates.remove(id);
+        Files.deleteIfExists(metadataFile(id));
+        for (Version version : template.versions()) {
+            deleteBlobIfUnused(version.sha256());
+        }
+        log.info("Deleted template {}", id);
+    }
+
+    /**
+     * Xóa một version. Xóa version cuối cùng thì xóa luôn template
+     */
+    public synchronized void deleteVersion(String id, int version) throws IOException {
+        StoredTemplate template = get(id);
+        Version removed = template.version(version);
+        if (template.versions().size() == 1) {
+            delete(id);
+            return;
+        }
+        List<Version> versions = new ArrayList<>(template.versions());
+        versions.remove(removed);
+        StoredTemplate updated = new StoredTemplate(id, template.name(), template.createdAt(), List.copyOf(versions));
+        saveMetadata(updated);
+        templates.put(id, updated);
+        deleteBlobIfUnused(removed.sha256());
+    }
+
+    /**
+     * Nội dung template để render (version null = mới nhất)
+     */
+    public byte[] load(String id, Integer version) throws IOException {
+        return load(get(id).version(version));
+    }
+
+    public byte[] load(Version selected) throws IOException {
+        return Files.readAllBytes(getBlobPath(selected));
+    }
+
+    public Path getBlobPath(Version version) {
+        return blobDirectory.resolve(version.sha256() + ".pptx");
+    }
+
+    /**
+     * Ghi upload ra đĩa và tính SHA-256 trong một lần đọc, rồi đổi tên thành blob theo hash
+     */
+    private Version storeBlob(MultipartFile file, int versionNumber) throws IOException {
+        if (file == null || file.isEmpty()) {
+            throw new InvalidFileFormatException("Template file is empty");
+        }
+        if (file.getSize() > maxTemplateSize) {
+            throw new TemplateTooLargeException("Template is larger than the maximum of "
+                    + maxTemplateSize / (1024 * 1024) + " MB", file.getSize());
+        }
+
+        Path partial = Files.createTempFile(blobDirectory, "upload-", ".part");
+        try {
+            MessageDigest digest = sha256();
+            try (InputStream in = file.getInputStream();
+                 OutputStream out = new DigestOutputStream(Files.newOutputStream(partial), digest)) {
+                in.transferTo(out);
+            }
+            validate(partial, file.getOriginalFilename());
+
+            String sha256 = HexFormat.of().formatHex(digest.digest());
+            Path blob = blobDirectory.resolve(sha256 + ".pptx");
+            if (Files.exists(blob)) {
+                Files.delete(partial);
+            } else {
+                Files.move(partial, blob, StandardCopyOption.ATOMIC_MOVE);
+            }
+            return new Version(versionNumber, file.getOriginalFilename(), sha256, Files.size(blob), Instant.now());
+        } finally {
+            Files.deleteIfExists(partial);
+        }
+    }
+
+    private void validate(Path path, String filename) {
+        try (ZipFile zip = ZipFile.builder().setPath(path).get()) {
+            if (zip.getEntry("ppt/presentation.xml") == null) {
+                throw new InvalidFileFormatException("File is not a PowerPoint presentation", filename);
+            }
+        } catch (IOException e) {
+            throw new InvalidFileFormatException("Template is not a valid .pptx (zip) file: " + e.getMessage(), filename);
+        }
+    }
+
+    private void deleteBlobIfUnused(String sha256) throws IOException {
+        boolean used = templates.values().stream()
+                .flatMap(t -> t.versions().stream())
+                .anyMatch(v -> v.sha256().equals(sha256));
+        if (!used) {
+            Files.deleteIfExists(blobDirectory.resolve(sha256 + ".pptx"));
+        }
+    }
+
+    private Path metadataFile(String id) {
+        return metadataDirectory.resolve(id + ".json");
+    }
+
+    private void saveMetadata(StoredTemplate template) throws IOException {
+        Path partial = metadataDirectory.resolve(template.id() + ".json.part");
+        objectMapper.writeValue(partial.toFile(), template);
+        Files.move(partial, metadataFile(template.id()), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Đọc metadata khi khởi động và dọn upload dở dang cùng các blob không còn được tham chiếu
+     */
+    private void loadMetadata() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(metadataDirectory, "*.json")) {
+            for (Path file : files) {
+                try {
+                    StoredTemplate template = objectMapper.readValue(file.toFile(), StoredTemplate.class);
+                    templates.put(template.id(), template);
+                } catch (IOException e) {
+                    log.warn("Skipping unreadable template metadata {}: {}", file, e.getMessage());
+                }
+            }
+        }
+
+        Set<String> referenced = new HashSet<>();
+        templates.values().forEach(t -> t.versions().forEach(v -> referenced.add(v.sha256() + ".pptx")));
+        try (DirectoryStream<Path> blobs = Files.newDirectoryStream(blobDirectory)) {
+            for (Path blob : blobs) {
+                if (!referenced.contains(blob.getFileName().toString())) {
+                    Files.deleteIfExists(blob);
+                }
+            }
+        }
+        log.info("Template registry loaded {} templates from {}", templates.size(), metadataDirectory.getParent());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package exe2.slideapp.demopoi.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BatchRowParserTest {
+
+    @Test
+    void stripsUtf8BomFromCsvHeader() throws Exception {
+        List<Map<String, String>> rows = BatchRowParser.parse("\uFEFFname,title\r\nAn,Manager\r\n");
+
+        assertThat(rows).containsExactly(Map.of("name", "An", "title", "Manager"));
+        assertThat(rows.get(0).keySet()).containsExactly("name", "title");
+    }
+
+    @Test
+    void stripsUtf8BomFromJson() throws Exception {
+        assertThat(BatchRowParser.parse("\uFEFF[{\"name\":\"An\"}]")).containsExactly(Map.of("name", "An"));
+    }
+
+    @Test
+    void parsesQuotedFieldsAndSkipsBlankLines() throws Exception {
+        List<Map<String, String>> rows = BatchRowParser.parse("""
+                name,note
+                "Trần, An","Nói ""xin chào""
+                dòng hai"
+
+                Bình
+                """);
+
+        assertThat(rows).hasSize(2);
+        assertThat(rows.get(0)).containsEntry("name", "Trần, An")
+                .containsEntry("note", "Nói \"xin chào\"\ndòng hai");
+        // Thiếu cột thì giá trị rỗng
+        assertThat(rows.get(1)).containsEntry("name", "Bình").containsEntry("note", "");
+    }
+
+    @Test
+    void rejectsEmptyRows() {
+        assertThatThrownBy(() -> BatchRowParser.parse("\uFEFF  ")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,219 @@
+package exe2.slideapp.demopoi.service;
+
+import exe2.slideapp.demopoi.config.InspectProperties;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xddf.usermodel.chart.*;
+import org.apache.poi.xslf.usermodel.*;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openxmlformats.schemas.drawingml.x2006.chart.CTBarSer;
+import org.openxmlformats.schemas.presentationml.x2006.main.CTGraphicalObjectFrame;
+
+import java.awt.geom.Rectangle2D;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Điền chart từ data.charts: cache của series, số series và workbook nhúng được ghi lại
+ */
+class ChartBinderTest {
+
+    @TempDir
+    Path scratchDirectory;
+
+    private TestServices services;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        services = new TestServices(scratchDirectory);
+    }
+
+    @AfterEach
+    void tearDown() {
+        services.close();
+    }
+
+    @Test
+    void rebuildsTheCacheAndAddsMissingSeries() throws Exception {
+        byte[] template = template("{CHART:sales}", 1);
+        ChartData sales = new ChartData(List.of("Q1", "Q2", "Q3"), List.of(
+                new ChartData.Series("2024", List.of(1.0, 2.5, 3.0)),
+                new ChartData.Series("2025", Arrays.asList(4.0, null, 6.0))));
+
+        byte[] deck = services.render(template, data(sales), RenderEngine.POI);
+
+        try (XMLSlideShow show = new XMLSlideShow(new ByteArrayInputStream(deck))) {
+            XSLFChart chart = chart(show);
+            CTBarSer[] series = chart.getCTChart().getPlotArea().getBarChartArray(0).getSerArray();
+            assertThat(series).hasSize(2);
+            assertThat(series[1].getIdx().getVal()).isNotEqualTo(series[0].getIdx().getVal());
+            assertThat(series[1].getOrder().getVal()).isNotEqualTo(series[0].getOrder().getVal());
+
+            assertThat(series[0].getTx().getStrRef().getStrCache().getPtArray(0).getV()).isEqualTo("2024");
+            assertThat(series[1].getTx().getStrRef().getF()).isEqualTo("Sheet0!$C$1");
+            assertThat(series[1].getCat().getStrRef().getStrCache().getPtCount().getVal()).isEqualTo(3);
+            assertThat(series[1].getCat().getStrRef().getStrCache().getPtArray(2).getV()).isEqualTo("Q3");
+
+            assertThat(series[0].getVal().getNumRef().getF()).isEqualTo("Sheet0!$B$2:$B$4");
+            assertThat(series[0].getVal().getNumRef().getNumCache().getPtArray(1).getV()).isEqualTo("2.5");
+            // Điểm null không có c:pt, format của template được giữ
+            assertThat(series[1].getVal().getNumRef().getNumCache().getPtCount().getVal()).isEqualTo(3);
+            assertThat(series[1].getVal().getNumRef().getNumCache().getPtList()).hasSize(2);
+            assertThat(series[1].getVal().getNumRef().getNumCache().getFormatCode()).isEqualTo("0.0%");
+        }
+    }
+
+    @Test
+    void removesExtraSeries() throws Exception {
+        byte[] template = template("{CHART:sales}", 3);
+        ChartData sales = new ChartData(List.of("A", "B"),
+                List.of(new ChartData.Series("Only", List.of(7.0, 8.0))));
+
+        byte[] deck = services.render(template, data(sales), RenderEngine.POI);
+
+        try (XMLSlideShow show = new XMLSlideShow(new ByteArrayInputStream(deck))) {
+            CTBarSer[] series = chart(show).getCTChart().getPlotArea().getBarChartArray(0).getSerArray();
+            assertThat(series).hasSize(1);
+            assertThat(series[0].getTx().getStrRef().getStrCache().getPtArray(0).getV()).isEqualTo("Only");
+            assertThat(series[0].getVal().getNumRef().getNumCache().getPtArray(1).getV()).isEqualTo("8");
+        }
+    }
+
+    @Test
+    void replacesTheEmbeddedWorkbookWithOnlyTheChartData() throws Exception {
+        byte[] template = template("{CHART:sales}", 1);
+        ChartData sales = new ChartData(List.of("Q1", "Q2"), List.of(
+                new ChartData.Series("2024", List.of(1.0, 2.0)),
+                new ChartData.Series("2025", List.of(3.0, 4.0))));
+
+        byte[] deck = services.render(template, data(sales), RenderEngine.POI);
+
+        try (XMLSlideShow show = new XMLSlideShow(new ByteArrayInputStream(deck))) {
+            XSLFChart chart = chart(show);
+            PackagePart part = chart.getPackagePart().getRelatedPart(chart.getPackagePart()
+                    .getRelationship(chart.getCTChartSpace().getExternalData().getId()));
+            try (InputStream in = part.getInputStream(); XSSFWorkbook workbook = new XSSFWorkbook(in)) {
+                // Tên sheet lấy từ công thức của template; sheet, style và number format khác bị bỏ
+                assertThat(workbook.getNumberOfSheets()).isEqualTo(1);
+                assertThat(workbook.getSheet("Notes")).isNull();
+                XSSFSheet sheet = workbook.getSheet("Sheet0");
+                assertThat(sheet.getRow(0).getCell(0)).isNull();
+                assertThat(sheet.getRow(0).getCell(1).getStringCellValue()).isEqualTo("2024");
+                assertThat(sheet.getRow(0).getCell(2).getStringCellValue()).isEqualTo("2025");
+                assertThat(sheet.getRow(2).getCell(0).getStringCellValue()).isEqualTo("Q2");
+                assertThat(sheet.getRow(2).getCell(2).getNumericCellValue()).isEqualTo(4.0);
+                assertThat(sheet.getRow(1).getCell(1).getCellStyle().getDataFormatString()).isEqualTo("General");
+                assertThat(sheet.getLastRowNum()).isEqualTo(2);
+            }
+        }
+    }
+
+    @Test
+    void rejectsTextAndNumbersThatCannotBeWrittenToTheChart() throws Exception {
+        assertThatThrownBy(() -> TemplateData.parse(
+                "{\"sales\":{\"categories\":[\"Q1\\u0001\"],\"series\":[{\"values\":[1]}]}}"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("U+0001");
+        assertThatThrownBy(() -> TemplateData.parse(
+                "{\"sales\":{\"categories\":[\"Q1\"],\"series\":[{\"name\":\"\\uFFFF\",\"values\":[1]}]}}"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("U+FFFF");
+        assertThatThrownBy(() -> TemplateData.parse(
+                "{\"sales\":{\"categories\":[\"Q1\"],\"series\":[{\"values\":[1e400]}]}}"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("finite");
+
+        ChartData valid = TemplateData.parse(
+                "{\"sales\":{\"categories\":[\"Q1\\tQ2\",\"\uD83D\uDCC8\"],\"series\":[{\"values\":[1,null]}]}}")
+                .charts().get("sales");
+        assertThat(valid.categories()).containsExactly("Q1\tQ2", "\uD83D\uDCC8");
+    }
+
+    @Test
+    void inspectorReportsChartKeys() throws Exception {
+        byte[] template = template("Sales {CHART:sales}", 1);
+        InspectProperties properties = new InspectProperties();
+        TemplateInspector inspector = new TemplateInspector(services.memoryAdmission, properties);
+
+        TemplateInspector.Inspection inspection = inspector.inspect(template);
+
+        assertThat(inspection.chartKeys()).containsExactly("sales");
+        assertThat(inspection.keys()).containsExactly("title");
+        TemplateInspector.Placeholder chart = inspection.placeholders().stream()
+                .filter(placeholder -> placeholder.kind() == TemplateInspector.Kind.CHART)
+                .findFirst().orElseThrow();
+        assertThat(chart.token()).isEqualTo("CHART:sales");
+        assertThat(chart.shapeType()).isEqualTo(TemplateInspector.ShapeType.CHART);
+        assertThat(chart.slide()).isEqualTo(1);
+        assertThat(chart.anchor()).isNotNull();
+    }
+
+    private static TemplateData data(ChartData sales) {
+        return new TemplateData(Map.of("title", "Report"), Map.of(), Map.of("sales", sales));
+    }
+
+    private static XSLFChart chart(XMLSlideShow show) {
+        return show.getSlides().get(0).getRelations().stream()
+                .filter(XSLFChart.class::isInstance)
+                .map(XSLFChart.class::cast)
+                .findFirst().orElseThrow();
+    }
+
+    /**
+     * Slide có tiêu đề {title} và một bar chart với số series cho trước. Workbook nhúng có thêm
+     * sheet "Notes" và một ô có number format riêng
+     */
+    private static byte[] template(String description, int seriesCount) throws Exception {
+        try (XMLSlideShow show = new XMLSlideShow()) {
+            XSLFSlide slide = show.createSlide();
+            XSLFTextBox title = slide.createTextBox();
+            title.setAnchor(new Rectangle2D.Double(20, 20, 400, 40));
+            title.setText("{title}");
+
+            XSLFChart chart = show.createChart();
+            XDDFCategoryAxis categoryAxis = chart.createCategoryAxis(AxisPosition.BOTTOM);
+            XDDFValueAxis valueAxis = chart.createValueAxis(AxisPosition.LEFT);
+            XDDFChartData bars = chart.createData(ChartTypes.BAR, categoryAxis, valueAxis);
+            XDDFDataSource<String> categories = XDDFDataSourcesFactory.fromArray(new String[]{"A", "B"},
+                    chart.formatRange(new CellRangeAddress(1, 2, 0, 0)), 0);
+            for (int s = 1; s <= seriesCount; s++) {
+                XDDFNumericalDataSource<Double> values = XDDFDataSourcesFactory.fromArray(new Double[]{1.0, 2.0},
+                        chart.formatRange(new CellRangeAddress(1, 2, s, s)), s);
+                bars.addSeries(categories, values).setTitle("Old " + s, chart.setSheetTitle("Old " + s, s));
+            }
+            chart.plot(bars);
+            chart.getCTChart().getPlotArea().getBarChartArray(0).getSerArray(seriesCount - 1)
+                    .getVal().getNumRef().getNumCache().setFormatCode("0.0%");
+
+            XSSFWorkbook workbook = chart.getWorkbook();
+            workbook.createSheet("Notes").createRow(0).createCell(0).setCellValue("keep?");
+            CellStyle percent = workbook.createCellStyle();
+            percent.setDataFormat(workbook.createDataFormat().getFormat("0.0%"));
+            workbook.getSheetAt(0).getRow(1).getCell(1).setCellStyle(percent);
+            chart.saveWorkbook(workbook);
+
+            slide.addChart(chart, new Rectangle2D.Double(20, 80, 400, 300));
+            CTGraphicalObjectFrame[] frames = slide.getXmlObject().getCSld().getSpTree().getGraphicFrameArray();
+            frames[frames.length - 1].getNvGraphicFramePr().getCNvPr().setDescr(description);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            show.write(out);
+            return out.toByteArray();
+        }
+    }
+}
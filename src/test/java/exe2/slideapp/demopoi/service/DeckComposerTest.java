@@ -0,0 +1,276 @@
+package exe2.slideapp.demopoi.service;
+
+import exe2.slideapp.demopoi.config.AdmissionProperties;
+import exe2.slideapp.demopoi.config.ComposeProperties;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackagePartName;
+import org.apache.poi.openxml4j.opc.PackageRelationship;
+import org.apache.poi.openxml4j.opc.PackagingURIHelper;
+import org.apache.poi.openxml4j.opc.TargetMode;
+import org.apache.poi.sl.usermodel.PictureData;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xddf.usermodel.chart.*;
+import org.apache.poi.xslf.usermodel.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import org.w3c.dom.NodeList;
+
+import javax.imageio.ImageIO;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Ghép deck từ nhiều template: master, theme, ảnh trùng chỉ được chép một lần, id và link giữa slide
+ * được giữ đúng, bộ nhớ được giữ chỗ theo phần thực sự được chép
+ */
+class DeckComposerTest {
+
+    private static final String PRESENTATION_NS = "http://schemas.openxmlformats.org/presentationml/2006/main";
+    private static final String THEME_CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.theme+xml";
+    private static final String THEME_OVERRIDE_CONTENT_TYPE =
+            "application/vnd.openxmlformats-officedocument.themeOverride+xml";
+    private static final String THEME_OVERRIDE_RELATION =
+            "http://schemas.openxmlformats.org/officeDocument/2006/relationships/themeOverride";
+
+    @TempDir
+    Path scratchDirectory;
+
+    private TestServices services;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        services = new TestServices(scratchDirectory);
+    }
+
+    @AfterEach
+    void tearDown() {
+        services.close();
+    }
+
+    @Test
+    void composesSectionsFromTwoTemplates() throws Exception {
+        byte[] picture = picture(40);
+        byte[] first = linkedTemplate(picture);
+        byte[] second = chartTemplate(picture);
+        List<DeckComposer.Section> sections = List.of(
+                new DeckComposer.Section(first, TemplateData.of(Map.of("title", "Cover"))),
+                new DeckComposer.Section(second, TemplateData.of(Map.of("title", "Sales"))),
+                new DeckComposer.Section(first, TemplateData.of(Map.of("title", "Appendix"))));
+
+        byte[] deck = compose(composer(services.memoryAdmission), sections);
+
+        try (XMLSlideShow show = new XMLSlideShow(new ByteArrayInputStream(deck))) {
+            List<XSLFSlide> slides = show.getSlides();
+            assertThat(slides).hasSize(5);
+            assertThat(((XSLFTextShape) slides.get(3).getShapes().get(0)).getText()).isEqualTo("Appendix");
+
+            // Master và theme của mỗi template một lần, ảnh giống nhau của hai template chỉ còn một part
+            assertThat(show.getSlideMasters()).hasSize(2);
+            assertThat(show.getPackage().getPartsByContentType(THEME_CONTENT_TYPE)).hasSize(2);
+            assertThat(show.getPictureData()).hasSize(1);
+
+            Set<String> ids = new HashSet<>();
+            for (String id : attributes(show.getPackage().getPart(name("/ppt/presentation.xml")), "sldMasterId")) {
+                assertThat(ids.add(id)).as("duplicate master id %s", id).isTrue();
+            }
+            for (XSLFSlideMaster master : show.getSlideMasters()) {
+                for (String id : attributes(master.getPackagePart(), "sldLayoutId")) {
+                    assertThat(ids.add(id)).as("duplicate layout id %s", id).isTrue();
+                }
+            }
+            int layouts = show.getSlideMasters().stream().mapToInt(master -> master.getSlideLayouts().length).sum();
+            assertThat(ids).hasSize(2 + layouts);
+
+            // Link giữa hai slide của một section trỏ sang bản chép của chính section đó
+            assertThat(linkedSlide(slides.get(0))).isEqualTo(slides.get(1).getPackagePart().getPartName());
+            assertThat(linkedSlide(slides.get(3))).isEqualTo(slides.get(4).getPackagePart().getPartName());
+
+            // themeOverride của chart (cũng nằm trong /ppt/theme/) được chép cùng chart
+            XSLFChart chart = slides.get(2).getRelations().stream()
+                    .filter(XSLFChart.class::isInstance)
+                    .map(XSLFChart.class::cast)
+                    .findFirst().orElseThrow();
+            PackageRelationship override = chart.getPackagePart()
+                    .getRelationshipsByType(THEME_OVERRIDE_RELATION).getRelationship(0);
+            assertThat(chart.getPackagePart().getRelatedPart(override).getContentType())
+                    .isEqualTo(THEME_OVERRIDE_CONTENT_TYPE);
+        }
+        assertThat(services.memoryAdmission.getReservedBytes()).isZero();
+        // Deck của các section được xóa khỏi scratch ngay khi ghép xong
+        try (Stream<Path> files = Files.list(services.scratchSpace.getDirectory())) {
+            assertThat(files.filter(file -> file.getFileName().toString().startsWith("compose-section"))).isEmpty();
+        }
+    }
+
+    @Test
+    void reservesOnlyWhatIsMergedIntoTheDeck() throws Exception {
+        byte[] template = linkedTemplate(picture(400));
+        TemplateData data = TemplateData.of(Map.of("title", "Region"));
+        long perSection = new MemoryAdmission(new AdmissionProperties())
+                .estimatePackage(services.render(template, data, RenderEngine.POI));
+
+        // Ngân sách nhỏ hơn tổng ước lượng của sáu deck section, nhưng ảnh chỉ được chép một lần
+        AdmissionProperties properties = new AdmissionProperties();
+        properties.setMemoryBudget(DataSize.ofKilobytes(perSection * 3 / 1024));
+        MemoryAdmission admission = new MemoryAdmission(properties);
+        List<DeckComposer.Section> sections = Collections.nCopies(6, new DeckComposer.Section(template, data));
+
+        DeckComposer composer = composer(admission);
+        try (RenderedDeck deck = composer.compose(sections, Map.of(), RenderEngine.POI)) {
+            assertThat(admission.getReservedBytes()).isLessThan(perSection * 2);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            deck.write(out);
+            try (XMLSlideShow show = new XMLSlideShow(new ByteArrayInputStream(out.toByteArray()))) {
+                assertThat(show.getSlides()).hasSize(12);
+                assertThat(show.getPictureData()).hasSize(1);
+            }
+        } finally {
+            composer.shutdown();
+        }
+        assertThat(admission.getReservedBytes()).isZero();
+    }
+
+    private DeckComposer composer(MemoryAdmission admission) {
+        return new DeckComposer(services.powerPointService, admission, services.scratchSpace, new ComposeProperties());
+    }
+
+    private static byte[] compose(DeckComposer composer, List<DeckComposer.Section> sections) throws IOException {
+        try (RenderedDeck deck = composer.compose(sections, Map.of(), RenderEngine.POI)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            deck.write(out);
+            return out.toByteArray();
+        } finally {
+            composer.shutdown();
+        }
+    }
+
+    /**
+     * Hai slide, slide đầu có ảnh và link tới slide thứ hai
+     */
+    private static byte[] linkedTemplate(byte[] picture) throws IOException {
+        try (XMLSlideShow show = new XMLSlideShow()) {
+            XSLFSlide cover = show.createSlide();
+            XSLFSlide next = show.createSlide();
+            XSLFTextBox title = cover.createTextBox();
+            title.setAnchor(new Rectangle2D.Double(20, 20, 400, 40));
+            title.setText("{title}").createHyperlink().linkToSlide(next);
+            cover.createPicture(show.addPicture(picture, PictureData.PictureType.PNG))
+                    .setAnchor(new Rectangle2D.Double(20, 80, 200, 200));
+            next.createTextBox().setText("Details");
+            return write(show);
+        }
+    }
+
+    /**
+     * Template có theme khác, cùng ảnh, và một chart có themeOverride
+     */
+    private static byte[] chartTemplate(byte[] picture) throws IOException {
+        try (XMLSlideShow show = new XMLSlideShow()) {
+            show.getSlideMasters().get(0).getTheme().setName("Sales theme");
+            XSLFSlide slide = show.createSlide();
+            XSLFTextBox title = slide.createTextBox();
+            title.setAnchor(new Rectangle2D.Double(20, 20, 400, 40));
+            title.setText("{title}");
+            slide.createPicture(show.addPicture(picture, PictureData.PictureType.PNG))
+                    .setAnchor(new Rectangle2D.Double(20, 80, 200, 200));
+
+            XSLFChart chart = show.createChart();
+            XDDFChartData bars = chart.createData(ChartTypes.BAR, chart.createCategoryAxis(AxisPosition.BOTTOM),
+                    chart.createValueAxis(AxisPosition.LEFT));
+            bars.addSeries(XDDFDataSourcesFactory.fromArray(new String[]{"A", "B"},
+                            chart.formatRange(new CellRangeAddress(1, 2, 0, 0)), 0),
+                    XDDFDataSourcesFactory.fromArray(new Double[]{1.0, 2.0},
+                            chart.formatRange(new CellRangeAddress(1, 2, 1, 1)), 1));
+            chart.plot(bars);
+            slide.addChart(chart, new Rectangle2D.Double(240, 80, 400, 300));
+
+            PackagePart override = show.getPackage().createPart(name("/ppt/theme/themeOverride1.xml"),
+                    THEME_OVERRIDE_CONTENT_TYPE);
+            try (OutputStream out = override.getOutputStream()) {
+                out.write(themeOverride(show).getBytes(StandardCharsets.UTF_8));
+            }
+            chart.getPackagePart().addRelationship(override.getPartName(), TargetMode.INTERNAL, THEME_OVERRIDE_RELATION);
+            return write(show);
+        }
+    }
+
+    /**
+     * a:themeOverride chứa lại clrScheme, fontScheme, fmtScheme của theme
+     */
+    private static String themeOverride(XMLSlideShow show) throws IOException {
+        String theme;
+        try (InputStream in = show.getSlideMasters().get(0).getTheme().getPackagePart().getInputStream()) {
+            theme = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        String elements = theme.substring(theme.indexOf("<a:themeElements>") + "<a:themeElements>".length(),
+                theme.indexOf("</a:themeElements>"));
+        return "<a:themeOverride xmlns:a=\"http://schemas.openxmlformats.org/drawingml/2006/main\">"
+                + elements + "</a:themeOverride>";
+    }
+
+    private static byte[] write(XMLSlideShow show) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        show.write(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * PNG nhiễu, gần như không nén được
+     */
+    private static byte[] picture(int size) throws IOException {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(size);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    private static PackagePartName linkedSlide(XSLFSlide slide) throws Exception {
+        PackagePart part = slide.getPackagePart();
+        PackageRelationship link = part.getRelationshipsByType(XSLFRelation.SLIDE.getRelation()).getRelationship(0);
+        return part.getRelatedPart(link).getPartName();
+    }
+
+    private static List<String> attributes(PackagePart part, String element) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        NodeList nodes;
+        try (InputStream in = part.getInputStream()) {
+            nodes = factory.newDocumentBuilder().parse(in).getElementsByTagNameNS(PRESENTATION_NS, element);
+        }
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            ids.add(nodes.item(i).getAttributes().getNamedItem("id").getNodeValue());
+        }
+        return ids;
+    }
+
+    private static PackagePartName name(String name) {
+        try {
+            return PackagingURIHelper.createPartName(name);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package exe2.slideapp.demopoi.service;
+
+import exe2.slideapp.demopoi.config.ScratchProperties;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Entry media STORED trên stream không seek được: entry lớn được đệm qua ScratchSpace thay vì heap
+ */
+class DeckZipOutputStreamTest {
+
+    @TempDir
+    Path scratchDirectory;
+
+    private ScratchSpace scratchSpace;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ScratchProperties properties = new ScratchProperties();
+        properties.setDirectory(scratchDirectory.toString());
+        scratchSpace = new ScratchSpace(properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scratchSpace.shutdown();
+    }
+
+    @Test
+    void storesMediaAndSpoolsLargeEntriesToScratch() throws IOException {
+        byte[] small = random(10_000);
+        byte[] large = random(DeckZipOutputStream.SPOOL_THRESHOLD * 3 + 17);
+        byte[] xml = "<p:sld/>".repeat(1000).getBytes(StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DeckZipOutputStream zip = new DeckZipOutputStream(out, CompressionPolicy.DEFAULT, scratchSpace) {
+            @Override
+            public void write(byte[] b, int offset, int length) throws IOException {
+                super.write(b, offset, length);
+                // Trong lúc đệm entry lớn, phần vượt ngưỡng nằm trong file tạm
+                if (scratchSpace.getUsedBytes() > 0) {
+                    assertThat(spoolFiles()).isEqualTo(1);
+                }
+            }
+        };
+        put(zip, "ppt/media/image1.png", small);
+        put(zip, "ppt/media/image2.png", large);
+        put(zip, "ppt/slides/slide1.xml", xml);
+        zip.finish();
+
+        assertThat(scratchSpace.getUsedBytes()).isZero();
+        assertThat(spoolFiles()).isZero();
+
+        Map<String, byte[]> entries = new HashMap<>();
+        Map<String, Integer> methods = new HashMap<>();
+        try (ZipArchiveInputStream in = new ZipArchiveInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            ZipArchiveEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                entries.put(entry.getName(), in.readAllBytes());
+                methods.put(entry.getName(), entry.getMethod());
+            }
+        }
+        assertThat(entries.get("ppt/media/image1.png")).isEqualTo(small);
+        assertThat(entries.get("ppt/media/image2.png")).isEqualTo(large);
+        assertThat(entries.get("ppt/slides/slide1.xml")).isEqualTo(xml);
+        assertThat(methods.get("ppt/media/image1.png")).isEqualTo(ZipArchiveEntry.STORED);
+        assertThat(methods.get("ppt/media/image2.png")).isEqualTo(ZipArchiveEntry.STORED);
+        assertThat(methods.get("ppt/slides/slide1.xml")).isEqualTo(ZipArchiveEntry.DEFLATED);
+    }
+
+    @Test
+    void discardSpoolRemovesThePartialEntry() throws IOException {
+        DeckZipOutputStream zip = new DeckZipOutputStream(new ByteArrayOutputStream(), CompressionPolicy.DEFAULT,
+                scratchSpace);
+        zip.putArchiveEntry(new ZipArchiveEntry("ppt/media/image1.png"));
+        zip.write(random(DeckZipOutputStream.SPOOL_THRESHOLD + 1));
+        assertThat(spoolFiles()).isEqualTo(1);
+
+        zip.discardSpool();
+
+        assertThat(spoolFiles()).isZero();
+        assertThat(scratchSpace.getUsedBytes()).isZero();
+    }
+
+    private long spoolFiles() throws IOException {
+        try (Stream<Path> files = Files.list(scratchSpace.getDirectory())) {
+            return files.filter(file -> file.getFileName().toString().startsWith("deck-entry")).count();
+        }
+    }
+
+    private static void put(DeckZipOutputStream zip, String name, byte[] content) throws IOException {
+        zip.putArchiveEntry(new ZipArchiveEntry(name));
+        // Ghi từng đoạn như ZipPackage của POI
+        for (int offset = 0; offset < content.length; offset += 8192) {
+            zip.write(content, offset, Math.min(8192, content.length - offset));
+        }
+        zip.closeArchiveEntry();
+    }
+
+    private static byte[] random(int size) {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        return content;
+    }
+}
@@ -0,0 +1,205 @@
+package exe2.slideapp.demopoi.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import exe2.slideapp.demopoi.config.DriveProperties;
+import exe2.slideapp.demopoi.exception.ResourceNotFoundException;
+import exe2.slideapp.demopoi.exception.TemplateTooLargeException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * DriveTemplateSource chạy với một stub Drive API v3 trên HttpServer của JDK
+ */
+class DriveTemplateSourceTest {
+
+    private static final String FILE_ID = "deck123";
+
+    @TempDir
+    Path cacheDirectory;
+
+    private HttpServer server;
+    private volatile byte[] content = "template-v1".getBytes(StandardCharsets.UTF_8);
+    private volatile long downloadDelayMillis;
+    private volatile Long reportedSize;
+    private final AtomicInteger metadataRequests = new AtomicInteger();
+    private final AtomicInteger downloads = new AtomicInteger();
+
+    @BeforeEach
+    void startStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/drive/v3/files/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @AfterEach
+    void stopStub() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String id = exchange.getRequestURI().getPath().substring("/drive/v3/files/".length());
+        String query = exchange.getRequestURI().getQuery();
+        if (!FILE_ID.equals(id)) {
+            send(exchange, 404, "{\"error\":{\"code\":404,\"message\":\"File not found\"}}".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        byte[] current = content;
+        if (query != null && query.contains("alt=media")) {
+            downloads.incrementAndGet();
+            sleep(downloadDelayMillis);
+            send(exchange, 200, current);
+            return;
+        }
+        metadataRequests.incrementAndGet();
+        String json = "{\"id\":\"" + FILE_ID + "\",\"name\":\"deck.pptx\","
+                + "\"mimeType\":\"" + DriveTemplateSource.PPTX_MIME_TYPE + "\","
+                + "\"md5Checksum\":\"" + md5(current) + "\","
+                + "\"modifiedTime\":\"2026-01-01T00:00:00.000Z\","
+                + "\"size\":\"" + (reportedSize != null ? reportedSize : current.length) + "\"}";
+        send(exchange, 200, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private DriveTemplateSource createSource(Duration revalidateAfter) throws IOException {
+        return createSource(revalidateAfter, new DriveProperties());
+    }
+
+    private DriveTemplateSource createSource(Duration revalidateAfter, DriveProperties properties) throws IOException {
+        properties.setEnabled(true);
+        properties.setRootUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+        properties.setCacheDirectory(cacheDirectory.toString());
+        properties.setRevalidateAfter(revalidateAfter);
+        return new DriveTemplateSource(properties, new ObjectMapper().findAndRegisterModules());
+    }
+
+    @Test
+    void downloadsOnceAndRevalidatesWithChecksum() throws Exception {
+        DriveTemplateSource source = createSource(Duration.ZERO);
+
+        DriveTemplateSource.Template first = source.load(FILE_ID);
+        DriveTemplateSource.Template second = source.load(FILE_ID);
+
+        assertThat(first.name()).isEqualTo("deck.pptx");
+        assertThat(second.content()).isEqualTo(content);
+        assertThat(downloads).hasValue(1);
+        assertThat(metadataRequests).hasValue(2);
+    }
+
+    @Test
+    void downloadsAgainWhenFileChanges() throws Exception {
+        DriveTemplateSource source = createSource(Duration.ZERO);
+        source.load(FILE_ID);
+
+        content = "template-v2".getBytes(StandardCharsets.UTF_8);
+
+        assertThat(source.load(FILE_ID).content()).isEqualTo(content);
+        assertThat(downloads).hasValue(2);
+    }
+
+    @Test
+    void skipsRevalidationWithinWindowAndSurvivesRestart() throws Exception {
+        createSource(Duration.ofMinutes(5)).load(FILE_ID);
+        DriveTemplateSource restarted = createSource(Duration.ofMinutes(5));
+
+        assertThat(restarted.load(FILE_ID).content()).isEqualTo(content);
+        assertThat(metadataRequests).hasValue(1);
+        assertThat(downloads).hasValue(1);
+    }
+
+    @Test
+    void concurrentMissesShareOneDownload() throws Exception {
+        DriveTemplateSource source = createSource(Duration.ofMinutes(5));
+        downloadDelayMillis = 300;
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<DriveTemplateSource.Template>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return source.load(FILE_ID);
+                }));
+            }
+            start.countDown();
+            for (Future<DriveTemplateSource.Template> result : results) {
+                assertThat(result.get(10, TimeUnit.SECONDS).content()).isEqualTo(content);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(downloads).hasValue(1);
+    }
+
+    @Test
+    void abortsDownloadAboveMaxSizeEvenWhenMetadataUnderstatesIt() throws Exception {
+        DriveProperties properties = new DriveProperties();
+        properties.setMaxFileSize(DataSize.ofBytes(1024));
+        DriveTemplateSource source = createSource(Duration.ZERO, properties);
+        content = new byte[64 * 1024];
+        reportedSize = 100L;
+
+        assertThatThrownBy(() -> source.load(FILE_ID))
+                .isInstanceOf(TemplateTooLargeException.class)
+                .hasMessageContaining(FILE_ID);
+        try (Stream<Path> files = Files.list(cacheDirectory)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    void unknownFileIsNotFound() throws Exception {
+        DriveTemplateSource source = createSource(Duration.ZERO);
+
+        assertThatThrownBy(() -> source.load("missing"))
+                .isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type",
+                status == 200 && body.length > 0 && body[0] == '{' ? "application/json" : "application/octet-stream");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String md5(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(data));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
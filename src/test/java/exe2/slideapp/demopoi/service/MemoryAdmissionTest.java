@@ -0,0 +1,66 @@
+package exe2.slideapp.demopoi.service;
+
+import exe2.slideapp.demopoi.config.AdmissionProperties;
+import exe2.slideapp.demopoi.exception.ServiceOverloadedException;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MemoryAdmissionTest {
+
+    private static MemoryAdmission admission(long budgetKb) {
+        AdmissionProperties properties = new AdmissionProperties();
+        properties.setMemoryBudget(DataSize.ofKilobytes(budgetKb));
+        properties.setMaxWait(Duration.ofMillis(50));
+        return new MemoryAdmission(properties);
+    }
+
+    @Test
+    void tryAdmitReturnsNullInsteadOfWaiting() throws Exception {
+        MemoryAdmission admission = admission(100);
+        try (MemoryAdmission.Permit held = admission.admit(60 * 1024)) {
+            assertThat(admission.tryAdmit(50 * 1024)).isNull();
+            assertThat(admission.tryAdmit(200 * 1024)).isNull();
+
+            try (MemoryAdmission.Permit small = admission.tryAdmit(40 * 1024)) {
+                assertThat(small).isNotNull();
+                assertThat(admission.getAvailableBytes()).isZero();
+            }
+            assertThat(admission.getAvailableBytes()).isEqualTo(40 * 1024);
+        }
+        assertThat(admission.getAvailableBytes()).isEqualTo(100 * 1024);
+    }
+
+    @Test
+    void admitWaitsThenRejects() throws Exception {
+        MemoryAdmission admission = admission(100);
+        try (MemoryAdmission.Permit held = admission.admit(100 * 1024)) {
+            assertThatThrownBy(() -> admission.admit(1024)).isInstanceOf(ServiceOverloadedException.class);
+        }
+    }
+
+    @Test
+    void growToNeverWaitsWhileHoldingAPermit() throws Exception {
+        AdmissionProperties properties = new AdmissionProperties();
+        properties.setMemoryBudget(DataSize.ofKilobytes(100));
+        properties.setMaxWait(Duration.ofSeconds(10));
+        MemoryAdmission admission = new MemoryAdmission(properties);
+        try (MemoryAdmission.Permit permit = admission.admit(30 * 1024);
+             MemoryAdmission.Permit other = admission.admit(50 * 1024)) {
+            permit.growTo(50 * 1024);
+            assertThat(permit.getBytes()).isEqualTo(50 * 1024);
+            long start = System.nanoTime();
+            assertThatThrownBy(() -> permit.growTo(60 * 1024)).isInstanceOf(ServiceOverloadedException.class);
+            assertThat(System.nanoTime() - start).isLessThan(Duration.ofSeconds(5).toNanos());
+            assertThat(permit.getBytes()).isEqualTo(50 * 1024);
+
+            permit.shrinkTo(10 * 1024);
+            assertThat(admission.getAvailableBytes()).isEqualTo(40 * 1024);
+        }
+        assertThat(admission.getAvailableBytes()).isEqualTo(100 * 1024);
+    }
+}
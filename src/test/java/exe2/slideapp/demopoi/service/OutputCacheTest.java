@@ -0,0 +1,117 @@
+package exe2.slideapp.demopoi.service;
+
+import exe2.slideapp.demopoi.config.ImageProperties;
+import exe2.slideapp.demopoi.config.OutputCacheProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OutputCacheTest {
+
+    private static final byte[] TEMPLATE = "template".getBytes(StandardCharsets.UTF_8);
+    private static final TemplateData DATA = TemplateData.of(Map.of("name", "An"));
+
+    @TempDir
+    Path directory;
+
+    private OutputCache cache(ImageProperties images) throws IOException {
+        OutputCacheProperties properties = new OutputCacheProperties();
+        properties.setEnabled(true);
+        properties.setDirectory(directory.toString());
+        return new OutputCache(properties, images, new SimpleMeterRegistry());
+    }
+
+    private static String key(OutputCache cache, CompressionPolicy compression) throws IOException {
+        return cache.key(TEMPLATE, DATA, Map.of(), RenderEngine.POI, compression);
+    }
+
+    @Test
+    void servesTheSameKeyFromDiskWithoutRenderingAgain() throws Exception {
+        OutputCache cache = cache(new ImageProperties());
+        String key = key(cache, CompressionPolicy.DEFAULT);
+        AtomicInteger renders = new AtomicInteger();
+        ResultStore.ResultWriter writer = out -> {
+            renders.incrementAndGet();
+            out.write("deck".getBytes(StandardCharsets.UTF_8));
+        };
+
+        OutputCache.CachedOutput first = cache.getOrRender(key, writer);
+        OutputCache.CachedOutput second = cache.getOrRender(key, writer);
+
+        assertThat(renders).hasValue(1);
+        assertThat(second.getPath()).isEqualTo(first.getPath());
+        assertThat(Files.readString(second.getPath())).isEqualTo("deck");
+        // Nạp lại từ đĩa khi khởi động
+        assertThat(cache(new ImageProperties()).getOrRender(key, writer).getSize()).isEqualTo(4);
+        assertThat(renders).hasValue(1);
+    }
+
+    @Test
+    void keyChangesWithOutputConfiguration() throws Exception {
+        String base = key(cache(new ImageProperties()), CompressionPolicy.DEFAULT);
+
+        ImageProperties optimized = new ImageProperties();
+        optimized.setOptimize(true);
+        ImageProperties lowDpi = new ImageProperties();
+        lowDpi.setDpi(96);
+        assertThat(key(cache(optimized), CompressionPolicy.DEFAULT)).isNotEqualTo(base);
+        assertThat(key(cache(lowDpi), CompressionPolicy.DEFAULT)).isNotEqualTo(base);
+
+        OutputCache cache = cache(new ImageProperties());
+        assertThat(key(cache, new CompressionPolicy(CompressionPolicy.Level.MAX, true,
+                CompressionPolicy.DEFAULT_STORED_EXTENSIONS))).isNotEqualTo(base);
+        assertThat(key(cache, new CompressionPolicy(CompressionPolicy.Level.DEFAULT, false,
+                CompressionPolicy.DEFAULT_STORED_EXTENSIONS))).isNotEqualTo(base);
+        assertThat(key(cache, new CompressionPolicy(CompressionPolicy.Level.DEFAULT, true, Set.of("png"))))
+                .isNotEqualTo(base);
+        assertThat(key(cache, new CompressionPolicy(CompressionPolicy.Level.DEFAULT, true,
+                Set.copyOf(CompressionPolicy.DEFAULT_STORED_EXTENSIONS)))).isEqualTo(base);
+    }
+
+    @Test
+    void concurrentRequestsForOneKeyRenderOnce() throws Exception {
+        OutputCache cache = cache(new ImageProperties());
+        String key = key(cache, CompressionPolicy.DEFAULT);
+        AtomicInteger renders = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ResultStore.ResultWriter writer = out -> {
+            renders.incrementAndGet();
+            started.countDown();
+            assertThat(release.await(10, TimeUnit.SECONDS)).isTrue();
+            out.write("deck".getBytes(StandardCharsets.UTF_8));
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<OutputCache.CachedOutput> first = executor.submit(() -> cache.getOrRender(key, writer));
+            assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+            Future<OutputCache.CachedOutput> second = executor.submit(() -> cache.getOrRender(key, writer));
+            Future<OutputCache.CachedOutput> third = executor.submit(() -> cache.getOrRender(key, writer));
+            // Cho hai request sau kịp chờ trên request đang render
+            Thread.sleep(200);
+            release.countDown();
+
+            assertThat(second.get(10, TimeUnit.SECONDS).getPath()).isEqualTo(first.get(10, TimeUnit.SECONDS).getPath());
+            assertThat(third.get(10, TimeUnit.SECONDS).getKey()).isEqualTo(key);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(renders).hasValue(1);
+    }
+}
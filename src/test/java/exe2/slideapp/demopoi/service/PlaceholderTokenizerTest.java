@@ -0,0 +1,92 @@
+package exe2.slideapp.demopoi.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PlaceholderTokenizerTest {
+
+    @Test
+    void nearestOpeningBraceStartsTheToken() {
+        List<String> keys = new ArrayList<>();
+        PlaceholderTokenizer.forEachToken("{a{b}", (start, end, key) -> {
+            keys.add(key);
+            assertThat(start).isEqualTo(2);
+            assertThat(end).isEqualTo(5);
+        });
+
+        assertThat(keys).containsExactly("b");
+        assertThat(PlaceholderTokenizer.replace("{a{b}", Map.of("b", "X", "a{b", "Y"))).isEqualTo("{aX");
+    }
+
+    @Test
+    void unclosedAndReversedBracesAreKept() {
+        Map<String, String> values = Map.of("a", "1", "b", "2");
+
+        assertThat(PlaceholderTokenizer.replace("x {a} {b", values)).isEqualTo("x 1 {b");
+        String untouched = "a}b{";
+        assertThat(PlaceholderTokenizer.replace(untouched, values)).isSameAs(untouched);
+        assertThat(PlaceholderTokenizer.replaceAcrossRuns(new String[]{"{a", " and {b"}, values, (key, hit) -> {
+        })).isNull();
+    }
+
+    @Test
+    void valueGoesToTheRunHoldingTheOpeningBrace() {
+        String[] runs = {"Hello {na", "me} and {", "city}!"};
+
+        String[] replaced = PlaceholderTokenizer.replaceAcrossRuns(runs,
+                Map.of("name", "An", "city", "Hà Nội"), (key, hit) -> {
+                });
+
+        assertThat(replaced).containsExactly("Hello An", " and Hà Nội", "!");
+    }
+
+    @Test
+    void keysNotInValuesAreReportedAndKeptInTheirRuns() {
+        List<String> events = new ArrayList<>();
+        PlaceholderTokenizer.TokenListener listener = (key, hit) -> events.add(key + "=" + hit);
+
+        String[] replaced = PlaceholderTokenizer.replaceAcrossRuns(new String[]{"{miss", "} {hit}"},
+                Map.of("hit", "V"), listener);
+
+        assertThat(replaced).containsExactly("{miss", "} V");
+        assertThat(events).containsExactly("miss=false", "hit=true");
+
+        events.clear();
+        assertThat(PlaceholderTokenizer.replaceAcrossRuns(new String[]{"{x}", "{y}"}, Map.of(), listener)).isNull();
+        assertThat(events).containsExactly("x=false", "y=false");
+    }
+
+    @Test
+    void emptyNullAndSingleCharacterRuns() {
+        assertThat(PlaceholderTokenizer.replaceAcrossRuns(new String[]{"", null, "{a}"}, Map.of("a", "X"),
+                (key, hit) -> {
+                })).containsExactly("", "", "X");
+
+        // Mỗi ký tự một run: con trỏ run chỉ đi tới qua nhiều token
+        String[] runs = "{k} {k}.".split("");
+        String[] replaced = PlaceholderTokenizer.replaceAcrossRuns(runs, Map.of("k", "ab"), (key, hit) -> {
+        });
+        assertThat(replaced).containsExactly("ab", "", "", " ", "ab", "", "", ".");
+    }
+
+    @Test
+    void emptiedRunsKeepTheFirstRunWhenEveryRunIsEmptied() {
+        String[] original = {"{na", "m", "e}", "!"};
+        String[] replaced = PlaceholderTokenizer.replaceAcrossRuns(original, Map.of("name", "An"), (key, hit) -> {
+        });
+        assertThat(PlaceholderTokenizer.emptiedRuns(original, replaced)).containsExactly(false, true, true, false);
+
+        // Run vốn rỗng không tính là bị làm rỗng
+        String[] blank = {"", "{empty}", "x{"};
+        assertThat(PlaceholderTokenizer.emptiedRuns(blank, new String[]{"", "", "x{"}))
+                .containsExactly(false, true, false);
+
+        String[] all = {"{em", "pty}"};
+        assertThat(PlaceholderTokenizer.emptiedRuns(all, new String[]{"", ""})).containsExactly(false, true);
+    }
+}
@@ -0,0 +1,277 @@
+package exe2.slideapp.demopoi.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import exe2.slideapp.demopoi.config.RemoteImageProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * RemoteImageFetcher chạy với một CDN giả trên HttpServer của JDK
+ */
+class RemoteImageFetcherTest {
+
+    private static final String ETAG = "\"v1\"";
+
+    private HttpServer server;
+    private final byte[] content = "png-bytes".getBytes(StandardCharsets.UTF_8);
+    private volatile long delayMillis;
+    private final AtomicInteger downloads = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+    private RemoteImageFetcher fetcher;
+
+    @BeforeEach
+    void startStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/img/", this::handle);
+        server.createContext("/redirect/", this::redirect);
+        server.createContext("/loop", exchange -> {
+            exchange.getResponseHeaders().add("Location", "/loop");
+            send(exchange, 302, new byte[0]);
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @AfterEach
+    void stopStub() {
+        if (fetcher != null) {
+            fetcher.shutdown();
+        }
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+        try {
+            sleep(delayMillis);
+            if (exchange.getRequestURI().getPath().endsWith("/missing.png")) {
+                send(exchange, 404, new byte[0]);
+                return;
+            }
+            if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                exchange.getResponseHeaders().add("ETag", ETAG);
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            downloads.incrementAndGet();
+            exchange.getResponseHeaders().add("ETag", ETAG);
+            exchange.getResponseHeaders().add("Content-Type", "image/png");
+            send(exchange, 200, content);
+        } finally {
+            active.decrementAndGet();
+        }
+    }
+
+    /**
+     * /redirect/&lt;đích&gt;: 302 tới đích (đường dẫn tương đối hoặc URL đầy đủ đã encode)
+     */
+    private void redirect(HttpExchange exchange) throws IOException {
+        String target = URLDecoder.decode(exchange.getRequestURI().getRawPath().substring("/redirect/".length()),
+                StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Location", target);
+        send(exchange, 302, new byte[0]);
+    }
+
+    /**
+     * Stub chạy trên 127.0.0.1 nên test bật allowPrivateAddresses, trừ test kiểm tra chính điều đó
+     */
+    private static RemoteImageProperties stubProperties() {
+        RemoteImageProperties properties = new RemoteImageProperties();
+        properties.setEnabled(true);
+        properties.setAllowedHosts(List.of("127.0.0.1"));
+        properties.setAllowPrivateAddresses(true);
+        return properties;
+    }
+
+    private RemoteImageFetcher createFetcher(Duration revalidateAfter, Duration requestTimeout, int perHost) {
+        RemoteImageProperties properties = stubProperties();
+        properties.setRevalidateAfter(revalidateAfter);
+        properties.setRequestTimeout(requestTimeout);
+        properties.setMaxConnectionsPerHost(perHost);
+        fetcher = new RemoteImageFetcher(properties, new SimpleMeterRegistry());
+        return fetcher;
+    }
+
+    private String url(String name) {
+        return stubUrl("/img/" + name);
+    }
+
+    private String stubUrl(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    @Test
+    void fetchesOncePerUrlAndServesFromCache() throws Exception {
+        RemoteImageFetcher fetcher = createFetcher(Duration.ofMinutes(5), Duration.ofSeconds(5), 4);
+
+        Map<String, MultipartFile> first = fetcher.fetchAll(Map.of("logo", url("logo.png"), "footer", url("logo.png")));
+        Map<String, MultipartFile> second = fetcher.fetchAll(Map.of("logo", url("logo.png")));
+
+        assertThat(first.get("logo").getBytes()).isEqualTo(content);
+        assertThat(first.get("footer").getOriginalFilename()).isEqualTo("logo.png");
+        assertThat(second.get("logo").getBytes()).isEqualTo(content);
+        assertThat(downloads).hasValue(1);
+        assertThat(fetcher.getCachedBytes()).isEqualTo(content.length);
+    }
+
+    @Test
+    void revalidatesWithEtag() throws Exception {
+        RemoteImageFetcher fetcher = createFetcher(Duration.ZERO, Duration.ofSeconds(5), 4);
+
+        fetcher.fetchAll(Map.of("logo", url("logo.png")));
+        Map<String, MultipartFile> second = fetcher.fetchAll(Map.of("logo", url("logo.png")));
+
+        assertThat(second.get("logo").getBytes()).isEqualTo(content);
+        assertThat(downloads).hasValue(1);
+        assertThat(notModified).hasValue(1);
+    }
+
+    @Test
+    void fetchesConcurrentlyWithinPerHostLimit() throws Exception {
+        RemoteImageFetcher fetcher = createFetcher(Duration.ofMinutes(5), Duration.ofSeconds(5), 2);
+        delayMillis = 200;
+
+        Map<String, String> urls = new HashMap<>();
+        for (int i = 0; i < 6; i++) {
+            urls.put("image" + i, url("photo" + i + ".png"));
+        }
+        Map<String, MultipartFile> images = fetcher.fetchAll(urls);
+
+        assertThat(images).hasSize(6);
+        assertThat(downloads).hasValue(6);
+        assertThat(maxActive.get()).isEqualTo(2);
+    }
+
+    @Test
+    void failsOnTimeoutAndHttpError() {
+        RemoteImageFetcher fetcher = createFetcher(Duration.ofMinutes(5), Duration.ofMillis(200), 4);
+
+        assertThatThrownBy(() -> fetcher.fetchAll(Map.of("logo", url("missing.png"))))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("HTTP 404");
+
+        delayMillis = 1000;
+        assertThatThrownBy(() -> fetcher.fetchAll(Map.of("logo", url("slow.png"))))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("logo");
+    }
+
+    @Test
+    void rejectsUnsupportedSchemesAndHosts() {
+        RemoteImageProperties properties = stubProperties();
+        properties.setAllowedHosts(List.of("cdn.example.com"));
+        fetcher = new RemoteImageFetcher(properties, new SimpleMeterRegistry());
+
+        assertThatThrownBy(() -> fetcher.fetchAll(Map.of("logo", "file:///etc/passwd")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("http(s)");
+        assertThatThrownBy(() -> fetcher.fetchAll(Map.of("logo", url("logo.png"))))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("not allowed");
+        assertThat(downloads).hasValue(0);
+    }
+
+    @Test
+    void isDisabledByDefaultAndEmptyAllowListDeniesEveryHost() {
+        fetcher = new RemoteImageFetcher(new RemoteImageProperties(), new SimpleMeterRegistry());
+        assertThatThrownBy(() -> fetcher.fetchAll(Map.of("logo", url("logo.png"))))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("not enabled");
+        fetcher.shutdown();
+
+        RemoteImageProperties properties = stubProperties();
+        properties.setAllowedHosts(List.of());
+        fetcher = new RemoteImageFetcher(properties, new SimpleMeterRegistry());
+        assertThatThrownBy(() -> fetcher.fetchAll(Map.of("logo", url("logo.png"))))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("not allowed");
+        assertThat(downloads).hasValue(0);
+    }
+
+    @Test
+    void rejectsHostsResolvingToPrivateAddresses() throws Exception {
+        RemoteImageProperties properties = stubProperties();
+        properties.setAllowedHosts(List.of("127.0.0.1", "localhost", "169.254.169.254"));
+        properties.setAllowPrivateAddresses(false);
+        fetcher = new RemoteImageFetcher(properties, new SimpleMeterRegistry());
+
+        assertThatThrownBy(() -> fetcher.fetchAll(Map.of("logo", url("logo.png"))))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("private address");
+        assertThatThrownBy(() -> fetcher.fetchAll(Map.of("logo",
+                stubUrl("/img/logo.png").replace("127.0.0.1", "localhost"))))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("private address");
+        assertThatThrownBy(() -> fetcher.fetchAll(Map.of("metadata", "http://169.254.169.254/latest/meta-data/")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("private address");
+        assertThat(downloads).hasValue(0);
+
+        assertThat(RemoteImageFetcher.isPrivate(InetAddress.getByName("10.1.2.3"))).isTrue();
+        assertThat(RemoteImageFetcher.isPrivate(InetAddress.getByName("192.168.0.1"))).isTrue();
+        assertThat(RemoteImageFetcher.isPrivate(InetAddress.getByName("::1"))).isTrue();
+        assertThat(RemoteImageFetcher.isPrivate(InetAddress.getByName("fd00::1"))).isTrue();
+        assertThat(RemoteImageFetcher.isPrivate(InetAddress.getByName("0.0.0.0"))).isTrue();
+        assertThat(RemoteImageFetcher.isPrivate(InetAddress.getByName("93.184.216.34"))).isFalse();
+    }
+
+    @Test
+    void followsRedirectsOnlyToAllowedHosts() throws Exception {
+        RemoteImageFetcher fetcher = createFetcher(Duration.ofMinutes(5), Duration.ofSeconds(5), 4);
+
+        Map<String, MultipartFile> images = fetcher.fetchAll(Map.of("logo", stubUrl("/redirect/%2Fimg%2Flogo.png")));
+        assertThat(images.get("logo").getBytes()).isEqualTo(content);
+        assertThat(downloads).hasValue(1);
+
+        String outside = URLEncoder.encode("http://169.254.169.254/latest/meta-data/", StandardCharsets.UTF_8);
+        assertThatThrownBy(() -> fetcher.fetchAll(Map.of("logo", stubUrl("/redirect/" + outside))))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("not allowed");
+        assertThatThrownBy(() -> fetcher.fetchAll(Map.of("logo", stubUrl("/loop"))))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("redirected more than");
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
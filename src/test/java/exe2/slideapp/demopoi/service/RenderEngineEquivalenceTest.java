@@ -0,0 +1,174 @@
+package exe2.slideapp.demopoi.service;
+
+import org.apache.poi.xslf.usermodel.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.geom.Rectangle2D;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Với template chỉ có text, engine streaming (chỉ dùng khi client chọn) cho cùng nội dung như engine POI mặc định
+ */
+class RenderEngineEquivalenceTest {
+
+    @TempDir
+    Path scratchDirectory;
+
+    private TestServices services;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        services = new TestServices(scratchDirectory);
+    }
+
+    @AfterEach
+    void tearDown() {
+        services.close();
+    }
+
+    @Test
+    void defaultEngineIsPoi() {
+        assertThat(RenderEngine.fromParameter(null)).isEqualTo(RenderEngine.POI);
+        assertThat(RenderEngine.DEFAULT).isEqualTo(RenderEngine.POI);
+    }
+
+    @Test
+    void streamingAndPoiProduceTheSameTextForAPlainTemplate() throws Exception {
+        byte[] template = plainTemplate();
+        TemplateData data = TemplateData.of(Map.of("name", "Nguyễn Văn A", "title", "Q3 <Report> & more",
+                "company", "Tech Corp"));
+
+        List<List<String>> poi = slideTexts(services.render(template, data, RenderEngine.POI));
+        List<List<String>> streaming = slideTexts(services.render(template, data, RenderEngine.STREAMING));
+
+        assertThat(streaming).isEqualTo(poi);
+        assertThat(poi.get(0)).containsExactly("Hello Nguyễn Văn A", "Q3 <Report> & more", "Tech Corp", "{unknown}");
+        assertThat(poi.get(1)).containsExactly("Prepared by Nguyễn Văn A for Tech Corp");
+    }
+
+    @Test
+    void replacedRunsAreCompactedByBothEngines() throws Exception {
+        byte[] template = splitRunTemplate();
+        TemplateData data = TemplateData.of(Map.of("name", "An", "empty", ""));
+
+        for (RenderEngine engine : List.of(RenderEngine.POI, RenderEngine.STREAMING)) {
+            try (XMLSlideShow show = new XMLSlideShow(new ByteArrayInputStream(
+                    services.render(template, data, engine)))) {
+                List<XSLFTextParagraph> paragraphs =
+                        ((XSLFTextShape) show.getSlides().get(0).getShapes().get(0)).getTextParagraphs();
+
+                // Token tách qua ba run chỉ còn một run mang định dạng của run chứa '{'
+                List<XSLFTextRun> name = paragraphs.get(0).getTextRuns();
+                assertThat(name).as(engine.name()).hasSize(1);
+                assertThat(name.get(0).getRawText()).isEqualTo("An");
+                assertThat(name.get(0).isBold()).isTrue();
+                assertThat(name.get(0).getFontSize()).isEqualTo(20.0);
+
+                // Mọi run đều bị làm rỗng: giữ run đầu để dòng trống vẫn giữ cỡ chữ
+                List<XSLFTextRun> empty = paragraphs.get(1).getTextRuns();
+                assertThat(empty).as(engine.name()).hasSize(1);
+                assertThat(empty.get(0).getRawText()).isEmpty();
+                assertThat(empty.get(0).getFontSize()).isEqualTo(28.0);
+            }
+        }
+    }
+
+    /**
+     * Paragraph đầu có {name} tách qua ba run khác định dạng, paragraph sau chỉ có {empty} tách qua hai run
+     */
+    private static byte[] splitRunTemplate() throws IOException {
+        try (XMLSlideShow show = new XMLSlideShow()) {
+            XSLFTextBox box = show.createSlide().createTextBox();
+            box.setAnchor(new Rectangle2D.Double(20, 20, 400, 80));
+            box.clearText();
+
+            XSLFTextParagraph name = box.addNewTextParagraph();
+            XSLFTextRun open = name.addNewTextRun();
+            open.setText("{na");
+            open.setBold(true);
+            open.setFontSize(20.0);
+            XSLFTextRun middle = name.addNewTextRun();
+            middle.setText("m");
+            middle.setItalic(true);
+            XSLFTextRun close = name.addNewTextRun();
+            close.setText("e}");
+            close.setFontSize(10.0);
+
+            XSLFTextParagraph empty = box.addNewTextParagraph();
+            XSLFTextRun first = empty.addNewTextRun();
+            first.setText("{em");
+            first.setFontSize(28.0);
+            empty.addNewTextRun().setText("pty}");
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            show.write(out);
+            return out.toByteArray();
+        }
+    }
+
+    private static byte[] plainTemplate() throws IOException {
+        try (XMLSlideShow show = new XMLSlideShow()) {
+            XSLFSlide first = show.createSlide();
+            XSLFTextBox greeting = first.createTextBox();
+            greeting.setAnchor(new Rectangle2D.Double(20, 20, 400, 40));
+            XSLFTextParagraph paragraph = greeting.addNewTextParagraph();
+            // Placeholder bị tách qua nhiều run như khi soạn bằng PowerPoint
+            paragraph.addNewTextRun().setText("Hello {na");
+            paragraph.addNewTextRun().setText("me}");
+
+            XSLFTable table = first.createTable(1, 3);
+            table.setAnchor(new Rectangle2D.Double(20, 100, 600, 40));
+            table.getCell(0, 0).setText("{title}");
+            table.getCell(0, 1).setText("{company}");
+            table.getCell(0, 2).setText("{unknown}");
+
+            XSLFSlide second = show.createSlide();
+            XSLFTextBox footer = second.createTextBox();
+            footer.setAnchor(new Rectangle2D.Double(20, 20, 400, 40));
+            footer.setText("Prepared by {name} for {company}");
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            show.write(out);
+            return out.toByteArray();
+        }
+    }
+
+    private static List<List<String>> slideTexts(byte[] deck) throws IOException {
+        List<List<String>> slides = new ArrayList<>();
+        try (XMLSlideShow show = new XMLSlideShow(new ByteArrayInputStream(deck))) {
+            for (XSLFSlide slide : show.getSlides()) {
+                List<String> texts = new ArrayList<>();
+                collect(slide.getShapes(), texts);
+                slides.add(texts);
+            }
+        }
+        return slides;
+    }
+
+    private static void collect(List<XSLFShape> shapes, List<String> texts) {
+        for (XSLFShape shape : shapes) {
+            if (shape instanceof XSLFTextShape text) {
+                texts.add(text.getText());
+            } else if (shape instanceof XSLFTable table) {
+                for (XSLFTableRow row : table.getRows()) {
+                    for (XSLFTableCell cell : row.getCells()) {
+                        texts.add(cell.getText());
+                    }
+                }
+            } else if (shape instanceof XSLFGroupShape group) {
+                collect(group.getShapes(), texts);
+            }
+        }
+    }
+}
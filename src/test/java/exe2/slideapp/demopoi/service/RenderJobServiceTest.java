@@ -0,0 +1,62 @@
+package exe2.slideapp.demopoi.service;
+
+import exe2.slideapp.demopoi.config.JobProperties;
+import exe2.slideapp.demopoi.exception.JobFailedException;
+import exe2.slideapp.demopoi.exception.JobNotReadyException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RenderJobServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private TestServices services;
+    private RenderJobService jobs;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        services = new TestServices(directory.resolve("scratch"));
+        JobProperties properties = new JobProperties();
+        properties.setWorkers(1);
+        properties.setResultDirectory(directory.resolve("results").toString());
+        jobs = new RenderJobService(services.powerPointService, new ResultStore(properties), properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jobs.shutdown();
+        services.close();
+    }
+
+    @Test
+    void failedJobReportsItsErrorInsteadOfNotReady() throws Exception {
+        RenderJob job = jobs.submit("not a pptx".getBytes(StandardCharsets.UTF_8), TemplateData.of(Map.of()),
+                Map.of(), "out.pptx");
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (job.getStatus() != RenderJob.Status.FAILED && System.currentTimeMillis() < deadline) {
+            assertThatThrownBy(() -> jobs.getResult(job.getId()))
+                    .isInstanceOfAny(JobNotReadyException.class, JobFailedException.class);
+            Thread.sleep(20);
+        }
+
+        assertThat(job.getStatus()).isEqualTo(RenderJob.Status.FAILED);
+        assertThatThrownBy(() -> jobs.getResult(job.getId()))
+                .isInstanceOf(JobFailedException.class)
+                .extracting(e -> ((JobFailedException) e).getError())
+                .isEqualTo(job.getError());
+        // Input của job đã được worker nhận không còn tính vào hàng đợi
+        assertThat(jobs.getQueuedBytes()).isZero();
+    }
+}
@@ -0,0 +1,49 @@
+package exe2.slideapp.demopoi.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RepeatMarkerTest {
+
+    private static final Map<String, List<Map<String, String>>> LISTS = Map.of("items", List.of());
+
+    @Test
+    void parsesKeyAndRowLimit() {
+        assertThat(RepeatMarker.parse("#items")).isEqualTo(new RepeatMarker("#items", "items", 0));
+        assertThat(RepeatMarker.parse("#items:5")).isEqualTo(new RepeatMarker("#items:5", "items", 5));
+        assertThat(RepeatMarker.parse("#items: FIT")).isEqualTo(new RepeatMarker("#items: FIT", "items", RepeatMarker.FIT));
+        assertThat(RepeatMarker.keyOf("#items:oops")).isEqualTo("items");
+    }
+
+    @Test
+    void rejectsInvalidRowLimits() {
+        assertThatThrownBy(() -> RepeatMarker.parse("#items:0"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("row count must be positive");
+        assertThatThrownBy(() -> RepeatMarker.parse("#items:many"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("expected a row count or 'fit'");
+    }
+
+    @Test
+    void findsOnlyMarkersOfListsInTheData() {
+        assertThat(RepeatMarker.find("{#other:x} {name} {#items:2}", LISTS))
+                .isEqualTo(new RepeatMarker("#items:2", "items", 2));
+        assertThat(RepeatMarker.find("{#other}", LISTS)).isNull();
+        assertThat(RepeatMarker.find("{#items}", Map.of())).isNull();
+        assertThat(RepeatMarker.find("no tokens", LISTS)).isNull();
+    }
+
+    @Test
+    void slideMarkersCannotHaveARowLimit() {
+        assertThat(RepeatMarker.findSlideMarker("{#items}{name}", LISTS).key()).isEqualTo("items");
+        assertThatThrownBy(() -> RepeatMarker.findSlideMarker("{#items:3}", LISTS))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("outside a table");
+    }
+}
@@ -0,0 +1,161 @@
+package exe2.slideapp.demopoi.service;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+import org.apache.poi.xslf.usermodel.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.awt.geom.Rectangle2D;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Slide lặp của engine streaming: presentation.xml, presentation.xml.rels và [Content_Types].xml được ghi lại
+ * (SlideRepeatPlan) sao cho deck mở lại được và có cùng nội dung như engine POI
+ */
+class SlideRepeatPlanTest {
+
+    private static final String PRESENTATION_NS = "http://schemas.openxmlformats.org/presentationml/2006/main";
+    private static final String RELATIONSHIPS_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String PACKAGE_RELS_NS = "http://schemas.openxmlformats.org/package/2006/relationships";
+
+    @TempDir
+    Path scratchDirectory;
+
+    private TestServices services;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        services = new TestServices(scratchDirectory);
+    }
+
+    @AfterEach
+    void tearDown() {
+        services.close();
+    }
+
+    @Test
+    void insertsClonesAfterTheRepeatedSlide() throws Exception {
+        byte[] template = template();
+        TemplateData data = new TemplateData(Map.of("title", "Team"),
+                Map.of("people", List.of(Map.of("name", "An"), Map.of("name", "Binh"), Map.of("name", "Chi")),
+                        "empty", List.of()),
+                Map.of());
+
+        byte[] deck = services.render(template, data, RenderEngine.STREAMING);
+
+        assertThat(slideTexts(deck)).containsExactly("Team", "Person An", "Person Binh", "Person Chi", "The end");
+        assertThat(slideTexts(services.render(template, data, RenderEngine.POI))).isEqualTo(slideTexts(deck));
+
+        Map<String, String> entries = xmlEntries(deck);
+        // sldId và r:id của mọi slide khác nhau, bản sao nằm ngay sau slide gốc
+        List<String> ids = new ArrayList<>();
+        List<String> relationshipIds = new ArrayList<>();
+        for (Element slideId : elements(entries.get("ppt/presentation.xml"), PRESENTATION_NS, "sldId")) {
+            ids.add(slideId.getAttribute("id"));
+            relationshipIds.add(slideId.getAttributeNS(RELATIONSHIPS_NS, "id"));
+        }
+        assertThat(ids).hasSize(5).doesNotHaveDuplicates();
+        assertThat(relationshipIds).doesNotHaveDuplicates();
+
+        Map<String, String> targets = new HashMap<>();
+        for (Element relationship : elements(entries.get("ppt/_rels/presentation.xml.rels"), PACKAGE_RELS_NS,
+                "Relationship")) {
+            String id = relationship.getAttribute("Id");
+            assertThat(targets.put(id, relationship.getAttribute("Target"))).as("duplicate relationship id %s", id).isNull();
+        }
+        List<String> slideParts = relationshipIds.stream().map(targets::get).toList();
+        assertThat(slideParts).doesNotContainNull().doesNotHaveDuplicates();
+        assertThat(targets.values()).doesNotContain("slides/slide3.xml", "notesSlides/notesSlide2.xml");
+
+        String contentTypes = entries.get("[Content_Types].xml");
+        for (String part : slideParts) {
+            assertThat(entries).containsKey("ppt/" + part);
+            assertThat(contentTypes).contains("PartName=\"/ppt/" + part + "\"");
+        }
+        // Slide của danh sách rỗng bị xóa cùng relationship và notes của nó
+        assertThat(entries).doesNotContainKeys("ppt/slides/slide3.xml", "ppt/slides/_rels/slide3.xml.rels",
+                "ppt/notesSlides/notesSlide2.xml");
+        assertThat(contentTypes).doesNotContain("/ppt/slides/slide3.xml", "/ppt/notesSlides/notesSlide2.xml");
+
+        // Notes trỏ ngược về một slide nên chỉ slide gốc giữ notes
+        String original = entries.get("ppt/slides/_rels/slide2.xml.rels");
+        assertThat(original).contains("notesSlide");
+        for (String part : slideParts.subList(2, 4)) {
+            String name = part.substring(part.lastIndexOf('/') + 1);
+            assertThat(entries.get("ppt/slides/_rels/" + name + ".rels"))
+                    .contains("slideLayout")
+                    .doesNotContain("notesSlide");
+        }
+    }
+
+    private static byte[] template() throws IOException {
+        try (XMLSlideShow show = new XMLSlideShow()) {
+            text(show.createSlide(), "{title}");
+            XSLFSlide repeated = show.createSlide();
+            text(repeated, "{#people}Person {name}");
+            show.getNotesSlide(repeated);
+            XSLFSlide removed = show.createSlide();
+            text(removed, "{#empty}{name}");
+            show.getNotesSlide(removed);
+            text(show.createSlide(), "The end");
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            show.write(out);
+            return out.toByteArray();
+        }
+    }
+
+    private static void text(XSLFSlide slide, String text) {
+        XSLFTextBox box = slide.createTextBox();
+        box.setAnchor(new Rectangle2D.Double(20, 20, 400, 40));
+        box.setText(text);
+    }
+
+    private static List<String> slideTexts(byte[] deck) throws IOException {
+        try (XMLSlideShow show = new XMLSlideShow(new ByteArrayInputStream(deck))) {
+            return show.getSlides().stream()
+                    .map(slide -> ((XSLFTextShape) slide.getShapes().get(0)).getText())
+                    .toList();
+        }
+    }
+
+    private static Map<String, String> xmlEntries(byte[] deck) throws IOException {
+        Map<String, String> entries = new HashMap<>();
+        try (ZipFile zip = ZipFile.builder().setSeekableByteChannel(new SeekableInMemoryByteChannel(deck)).get()) {
+            for (ZipArchiveEntry entry : Collections.list(zip.getEntries())) {
+                try (InputStream in = zip.getInputStream(entry)) {
+                    entries.put(entry.getName(), new String(in.readAllBytes(), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static List<Element> elements(String xml, String namespace, String localName) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        NodeList nodes = factory.newDocumentBuilder()
+                .parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)))
+                .getElementsByTagNameNS(namespace, localName);
+        List<Element> elements = new ArrayList<>(nodes.getLength());
+        for (int i = 0; i < nodes.getLength(); i++) {
+            elements.add((Element) nodes.item(i));
+        }
+        return elements;
+    }
+}
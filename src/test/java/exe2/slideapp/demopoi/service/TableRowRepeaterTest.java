@@ -0,0 +1,228 @@
+package exe2.slideapp.demopoi.service;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xddf.usermodel.chart.*;
+import org.apache.poi.xslf.usermodel.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openxmlformats.schemas.presentationml.x2006.main.CTGraphicalObjectFrame;
+
+import java.awt.geom.Rectangle2D;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Dòng bảng lặp và phân trang {#key:N} / {#key:fit} của engine POI
+ */
+class TableRowRepeaterTest {
+
+    @TempDir
+    Path scratchDirectory;
+
+    private TestServices services;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        services = new TestServices(scratchDirectory);
+    }
+
+    @AfterEach
+    void tearDown() {
+        services.close();
+    }
+
+    @Test
+    void paginatesSeveralTablesOnOneSlide() throws Exception {
+        byte[] template = template(show -> {
+            XSLFSlide slide = show.createSlide();
+            XSLFTable orders = table(slide, 20, "Order", "{#orders:2}{name}");
+            orders.addRow().addCell().setText("Total {total}");
+            table(slide, 300, "Item", "{#items:3}{name}");
+        });
+        TemplateData data = new TemplateData(Map.of("total", "15"),
+                Map.of("orders", items("o", 5), "items", items("i", 4)), Map.of());
+
+        List<List<String>> slides = tableRows(services.render(template, data, RenderEngine.POI));
+
+        // orders cần 3 slide (2 + 2 + 1), items chỉ cần 2: slide cuối giữ tiêu đề nhưng không còn dòng
+        assertThat(slides).containsExactly(
+                List.of("Order", "o1", "o2", "Item", "i1", "i2", "i3"),
+                List.of("Order", "o3", "o4", "Item", "i4"),
+                List.of("Order", "o5", "Total 15", "Item"));
+    }
+
+    @Test
+    void unlimitedTableStaysWholeOnTheFirstSlide() throws Exception {
+        byte[] template = template(show -> {
+            XSLFSlide slide = show.createSlide();
+            table(slide, 20, "Order", "{#orders:2}{name}");
+            XSLFTable notes = table(slide, 300, "Note", "{#notes}{name}");
+            notes.addRow().addCell().setText("{count} notes");
+        });
+        TemplateData data = new TemplateData(Map.of("count", "3"),
+                Map.of("orders", items("o", 4), "notes", items("n", 3)), Map.of());
+
+        List<List<String>> slides = tableRows(services.render(template, data, RenderEngine.POI));
+
+        // Dòng tổng của bảng không giới hạn ở ngay slide đầu, slide nối tiếp không còn bảng đó
+        assertThat(slides).containsExactly(
+                List.of("Order", "o1", "o2", "Note", "n1", "n2", "n3", "3 notes"),
+                List.of("Order", "o3", "o4"));
+    }
+
+    @Test
+    void fitsRowsToTheSlideHeight() throws Exception {
+        byte[] template = template(show -> {
+            XSLFSlide slide = show.createSlide();
+            table(slide, 20, "Name", "{#rows:fit}{name}");
+        });
+        TemplateData data = new TemplateData(Map.of(), Map.of("rows", items("r", 60)), Map.of());
+
+        List<List<String>> slides = tableRows(services.render(template, data, RenderEngine.POI));
+
+        assertThat(slides).hasSizeGreaterThan(1);
+        int perSlide = slides.get(0).size() - 1;
+        for (List<String> rows : slides) {
+            assertThat(rows.get(0)).isEqualTo("Name");
+            assertThat(rows.size() - 1).isLessThanOrEqualTo(perSlide);
+        }
+        assertThat(slides.stream().flatMap(rows -> rows.stream().skip(1)).toList())
+                .containsExactlyElementsOf(items("r", 60).stream().map(item -> item.get("name")).toList());
+    }
+
+    @Test
+    void rejectsAnInvalidRowCount() throws Exception {
+        byte[] template = template(show -> table(show.createSlide(), 20, "Name", "{#rows:0}{name}"));
+        TemplateData data = new TemplateData(Map.of(), Map.of("rows", items("r", 3)), Map.of());
+
+        assertThatThrownBy(() -> services.render(template, data, RenderEngine.POI))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("row count must be positive");
+    }
+
+    @Test
+    void continuationSlidesGetTheirOwnChart() throws Exception {
+        byte[] template = template(show -> {
+            XSLFSlide slide = show.createSlide();
+            table(slide, 20, "Name", "{#rows:2}{name}");
+            addChart(show, slide, "{CHART:sales}");
+        });
+        ChartData sales = new ChartData(List.of("Q1", "Q2", "Q3"),
+                List.of(new ChartData.Series("2025", List.of(1.0, 2.0, 3.0))));
+        TemplateData data = new TemplateData(Map.of(), Map.of("rows", items("r", 5)), Map.of("sales", sales));
+
+        byte[] deck = services.render(template, data, RenderEngine.POI);
+
+        try (XMLSlideShow show = new XMLSlideShow(new ByteArrayInputStream(deck))) {
+            assertThat(show.getSlides()).hasSize(3);
+            Set<String> chartParts = new HashSet<>();
+            Set<String> workbookParts = new HashSet<>();
+            for (XSLFSlide slide : show.getSlides()) {
+                XSLFChart chart = slide.getRelations().stream()
+                        .filter(XSLFChart.class::isInstance)
+                        .map(XSLFChart.class::cast)
+                        .findFirst().orElseThrow();
+                chartParts.add(chart.getPackagePart().getPartName().getName());
+                workbookParts.add(chart.getPackagePart()
+                        .getRelatedPart(chart.getPackagePart().getRelationship(
+                                chart.getCTChartSpace().getExternalData().getId()))
+                        .getPartName().getName());
+                XDDFChartData.Series series = chart.getChartSeries().get(0).getSeries(0);
+                assertThat(series.getCategoryData().getPointCount()).isEqualTo(3);
+                assertThat(series.getValuesData().getPointAt(2)).isEqualTo(3.0);
+            }
+            assertThat(chartParts).hasSize(3);
+            assertThat(workbookParts).hasSize(3);
+        }
+    }
+
+    @Test
+    void streamingEngineRejectsARepeatedSlideWithAChart() throws Exception {
+        byte[] template = template(show -> {
+            XSLFSlide slide = show.createSlide();
+            XSLFTextBox title = slide.createTextBox();
+            title.setAnchor(new Rectangle2D.Double(20, 20, 400, 40));
+            title.setText("{#people}{name}");
+            addChart(show, slide, "Chart");
+        });
+        TemplateData data = new TemplateData(Map.of(), Map.of("people", items("p", 2)), Map.of());
+
+        assertThatThrownBy(() -> services.render(template, data, RenderEngine.STREAMING))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("requires the POI engine");
+        assertThat(services.render(template, data, RenderEngine.AUTO)).isNotEmpty();
+    }
+
+    private interface TemplateBuilder {
+        void build(XMLSlideShow show) throws IOException;
+    }
+
+    private static byte[] template(TemplateBuilder builder) throws IOException {
+        try (XMLSlideShow show = new XMLSlideShow()) {
+            builder.build(show);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            show.write(out);
+            return out.toByteArray();
+        }
+    }
+
+    private static XSLFTable table(XSLFSlide slide, double top, String header, String repeatRow) {
+        XSLFTable table = slide.createTable();
+        table.addRow().addCell().setText(header);
+        table.addRow().addCell().setText(repeatRow);
+        table.setAnchor(new Rectangle2D.Double(20, top, 300, 40));
+        table.setColumnWidth(0, 300);
+        return table;
+    }
+
+    private static void addChart(XMLSlideShow show, XSLFSlide slide, String description) {
+        XSLFChart chart = show.createChart();
+        XDDFCategoryAxis categoryAxis = chart.createCategoryAxis(AxisPosition.BOTTOM);
+        XDDFValueAxis valueAxis = chart.createValueAxis(AxisPosition.LEFT);
+        XDDFChartData bars = chart.createData(ChartTypes.BAR, categoryAxis, valueAxis);
+        XDDFDataSource<String> categories = XDDFDataSourcesFactory.fromArray(new String[]{"A", "B"},
+                chart.formatRange(new CellRangeAddress(1, 2, 0, 0)), 0);
+        XDDFNumericalDataSource<Double> values = XDDFDataSourcesFactory.fromArray(new Double[]{1.0, 2.0},
+                chart.formatRange(new CellRangeAddress(1, 2, 1, 1)), 1);
+        bars.addSeries(categories, values).setTitle("Old", chart.setSheetTitle("Old", 1));
+        chart.plot(bars);
+        slide.addChart(chart, new Rectangle2D.Double(350, 20, 300, 200));
+
+        CTGraphicalObjectFrame[] frames = slide.getXmlObject().getCSld().getSpTree().getGraphicFrameArray();
+        frames[frames.length - 1].getNvGraphicFramePr().getCNvPr().setDescr(description);
+    }
+
+    private static List<Map<String, String>> items(String prefix, int count) {
+        return IntStream.rangeClosed(1, count)
+                .mapToObj(i -> Map.of("name", prefix + i))
+                .toList();
+    }
+
+    /**
+     * Text của ô đầu mỗi dòng, theo thứ tự bảng trên từng slide
+     */
+    private static List<List<String>> tableRows(byte[] deck) throws IOException {
+        List<List<String>> slides = new ArrayList<>();
+        try (XMLSlideShow show = new XMLSlideShow(new ByteArrayInputStream(deck))) {
+            for (XSLFSlide slide : show.getSlides()) {
+                List<String> rows = new ArrayList<>();
+                for (XSLFShape shape : slide.getShapes()) {
+                    if (shape instanceof XSLFTable table) {
+                        table.getRows().forEach(row -> rows.add(row.getCells().get(0).getText()));
+                    }
+                }
+                slides.add(rows);
+            }
+        }
+        return slides;
+    }
+}
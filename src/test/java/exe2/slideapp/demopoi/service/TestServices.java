@@ -0,0 +1,52 @@
+package exe2.slideapp.demopoi.service;
+
+import exe2.slideapp.demopoi.config.AdmissionProperties;
+import exe2.slideapp.demopoi.config.ImageProperties;
+import exe2.slideapp.demopoi.config.OutputProperties;
+import exe2.slideapp.demopoi.config.ScratchProperties;
+import exe2.slideapp.demopoi.config.TemplatePoolProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Dựng PowerPointService với cấu hình mặc định cho test, không cần Spring context
+ */
+final class TestServices implements AutoCloseable {
+
+    final MemoryAdmission memoryAdmission;
+    final ScratchSpace scratchSpace;
+    final TemplatePool templatePool;
+    final ImageOptimizer imageOptimizer;
+    final PowerPointService powerPointService;
+
+    TestServices(Path scratchDirectory) throws IOException {
+        ScratchProperties scratchProperties = new ScratchProperties();
+        scratchProperties.setDirectory(scratchDirectory.toString());
+
+        this.memoryAdmission = new MemoryAdmission(new AdmissionProperties());
+        this.scratchSpace = new ScratchSpace(scratchProperties);
+        this.templatePool = new TemplatePool(new TemplatePoolProperties(), scratchSpace);
+        this.imageOptimizer = new ImageOptimizer(new ImageProperties());
+        this.powerPointService = new PowerPointService(templatePool, scratchSpace,
+                imageOptimizer, memoryAdmission, new StreamingTemplateEngine(memoryAdmission),
+                new RenderMetrics(new SimpleMeterRegistry(), memoryAdmission, templatePool),
+                new OutputProperties());
+    }
+
+    byte[] render(byte[] template, TemplateData data, RenderEngine engine) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        powerPointService.render(template, data, Map.of(), engine, out);
+        return out.toByteArray();
+    }
+
+    @Override
+    public void close() {
+        templatePool.shutdown();
+        imageOptimizer.shutdown();
+        scratchSpace.shutdown();
+    }
+}